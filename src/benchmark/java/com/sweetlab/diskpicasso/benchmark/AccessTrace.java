@@ -0,0 +1,145 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recorded or generated sequence of cache accesses. Stored as text, one record per line:
+ * <pre>
+ * timestampMillis op width height config fileKey
+ * </pre>
+ * where op is G for a lookup that puts on a miss, P for a put regardless of the cache and I for
+ * invalidating all variants of the file key. The file key is the rest of the line. Lines
+ * starting with # are comments.
+ */
+public class AccessTrace {
+    public static final char LOOKUP = 'G';
+    public static final char PUT = 'P';
+    public static final char INVALIDATE = 'I';
+
+    private final List<Record> mRecords;
+
+    /**
+     * One access.
+     */
+    public static class Record {
+        private final long mTimeMillis;
+        private final char mOp;
+        private final int mWidth;
+        private final int mHeight;
+        private final PixelConfig mConfig;
+        private final String mFileKey;
+
+        public Record(long timeMillis, char op, int width, int height, PixelConfig config, String fileKey) {
+            mTimeMillis = timeMillis;
+            mOp = op;
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+            mFileKey = fileKey;
+        }
+
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        public char getOp() {
+            return mOp;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        public PixelConfig getConfig() {
+            return mConfig;
+        }
+
+        public String getFileKey() {
+            return mFileKey;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param records The records, ordered by time.
+     */
+    public AccessTrace(List<Record> records) {
+        mRecords = Collections.unmodifiableList(new ArrayList<>(records));
+    }
+
+    public List<Record> getRecords() {
+        return mRecords;
+    }
+
+    /**
+     * Read a trace file.
+     *
+     * @param file The file.
+     * @return The trace.
+     * @throws IOException If the file could not be read or has a malformed line.
+     */
+    public static AccessTrace read(File file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] fields = line.split(" ", 6);
+                if (fields.length != 6 || fields[1].length() != 1) {
+                    throw new IOException("Malformed line " + lineNumber + " in " + file);
+                }
+                try {
+                    records.add(new Record(Long.parseLong(fields[0]), fields[1].charAt(0), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]), PixelConfig.valueOf(fields[4]), fields[5]));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed line " + lineNumber + " in " + file, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new AccessTrace(records);
+    }
+
+    /**
+     * Write the trace to a file.
+     *
+     * @param file The file.
+     * @throws IOException If fails.
+     */
+    public void write(File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.write("# timestampMillis op width height config fileKey\n");
+            for (Record record : mRecords) {
+                writer.write(record.mTimeMillis + " " + record.mOp + " " + record.mWidth + " " + record.mHeight + " " +
+                        record.mConfig.name() + " " + record.mFileKey + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
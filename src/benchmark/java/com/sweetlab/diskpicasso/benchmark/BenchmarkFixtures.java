@@ -0,0 +1,86 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.storage.EvictionListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Shared benchmark data.
+ */
+public class BenchmarkFixtures {
+    /**
+     * Variant sizes used for every file key.
+     */
+    public static final int[] SIZES = {128, 256, 512, 1024};
+
+    /**
+     * Listener ignoring all evictions.
+     */
+    public static final EvictionListener NO_EVICTION = new EvictionListener() {
+        @Override
+        public void onEvicted(CacheEntry entry) {
+        }
+    };
+
+    /**
+     * Create a source file key resembling a MediaStore path and id.
+     *
+     * @param index Index of the source.
+     * @return The file key.
+     */
+    public static String fileKey(int index) {
+        return "/storage/emulated/0/DCIM/Camera/IMG_2015" + index + ".jpg_" + index;
+    }
+
+    /**
+     * Create cache entries, variants of the same file key are adjacent.
+     *
+     * @param count Number of entries.
+     * @return The entries.
+     */
+    public static CacheEntry[] createEntries(int count) {
+        return createEntries(count, new File("/cache"));
+    }
+
+    /**
+     * Create cache entries with cache files in a directory, variants of the same file key are
+     * adjacent. The files are not created.
+     *
+     * @param count     Number of entries.
+     * @param directory Directory of the cache files.
+     * @return The entries.
+     */
+    public static CacheEntry[] createEntries(int count, File directory) {
+        CacheEntry[] entries = new CacheEntry[count];
+        for (int i = 0; i < count; i++) {
+            String fileKey = fileKey(i / SIZES.length);
+            int size = SIZES[i % SIZES.length];
+            entries[i] = new CacheEntry(fileKey, new File(directory, "entry" + i), size, size * 3 / 4, PixelConfig.RGB_565, size * size / 10);
+        }
+        return entries;
+    }
+
+    /**
+     * Create sparse cache files of the journaled size, so entries pass the size verification.
+     *
+     * @param entries The entries.
+     * @throws IOException If a file could not be created.
+     */
+    public static void createFiles(CacheEntry[] entries) throws IOException {
+        for (CacheEntry entry : entries) {
+            RandomAccessFile file = new RandomAccessFile(entry.getFile(), "rw");
+            try {
+                file.setLength(entry.getByteSize());
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    private BenchmarkFixtures() {
+    }
+}
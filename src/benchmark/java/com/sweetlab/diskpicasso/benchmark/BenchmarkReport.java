@@ -0,0 +1,80 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects benchmark results of a suite and writes them as JSON into the directory given by
+ * the benchmark.outputDir system property.
+ */
+public class BenchmarkReport {
+    private static final String OUTPUT_DIR_PROPERTY = "benchmark.outputDir";
+    private static final String DEFAULT_OUTPUT_DIR = "build/benchmarks";
+
+    private final String mSuite;
+    private final List<BenchmarkResult> mResults = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param suite Suite name, used as file name.
+     */
+    public BenchmarkReport(String suite) {
+        mSuite = suite;
+    }
+
+    /**
+     * Add a result.
+     *
+     * @param result The result.
+     * @return The added result.
+     */
+    public BenchmarkResult add(BenchmarkResult result) {
+        mResults.add(result);
+        return result;
+    }
+
+    /**
+     * Write all results to [output dir]/[suite].json.
+     *
+     * @return The written file.
+     * @throws IOException If fails.
+     */
+    public File write() throws IOException {
+        File file = new File(outputDirectory(), mSuite + ".json");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write("{\"suite\":\"" + mSuite + "\",\"timestamp\":" + System.currentTimeMillis() + ",\"results\":[\n");
+            for (int i = 0; i < mResults.size(); i++) {
+                writer.write(mResults.get(i).toJson());
+                writer.write(i < mResults.size() - 1 ? ",\n" : "\n");
+            }
+            writer.write("]}\n");
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Get the output directory, created if missing.
+     *
+     * @return The directory.
+     * @throws IOException If the directory could not be created.
+     */
+    public static File outputDirectory() throws IOException {
+        File dir = new File(System.getProperty(OUTPUT_DIR_PROPERTY, DEFAULT_OUTPUT_DIR));
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        return dir;
+    }
+}
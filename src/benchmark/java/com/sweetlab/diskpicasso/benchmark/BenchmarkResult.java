@@ -0,0 +1,125 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import java.util.Locale;
+
+/**
+ * Result of a single benchmark, throughput per measured iteration and memory churn of all
+ * measured iterations.
+ */
+public class BenchmarkResult {
+    private final String mName;
+    private final int mOperations;
+    private final double[] mOpsPerSecond;
+    private final double mBytesPerOp;
+    private final long mCollections;
+
+    /**
+     * Constructor.
+     *
+     * @param name         Benchmark name.
+     * @param operations   Operations per iteration.
+     * @param opsPerSecond Throughput of each measured iteration.
+     * @param bytesPerOp   Bytes allocated by the benchmark thread per operation, -1 if unknown.
+     * @param collections  Garbage collections during the measured iterations, -1 if unknown.
+     */
+    public BenchmarkResult(String name, int operations, double[] opsPerSecond, double bytesPerOp, long collections) {
+        mName = name;
+        mOperations = operations;
+        mOpsPerSecond = opsPerSecond;
+        mBytesPerOp = bytesPerOp;
+        mCollections = collections;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get mean throughput.
+     *
+     * @return Operations per second.
+     */
+    public double getMean() {
+        double sum = 0;
+        for (double value : mOpsPerSecond) {
+            sum += value;
+        }
+        return sum / mOpsPerSecond.length;
+    }
+
+    /**
+     * Get the standard deviation of the throughput.
+     *
+     * @return Standard deviation in operations per second.
+     */
+    public double getStdDev() {
+        double mean = getMean();
+        double sum = 0;
+        for (double value : mOpsPerSecond) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / mOpsPerSecond.length);
+    }
+
+    /**
+     * Get mean time per operation.
+     *
+     * @return Nanoseconds per operation.
+     */
+    public double getNanosPerOp() {
+        return 1e9 / getMean();
+    }
+
+    /**
+     * Get the bytes allocated per operation by the thread running the benchmark, allocations
+     * of other threads are not included.
+     *
+     * @return Bytes per operation or -1 if the JVM can not tell.
+     */
+    public double getBytesPerOp() {
+        return mBytesPerOp;
+    }
+
+    /**
+     * Get the number of garbage collections during the measured iterations.
+     *
+     * @return Collections or -1 if the JVM can not tell.
+     */
+    public long getCollections() {
+        return mCollections;
+    }
+
+    /**
+     * Serialize to a JSON object.
+     *
+     * @return JSON text.
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"name\":\"").append(mName).append('"');
+        builder.append(",\"operations\":").append(mOperations);
+        builder.append(",\"opsPerSecond\":").append(format(getMean()));
+        builder.append(",\"stdDev\":").append(format(getStdDev()));
+        builder.append(",\"nanosPerOp\":").append(format(getNanosPerOp()));
+        builder.append(",\"bytesPerOp\":").append(format(mBytesPerOp));
+        builder.append(",\"collections\":").append(mCollections);
+        builder.append(",\"iterations\":[");
+        for (int i = 0; i < mOpsPerSecond.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(format(mOpsPerSecond[i]));
+        }
+        builder.append("]}");
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%-40s %14.1f ops/s +- %10.1f %10.1f ns/op %10.1f B/op %4d gc", mName, getMean(), getStdDev(), getNanosPerOp(), mBytesPerOp, mCollections);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+}
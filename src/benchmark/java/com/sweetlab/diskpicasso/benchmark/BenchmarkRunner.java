@@ -0,0 +1,146 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Minimal JMH style runner. Runs a number of warm up iterations followed by measured
+ * iterations. Use the Builder to configure, see Builder for default values. Allocations of the
+ * benchmark thread and garbage collections are counted when the JVM supports it.
+ */
+public class BenchmarkRunner {
+    private static final int ALLOCATED_BYTES = 0;
+    private static final int COLLECTIONS = 1;
+
+    /**
+     * Sink preventing the JIT from removing benchmarked code.
+     */
+    private static volatile Object sSink;
+
+    private final int mWarmUpIterations;
+    private final int mIterations;
+    private final int mOperations;
+
+    /**
+     * Default 5 warm up and 10 measured iterations of 100000 operations each.
+     */
+    public static class Builder {
+        private int mWarmUpIterations;
+        private int mIterations;
+        private int mOperations;
+
+        public Builder() {
+            mWarmUpIterations = 5;
+            mIterations = 10;
+            mOperations = 100000;
+        }
+
+        public Builder setWarmUpIterations(int iterations) {
+            mWarmUpIterations = iterations;
+            return this;
+        }
+
+        public Builder setIterations(int iterations) {
+            mIterations = iterations;
+            return this;
+        }
+
+        public Builder setOperations(int operations) {
+            mOperations = operations;
+            return this;
+        }
+
+        public BenchmarkRunner build() {
+            return new BenchmarkRunner(mWarmUpIterations, mIterations, mOperations);
+        }
+    }
+
+    private BenchmarkRunner(int warmUpIterations, int iterations, int operations) {
+        mWarmUpIterations = warmUpIterations;
+        mIterations = iterations;
+        mOperations = operations;
+    }
+
+    /**
+     * Consume a value so that the computation producing it is not optimized away.
+     *
+     * @param value Any value.
+     */
+    public static void consume(Object value) {
+        sSink = value;
+    }
+
+    /**
+     * Run a workload.
+     *
+     * @param name     Benchmark name.
+     * @param workload The workload.
+     * @return The result.
+     * @throws Exception If the workload fails.
+     */
+    public BenchmarkResult run(String name, Workload workload) throws Exception {
+        for (int i = 0; i < mWarmUpIterations; i++) {
+            iterate(workload, new long[2]);
+        }
+        double[] opsPerSecond = new double[mIterations];
+        long[] usage = new long[2];
+        for (int i = 0; i < mIterations; i++) {
+            long nanos = iterate(workload, usage);
+            opsPerSecond[i] = mOperations * 1e9 / Math.max(1, nanos);
+        }
+        final double bytesPerOp = usage[ALLOCATED_BYTES] < 0 ? -1 : (double) usage[ALLOCATED_BYTES] / ((long) mOperations * mIterations);
+        BenchmarkResult result = new BenchmarkResult(name, mOperations, opsPerSecond, bytesPerOp, usage[COLLECTIONS]);
+        System.out.println(result);
+        return result;
+    }
+
+    private long iterate(Workload workload, long[] usage) throws Exception {
+        workload.setUp();
+        try {
+            final long allocatedBytes = allocatedBytes();
+            final long collections = collections();
+            final long start = System.nanoTime();
+            for (int i = 0; i < mOperations; i++) {
+                workload.operation(i);
+            }
+            workload.complete();
+            final long nanos = System.nanoTime() - start;
+            usage[ALLOCATED_BYTES] = allocatedBytes < 0 || usage[ALLOCATED_BYTES] < 0 ? -1 : usage[ALLOCATED_BYTES] + allocatedBytes() - allocatedBytes;
+            usage[COLLECTIONS] = collections < 0 || usage[COLLECTIONS] < 0 ? -1 : usage[COLLECTIONS] + collections() - collections;
+            return nanos;
+        } finally {
+            workload.tearDown();
+        }
+    }
+
+    /**
+     * Get the bytes allocated by the current thread so far.
+     *
+     * @return Allocated bytes or -1 if not supported.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Get the garbage collections of all collectors so far.
+     *
+     * @return Number of collections or -1 if not supported.
+     */
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            final long collectorCount = collector.getCollectionCount();
+            if (collectorCount < 0) {
+                return -1;
+            }
+            count += collectorCount;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,129 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Put throughput and disk space with and without deduplication, for a library where some photos
+ * are copies of others under another file key, like a photo shared into a messaging folder. One
+ * operation puts both thumbnails of a photo. The cache is smaller than the library so shared
+ * files are released by evictions as well as referenced by puts. On a device the space saved
+ * for the real library is read from the shared bytes of the statistics.
+ */
+public class DeduplicationBenchmark {
+    private static final int PHOTOS = 200;
+    private static final int COPY_PERCENT = 15;
+    private static final int THUMBNAIL_SIZES = 2;
+    private static final long CACHE_SIZE = 4 * 1024 * 1024;
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void deduplication() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("Deduplication");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setWarmUpIterations(2).setIterations(5).setOperations(PHOTOS).build();
+
+        final RawImage[][] library = new RawImage[PHOTOS][];
+        Random random = new Random(1);
+        int copies = 0;
+        for (int i = 0; i < PHOTOS; i++) {
+            if (i > 0 && random.nextInt(100) < COPY_PERCENT) {
+                library[i] = library[random.nextInt(i)];
+                copies++;
+                continue;
+            }
+            library[i] = new RawImage[THUMBNAIL_SIZES];
+            for (int j = 0; j < THUMBNAIL_SIZES; j++) {
+                int size = BenchmarkFixtures.SIZES[j];
+                library[i][j] = new RawImage(size, size * 3 / 4, PixelConfig.RGB_565, i);
+            }
+        }
+        System.out.println(copies + " of " + PHOTOS + " photos are copies");
+
+        for (final boolean deduplication : new boolean[]{false, true}) {
+            final LibraryWorkload workload = new LibraryWorkload(library, deduplication);
+            report.add(runner.run("Deduplication.put." + (deduplication ? "shared" : "plain"), workload));
+            final long logical = workload.mDiskBytes + workload.mSharedBytes;
+            System.out.println(String.format(Locale.US, "  on disk %d bytes, shared %d bytes (%.1f%% saved), %d writes skipped",
+                    workload.mDiskBytes, workload.mSharedBytes, logical == 0 ? 0 : 100.0 * workload.mSharedBytes / logical,
+                    workload.mSharedWrites));
+        }
+        report.write();
+    }
+
+    /**
+     * Puts the library into a new cache every iteration and records its disk space at the end.
+     */
+    private static class LibraryWorkload extends Workload {
+        private final RawImage[][] mLibrary;
+        private final boolean mDeduplication;
+        private TempStorageRoot mRoot;
+        private DiskCache mCache;
+        private long mDiskBytes;
+        private long mSharedBytes;
+        private long mSharedWrites;
+
+        LibraryWorkload(RawImage[][] library, boolean deduplication) {
+            mLibrary = library;
+            mDeduplication = deduplication;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            mRoot = new TempStorageRoot();
+            UnInitializedCache uninitialized = new DiskCache.Builder()
+                    .setCacheSize(CACHE_SIZE)
+                    .setJournal(new MemoryJournal())
+                    .setEncoder(new RawEncoder())
+                    .setMaintenanceEnabled(false)
+                    .setDeduplication(mDeduplication)
+                    .build(mRoot);
+            uninitialized.init();
+            mCache = uninitialized.get();
+        }
+
+        @Override
+        public void operation(int index) throws Exception {
+            for (RawImage image : mLibrary[index]) {
+                mCache.putSync(BenchmarkFixtures.fileKey(index), image, SourceFingerprint.NONE);
+            }
+        }
+
+        @Override
+        public void complete() throws Exception {
+            mCache.flush(FLUSH_TIMEOUT_MILLIS);
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            mDiskBytes = length(mRoot.getDirectory());
+            mSharedBytes = mCache.getStats().snapshot().getSharedBytes();
+            mSharedWrites = mCache.getStats().snapshot().getSharedWrites();
+            mCache.shutdown(FLUSH_TIMEOUT_MILLIS);
+            mRoot.delete();
+        }
+
+        private static long length(File file) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                return file.length();
+            }
+            long length = 0;
+            for (File child : children) {
+                length += length(child);
+            }
+            return length;
+        }
+    }
+}
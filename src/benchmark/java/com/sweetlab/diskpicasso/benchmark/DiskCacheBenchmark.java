@@ -0,0 +1,149 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * End to end benchmarks of the disk cache, including the cost of statistics on the hit path.
+ */
+public class DiskCacheBenchmark {
+    private static final int ENTRIES = 4096;
+    private static final int PUTS = 200;
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void diskCache() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("DiskCache");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setIterations(20).setOperations(500000).build();
+        TempStorageRoot root = new TempStorageRoot();
+        CacheEntry[] entries = BenchmarkFixtures.createEntries(ENTRIES, root.getDirectory());
+        BenchmarkFixtures.createFiles(entries);
+
+        DiskCache statsCache = createCache(root, entries, true);
+        DiskCache noStatsCache = createCache(root, entries, false);
+        BenchmarkResult withStats = report.add(runner.run("DiskCache.getExact.hit.stats", hitPath(statsCache, entries)));
+        BenchmarkResult withoutStats = report.add(runner.run("DiskCache.getExact.hit.nostats", hitPath(noStatsCache, entries)));
+        statsCache.shutdown(FLUSH_TIMEOUT_MILLIS);
+        noStatsCache.shutdown(FLUSH_TIMEOUT_MILLIS);
+        System.out.println(String.format(Locale.US, "statistics overhead on hit path %.2f%%", 100 * (1 - withStats.getMean() / withoutStats.getMean())));
+
+        final DiskCache cache = createCache(root, new CacheEntry[0], true);
+        final RawImage[] images = new RawImage[BenchmarkFixtures.SIZES.length];
+        for (int i = 0; i < images.length; i++) {
+            int size = BenchmarkFixtures.SIZES[i];
+            images[i] = new RawImage(size, size * 3 / 4, PixelConfig.RGB_565);
+        }
+        report.add(new BenchmarkRunner.Builder().setWarmUpIterations(2).setIterations(5).setOperations(PUTS).build().run("DiskCache.put", new Workload() {
+            private int mIteration;
+
+            @Override
+            public void setUp() {
+                mIteration++;
+            }
+
+            @Override
+            public void operation(int index) {
+                cache.put(BenchmarkFixtures.fileKey(mIteration * PUTS + index), images[index % images.length]);
+            }
+
+            @Override
+            public void complete() throws InterruptedException {
+                while (cache.getStats().snapshot().getPendingWrites() > 0) {
+                    Thread.sleep(1);
+                }
+            }
+        }));
+        System.out.println(cache.getStats().snapshot());
+        cache.shutdown(FLUSH_TIMEOUT_MILLIS);
+
+        final List<RawImage> pyramid = Arrays.asList(new RawImage(1024, 768, PixelConfig.RGB_565),
+                new RawImage(256, 192, PixelConfig.RGB_565), new RawImage(128, 96, PixelConfig.RGB_565));
+        final DiskCache pyramidCache = createCache(root, new CacheEntry[0], true);
+        report.add(new BenchmarkRunner.Builder().setWarmUpIterations(2).setIterations(5).setOperations(PUTS).build().run("DiskCache.put.pyramid", new PyramidWorkload(pyramidCache, "put") {
+            @Override
+            public void operation(int index) {
+                for (RawImage image : pyramid) {
+                    mCache.put(fileKey(index), image);
+                }
+            }
+        }));
+        report.add(new BenchmarkRunner.Builder().setWarmUpIterations(2).setIterations(5).setOperations(PUTS).build().run("DiskCache.putAll.pyramid", new PyramidWorkload(pyramidCache, "putAll") {
+            @Override
+            public void operation(int index) {
+                mCache.putAll(fileKey(index), pyramid);
+            }
+        }));
+        pyramidCache.shutdown(FLUSH_TIMEOUT_MILLIS);
+
+        report.write();
+        root.delete();
+    }
+
+    /**
+     * Writes three levels per operation, every iteration uses new file keys.
+     */
+    private abstract static class PyramidWorkload extends Workload {
+        protected final DiskCache mCache;
+        private final String mPrefix;
+        private int mIteration;
+
+        PyramidWorkload(DiskCache cache, String prefix) {
+            mCache = cache;
+            mPrefix = prefix;
+        }
+
+        @Override
+        public void setUp() {
+            mIteration++;
+        }
+
+        @Override
+        public void complete() throws InterruptedException {
+            while (mCache.getStats().snapshot().getPendingWrites() > 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        protected String fileKey(int index) {
+            return mPrefix + BenchmarkFixtures.fileKey(mIteration * PUTS + index);
+        }
+    }
+
+    private static DiskCache createCache(TempStorageRoot root, CacheEntry[] entries, boolean stats) {
+        MemoryJournal journal = new MemoryJournal();
+        for (CacheEntry entry : entries) {
+            journal.insert(entry);
+        }
+        UnInitializedCache cache = new DiskCache.Builder()
+                .setJournal(journal)
+                .setEncoder(new RawEncoder())
+                .setMaintenanceEnabled(false)
+                .setCacheSize(Integer.MAX_VALUE)
+                .setStatsEnabled(stats)
+                .build(root);
+        cache.init();
+        return cache.get();
+    }
+
+    private static Workload hitPath(final DiskCache cache, final CacheEntry[] entries) {
+        return new Workload() {
+            @Override
+            public void operation(int index) {
+                CacheEntry entry = entries[index & (ENTRIES - 1)];
+                BenchmarkRunner.consume(cache.getExact(entry.getFileKey(), entry.getWidth(), entry.getHeight(), entry.getConfig()));
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.core.Downscaler;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.testing.RawImage;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * Pyramid generation from a 12 megapixel photo, each level downscaled from the previous one
+ * like the pyramid transformation does. The downscaler with one and four threads against a
+ * naive area average unpacking every source pixel of every output pixel. One operation is one
+ * pyramid. The box output is checked against the naive one.
+ */
+public class DownscaleBenchmark {
+    private static final int SOURCE_WIDTH = 4000;
+    private static final int SOURCE_HEIGHT = 3000;
+    private static final int[] LEVELS = {1024, 256, 128};
+    private static final int[] THREADS = {1, 4};
+
+    @Test
+    public void downscale() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("Downscale");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setWarmUpIterations(3).setIterations(5).setOperations(2).build();
+        final int[] source = new RawImage(SOURCE_WIDTH, SOURCE_HEIGHT, PixelConfig.ARGB_8888).getPixels();
+
+        report.add(runner.run("Downscale.naive", new PyramidWorkload(source, null, null)));
+        for (int threads : THREADS) {
+            Downscaler downscaler = new Downscaler(threads);
+            for (Downscaler.Filter filter : Downscaler.Filter.values()) {
+                String name = "Downscale." + filter.name().toLowerCase(Locale.US) + "." + threads;
+                report.add(runner.run(name, new PyramidWorkload(source, downscaler, filter)));
+            }
+            downscaler.shutdown();
+        }
+
+        final int width = LEVELS[0];
+        final int height = LEVELS[0] * SOURCE_HEIGHT / SOURCE_WIDTH;
+        int[] naive = scaleNaive(source, SOURCE_WIDTH, SOURCE_HEIGHT, width, height);
+        int[] box = new Downscaler(1).scale(source, SOURCE_WIDTH, SOURCE_HEIGHT, width, height, Downscaler.Filter.BOX);
+        long difference = 0;
+        int largest = 0;
+        for (int i = 0; i < naive.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int channel = Math.abs(((naive[i] >>> shift) & 0xff) - ((box[i] >>> shift) & 0xff));
+                difference += channel;
+                largest = Math.max(largest, channel);
+            }
+        }
+        System.out.println(String.format(Locale.US, "box vs naive mean difference %.3f, largest %d",
+                (double) difference / (naive.length * 4), largest));
+        report.write();
+    }
+
+    /**
+     * Creates the levels of a pyramid from the source, each from the previous level.
+     */
+    private static class PyramidWorkload extends Workload {
+        private final int[] mSource;
+        private final Downscaler mDownscaler;
+        private final Downscaler.Filter mFilter;
+
+        PyramidWorkload(int[] source, Downscaler downscaler, Downscaler.Filter filter) {
+            mSource = source;
+            mDownscaler = downscaler;
+            mFilter = filter;
+        }
+
+        @Override
+        public void operation(int index) {
+            int[] previous = mSource;
+            int previousWidth = SOURCE_WIDTH;
+            int previousHeight = SOURCE_HEIGHT;
+            for (int edge : LEVELS) {
+                final int width = edge;
+                final int height = edge * SOURCE_HEIGHT / SOURCE_WIDTH;
+                previous = mDownscaler == null ? scaleNaive(previous, previousWidth, previousHeight, width, height) :
+                        mDownscaler.scale(previous, previousWidth, previousHeight, width, height, mFilter);
+                previousWidth = width;
+                previousHeight = height;
+            }
+            BenchmarkRunner.consume(previous);
+        }
+    }
+
+    /**
+     * Average of the source area of each pixel, weighting partly covered source pixels by the
+     * covered part, computed pixel by pixel.
+     */
+    private static int[] scaleNaive(int[] src, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        int[] dst = new int[dstWidth * dstHeight];
+        final double scaleX = (double) srcWidth / dstWidth;
+        final double scaleY = (double) srcHeight / dstHeight;
+        for (int y = 0; y < dstHeight; y++) {
+            final double top = y * scaleY;
+            final double bottom = top + scaleY;
+            for (int x = 0; x < dstWidth; x++) {
+                final double left = x * scaleX;
+                final double right = left + scaleX;
+                double a = 0;
+                double r = 0;
+                double g = 0;
+                double b = 0;
+                for (int sy = (int) top; sy < Math.min(srcHeight, Math.ceil(bottom)); sy++) {
+                    final double coverY = Math.min(sy + 1, bottom) - Math.max(sy, top);
+                    for (int sx = (int) left; sx < Math.min(srcWidth, Math.ceil(right)); sx++) {
+                        final double cover = coverY * (Math.min(sx + 1, right) - Math.max(sx, left));
+                        final int pixel = src[sy * srcWidth + sx];
+                        a += cover * (pixel >>> 24);
+                        r += cover * ((pixel >> 16) & 0xff);
+                        g += cover * ((pixel >> 8) & 0xff);
+                        b += cover * (pixel & 0xff);
+                    }
+                }
+                final double area = scaleX * scaleY;
+                dst[y * dstWidth + x] = (int) Math.round(a / area) << 24 | (int) Math.round(r / area) << 16 |
+                        (int) Math.round(g / area) << 8 | (int) Math.round(b / area);
+            }
+        }
+        return dst;
+    }
+}
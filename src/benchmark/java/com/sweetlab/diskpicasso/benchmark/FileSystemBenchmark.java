@@ -0,0 +1,109 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.filesystem.Durability;
+import com.sweetlab.diskpicasso.filesystem.EncodedByteCache;
+import com.sweetlab.diskpicasso.filesystem.FileSystem;
+import com.sweetlab.diskpicasso.filesystem.WriteRequest;
+import com.sweetlab.diskpicasso.stats.CacheStats;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache file write throughput and latency per durability, for thumbnails and larger images. One
+ * operation is one file, batches are synced every few files. Also reading hot thumbnails from
+ * their files compared with from the encoded byte cache.
+ */
+public class FileSystemBenchmark {
+    private static final int FILES = 200;
+    private static final int BATCH = 8;
+    private static final int BYTE_CACHE_SIZE = 4 * 1024 * 1024;
+
+    @Test
+    public void fileSystem() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("FileSystem");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setWarmUpIterations(2).setIterations(5).setOperations(FILES).build();
+        TempStorageRoot root = new TempStorageRoot();
+
+        RawImage[] images = {new RawImage(128, 96, PixelConfig.RGB_565), new RawImage(1024, 768, PixelConfig.RGB_565)};
+        for (RawImage image : images) {
+            for (Durability durability : Durability.values()) {
+                CacheStats stats = new CacheStats(true);
+                FileSystem fileSystem = new FileSystem(root, new RawEncoder(), stats, durability);
+                String name = "FileSystem.write." + image.getWidth() + "." + durability.name().toLowerCase();
+                report.add(runner.run(name, new WriteWorkload(fileSystem, image)));
+                System.out.println("  encode [" + stats.snapshot().getEncodeLatency() + "] write [" + stats.snapshot().getWriteLatency() + "] sync [" + stats.snapshot().getSyncLatency() + "]");
+            }
+        }
+
+        CacheStats stats = new CacheStats(true);
+        final EncodedByteCache byteCache = new EncodedByteCache(BYTE_CACHE_SIZE, stats);
+        FileSystem fileSystem = new FileSystem(root, new RawEncoder(), stats, Durability.NONE, byteCache);
+        final List<CacheEntry> written = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            written.add(fileSystem.write(new WriteRequest(BenchmarkFixtures.fileKey(i), images[0])));
+        }
+        final byte[] buffer = new byte[64 * 1024];
+        BenchmarkRunner readRunner = new BenchmarkRunner.Builder().setOperations(10000).build();
+        report.add(readRunner.run("FileSystem.read.128.file", new Workload() {
+            @Override
+            public void operation(int index) throws Exception {
+                FileInputStream in = new FileInputStream(written.get(index % FILES).getFile());
+                try {
+                    int length = 0;
+                    int read;
+                    while ((read = in.read(buffer, length, buffer.length - length)) > 0) {
+                        length += read;
+                    }
+                    BenchmarkRunner.consume(length);
+                } finally {
+                    in.close();
+                }
+            }
+        }));
+        report.add(readRunner.run("FileSystem.read.128.byteCache", new Workload() {
+            @Override
+            public void operation(int index) {
+                BenchmarkRunner.consume(byteCache.get(written.get(index % FILES).getPrimaryKey(), buffer));
+            }
+        }));
+        System.out.println(stats.snapshot());
+
+        report.write();
+        root.delete();
+    }
+
+    private static class WriteWorkload extends Workload {
+        private final FileSystem mFileSystem;
+        private final RawImage mImage;
+        private final List<CacheEntry> mBatch = new ArrayList<>(BATCH);
+
+        WriteWorkload(FileSystem fileSystem, RawImage image) {
+            mFileSystem = fileSystem;
+            mImage = image;
+        }
+
+        @Override
+        public void operation(int index) throws Exception {
+            mBatch.add(mFileSystem.write(new WriteRequest(BenchmarkFixtures.fileKey(index), mImage)));
+            if (mBatch.size() == BATCH) {
+                mFileSystem.sync(mBatch);
+                mBatch.clear();
+            }
+        }
+
+        @Override
+        public void complete() throws Exception {
+            mFileSystem.sync(mBatch);
+            mBatch.clear();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.peter100.home.pablopicasso.BuildConfig;
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.journal.Journal;
+import com.sweetlab.diskpicasso.journal.sql.SqlJournal;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks of the journal implementations. The realm journal needs the realm native
+ * library and can only be measured on a device. LegacySqlJournal is the sql journal before it
+ * kept its connection open and is measured as baseline.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class JournalBenchmark {
+    private static final int ENTRIES = 1000;
+
+    @Test
+    public void journals() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("Journal");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setWarmUpIterations(2).setIterations(5).setOperations(ENTRIES).build();
+        CacheEntry[] entries = BenchmarkFixtures.createEntries(ENTRIES);
+
+        measure(report, runner, "MemoryJournal", new MemoryJournal(), entries);
+        measure(report, runner, "LegacySqlJournal", new LegacySqlJournal(RuntimeEnvironment.application), entries);
+        measure(report, runner, "SqlJournal", SqlJournal.getInstance(RuntimeEnvironment.application), entries);
+
+        report.write();
+    }
+
+    private static void measure(BenchmarkReport report, BenchmarkRunner runner, String name, final Journal journal, final CacheEntry[] entries) throws Exception {
+        final List<CacheEntry> entryList = Arrays.asList(entries);
+        final BenchmarkRunner bulkRunner = new BenchmarkRunner.Builder().setWarmUpIterations(2).setIterations(5).setOperations(1).build();
+
+        report.add(runner.run(name + ".insert", new Workload() {
+            @Override
+            public void operation(int index) {
+                journal.insert(entries[index]);
+            }
+
+            @Override
+            public void tearDown() {
+                for (CacheEntry entry : entries) {
+                    journal.remove(entry);
+                }
+            }
+        }));
+
+        for (CacheEntry entry : entries) {
+            journal.insert(entry);
+        }
+
+        report.add(runner.run(name + ".exists", new Workload() {
+            @Override
+            public void operation(int index) {
+                BenchmarkRunner.consume(journal.exists(entries[index].getPrimaryKey()));
+            }
+        }));
+
+        report.add(bulkRunner.run(name + ".retrieveAll." + entries.length, new Workload() {
+            @Override
+            public void operation(int index) {
+                BenchmarkRunner.consume(journal.retrieveAll());
+            }
+        }));
+
+        report.add(runner.run(name + ".remove", new Workload() {
+            @Override
+            public void operation(int index) {
+                journal.remove(entries[index]);
+            }
+
+            @Override
+            public void tearDown() {
+                for (CacheEntry entry : entries) {
+                    journal.insert(entry);
+                }
+            }
+        }));
+
+        for (CacheEntry entry : entries) {
+            journal.remove(entry);
+        }
+
+        report.add(bulkRunner.run(name + ".insertAll." + entries.length, new Workload() {
+            @Override
+            public void operation(int index) {
+                journal.insertAll(entryList);
+            }
+
+            @Override
+            public void tearDown() {
+                journal.removeAll(entryList);
+            }
+        }));
+
+        journal.insertAll(entryList);
+
+        report.add(bulkRunner.run(name + ".removeAll." + entries.length, new Workload() {
+            @Override
+            public void operation(int index) {
+                journal.removeAll(entryList);
+            }
+
+            @Override
+            public void tearDown() {
+                journal.insertAll(entryList);
+            }
+        }));
+
+        journal.removeAll(entryList);
+    }
+}
@@ -0,0 +1,92 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.storage.MemoryCache;
+
+import org.junit.Test;
+
+/**
+ * Benchmarks of the memory cache index.
+ */
+public class MemoryCacheBenchmark {
+    private static final int ENTRIES = 4096;
+
+    @Test
+    public void memoryCache() throws Exception {
+        final BenchmarkReport report = new BenchmarkReport("MemoryCache");
+        final BenchmarkRunner runner = new BenchmarkRunner.Builder().build();
+        final BenchmarkRunner fillRunner = new BenchmarkRunner.Builder().setOperations(ENTRIES).build();
+        final CacheEntry[] entries = BenchmarkFixtures.createEntries(ENTRIES);
+
+        final MemoryCache filled = new MemoryCache(Integer.MAX_VALUE, BenchmarkFixtures.NO_EVICTION);
+        filled.init(entries);
+
+        report.add(runner.run("MemoryCache.getExact.hit", new Workload() {
+            @Override
+            public void operation(int index) {
+                CacheEntry entry = entries[index & (ENTRIES - 1)];
+                BenchmarkRunner.consume(filled.getExact(entry.getFileKey(), entry.getWidth(), entry.getHeight(), entry.getConfig()));
+            }
+        }));
+
+        report.add(runner.run("MemoryCache.getExact.miss", new Workload() {
+            @Override
+            public void operation(int index) {
+                CacheEntry entry = entries[index & (ENTRIES - 1)];
+                BenchmarkRunner.consume(filled.getExact(entry.getFileKey(), entry.getWidth() + 1, entry.getHeight(), entry.getConfig()));
+            }
+        }));
+
+        report.add(runner.run("MemoryCache.get", new Workload() {
+            @Override
+            public void operation(int index) {
+                BenchmarkRunner.consume(filled.get(entries[index & (ENTRIES - 1)].getFileKey()));
+            }
+        }));
+
+        report.add(fillRunner.run("MemoryCache.put", new Workload() {
+            private MemoryCache mCache;
+
+            @Override
+            public void setUp() {
+                mCache = new MemoryCache(Integer.MAX_VALUE, BenchmarkFixtures.NO_EVICTION);
+            }
+
+            @Override
+            public void operation(int index) {
+                mCache.put(entries[index]);
+            }
+        }));
+
+        report.add(fillRunner.run("MemoryCache.put.evicting", new Workload() {
+            private MemoryCache mCache;
+
+            @Override
+            public void setUp() {
+                mCache = new MemoryCache(entries[0].getByteSize() * 64, BenchmarkFixtures.NO_EVICTION);
+            }
+
+            @Override
+            public void operation(int index) {
+                mCache.put(entries[index]);
+            }
+        }));
+
+        report.add(fillRunner.run("MemoryCache.remove", new Workload() {
+            private MemoryCache mCache;
+
+            @Override
+            public void setUp() {
+                mCache = new MemoryCache(Integer.MAX_VALUE, BenchmarkFixtures.NO_EVICTION);
+                mCache.init(entries);
+            }
+
+            @Override
+            public void operation(int index) {
+                mCache.remove(entries[index]);
+            }
+        }));
+
+        report.write();
+    }
+}
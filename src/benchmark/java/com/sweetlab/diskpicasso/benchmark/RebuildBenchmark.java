@@ -0,0 +1,153 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.core.BoundsReader;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.filesystem.FileFooter;
+import com.sweetlab.diskpicasso.filesystem.FileSystem;
+import com.sweetlab.diskpicasso.filesystem.WriteRequest;
+import com.sweetlab.diskpicasso.stats.CacheStats;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+import com.sweetlab.diskpicasso.storage.IndexRebuilder;
+import com.sweetlab.diskpicasso.storage.RebuildReport;
+import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rebuild of the index from a cache directory of 50k files, the recovery alone with one to four
+ * threads and the whole warm up of a cache with an empty journal. Files are recovered from their
+ * footer, then with the footers stripped like files of earlier versions, from their size at the
+ * start like an image header, read the way inJustDecodeBounds reads a jpeg header.
+ */
+public class RebuildBenchmark {
+    private static final int FILES = 50000;
+    private static final int ITERATIONS = 3;
+    private static final int[] THREADS = {1, 2, 4};
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void rebuild() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("Rebuild");
+        TempStorageRoot root = new TempStorageRoot();
+        FileSystem fileSystem = new FileSystem(root, new HeaderEncoder(), new CacheStats(false));
+        for (int i = 0; i < FILES; i++) {
+            int size = BenchmarkFixtures.SIZES[i % 2] / 4;
+            fileSystem.write(new WriteRequest(BenchmarkFixtures.fileKey(i / 2), new RawImage(size, size * 3 / 4, PixelConfig.RGB_565, i)));
+        }
+        List<File> files = fileSystem.scan().getFiles();
+        System.out.println(files.size() + " cache files");
+
+        recover(report, "footer", fileSystem, null, files);
+
+        double[] filesPerSecond = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            UnInitializedCache uninitialized = new DiskCache.Builder()
+                    .setJournal(new MemoryJournal())
+                    .setEncoder(new HeaderEncoder())
+                    .setMaintenanceEnabled(false)
+                    .setCacheSize(Integer.MAX_VALUE)
+                    .build(root);
+            uninitialized.init();
+            DiskCache cache = uninitialized.get();
+            RebuildReport rebuild = cache.getRebuildReport();
+            System.out.println("  " + rebuild);
+            filesPerSecond[i] = rebuild.getFilesPerSecond();
+            cache.shutdown(FLUSH_TIMEOUT_MILLIS);
+            deleteSnapshot(root);
+        }
+        print(report.add(new BenchmarkResult("DiskCache.init.rebuild", FILES, filesPerSecond, 0, 0)));
+
+        for (File file : files) {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.setLength(out.length() - FileFooter.BYTES);
+            } finally {
+                out.close();
+            }
+        }
+        recover(report, "header", fileSystem, new HeaderBoundsReader(), files);
+
+        report.write();
+        root.delete();
+    }
+
+    /**
+     * Recover all files with each number of threads.
+     */
+    private static void recover(BenchmarkReport report, String name, FileSystem fileSystem, BoundsReader reader,
+                                List<File> files) {
+        for (int threads : THREADS) {
+            IndexRebuilder rebuilder = new IndexRebuilder(fileSystem, reader, threads);
+            double[] filesPerSecond = new double[ITERATIONS];
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                int recovered = rebuilder.recover(files).size();
+                filesPerSecond[i] = files.size() * 1e9 / (System.nanoTime() - start);
+                if (recovered != FILES) {
+                    throw new IllegalStateException("Recovered " + recovered + " of " + FILES);
+                }
+            }
+            print(report.add(new BenchmarkResult("IndexRebuilder.recover." + name + "." + threads, FILES, filesPerSecond, 0, 0)));
+        }
+    }
+
+    private static void print(BenchmarkResult result) {
+        System.out.println(String.format(Locale.US, "%s %.0f files/s (+-%.0f)", result.getName(), result.getMean(), result.getStdDev()));
+    }
+
+    /**
+     * Delete the snapshot written at shutdown, so the next warm up rebuilds.
+     */
+    private static void deleteSnapshot(TempStorageRoot root) {
+        new File(root.getDirectory(), ".shared" + File.separator + "index").delete();
+    }
+
+    /**
+     * Raw encoder writing the size first.
+     */
+    private static class HeaderEncoder extends RawEncoder {
+        @Override
+        public void encode(EncodableImage image, OutputStream out) throws IOException {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(image.getWidth());
+            header.writeInt(image.getHeight());
+            super.encode(image, out);
+        }
+    }
+
+    /**
+     * Reads the size written by the header encoder.
+     */
+    private static class HeaderBoundsReader implements BoundsReader {
+        @Override
+        public boolean readBounds(File file, int[] size) {
+            try {
+                DataInputStream in = new DataInputStream(new FileInputStream(file));
+                try {
+                    size[0] = in.readInt();
+                    size[1] = in.readInt();
+                    return true;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays one generated trace against a few cache configurations, see {@link ReplayTool} for
+ * other traces and configurations.
+ */
+public class ReplayBenchmark {
+    private static final int OPERATIONS = 20000;
+    private static final int SOURCES = 2000;
+    private static final long SMALL_CACHE = 16 * 1024 * 1024;
+    private static final long LARGE_CACHE = 64 * 1024 * 1024;
+    private static final long SQL_COMMIT_MICROS = 200;
+
+    @Test
+    public void replay() throws Exception {
+        AccessTrace trace = new TraceGenerator.Builder().setOperations(OPERATIONS).setSources(SOURCES).build().generate();
+        ReplayTool[] tools = {
+                new ReplayTool.Builder().setTarget(ReplayTool.Target.MEMORY).setCacheSize(SMALL_CACHE).build(),
+                new ReplayTool.Builder().setTarget(ReplayTool.Target.MEMORY).setCacheSize(LARGE_CACHE).build(),
+                new ReplayTool.Builder().setCacheSize(SMALL_CACHE).build(),
+                new ReplayTool.Builder().setCacheSize(SMALL_CACHE).setJournalLatency(SQL_COMMIT_MICROS).setThreads(4).build()};
+
+        List<ReplayReport> reports = new ArrayList<>(tools.length);
+        for (ReplayTool tool : tools) {
+            ReplayReport report = tool.run(trace);
+            System.out.println(report);
+            reports.add(report);
+        }
+        ReplayTool.write("Replay", reports);
+    }
+}
@@ -0,0 +1,151 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.stats.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * Outcome of replaying an access trace.
+ */
+public class ReplayReport {
+    private final String mName;
+    private final long mLookups;
+    private final long mHits;
+    private final long mFilesWritten;
+    private final long mBytesWritten;
+    private final long mUniqueBytes;
+    private final long mEvictions;
+    private final long mJournalRows;
+    private final long mJournalCalls;
+    private final long mElapsedNanos;
+    private final LatencyHistogram.Snapshot mLookupLatency;
+    private final LatencyHistogram.Snapshot mPutLatency;
+
+    /**
+     * Constructor.
+     *
+     * @param name          Name of the replay configuration.
+     * @param lookups       Number of lookups.
+     * @param hits          Number of lookups that hit.
+     * @param filesWritten  Number of images encoded and written.
+     * @param bytesWritten  Bytes of all images written.
+     * @param uniqueBytes   Bytes of all distinct variants put, the least a cache could write.
+     * @param evictions     Number of entries evicted.
+     * @param journalRows   Journal rows inserted and removed.
+     * @param journalCalls  Journal calls inserting or removing, one per transaction.
+     * @param elapsedNanos  Wall time of the replay.
+     * @param lookupLatency Latency of the lookups.
+     * @param putLatency    Latency of the puts that wrote.
+     */
+    public ReplayReport(String name, long lookups, long hits, long filesWritten, long bytesWritten, long uniqueBytes,
+                        long evictions, long journalRows, long journalCalls, long elapsedNanos,
+                        LatencyHistogram.Snapshot lookupLatency, LatencyHistogram.Snapshot putLatency) {
+        mName = name;
+        mLookups = lookups;
+        mHits = hits;
+        mFilesWritten = filesWritten;
+        mBytesWritten = bytesWritten;
+        mUniqueBytes = uniqueBytes;
+        mEvictions = evictions;
+        mJournalRows = journalRows;
+        mJournalCalls = journalCalls;
+        mElapsedNanos = elapsedNanos;
+        mLookupLatency = lookupLatency;
+        mPutLatency = putLatency;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long getLookups() {
+        return mLookups;
+    }
+
+    public long getHits() {
+        return mHits;
+    }
+
+    public long getFilesWritten() {
+        return mFilesWritten;
+    }
+
+    public long getEvictions() {
+        return mEvictions;
+    }
+
+    public LatencyHistogram.Snapshot getLookupLatency() {
+        return mLookupLatency;
+    }
+
+    public LatencyHistogram.Snapshot getPutLatency() {
+        return mPutLatency;
+    }
+
+    /**
+     * Get the part of the lookups that hit.
+     *
+     * @return Ratio between 0 and 1, 0 if no lookups.
+     */
+    public double getHitRatio() {
+        return mLookups == 0 ? 0 : (double) mHits / mLookups;
+    }
+
+    /**
+     * Get the bytes written per byte of distinct variants. 1 means every variant was written
+     * once, more means variants were evicted and written again or written twice by duplicate
+     * puts.
+     *
+     * @return Write amplification, 0 if nothing was put.
+     */
+    public double getWriteAmplification() {
+        return mUniqueBytes == 0 ? 0 : (double) mBytesWritten / mUniqueBytes;
+    }
+
+    /**
+     * Get the journal rows inserted and removed per second of replay.
+     *
+     * @return Rows per second.
+     */
+    public double getJournalOpsPerSecond() {
+        return mElapsedNanos == 0 ? 0 : mJournalRows * 1e9 / mElapsedNanos;
+    }
+
+    /**
+     * Serialize to a JSON object.
+     *
+     * @return JSON text.
+     */
+    public String toJson() {
+        return "{\"name\":\"" + mName + "\"" +
+                ",\"lookups\":" + mLookups +
+                ",\"hits\":" + mHits +
+                ",\"hitRatio\":" + format(getHitRatio()) +
+                ",\"lookupP50Nanos\":" + mLookupLatency.getPercentileNanos(50) +
+                ",\"lookupP99Nanos\":" + mLookupLatency.getPercentileNanos(99) +
+                ",\"putP50Nanos\":" + mPutLatency.getPercentileNanos(50) +
+                ",\"putP99Nanos\":" + mPutLatency.getPercentileNanos(99) +
+                ",\"filesWritten\":" + mFilesWritten +
+                ",\"bytesWritten\":" + mBytesWritten +
+                ",\"writeAmplification\":" + format(getWriteAmplification()) +
+                ",\"evictions\":" + mEvictions +
+                ",\"journalRows\":" + mJournalRows +
+                ",\"journalCalls\":" + mJournalCalls +
+                ",\"journalOpsPerSecond\":" + format(getJournalOpsPerSecond()) +
+                ",\"elapsedMillis\":" + mElapsedNanos / 1000000 + "}";
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%-32s hit %6.2f%% lookup p50 %7dns p99 %9dns put p50 %7dus p99 %7dus " +
+                        "written %d (amplification %.2f) evictions %d journal %d rows in %d calls %.1f rows/s %dms",
+                mName, getHitRatio() * 100, mLookupLatency.getPercentileNanos(50), mLookupLatency.getPercentileNanos(99),
+                mPutLatency.getPercentileNanos(50) / 1000, mPutLatency.getPercentileNanos(99) / 1000, mFilesWritten,
+                getWriteAmplification(), mEvictions, mJournalRows, mJournalCalls, getJournalOpsPerSecond(),
+                mElapsedNanos / 1000000);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.4f", value);
+    }
+}
@@ -0,0 +1,678 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageEncoder;
+import com.sweetlab.diskpicasso.journal.Journal;
+import com.sweetlab.diskpicasso.stats.LatencyHistogram;
+import com.sweetlab.diskpicasso.stats.StatsSnapshot;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+import com.sweetlab.diskpicasso.storage.EvictionListener;
+import com.sweetlab.diskpicasso.storage.MemoryCache;
+import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays an access trace against a disk cache in a temporary directory, or against the
+ * memory cache alone, and reports hit ratio, lookup and put latency, write amplification and
+ * journal operations. The journal is an in memory stand-in that can be slowed down to model a
+ * persistent journal. With several threads the trace is split by file key, so each source is
+ * accessed in trace order. Use the Builder to configure, see Builder for default values.
+ * <p/>
+ * Run from the command line to generate or read a trace and replay it once per combination of
+ * the comma separated options, results are printed and written to Replay.json in the
+ * benchmark output directory:
+ * <pre>
+ * ReplayTool [--trace file | --ops n --sources n --skew x --seed n] [--save file]
+ *            [--target disk,memory] [--size bytes,...] [--threads n,...]
+ *            [--journal-latency-us n,...] [--byte-cache bytes] [--async] [--maintenance]
+ *            [--speed x]
+ * </pre>
+ * Sizes take a k, m or g suffix. Speed 1 replays in real time by the trace timestamps, 0 as
+ * fast as possible.
+ */
+public class ReplayTool {
+    /**
+     * Time to wait for asynchronous puts when the replay is done.
+     */
+    private static final long FLUSH_TIMEOUT_MILLIS = 60000;
+
+    private final String mName;
+    private final Target mTarget;
+    private final long mCacheSize;
+    private final int mThreads;
+    private final long mJournalLatencyNanos;
+    private final int mByteCacheSize;
+    private final boolean mAsyncPuts;
+    private final boolean mMaintenance;
+    private final double mSpeed;
+
+    /**
+     * What a trace is replayed against.
+     */
+    public enum Target {
+        /**
+         * Disk cache writing files and journal.
+         */
+        DISK,
+
+        /**
+         * Memory cache alone, entries are sized like the encoded images but nothing is
+         * written. Fast, for comparing hit ratios.
+         */
+        MEMORY
+    }
+
+    /**
+     * Default disk target with a 64 MByte cache, one thread, synchronous puts, no journal
+     * latency, no byte cache, no maintenance and replay as fast as possible.
+     */
+    public static class Builder {
+        private String mName;
+        private Target mTarget;
+        private long mCacheSize;
+        private int mThreads;
+        private long mJournalLatencyNanos;
+        private int mByteCacheSize;
+        private boolean mAsyncPuts;
+        private boolean mMaintenance;
+        private double mSpeed;
+
+        public Builder() {
+            mTarget = Target.DISK;
+            mCacheSize = 64 * 1024 * 1024;
+            mThreads = 1;
+        }
+
+        public Builder setName(String name) {
+            mName = name;
+            return this;
+        }
+
+        public Builder setTarget(Target target) {
+            mTarget = target;
+            return this;
+        }
+
+        public Builder setCacheSize(long bytes) {
+            mCacheSize = bytes;
+            return this;
+        }
+
+        public Builder setThreads(int threads) {
+            mThreads = threads;
+            return this;
+        }
+
+        /**
+         * Slow down every journal call inserting or removing, like a transaction commit of a
+         * persistent journal.
+         *
+         * @param micros Latency per call in microseconds.
+         * @return The builder.
+         */
+        public Builder setJournalLatency(long micros) {
+            mJournalLatencyNanos = micros * 1000;
+            return this;
+        }
+
+        public Builder setByteCacheSize(int bytes) {
+            mByteCacheSize = bytes;
+            return this;
+        }
+
+        /**
+         * Put through the write executor like the app does instead of on the replay thread.
+         * Replay at a speed above 0, as fast as possible the lookups run far ahead of the puts.
+         *
+         * @param async True for asynchronous puts.
+         * @return The builder.
+         */
+        public Builder setAsyncPuts(boolean async) {
+            mAsyncPuts = async;
+            return this;
+        }
+
+        public Builder setMaintenance(boolean maintenance) {
+            mMaintenance = maintenance;
+            return this;
+        }
+
+        public Builder setSpeed(double speed) {
+            mSpeed = speed;
+            return this;
+        }
+
+        public ReplayTool build() {
+            if (mName == null) {
+                mName = mTarget.name().toLowerCase(Locale.US) + " " + (mCacheSize >> 20) + "m " + mThreads + "t" +
+                        (mJournalLatencyNanos > 0 ? " " + mJournalLatencyNanos / 1000 + "us" : "") + (mAsyncPuts ? " async" : "");
+            }
+            return new ReplayTool(this);
+        }
+    }
+
+    private ReplayTool(Builder builder) {
+        mName = builder.mName;
+        mTarget = builder.mTarget;
+        mCacheSize = builder.mCacheSize;
+        mThreads = builder.mThreads;
+        mJournalLatencyNanos = builder.mJournalLatencyNanos;
+        mByteCacheSize = builder.mByteCacheSize;
+        mAsyncPuts = builder.mAsyncPuts;
+        mMaintenance = builder.mMaintenance;
+        mSpeed = builder.mSpeed;
+    }
+
+    /**
+     * Replay a trace on a new, empty cache.
+     *
+     * @param trace The trace.
+     * @return The report.
+     * @throws Exception If the cache could not be created or a thread failed.
+     */
+    public ReplayReport run(AccessTrace trace) throws Exception {
+        final TempStorageRoot root = new TempStorageRoot();
+        final Replay replay = mTarget == Target.DISK ? new DiskReplay(root) : new MemoryReplay(root);
+        try {
+            List<List<AccessTrace.Record>> partitions = new ArrayList<>(mThreads);
+            for (int i = 0; i < mThreads; i++) {
+                partitions.add(new ArrayList<AccessTrace.Record>());
+            }
+            for (AccessTrace.Record record : trace.getRecords()) {
+                partitions.get((record.getFileKey().hashCode() & Integer.MAX_VALUE) % mThreads).add(record);
+            }
+
+            final long start = System.nanoTime();
+            List<ReplayThread> threads = new ArrayList<>(mThreads);
+            for (List<AccessTrace.Record> partition : partitions) {
+                ReplayThread thread = new ReplayThread(replay, partition, start);
+                threads.add(thread);
+                thread.start();
+            }
+            for (ReplayThread thread : threads) {
+                thread.join();
+                if (thread.mFailure != null) {
+                    throw thread.mFailure;
+                }
+            }
+            replay.flush();
+            return replay.report(System.nanoTime() - start);
+        } finally {
+            replay.close();
+            root.delete();
+        }
+    }
+
+    /**
+     * Command line entry, see the class documentation.
+     *
+     * @param args The arguments.
+     * @throws Exception If fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            final boolean flag = i + 1 == args.length || args[i + 1].startsWith("--");
+            options.put(args[i].substring(2), flag ? "true" : args[++i]);
+        }
+
+        AccessTrace trace;
+        if (options.containsKey("trace")) {
+            trace = AccessTrace.read(new File(options.get("trace")));
+        } else {
+            TraceGenerator.Builder generator = new TraceGenerator.Builder();
+            if (options.containsKey("ops")) {
+                generator.setOperations(Integer.parseInt(options.get("ops")));
+            }
+            if (options.containsKey("sources")) {
+                generator.setSources(Integer.parseInt(options.get("sources")));
+            }
+            if (options.containsKey("skew")) {
+                generator.setSkew(Double.parseDouble(options.get("skew")));
+            }
+            if (options.containsKey("seed")) {
+                generator.setSeed(Long.parseLong(options.get("seed")));
+            }
+            trace = generator.build().generate();
+        }
+        if (options.containsKey("save")) {
+            trace.write(new File(options.get("save")));
+        }
+
+        List<ReplayReport> reports = new ArrayList<>();
+        for (String target : list(options, "target", "disk")) {
+            for (String size : list(options, "size", "64m")) {
+                for (String threads : list(options, "threads", "1")) {
+                    for (String latency : list(options, "journal-latency-us", "0")) {
+                        ReplayTool tool = new ReplayTool.Builder()
+                                .setTarget(Target.valueOf(target.toUpperCase(Locale.US)))
+                                .setCacheSize(parseBytes(size))
+                                .setThreads(Integer.parseInt(threads))
+                                .setJournalLatency(Long.parseLong(latency))
+                                .setByteCacheSize((int) parseBytes(options.containsKey("byte-cache") ? options.get("byte-cache") : "0"))
+                                .setAsyncPuts(options.containsKey("async"))
+                                .setMaintenance(options.containsKey("maintenance"))
+                                .setSpeed(options.containsKey("speed") ? Double.parseDouble(options.get("speed")) : 0)
+                                .build();
+                        ReplayReport report = tool.run(trace);
+                        System.out.println(report);
+                        reports.add(report);
+                    }
+                }
+            }
+        }
+        System.out.println("Wrote " + write("Replay", reports));
+    }
+
+    /**
+     * Write reports as JSON to [output dir]/[suite].json.
+     *
+     * @param suite   Suite name, used as file name.
+     * @param reports The reports.
+     * @return The written file.
+     * @throws IOException If fails.
+     */
+    public static File write(String suite, List<ReplayReport> reports) throws IOException {
+        File file = new File(BenchmarkReport.outputDirectory(), suite + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("{\"suite\":\"" + suite + "\",\"timestamp\":" + System.currentTimeMillis() + ",\"results\":[\n");
+            for (int i = 0; i < reports.size(); i++) {
+                writer.write(reports.get(i).toJson());
+                writer.write(i < reports.size() - 1 ? ",\n" : "\n");
+            }
+            writer.write("]}\n");
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static String[] list(Map<String, String> options, String key, String fallback) {
+        return (options.containsKey(key) ? options.get(key) : fallback).split(",");
+    }
+
+    private static long parseBytes(String text) {
+        final char unit = Character.toLowerCase(text.charAt(text.length() - 1));
+        final int shift = unit == 'k' ? 10 : unit == 'm' ? 20 : unit == 'g' ? 30 : 0;
+        return Long.parseLong(shift == 0 ? text : text.substring(0, text.length() - 1)) << shift;
+    }
+
+    /**
+     * Replays one partition of the trace.
+     */
+    private class ReplayThread extends Thread {
+        private final Replay mReplay;
+        private final List<AccessTrace.Record> mRecords;
+        private final long mStartNanos;
+        private Exception mFailure;
+
+        private ReplayThread(Replay replay, List<AccessTrace.Record> records, long startNanos) {
+            super("Replay");
+            mReplay = replay;
+            mRecords = records;
+            mStartNanos = startNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (AccessTrace.Record record : mRecords) {
+                    if (mSpeed > 0) {
+                        final long due = mStartNanos + (long) (record.getTimeMillis() * 1e6 / mSpeed);
+                        for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    switch (record.getOp()) {
+                        case AccessTrace.LOOKUP:
+                            if (!mReplay.lookup(record)) {
+                                mReplay.put(record);
+                            }
+                            break;
+                        case AccessTrace.PUT:
+                            mReplay.put(record);
+                            break;
+                        case AccessTrace.INVALIDATE:
+                            mReplay.invalidate(record.getFileKey());
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown op " + record.getOp());
+                    }
+                }
+            } catch (Exception e) {
+                mFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Replay state shared by all threads, counts lookups and distinct variants. Images are
+     * created once per size.
+     */
+    private abstract class Replay {
+        private final Map<String, Boolean> mVariants = new ConcurrentHashMap<>();
+        private final Map<Long, RawImage> mImages = new ConcurrentHashMap<>();
+        private final AtomicLong mUniqueBytes = new AtomicLong();
+        private final AtomicLong mLookups = new AtomicLong();
+        private final AtomicLong mHits = new AtomicLong();
+        protected final LatencyHistogram mLookupLatency = new LatencyHistogram();
+
+        /**
+         * Look up a record, timed.
+         *
+         * @param record The record.
+         * @return True if hit.
+         */
+        boolean lookup(AccessTrace.Record record) {
+            final long start = System.nanoTime();
+            final boolean hit = contains(record);
+            mLookupLatency.record(System.nanoTime() - start);
+            mLookups.incrementAndGet();
+            if (hit) {
+                mHits.incrementAndGet();
+            }
+            return hit;
+        }
+
+        /**
+         * Put a record.
+         *
+         * @param record The record.
+         * @throws IOException If fails.
+         */
+        void put(AccessTrace.Record record) throws IOException {
+            final RawImage image = image(record);
+            final String variant = record.getFileKey() + ' ' + record.getWidth() + ' ' + record.getHeight() + ' ' + record.getConfig();
+            if (mVariants.put(variant, Boolean.TRUE) == null) {
+                mUniqueBytes.addAndGet(encodedLength(image));
+            }
+            write(record, image);
+        }
+
+        ReplayReport report(long elapsedNanos) {
+            return report(mLookups.get(), mHits.get(), mUniqueBytes.get(), elapsedNanos);
+        }
+
+        private RawImage image(AccessTrace.Record record) {
+            final long key = (long) record.getWidth() << 32 | record.getHeight() << 4 | record.getConfig().ordinal();
+            RawImage image = mImages.get(key);
+            if (image == null) {
+                image = new RawImage(record.getWidth(), record.getHeight(), record.getConfig());
+                mImages.put(key, image);
+            }
+            return image;
+        }
+
+        protected abstract boolean contains(AccessTrace.Record record);
+
+        protected abstract void write(AccessTrace.Record record, RawImage image) throws IOException;
+
+        protected abstract void invalidate(String fileKey);
+
+        protected abstract void flush() throws InterruptedException;
+
+        protected abstract ReplayReport report(long lookups, long hits, long uniqueBytes, long elapsedNanos);
+
+        protected abstract void close() throws InterruptedException;
+    }
+
+    /**
+     * Replay against a disk cache.
+     */
+    private class DiskReplay extends Replay {
+        private final CountingEncoder mEncoder = new CountingEncoder();
+        private final CountingJournal mJournal = new CountingJournal(new MemoryJournal(), mJournalLatencyNanos);
+        private final DiskCache mCache;
+
+        private DiskReplay(TempStorageRoot root) {
+            UnInitializedCache uninitialized = new DiskCache.Builder()
+                    .setJournal(mJournal)
+                    .setEncoder(mEncoder)
+                    .setCacheSize(mCacheSize)
+                    .setReservedBytes(0)
+                    .setByteCacheSize(mByteCacheSize)
+                    .setMaintenanceEnabled(mMaintenance)
+                    .setReconcileInterval(0)
+                    .build(root);
+            uninitialized.init();
+            mCache = uninitialized.get();
+        }
+
+        @Override
+        protected boolean contains(AccessTrace.Record record) {
+            return mCache.getExact(record.getFileKey(), record.getWidth(), record.getHeight(), record.getConfig()) != null;
+        }
+
+        @Override
+        protected void write(AccessTrace.Record record, RawImage image) throws IOException {
+            if (mAsyncPuts) {
+                mCache.put(record.getFileKey(), image);
+            } else {
+                mCache.putSync(record.getFileKey(), image, SourceFingerprint.NONE);
+            }
+        }
+
+        @Override
+        protected void invalidate(String fileKey) {
+            mCache.invalidate(fileKey);
+        }
+
+        @Override
+        protected void flush() throws InterruptedException {
+            mCache.flush(FLUSH_TIMEOUT_MILLIS);
+        }
+
+        @Override
+        protected ReplayReport report(long lookups, long hits, long uniqueBytes, long elapsedNanos) {
+            StatsSnapshot stats = mCache.getStats().snapshot();
+            return new ReplayReport(mName, lookups, hits, mEncoder.mFiles.get(), mEncoder.mBytes.get(), uniqueBytes,
+                    stats.getEvictions(), mJournal.mRows.get(), mJournal.mCalls.get(), elapsedNanos,
+                    mLookupLatency.snapshot(), stats.getPutLatency());
+        }
+
+        @Override
+        protected void close() throws InterruptedException {
+            mCache.shutdown(FLUSH_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * Replay against the memory cache alone, entries are sized like the encoded images.
+     */
+    private class MemoryReplay extends Replay implements EvictionListener {
+        private final MemoryCache mCache;
+        private final File mDirectory;
+        private final LatencyHistogram mPutLatency = new LatencyHistogram();
+        private final AtomicLong mFiles = new AtomicLong();
+        private final AtomicLong mBytes = new AtomicLong();
+        private final AtomicLong mEvictions = new AtomicLong();
+
+        private MemoryReplay(TempStorageRoot root) {
+            mCache = new MemoryCache(mCacheSize, root.getBlockSize(), this);
+            mDirectory = root.getDirectory();
+        }
+
+        @Override
+        protected boolean contains(AccessTrace.Record record) {
+            return mCache.getExactEntry(record.getFileKey(), record.getWidth(), record.getHeight(), record.getConfig()) != null;
+        }
+
+        @Override
+        protected void write(AccessTrace.Record record, RawImage image) {
+            if (contains(record)) {
+                return;
+            }
+            final long start = System.nanoTime();
+            final int length = encodedLength(image);
+            final long primaryKey = CacheEntry.calcPrimaryKey(record.getFileKey(), record.getWidth(), record.getHeight(), record.getConfig());
+            mCache.put(new CacheEntry(record.getFileKey(), new File(mDirectory, Long.toString(primaryKey)),
+                    record.getWidth(), record.getHeight(), record.getConfig(), length));
+            mPutLatency.record(System.nanoTime() - start);
+            mFiles.incrementAndGet();
+            mBytes.addAndGet(length);
+        }
+
+        @Override
+        protected void invalidate(String fileKey) {
+            for (CacheEntry entry : mCache.getEntries(fileKey)) {
+                mCache.remove(entry);
+            }
+        }
+
+        @Override
+        protected void flush() {
+        }
+
+        @Override
+        protected ReplayReport report(long lookups, long hits, long uniqueBytes, long elapsedNanos) {
+            return new ReplayReport(mName, lookups, hits, mFiles.get(), mBytes.get(), uniqueBytes, mEvictions.get(),
+                    0, 0, elapsedNanos, mLookupLatency.snapshot(), mPutLatency.snapshot());
+        }
+
+        @Override
+        protected void close() {
+        }
+
+        @Override
+        public void onEvicted(CacheEntry entry) {
+            mEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the length of an image encoded by the raw encoder, the same for all images of one size.
+     *
+     * @param image The image.
+     * @return Length in bytes.
+     */
+    private static int encodedLength(EncodableImage image) {
+        return 3 * ((image.getWidth() * image.getHeight() + RawEncoder.STRIDE - 1) / RawEncoder.STRIDE);
+    }
+
+    /**
+     * Raw encoder counting the files and bytes it encodes.
+     */
+    private static class CountingEncoder implements ImageEncoder {
+        private final RawEncoder mEncoder = new RawEncoder();
+        private final AtomicLong mFiles = new AtomicLong();
+        private final AtomicLong mBytes = new AtomicLong();
+
+        @Override
+        public void encode(EncodableImage image, OutputStream out) throws IOException {
+            mEncoder.encode(image, new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException {
+                    out.write(buffer, offset, length);
+                    mBytes.addAndGet(length);
+                }
+
+                @Override
+                public void write(int value) throws IOException {
+                    out.write(value);
+                    mBytes.incrementAndGet();
+                }
+            });
+            mFiles.incrementAndGet();
+        }
+    }
+
+    /**
+     * Journal counting inserted and removed rows and the calls doing it, optionally slowed down
+     * per call.
+     */
+    private static class CountingJournal implements Journal {
+        private final Journal mJournal;
+        private final long mLatencyNanos;
+        private final AtomicLong mRows = new AtomicLong();
+        private final AtomicLong mCalls = new AtomicLong();
+
+        private CountingJournal(Journal journal, long latencyNanos) {
+            mJournal = journal;
+            mLatencyNanos = latencyNanos;
+        }
+
+        @Override
+        public void insert(CacheEntry entry) {
+            mJournal.insert(entry);
+            count(1);
+        }
+
+        @Override
+        public void insertAll(Collection<CacheEntry> entries) {
+            mJournal.insertAll(entries);
+            count(entries.size());
+        }
+
+        @Override
+        public void remove(CacheEntry entry) {
+            mJournal.remove(entry);
+            count(1);
+        }
+
+        @Override
+        public void removeAll(Collection<CacheEntry> entries) {
+            mJournal.removeAll(entries);
+            count(entries.size());
+        }
+
+        @Override
+        public CacheEntry[] retrieveAll() {
+            return mJournal.retrieveAll();
+        }
+
+        @Override
+        public CacheEntry[] retrieve(int offset, int count) {
+            return mJournal.retrieve(offset, count);
+        }
+
+        @Override
+        public boolean exists(long identity) {
+            return mJournal.exists(identity);
+        }
+
+        @Override
+        public int compact(int maxPages) {
+            return mJournal.compact(maxPages);
+        }
+
+        @Override
+        public void close() {
+            mJournal.close();
+        }
+
+        private void count(int rows) {
+            mRows.addAndGet(rows);
+            mCalls.incrementAndGet();
+            final long due = System.nanoTime() + mLatencyNanos;
+            for (long wait = mLatencyNanos; wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.Test;
+
+/**
+ * Scrolling a long list through a cache too small to hold it, so every cell entering the 60 cell
+ * viewport misses and is written. One operation is one frame, lookups and writes run on the
+ * benchmark thread so their allocations and collections are counted.
+ */
+public class ScrollBenchmark {
+    private static final int ITEMS = 2048;
+    private static final int CACHED_ITEMS = 512;
+    private static final int CELLS = 60;
+    private static final int SCROLL_PER_FRAME = 2;
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 96;
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void scroll() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("Scroll");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setWarmUpIterations(3).setIterations(5).setOperations(300).build();
+        TempStorageRoot root = new TempStorageRoot();
+
+        final RawImage image = new RawImage(WIDTH, HEIGHT, PixelConfig.RGB_565);
+        final int imageBytes = WIDTH * HEIGHT / 8 * 3;
+        final int blockSize = root.getBlockSize();
+        final long imageBlocks = (imageBytes + blockSize - 1) / blockSize * blockSize;
+        UnInitializedCache uninitialized = new DiskCache.Builder()
+                .setJournal(new MemoryJournal())
+                .setEncoder(new RawEncoder())
+                .setMaintenanceEnabled(false)
+                .setCacheSize(CACHED_ITEMS * imageBlocks)
+                .setReservedBytes(0)
+                .build(root);
+        uninitialized.init();
+        final DiskCache cache = uninitialized.get();
+
+        report.add(runner.run("DiskCache.scroll", new Workload() {
+            private final String[] mFileKeys = new String[CELLS];
+            private final int[] mWidths = new int[CELLS];
+            private final int[] mHeights = new int[CELLS];
+            private final CacheEntry[] mResult = new CacheEntry[CELLS];
+            private int mFrame;
+
+            @Override
+            public void operation(int index) throws Exception {
+                final int first = mFrame++ * SCROLL_PER_FRAME;
+                for (int i = 0; i < CELLS; i++) {
+                    mFileKeys[i] = BenchmarkFixtures.fileKey((first + i) % ITEMS);
+                    mWidths[i] = WIDTH;
+                    mHeights[i] = HEIGHT;
+                }
+                cache.getAll(mFileKeys, mWidths, mHeights, PixelConfig.RGB_565, mResult);
+                for (int i = 0; i < CELLS; i++) {
+                    if (mResult[i] == null) {
+                        cache.putSync(mFileKeys[i], image, 0);
+                    }
+                }
+            }
+        }));
+        System.out.println(cache.getStats().snapshot());
+        cache.shutdown(FLUSH_TIMEOUT_MILLIS);
+
+        report.write();
+        root.delete();
+    }
+}
@@ -0,0 +1,109 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+import com.sweetlab.diskpicasso.tile.TileBatch;
+import com.sweetlab.diskpicasso.tile.TileGenerator;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tile lookups of a zoomed image panning one column per frame, with the cache idle and while
+ * another thread writes tile segments. One operation is one frame looking up every visible
+ * tile, like a rendering thread would.
+ */
+public class TileBenchmark {
+    private static final String FILE_KEY = "/DCIM/panorama.jpg";
+    private static final int COLUMNS = 64;
+    private static final int ROWS = 64;
+    private static final int VISIBLE_COLUMNS = 5;
+    private static final int VISIBLE_ROWS = 8;
+    private static final int TILE_PIXELS = 8;
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void tiles() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("Tile");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setOperations(20000).build();
+
+        final TempStorageRoot root = new TempStorageRoot();
+        UnInitializedCache uninitialized = new DiskCache.Builder()
+                .setJournal(new MemoryJournal())
+                .setEncoder(new RawEncoder())
+                .setMaintenanceEnabled(false)
+                .setCacheSize(Integer.MAX_VALUE)
+                .build(root);
+        uninitialized.init();
+        final DiskCache cache = uninitialized.get();
+        putTiles(cache, FILE_KEY, 0);
+
+        report.add(runner.run("DiskCache.getTile.idle", new PanWorkload(cache)));
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int level = 1; writing.get(); level++) {
+                        putTiles(cache, "/DCIM/other.jpg", level);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.start();
+        report.add(runner.run("DiskCache.getTile.writing", new PanWorkload(cache)));
+        writing.set(false);
+        writer.join();
+
+        report.write();
+        cache.shutdown(FLUSH_TIMEOUT_MILLIS);
+        root.delete();
+    }
+
+    /**
+     * Put all tiles of one level, in segments of a row part each.
+     */
+    private static void putTiles(DiskCache cache, String fileKey, int level) throws Exception {
+        TileBatch batch = new TileBatch(fileKey, level);
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS; x++) {
+                batch.add(x, y, new RawImage(TILE_PIXELS, TILE_PIXELS, PixelConfig.RGB_565, x + y));
+                if (batch.size() == TileGenerator.SEGMENT_TILES) {
+                    cache.putTilesSync(batch);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the visible tiles of a frame, panning right and wrapping around.
+     */
+    private static class PanWorkload extends Workload {
+        private final DiskCache mCache;
+
+        PanWorkload(DiskCache cache) {
+            mCache = cache;
+        }
+
+        @Override
+        public void operation(int index) {
+            final int left = index % (COLUMNS - VISIBLE_COLUMNS);
+            final int top = (index / (COLUMNS - VISIBLE_COLUMNS)) % (ROWS - VISIBLE_ROWS);
+            for (int y = top; y < top + VISIBLE_ROWS; y++) {
+                for (int x = left; x < left + VISIBLE_COLUMNS; x++) {
+                    BenchmarkRunner.consume(mCache.getTile(FILE_KEY, 0, x, y));
+                }
+            }
+        }
+    }
+}
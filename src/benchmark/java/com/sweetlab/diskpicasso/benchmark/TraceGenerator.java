@@ -0,0 +1,196 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates access traces resembling a gallery app. The same settings and seed always give
+ * the same trace. Accesses are a mix of:
+ * <ul>
+ * <li>scroll sessions, a run of adjacent sources at one thumbnail size, one per frame</li>
+ * <li>random accesses of any size with a Zipf distributed popularity over the sources</li>
+ * <li>eviction storms, a burst of sources never seen before, like an import of new photos</li>
+ * </ul>
+ * A lookup is followed by a duplicate put at the duplicate put rate, as when two requests
+ * decode the same source at once, and random accesses invalidate their source at the
+ * invalidate rate. Use the Builder to configure, see Builder for default values.
+ */
+public class TraceGenerator {
+    private static final long FRAME_MILLIS = 16;
+    private static final long MEAN_THINK_MILLIS = 50;
+    private static final int MIN_SCROLL = 20;
+    private static final int MAX_SCROLL = 200;
+    private static final int THUMBNAIL_SIZES = 2;
+
+    private final long mSeed;
+    private final int mOperations;
+    private final int mSources;
+    private final double mSkew;
+    private final double mScrollFraction;
+    private final double mDuplicatePutRate;
+    private final double mInvalidateRate;
+    private final double mStormRate;
+    private final int mStormSize;
+
+    /**
+     * Default seed 1, 100000 operations over 5000 sources with Zipf skew 0.9, half of the
+     * accesses in scroll sessions, 2% duplicate puts, 0.1% invalidations and on average one
+     * storm of 500 new sources per 2000 accesses.
+     */
+    public static class Builder {
+        private long mSeed;
+        private int mOperations;
+        private int mSources;
+        private double mSkew;
+        private double mScrollFraction;
+        private double mDuplicatePutRate;
+        private double mInvalidateRate;
+        private double mStormRate;
+        private int mStormSize;
+
+        public Builder() {
+            mSeed = 1;
+            mOperations = 100000;
+            mSources = 5000;
+            mSkew = 0.9;
+            mScrollFraction = 0.5;
+            mDuplicatePutRate = 0.02;
+            mInvalidateRate = 0.001;
+            mStormRate = 0.0005;
+            mStormSize = 500;
+        }
+
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public Builder setOperations(int operations) {
+            mOperations = operations;
+            return this;
+        }
+
+        public Builder setSources(int sources) {
+            mSources = sources;
+            return this;
+        }
+
+        public Builder setSkew(double skew) {
+            mSkew = skew;
+            return this;
+        }
+
+        public Builder setScrollFraction(double fraction) {
+            mScrollFraction = fraction;
+            return this;
+        }
+
+        public Builder setDuplicatePutRate(double rate) {
+            mDuplicatePutRate = rate;
+            return this;
+        }
+
+        public Builder setInvalidateRate(double rate) {
+            mInvalidateRate = rate;
+            return this;
+        }
+
+        public Builder setStorm(double rate, int size) {
+            mStormRate = rate;
+            mStormSize = size;
+            return this;
+        }
+
+        public TraceGenerator build() {
+            return new TraceGenerator(this);
+        }
+    }
+
+    private TraceGenerator(Builder builder) {
+        mSeed = builder.mSeed;
+        mOperations = builder.mOperations;
+        mSources = builder.mSources;
+        mSkew = builder.mSkew;
+        mScrollFraction = builder.mScrollFraction;
+        mDuplicatePutRate = builder.mDuplicatePutRate;
+        mInvalidateRate = builder.mInvalidateRate;
+        mStormRate = builder.mStormRate;
+        mStormSize = builder.mStormSize;
+    }
+
+    /**
+     * Generate the trace.
+     *
+     * @return The trace.
+     */
+    public AccessTrace generate() {
+        final Random random = new Random(mSeed);
+        final double[] popularity = zipf(mSources, mSkew);
+        final List<AccessTrace.Record> records = new ArrayList<>(mOperations);
+        long time = 0;
+        int newSource = mSources;
+        while (records.size() < mOperations) {
+            final double kind = random.nextDouble();
+            if (kind < mStormRate) {
+                for (int i = 0; i < mStormSize && records.size() < mOperations; i++) {
+                    time++;
+                    lookup(records, random, time, newSource++, BenchmarkFixtures.SIZES[0]);
+                }
+            } else if (kind < mStormRate + mScrollFraction) {
+                final int first = random.nextInt(mSources);
+                final int length = MIN_SCROLL + random.nextInt(MAX_SCROLL - MIN_SCROLL);
+                final int size = BenchmarkFixtures.SIZES[random.nextInt(THUMBNAIL_SIZES)];
+                for (int i = 0; i < length && records.size() < mOperations; i++) {
+                    time += FRAME_MILLIS;
+                    lookup(records, random, time, (first + i) % mSources, size);
+                }
+            } else {
+                time += (long) (-Math.log(1 - random.nextDouble()) * MEAN_THINK_MILLIS);
+                int source = Arrays.binarySearch(popularity, random.nextDouble());
+                source = Math.min(source < 0 ? -source - 1 : source, mSources - 1);
+                final int size = BenchmarkFixtures.SIZES[random.nextInt(BenchmarkFixtures.SIZES.length)];
+                lookup(records, random, time, source, size);
+                if (random.nextDouble() < mInvalidateRate) {
+                    records.add(new AccessTrace.Record(time, AccessTrace.INVALIDATE, 0, 0, PixelConfig.RGB_565,
+                            BenchmarkFixtures.fileKey(source)));
+                }
+            }
+        }
+        return new AccessTrace(records.subList(0, mOperations));
+    }
+
+    /**
+     * Add a lookup, followed by a duplicate put at the duplicate put rate.
+     */
+    private void lookup(List<AccessTrace.Record> records, Random random, long time, int source, int size) {
+        final String fileKey = BenchmarkFixtures.fileKey(source);
+        records.add(new AccessTrace.Record(time, AccessTrace.LOOKUP, size, size * 3 / 4, PixelConfig.RGB_565, fileKey));
+        if (random.nextDouble() < mDuplicatePutRate) {
+            records.add(new AccessTrace.Record(time, AccessTrace.PUT, size, size * 3 / 4, PixelConfig.RGB_565, fileKey));
+        }
+    }
+
+    /**
+     * Cumulative Zipf distribution over ranks, the first rank is the most popular.
+     *
+     * @param count Number of ranks.
+     * @param skew  Exponent, 0 for uniform.
+     * @return Cumulative probability of each rank.
+     */
+    private static double[] zipf(int count, double skew) {
+        double[] cumulative = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+}
@@ -0,0 +1,52 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.SizeValidator;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks of key calculation and variant matching.
+ */
+public class ValidatorBenchmark {
+    private static final int KEYS = 1024;
+
+    @Test
+    public void validator() throws Exception {
+        final BenchmarkReport report = new BenchmarkReport("Validator");
+        final BenchmarkRunner runner = new BenchmarkRunner.Builder().build();
+        final String[] fileKeys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            fileKeys[i] = BenchmarkFixtures.fileKey(i);
+        }
+        final List<CacheEntry> variants = Arrays.asList(BenchmarkFixtures.createEntries(BenchmarkFixtures.SIZES.length));
+        final int largest = BenchmarkFixtures.SIZES[BenchmarkFixtures.SIZES.length - 1];
+
+        report.add(runner.run("CacheEntry.calcPrimaryKey", new Workload() {
+            @Override
+            public void operation(int index) {
+                BenchmarkRunner.consume(CacheEntry.calcPrimaryKey(fileKeys[index & (KEYS - 1)], 512, 384, PixelConfig.RGB_565));
+            }
+        }));
+
+        report.add(runner.run("SizeValidator.findMatch.last", new Workload() {
+            @Override
+            public void operation(int index) {
+                BenchmarkRunner.consume(SizeValidator.findMatch(variants, largest, 0, PixelConfig.RGB_565));
+            }
+        }));
+
+        report.add(runner.run("SizeValidator.findMatch.none", new Workload() {
+            @Override
+            public void operation(int index) {
+                BenchmarkRunner.consume(SizeValidator.findMatch(variants, 300, 300, PixelConfig.RGB_565));
+            }
+        }));
+
+        report.write();
+    }
+}
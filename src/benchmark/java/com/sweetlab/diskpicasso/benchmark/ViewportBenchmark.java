@@ -0,0 +1,117 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+import com.sweetlab.diskpicasso.storage.MemoryCache;
+import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.Test;
+
+
+/**
+ * A 60 cell list viewport scrolling two cells per frame, looked up once per frame with one call
+ * per cell or with one batch call. One operation is one frame.
+ */
+public class ViewportBenchmark {
+    private static final int ENTRIES = 4096;
+    private static final int CELLS = 60;
+    private static final int SCROLL_PER_FRAME = 2;
+    private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void viewport() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("Viewport");
+        BenchmarkRunner runner = new BenchmarkRunner.Builder().setOperations(20000).build();
+
+        TempStorageRoot root = new TempStorageRoot();
+        final CacheEntry[] entries = BenchmarkFixtures.createEntries(ENTRIES, root.getDirectory());
+        BenchmarkFixtures.createFiles(entries);
+
+        final MemoryCache memoryCache = new MemoryCache(Integer.MAX_VALUE, BenchmarkFixtures.NO_EVICTION);
+        memoryCache.init(entries);
+
+        MemoryJournal journal = new MemoryJournal();
+        for (CacheEntry entry : entries) {
+            journal.insert(entry);
+        }
+        UnInitializedCache uninitialized = new DiskCache.Builder()
+                .setJournal(journal)
+                .setEncoder(new RawEncoder())
+                .setMaintenanceEnabled(false)
+                .setCacheSize(Integer.MAX_VALUE)
+                .build(root);
+        uninitialized.init();
+        final DiskCache diskCache = uninitialized.get();
+
+        report.add(runner.run("MemoryCache.viewport.perKey", new ViewportWorkload(entries) {
+            @Override
+            protected void frame() {
+                for (int i = 0; i < CELLS; i++) {
+                    BenchmarkRunner.consume(memoryCache.getExact(mFileKeys[i], mWidths[i], mHeights[i], PixelConfig.RGB_565));
+                }
+            }
+        }));
+        report.add(runner.run("MemoryCache.viewport.getAll", new ViewportWorkload(entries) {
+            @Override
+            protected void frame() {
+                memoryCache.getAll(mFileKeys, mWidths, mHeights, PixelConfig.RGB_565, mResult);
+                BenchmarkRunner.consume(mResult[CELLS - 1]);
+            }
+        }));
+        report.add(runner.run("DiskCache.viewport.perKey", new ViewportWorkload(entries) {
+            @Override
+            protected void frame() {
+                for (int i = 0; i < CELLS; i++) {
+                    BenchmarkRunner.consume(diskCache.getExact(mFileKeys[i], mWidths[i], mHeights[i], PixelConfig.RGB_565));
+                }
+            }
+        }));
+        report.add(runner.run("DiskCache.viewport.getAll", new ViewportWorkload(entries) {
+            @Override
+            protected void frame() {
+                diskCache.getAll(mFileKeys, mWidths, mHeights, PixelConfig.RGB_565, mResult);
+                BenchmarkRunner.consume(mResult[CELLS - 1]);
+            }
+        }));
+        diskCache.shutdown(FLUSH_TIMEOUT_MILLIS);
+
+        report.write();
+        root.delete();
+    }
+
+    /**
+     * Fills the visible cells of the current frame into reused arrays, like an adapter would.
+     */
+    private abstract static class ViewportWorkload extends Workload {
+        protected final String[] mFileKeys = new String[CELLS];
+        protected final int[] mWidths = new int[CELLS];
+        protected final int[] mHeights = new int[CELLS];
+        protected final CacheEntry[] mResult = new CacheEntry[CELLS];
+        private final CacheEntry[] mEntries;
+
+        ViewportWorkload(CacheEntry[] entries) {
+            mEntries = entries;
+        }
+
+        @Override
+        public void operation(int index) {
+            final int first = index * SCROLL_PER_FRAME;
+            for (int i = 0; i < CELLS; i++) {
+                CacheEntry entry = mEntries[(first + i) & (ENTRIES - 1)];
+                mFileKeys[i] = entry.getFileKey();
+                mWidths[i] = entry.getWidth();
+                mHeights[i] = entry.getHeight();
+            }
+            frame();
+        }
+
+        /**
+         * Look up all visible cells.
+         */
+        protected abstract void frame();
+    }
+}
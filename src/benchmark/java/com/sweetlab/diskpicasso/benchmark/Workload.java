@@ -0,0 +1,40 @@
+package com.sweetlab.diskpicasso.benchmark;
+
+/**
+ * A unit of work to measure. Set up and tear down are called once per iteration and are not
+ * part of the measurement.
+ */
+public abstract class Workload {
+    /**
+     * Prepare an iteration.
+     *
+     * @throws Exception If fails.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Run one operation.
+     *
+     * @param index Operation index within the iteration.
+     * @throws Exception If fails.
+     */
+    public abstract void operation(int index) throws Exception;
+
+    /**
+     * Called after the last operation of an iteration but before the clock stops. Use it to
+     * wait for asynchronous work started by the operations.
+     *
+     * @throws Exception If fails.
+     */
+    public void complete() throws Exception {
+    }
+
+    /**
+     * Clean up after an iteration.
+     *
+     * @throws Exception If fails.
+     */
+    public void tearDown() throws Exception {
+    }
+}
@@ -1,37 +1,52 @@
 package com.sweetlab.diskpicasso;
 
-import android.graphics.Bitmap;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.Placeholder;
 
 import java.io.File;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Journal entry. Each entry is unique, identified by two keys.
  * The file key is the reference to the original source file.
  * The primary key is based on the file key with additional uniqueness including width, height and config.
  * <p/>
- * Immutable DAO.
+ * Immutable DAO, apart from a mark telling if the cache file has been verified.
  */
 public class CacheEntry {
+    /**
+     * Checksum of entries written before checksums were recorded.
+     */
+    public static final long NO_CHECKSUM = -1;
     private static final long IDENTITY_MULTIPLIER = 31L;
+    private static final AtomicIntegerFieldUpdater<CacheEntry> VERIFIED =
+            AtomicIntegerFieldUpdater.newUpdater(CacheEntry.class, "mVerified");
     private final String mFileKey;
     private final long mPrimaryKey;
     private final File mFile;
     private final int mWidth;
     private final int mHeight;
-    private final Bitmap.Config mConfig;
+    private final PixelConfig mConfig;
     private final int mByteSize;
+    private final long mFingerprint;
+    private final long mChecksum;
+    private final byte[] mPlaceholder;
+    private volatile int mVerified;
 
     /**
-     * Helper method to calculate unique key given parameters.
+     * Helper method to calculate unique key given parameters. Each part is multiplied in turn
+     * so a width and height swapped do not give the same key.
      *
      * @param fileKey A unique source file key.
      * @param width   A width.
      * @param height  A height.
-     * @param config  A bitmap config.
+     * @param config  A pixel config.
      * @return Unique identity.
      */
-    public static long calcPrimaryKey(String fileKey, int width, int height, Bitmap.Config config) {
-        return fileKey.hashCode() + (width * IDENTITY_MULTIPLIER) + (height * IDENTITY_MULTIPLIER) + config.hashCode();
+    public static long calcPrimaryKey(String fileKey, int width, int height, PixelConfig config) {
+        long key = IDENTITY_MULTIPLIER * fileKey.hashCode() + width;
+        key = IDENTITY_MULTIPLIER * key + height;
+        return IDENTITY_MULTIPLIER * key + config.ordinal();
     }
 
     /**
@@ -41,10 +56,59 @@ public class CacheEntry {
      * @param file     The cache file.
      * @param width    The width of cached image.
      * @param height   The height of cached image.
-     * @param config   The bitmap config of cached image.
+     * @param config   The pixel config of cached image.
      * @param byteSize The byte size of the cached image.
      */
-    public CacheEntry(String fileKey, File file, int width, int height, Bitmap.Config config, int byteSize) {
+    public CacheEntry(String fileKey, File file, int width, int height, PixelConfig config, int byteSize) {
+        this(fileKey, file, width, height, config, byteSize, SourceFingerprint.NONE);
+    }
+
+    /**
+     * Create a cache entry to be persisted.
+     *
+     * @param fileKey     The source file key.
+     * @param file        The cache file.
+     * @param width       The width of cached image.
+     * @param height      The height of cached image.
+     * @param config      The pixel config of cached image.
+     * @param byteSize    The byte size of the cached image.
+     * @param fingerprint Fingerprint of the source when cached or {@link SourceFingerprint#NONE}.
+     */
+    public CacheEntry(String fileKey, File file, int width, int height, PixelConfig config, int byteSize, long fingerprint) {
+        this(fileKey, file, width, height, config, byteSize, fingerprint, NO_CHECKSUM);
+    }
+
+    /**
+     * Create a cache entry to be persisted.
+     *
+     * @param fileKey     The source file key.
+     * @param file        The cache file.
+     * @param width       The width of cached image.
+     * @param height      The height of cached image.
+     * @param config      The pixel config of cached image.
+     * @param byteSize    The byte size of the cached image.
+     * @param fingerprint Fingerprint of the source when cached or {@link SourceFingerprint#NONE}.
+     * @param checksum    CRC32 of the cache file or {@link #NO_CHECKSUM}.
+     */
+    public CacheEntry(String fileKey, File file, int width, int height, PixelConfig config, int byteSize, long fingerprint, long checksum) {
+        this(fileKey, file, width, height, config, byteSize, fingerprint, checksum, null);
+    }
+
+    /**
+     * Create a cache entry to be persisted.
+     *
+     * @param fileKey     The source file key.
+     * @param file        The cache file.
+     * @param width       The width of cached image.
+     * @param height      The height of cached image.
+     * @param config      The pixel config of cached image.
+     * @param byteSize    The byte size of the cached image.
+     * @param fingerprint Fingerprint of the source when cached or {@link SourceFingerprint#NONE}.
+     * @param checksum    CRC32 of the cache file or {@link #NO_CHECKSUM}.
+     * @param placeholder Tiny preview of the cached image, see {@link Placeholder}, or null.
+     */
+    public CacheEntry(String fileKey, File file, int width, int height, PixelConfig config, int byteSize, long fingerprint, long checksum,
+                      byte[] placeholder) {
         mFileKey = fileKey;
         mPrimaryKey = calcPrimaryKey(fileKey, width, height, config);
         mFile = file;
@@ -52,6 +116,9 @@ public class CacheEntry {
         mHeight = height;
         mConfig = config;
         mByteSize = byteSize;
+        mFingerprint = fingerprint;
+        mChecksum = checksum;
+        mPlaceholder = placeholder;
     }
 
     /**
@@ -100,11 +167,11 @@ public class CacheEntry {
     }
 
     /**
-     * Get the cached bitmap config.
+     * Get the cached pixel config.
      *
-     * @return THe cache bitmap config.
+     * @return The cache pixel config.
      */
-    public Bitmap.Config getConfig() {
+    public PixelConfig getConfig() {
         return mConfig;
     }
 
@@ -117,6 +184,54 @@ public class CacheEntry {
         return mByteSize;
     }
 
+    /**
+     * Get the fingerprint of the source when it was cached.
+     *
+     * @return The fingerprint or {@link SourceFingerprint#NONE} if unknown.
+     */
+    public long getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * Get the checksum of the cache file.
+     *
+     * @return CRC32 of the cache file or {@link #NO_CHECKSUM} if unknown.
+     */
+    public long getChecksum() {
+        return mChecksum;
+    }
+
+    /**
+     * Get the tiny preview of the cached image, kept in memory with the entry. Not copied, must
+     * not be modified.
+     *
+     * @return The placeholder, see {@link Placeholder}, or null if none.
+     */
+    public byte[] getPlaceholder() {
+        return mPlaceholder;
+    }
+
+    /**
+     * Mark the cache file as verified. Cheap enough for the lookup path.
+     *
+     * @return True for the first caller only.
+     */
+    public boolean markVerified() {
+        return mVerified == 0 && VERIFIED.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Check if the entry was cached from another version of the source. Entries without a
+     * fingerprint, and lookups without one, are never stale.
+     *
+     * @param fingerprint Current fingerprint of the source.
+     * @return True if the source has changed since the entry was cached.
+     */
+    public boolean isStale(long fingerprint) {
+        return mFingerprint != SourceFingerprint.NONE && fingerprint != SourceFingerprint.NONE && mFingerprint != fingerprint;
+    }
+
     @Override
     public String toString() {
         return "file key " + mFileKey + " variant key = " + mPrimaryKey + " w = " + getWidth() + " h = " + getHeight() + " config = " + getConfig();
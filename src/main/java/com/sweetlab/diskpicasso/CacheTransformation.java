@@ -3,13 +3,17 @@ package com.sweetlab.diskpicasso;
 import android.graphics.Bitmap;
 
 import com.squareup.picasso.Transformation;
+import com.sweetlab.diskpicasso.platform.BitmapImage;
 import com.sweetlab.diskpicasso.storage.DiskCache;
 
+import java.io.File;
+
 /**
  * This is a disk cache write transformation. If client extend this transform they must call super.transform(Bitmap source) to ensure that cache writing happens.
  */
 public class CacheTransformation implements Transformation {
     private final String mFileKey;
+    private final String mSourcePath;
     private DiskCache mDiskCache;
 
     /**
@@ -18,7 +22,19 @@ public class CacheTransformation implements Transformation {
      * @param fileKey Source file key.
      */
     public CacheTransformation(String fileKey) {
+        this(fileKey, null);
+    }
+
+    /**
+     * Constructor. The written variant records the fingerprint of the source so it can be
+     * detected as stale when the source changes.
+     *
+     * @param fileKey    Source file key.
+     * @param sourcePath Source file path to original image or null.
+     */
+    public CacheTransformation(String fileKey, String sourcePath) {
         mFileKey = fileKey;
+        mSourcePath = sourcePath;
     }
 
     /**
@@ -33,7 +49,8 @@ public class CacheTransformation implements Transformation {
     @Override
     public Bitmap transform(Bitmap source) {
         if (mDiskCache != null) {
-            mDiskCache.put(mFileKey, source);
+            final long fingerprint = mSourcePath != null ? SourceFingerprint.fromMetadata(new File(mSourcePath)) : SourceFingerprint.NONE;
+            mDiskCache.put(mFileKey, new BitmapImage(source), fingerprint);
         }
         return source;
     }
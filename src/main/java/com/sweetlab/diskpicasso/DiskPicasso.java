@@ -8,20 +8,77 @@ import android.os.Looper;
 
 import com.squareup.picasso.Picasso;
 import com.squareup.picasso.RequestCreator;
+import com.sweetlab.diskpicasso.core.Downscaler;
+import com.sweetlab.diskpicasso.core.Placeholder;
+import com.sweetlab.diskpicasso.journal.realm.RealmJournal;
+import com.sweetlab.diskpicasso.journal.sql.SqlJournal;
+import com.sweetlab.diskpicasso.maintenance.MaintenanceReport;
+import com.sweetlab.diskpicasso.platform.BitmapBoundsReader;
+import com.sweetlab.diskpicasso.platform.BitmapDecoder;
+import com.sweetlab.diskpicasso.platform.BitmapEncoder;
+import com.sweetlab.diskpicasso.platform.BitmapTileDecoder;
+import com.sweetlab.diskpicasso.platform.CacheRequestHandler;
+import com.sweetlab.diskpicasso.platform.ContextStorageRoot;
+import com.sweetlab.diskpicasso.platform.PixelConfigs;
+import com.sweetlab.diskpicasso.prefetch.PrefetchListener;
+import com.sweetlab.diskpicasso.prefetch.PrefetchSpec;
+import com.sweetlab.diskpicasso.prefetch.Prefetcher;
+import com.sweetlab.diskpicasso.stats.CacheStats;
 import com.sweetlab.diskpicasso.storage.DiskCache;
 import com.sweetlab.diskpicasso.storage.UnInitializedCache;
+import com.sweetlab.diskpicasso.tile.Tile;
+import com.sweetlab.diskpicasso.tile.TileGenerator;
+import com.sweetlab.diskpicasso.tile.TileGrid;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
 /**
  * Picasso with disk caching support. Even though initialization is done in background thread, this instance is directly usable from clients.
+ * This is the Android binding of the platform independent disk cache.
  */
 public class DiskPicasso {
-    private static boolean sIsInitialized;
-    private static DiskPicasso sDiskPicassoInstance;
+    private static final Bitmap.CompressFormat COMPRESS_FORMAT = Bitmap.CompressFormat.JPEG;
+    private static final int COMPRESS_QUALITY = 90;
+
+    /**
+     * Width and height of the tiles of large images.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * Max number of threads downscaling the levels of one pyramid.
+     */
+    private static final int DOWNSCALE_THREADS = 4;
+
+    /**
+     * Scheduler delivering asynchronous lookup results on the main thread.
+     */
+    private static final Scheduler MAIN_THREAD = Schedulers.from(new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    });
+    private static volatile boolean sIsInitialized;
+    private static volatile DiskPicasso sDiskPicassoInstance;
     private final DiskCache mDiskCache;
+    private final Prefetcher mPrefetcher;
+    private final TileGenerator mTileGenerator;
+    private final Downscaler mDownscaler;
 
     /**
      * Private constructor. Client must call init method.
@@ -30,6 +87,9 @@ public class DiskPicasso {
      */
     private DiskPicasso(DiskCache diskCache) {
         mDiskCache = diskCache;
+        mPrefetcher = new Prefetcher(diskCache, new BitmapDecoder());
+        mTileGenerator = new TileGenerator(diskCache, new BitmapTileDecoder(), TILE_SIZE, PixelConfigs.from(Config.RGB_565));
+        mDownscaler = new Downscaler(Math.min(DOWNSCALE_THREADS, Runtime.getRuntime().availableProcessors()));
     }
 
     /**
@@ -42,7 +102,11 @@ public class DiskPicasso {
      * @return The cache entry or null of not found.
      */
     public static CacheEntry findMatch(List<CacheEntry> list, int resizeX, int resizeY, Bitmap.Config config) {
-        return SizeValidator.findMatch(list, resizeX, resizeY, config);
+        DiskPicasso instance = sDiskPicassoInstance;
+        if (instance != null) {
+            return instance.mDiskCache.findMatch(list, resizeX, resizeY, PixelConfigs.from(config));
+        }
+        return SizeValidator.findMatch(list, resizeX, resizeY, PixelConfigs.from(config));
     }
 
     /**
@@ -55,32 +119,106 @@ public class DiskPicasso {
      * @return True if match.
      */
     public static boolean isMatch(CacheEntry entry, int resizeX, int resizeY, Bitmap.Config config) {
-        return SizeValidator.isMatch(entry, resizeX, resizeY, config);
+        return SizeValidator.isMatch(entry, resizeX, resizeY, PixelConfigs.from(config));
     }
 
     /**
      * Initialize picasso disk cache.
      *
      * @param context Preferably android application context.
-     * @param size    Size of cache in bytes.
+     * @param size    Size of cache in bytes, including the journal.
+     */
+    public static void init(final Context context, long size) {
+        init(context, size, 0);
+    }
+
+    /**
+     * Initialize picasso disk cache with an encoded byte cache, so recently used cache files
+     * are decoded from memory without file I/O.
+     *
+     * @param context       Preferably android application context.
+     * @param size          Size of cache in bytes, including the journal.
+     * @param byteCacheSize Size of the encoded byte cache in bytes, allocated off heap at once.
+     */
+    public synchronized static void init(final Context context, long size, int byteCacheSize) {
+        init(context, new DiskCache.Builder()
+                .setCacheSize(size)
+                .setByteCacheSize(byteCacheSize)
+                .setJournal(new RealmJournal(context)));
+    }
+
+    /**
+     * Initialize picasso disk cache shared by all processes of the application, for example a
+     * sync process writing thumbnails that the UI process shows. Every process must initialize
+     * with this method and the same size. Uses the sql journal, which supports several
+     * processes.
+     *
+     * @param context       Preferably android application context.
+     * @param size          Size of cache in bytes, including the journal.
+     * @param byteCacheSize Size of the encoded byte cache in bytes, 0 for none.
+     */
+    public synchronized static void initMultiProcess(final Context context, long size, int byteCacheSize) {
+        init(context, new DiskCache.Builder()
+                .setCacheSize(size)
+                .setByteCacheSize(byteCacheSize)
+                .setJournal(SqlJournal.getInstance(context))
+                .setMultiProcess(true));
+    }
+
+    /**
+     * Build and initialize the cache once.
+     *
+     * @param context Preferably android application context.
+     * @param builder Builder with size and journal set.
      */
-    public synchronized static void init(final Context context, int size) {
+    private static void init(final Context context, DiskCache.Builder builder) {
         if (sDiskPicassoInstance == null) {
-            final UnInitializedCache cacheNeedInit = new DiskCache.Builder().setCacheSize(size).build(context);
-            sDiskPicassoInstance = new DiskPicasso(cacheNeedInit.get());
-            new Thread(new Runnable() {
+            final BitmapEncoder encoder = new BitmapEncoder(COMPRESS_FORMAT, COMPRESS_QUALITY);
+            final UnInitializedCache cacheNeedInit = builder
+                    .setEncoder(encoder)
+                    .setPlaceholderEncoder(encoder)
+                    .setBoundsReader(new BitmapBoundsReader())
+                    .build(new ContextStorageRoot(context));
+            final DiskPicasso instance = new DiskPicasso(cacheNeedInit.get());
+            sDiskPicassoInstance = instance;
+            SinglePicasso.setByteCache(cacheNeedInit.get().getByteCache());
+            cacheNeedInit.initAsync(new Runnable() {
                 @Override
                 public void run() {
-                    cacheNeedInit.init();
                     new Handler(Looper.getMainLooper()).post(new Runnable() {
                         @Override
                         public void run() {
-                            sIsInitialized = true;
+                            if (sDiskPicassoInstance == instance) {
+                                sIsInitialized = true;
+                            }
                         }
                     });
                 }
-            }).start();
+            });
+        }
+    }
+
+    /**
+     * Shut down picasso disk cache, for example when the process is about to be stopped.
+     * Prefetches are stopped, pending writes and evictions are drained and the cache is
+     * closed, see {@link DiskCache#shutdown(long)}. Init may be called again after this.
+     *
+     * @param timeoutMillis Max time to wait for pending work in milliseconds.
+     * @return True if all pending work was done in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized static boolean shutdown(long timeoutMillis) throws InterruptedException {
+        DiskPicasso instance = sDiskPicassoInstance;
+        if (instance == null) {
+            return true;
         }
+        sDiskPicassoInstance = null;
+        sIsInitialized = false;
+        SinglePicasso.setByteCache(null);
+        instance.mPrefetcher.shutdown();
+        instance.mTileGenerator.shutdown();
+        instance.mDownscaler.shutdown();
+        return instance.mDiskCache.shutdown(timeoutMillis);
     }
 
     /**
@@ -102,16 +240,98 @@ public class DiskPicasso {
      * @return Request creator or null if not in cache.
      */
     public RequestCreator loadUsingCache(String fileKey, int width, int height, Config config) {
+        mDiskCache.noteActivity();
         if (width != 0 && height != 0 && sIsInitialized) {
             Picasso instance = SinglePicasso.getPicasso();
-            File cacheFile = mDiskCache.getExact(fileKey, width, height, config);
+            File cacheFile = mDiskCache.getExact(fileKey, width, height, PixelConfigs.from(config));
+            if (cacheFile != null) {
+                return cacheLoader(instance, cacheFile, fileKey, width, height, config);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a loader for a cached file without missing while the cache is initializing. The result
+     * is delivered on the main thread, at once if the file is found or the cache is initialized,
+     * otherwise when initialization is done.
+     *
+     * @param fileKey Source file key.
+     * @param width   Cached image width.
+     * @param height  Cached image height.
+     * @param config  Cached bitmap config.
+     * @return Observable emitting the request creator, empty if not in cache.
+     */
+    public Observable<RequestCreator> loadUsingCacheAsync(final String fileKey, final int width, final int height, final Config config) {
+        mDiskCache.noteActivity();
+        if (width == 0 || height == 0) {
+            return Observable.empty();
+        }
+        return mDiskCache.getExactAsync(fileKey, width, height, PixelConfigs.from(config)).map(new Func1<File, RequestCreator>() {
+            @Override
+            public RequestCreator call(File cacheFile) {
+                return cacheLoader(SinglePicasso.getPicasso(), cacheFile, fileKey, width, height, config);
+            }
+        }).observeOn(MAIN_THREAD);
+    }
+
+    /**
+     * Get the cache entries of many source file keys in one call without missing while the
+     * cache is initializing, for example all visible items of a list. The result is delivered
+     * on the main thread when the cache is initialized.
+     *
+     * @param fileKeys The source file keys.
+     * @return Observable emitting a map from each file key to its cache entries.
+     */
+    public Observable<Map<String, List<CacheEntry>>> getFromCacheAsync(Collection<String> fileKeys) {
+        return mDiskCache.getAsync(fileKeys).observeOn(MAIN_THREAD);
+    }
+
+    /**
+     * Get a loader for a cached file, validated against the current version of the source. A
+     * variant cached before the source was edited or replaced is a miss and is removed. Costs a
+     * stat of the source file.
+     *
+     * @param sourcePath Source file path to original image.
+     * @param fileKey    Source file key.
+     * @param width      Cached image width.
+     * @param height     Cached image height.
+     * @param config     Cached bitmap config.
+     * @return Request creator or null if not in cache.
+     */
+    public RequestCreator loadUsingCache(String sourcePath, String fileKey, int width, int height, Config config) {
+        mDiskCache.noteActivity();
+        if (width != 0 && height != 0 && sIsInitialized) {
+            final long fingerprint = SourceFingerprint.fromMetadata(new File(sourcePath));
+            File cacheFile = mDiskCache.getExact(fileKey, width, height, PixelConfigs.from(config), fingerprint);
             if (cacheFile != null) {
-                return instance.load(cacheFile).config(config);
+                return cacheLoader(SinglePicasso.getPicasso(), cacheFile, fileKey, width, height, config);
             }
         }
         return null;
     }
 
+    /**
+     * Remove all cached variants of a source, for example after it was edited.
+     *
+     * @param fileKey Source file key.
+     * @return Number of variants removed.
+     */
+    public int invalidate(String fileKey) {
+        return mDiskCache.invalidate(fileKey);
+    }
+
+    /**
+     * Remove all cached variants of the sources with file keys starting with a prefix, for
+     * example all sources of a directory when file keys start with the path.
+     *
+     * @param prefix File key prefix.
+     * @return Number of variants removed.
+     */
+    public int invalidatePrefix(String prefix) {
+        return mDiskCache.invalidatePrefix(prefix);
+    }
+
     /**
      * Get a picasso request creator with a post disk cache write using picasso transformation.
      *
@@ -123,13 +343,189 @@ public class DiskPicasso {
     public RequestCreator loadAndWrite(String sourcePath, String fileKey, Config config) {
         RequestCreator loader = SinglePicasso.getPicasso().load(new File(sourcePath)).config(config);
         if (sIsInitialized) {
-            CacheTransformation writeTransform = new CacheTransformation(fileKey);
+            CacheTransformation writeTransform = new CacheTransformation(fileKey, sourcePath);
+            writeTransform.enableDiskWrite(mDiskCache);
+            loader.transform(writeTransform);
+        }
+        return loader;
+    }
+
+    /**
+     * Get a picasso request creator that writes several cache variants from one source decode.
+     * The source is decoded to fit inside the largest level, each smaller level is downscaled
+     * from the previous one on several threads and all levels are encoded in parallel and journaled in one batch.
+     *
+     * @param sourcePath Source file path to original image.
+     * @param fileKey    Source file key.
+     * @param config     Bitmap config to use.
+     * @param levels     Longest edge of each cached level, e.g. 128, 256, 1024.
+     * @return Request creator with a post disk cache write of all levels.
+     */
+    public RequestCreator loadAndWritePyramid(String sourcePath, String fileKey, Config config, int... levels) {
+        PyramidTransformation writeTransform = new PyramidTransformation(fileKey, sourcePath, levels);
+        final int largest = writeTransform.getLargestLevel();
+        RequestCreator loader = SinglePicasso.getPicasso().load(new File(sourcePath)).config(config)
+                .resize(largest, largest).centerInside();
+        if (sIsInitialized) {
             writeTransform.enableDiskWrite(mDiskCache);
+            writeTransform.setDownscaler(mDownscaler);
             loader.transform(writeTransform);
         }
         return loader;
     }
 
+    /**
+     * Generate missing cache variants in the background at low priority, for example the
+     * thumbnails of an album about to be shown. Variants already cached are skipped. Ignored until
+     * the cache is initialized.
+     *
+     * @param specs    The variants to generate.
+     * @param listener Listener of the outcome, called on the prefetch thread, or null.
+     * @return True if the prefetch was started.
+     */
+    public boolean prefetch(Collection<PrefetchSpec> specs, PrefetchListener listener) {
+        if (sIsInitialized) {
+            mPrefetcher.prefetch(specs, listener);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop all prefetches, call when the app goes interactive so prefetching does not compete
+     * with images being displayed.
+     */
+    public void stopPrefetch() {
+        mPrefetcher.stop();
+    }
+
+    /**
+     * Wait until all pending writes and evictions are done, for example before the app goes
+     * to the background.
+     *
+     * @param timeoutMillis Max time to wait in milliseconds.
+     * @return True if all pending work is done.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        return mDiskCache.flush(timeoutMillis);
+    }
+
+    /**
+     * Hold back background encoding, writing, verification, prefetching and tile generation,
+     * for example during heavy UI work or on low battery. Cache lookups keep working.
+     */
+    public void pause() {
+        mDiskCache.pause();
+        mPrefetcher.pause();
+        mTileGenerator.pause();
+    }
+
+    /**
+     * Let background work held back by {@link #pause()} run again.
+     */
+    public void resume() {
+        mDiskCache.resume();
+        mPrefetcher.resume();
+        mTileGenerator.resume();
+    }
+
+    /**
+     * Get the tile grid of a large image, telling the levels and tiles to show it zoomed. The
+     * bounds are read from the source the first time, do not call on the main thread then.
+     *
+     * @param sourcePath Path to the source image.
+     * @return The grid.
+     * @throws IOException If the source could not be opened.
+     */
+    public TileGrid getTileGrid(String sourcePath) throws IOException {
+        return mTileGenerator.getGrid(sourcePath);
+    }
+
+    /**
+     * Get a cached tile of a large image. Lock free, may be called on the rendering thread for
+     * every visible tile every frame. Decode it with {@link BitmapTileDecoder#decodeTile}.
+     *
+     * @param fileKey The source file key.
+     * @param level   Zoom level.
+     * @param x       Tile column.
+     * @param y       Tile row.
+     * @return The tile or null if not cached.
+     */
+    public Tile getTile(String fileKey, int level, int x, int y) {
+        if (sIsInitialized) {
+            return mDiskCache.getTile(fileKey, level, x, y);
+        }
+        return null;
+    }
+
+    /**
+     * Generate the missing tiles of a range of a large image in the background, typically the
+     * visible ones after a pan or zoom. Ignored until the cache is initialized.
+     *
+     * @param sourcePath Path to the source image.
+     * @param fileKey    The source file key.
+     * @param level      Zoom level.
+     * @param left       First tile column.
+     * @param top        First tile row.
+     * @param right      Tile column after the last.
+     * @param bottom     Tile row after the last.
+     * @return Number of tiles queued.
+     */
+    public int requestTiles(String sourcePath, String fileKey, int level, int left, int top, int right, int bottom) {
+        if (sIsInitialized) {
+            return mTileGenerator.request(sourcePath, fileKey, level, left, top, right, bottom);
+        }
+        return 0;
+    }
+
+    /**
+     * Drop pending tile requests, for example when the zoomed image is closed.
+     */
+    public void stopTiles() {
+        mTileGenerator.stop();
+    }
+
+    /**
+     * Get the cache statistics.
+     *
+     * @return The statistics.
+     */
+    public CacheStats getStats() {
+        return mDiskCache.getStats();
+    }
+
+    /**
+     * Get what each idle time maintenance job has done, such as journal compaction and
+     * scrubbing.
+     *
+     * @return A report per job.
+     */
+    public List<MaintenanceReport> getMaintenanceReports() {
+        return mDiskCache.getMaintenanceReports();
+    }
+
+    /**
+     * Get a tiny blurred preview of a source to show right away while the cached variant or the
+     * source is loaded, for example in list cells. Kept in memory with the cache index, there
+     * is no disk access. Scale it up to the view with filtering.
+     *
+     * @param fileKey The source file key.
+     * @return A new RGB_565 bitmap of at most 16 by 16 pixels or null if no variant is cached.
+     */
+    public Bitmap getPlaceholder(String fileKey) {
+        if (!sIsInitialized) {
+            return null;
+        }
+        byte[] placeholder = mDiskCache.getPlaceholder(fileKey);
+        if (placeholder == null) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(Placeholder.getWidth(placeholder), Placeholder.getHeight(placeholder), Config.RGB_565);
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(placeholder, Placeholder.HEADER_BYTES, placeholder.length - Placeholder.HEADER_BYTES));
+        return bitmap;
+    }
+
     /**
      * Get a list of cache entries given the provided source file key.
      *
@@ -142,4 +538,20 @@ public class DiskPicasso {
         }
         return Collections.emptyList();
     }
+
+    /**
+     * Create a loader of a cache file decoded by the cache request handler.
+     *
+     * @param picasso   Picasso instance.
+     * @param cacheFile The cache file.
+     * @param fileKey   Source file key.
+     * @param width     Cached image width.
+     * @param height    Cached image height.
+     * @param config    Cached bitmap config.
+     * @return Request creator.
+     */
+    private static RequestCreator cacheLoader(Picasso picasso, File cacheFile, String fileKey, int width, int height, Config config) {
+        final long primaryKey = CacheEntry.calcPrimaryKey(fileKey, width, height, PixelConfigs.from(config));
+        return picasso.load(CacheRequestHandler.createUri(cacheFile, width, height, primaryKey)).config(config);
+    }
 }
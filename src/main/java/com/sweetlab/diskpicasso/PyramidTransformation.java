@@ -0,0 +1,130 @@
+package com.sweetlab.diskpicasso;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Transformation;
+import com.sweetlab.diskpicasso.core.Downscaler;
+import com.sweetlab.diskpicasso.platform.BitmapImage;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Disk cache write transformation producing several variants from one decode. Each level is
+ * given as its longest edge, keeps the aspect ratio of the source and is downscaled from the
+ * previous, larger, level, with the lanczos filter of the downscaler if set. Levels larger than
+ * the source are written at source size. The source is returned untouched.
+ */
+public class PyramidTransformation implements Transformation {
+    private final String mFileKey;
+    private final String mSourcePath;
+    private final int[] mLevels;
+    private DiskCache mDiskCache;
+    private Downscaler mDownscaler;
+
+    /**
+     * Constructor.
+     *
+     * @param fileKey    Source file key.
+     * @param sourcePath Source file path to original image or null, used for the fingerprint.
+     * @param levels     Longest edge of each level, in any order.
+     */
+    public PyramidTransformation(String fileKey, String sourcePath, int... levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("No pyramid levels");
+        }
+        mFileKey = fileKey;
+        mSourcePath = sourcePath;
+        mLevels = levels.clone();
+        Arrays.sort(mLevels);
+    }
+
+    /**
+     * Use this method to enable disk cache write.
+     *
+     * @param diskCache The cache to use.
+     */
+    public void enableDiskWrite(DiskCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * Set the downscaler of the levels, otherwise they are scaled by the bitmap.
+     *
+     * @param downscaler The downscaler or null.
+     */
+    public void setDownscaler(Downscaler downscaler) {
+        mDownscaler = downscaler;
+    }
+
+    /**
+     * Get the largest level.
+     *
+     * @return Longest edge of the largest level.
+     */
+    public int getLargestLevel() {
+        return mLevels[mLevels.length - 1];
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        if (mDiskCache != null) {
+            final long fingerprint = mSourcePath != null ? SourceFingerprint.fromMetadata(new File(mSourcePath)) : SourceFingerprint.NONE;
+            mDiskCache.putAll(mFileKey, createLevels(source), fingerprint);
+        }
+        return source;
+    }
+
+    @Override
+    public String key() {
+        return mFileKey + Arrays.toString(mLevels);
+    }
+
+    /**
+     * Create the levels from largest to smallest, each scaled from the previous level.
+     *
+     * @param source The decoded source.
+     * @return The levels with distinct sizes.
+     */
+    private List<BitmapImage> createLevels(Bitmap source) {
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+        final int sourceEdge = Math.max(sourceWidth, sourceHeight);
+
+        final Downscaler downscaler = mDownscaler;
+        final Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        int[] pixels = null;
+
+        List<BitmapImage> images = new ArrayList<>(mLevels.length);
+        Bitmap previous = source;
+        for (int i = mLevels.length - 1; i >= 0; i--) {
+            final int edge = Math.min(mLevels[i], sourceEdge);
+            final int width = Math.max(1, Math.round((float) sourceWidth * edge / sourceEdge));
+            final int height = Math.max(1, Math.round((float) sourceHeight * edge / sourceEdge));
+            final int previousWidth = previous.getWidth();
+            final int previousHeight = previous.getHeight();
+            if (!images.isEmpty() && previousWidth == width && previousHeight == height) {
+                continue;
+            }
+            Bitmap level;
+            if (downscaler == null) {
+                level = Bitmap.createScaledBitmap(previous, width, height, true);
+            } else if (previousWidth == width && previousHeight == height) {
+                level = previous;
+            } else {
+                if (pixels == null) {
+                    pixels = new int[previousWidth * previousHeight];
+                    previous.getPixels(pixels, 0, previousWidth, 0, 0, previousWidth, previousHeight);
+                }
+                pixels = downscaler.scale(pixels, previousWidth, previousHeight, width, height, Downscaler.Filter.LANCZOS3);
+                level = Bitmap.createBitmap(pixels, width, height, config);
+            }
+            images.add(new BitmapImage(level));
+            previous = level;
+        }
+        return images;
+    }
+}
@@ -5,12 +5,21 @@ import android.content.Context;
 import com.squareup.picasso.LruCache;
 import com.squareup.picasso.Picasso;
 import com.sweetlab.diskpicasso.executor.CacheExecutor;
+import com.sweetlab.diskpicasso.filesystem.EncodedByteCache;
+import com.sweetlab.diskpicasso.platform.BitmapPool;
+import com.sweetlab.diskpicasso.platform.CacheRequestHandler;
 
 /**
  * Picasso as a singleton. Needs to be initialized.
  * This class solely provides a picasso instance.
  */
 public class SinglePicasso {
+    /**
+     * Default share of the memory cache size used for the bitmap pool.
+     */
+    private static final int POOL_SIZE_DIVISOR = 4;
+    private static final BitmapPool sBitmapPool = new BitmapPool(0);
+    private static final CacheRequestHandler sCacheRequestHandler = new CacheRequestHandler(sBitmapPool);
     private static Picasso sPicassoInstance;
 
     /**
@@ -21,11 +30,27 @@ public class SinglePicasso {
      * @param indicatorEnabled     Enable indicator or not.
      * @param loggingEnabled       Enable logging or not.
      */
-    public synchronized static void init(Context context, int memoryCacheSizeBytes, boolean indicatorEnabled, boolean loggingEnabled) {
+    public static void init(Context context, int memoryCacheSizeBytes, boolean indicatorEnabled, boolean loggingEnabled) {
+        init(context, memoryCacheSizeBytes, memoryCacheSizeBytes / POOL_SIZE_DIVISOR, indicatorEnabled, loggingEnabled);
+    }
+
+    /**
+     * Initialize picasso with a given bitmap pool size.
+     *
+     * @param context              Android application context preferably.
+     * @param memoryCacheSizeBytes Memory cache byte size.
+     * @param bitmapPoolSizeBytes  Bitmap pool byte size, 0 to disable pooling.
+     * @param indicatorEnabled     Enable indicator or not.
+     * @param loggingEnabled       Enable logging or not.
+     */
+    public synchronized static void init(Context context, int memoryCacheSizeBytes, int bitmapPoolSizeBytes, boolean indicatorEnabled, boolean loggingEnabled) {
         if (sPicassoInstance == null) {
             Picasso.Builder builder = new Picasso.Builder(context);
             builder.memoryCache(new LruCache(memoryCacheSizeBytes));
 
+            sBitmapPool.setMaxSize(bitmapPoolSizeBytes);
+            builder.addRequestHandler(sCacheRequestHandler);
+
             CacheExecutor executor = new CacheExecutor.Builder().setCore(1).setMax(2).build();
             builder.executor(executor);
 
@@ -44,6 +69,26 @@ public class SinglePicasso {
         return sPicassoInstance;
     }
 
+    /**
+     * Get the bitmap pool cache files are decoded into. Give bitmaps that are no longer displayed
+     * to the pool, for example bitmaps of recycled list items loaded without storing them in the
+     * picasso memory cache.
+     *
+     * @return The bitmap pool.
+     */
+    public static BitmapPool getBitmapPool() {
+        return sBitmapPool;
+    }
+
+    /**
+     * Let cache file loads use the encoded byte cache of the disk cache.
+     *
+     * @param byteCache The byte cache or null for none.
+     */
+    static void setByteCache(EncodedByteCache byteCache) {
+        sCacheRequestHandler.setByteCache(byteCache);
+    }
+
     /**
      * Hide this to enforce initialization.
      */
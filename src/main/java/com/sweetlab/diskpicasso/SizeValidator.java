@@ -1,6 +1,6 @@
 package com.sweetlab.diskpicasso;
 
-import android.graphics.Bitmap;
+import com.sweetlab.diskpicasso.core.PixelConfig;
 
 import java.util.List;
 
@@ -12,10 +12,10 @@ public class SizeValidator {
      * @param list    List of cache entries
      * @param resizeX Resize x value or 0 if unknown.
      * @param resizeY Resize y value or 0 if unknown.
-     * @param config  Bitmap config.
+     * @param config  Pixel config.
      * @return The cache entry or null of not found.
      */
-    public static CacheEntry findMatch(List<CacheEntry> list, int resizeX, int resizeY, Bitmap.Config config) {
+    public static CacheEntry findMatch(List<CacheEntry> list, int resizeX, int resizeY, PixelConfig config) {
         for (CacheEntry entry : list) {
             if (isMatch(entry, resizeX, resizeY, config)) {
                 return entry;
@@ -30,10 +30,10 @@ public class SizeValidator {
      * @param entry   The cache entry to validate.
      * @param resizeX Resize x value or 0 if unknown.
      * @param resizeY Resize y value or 0 if unknown.
-     * @param config  Bitmap config.
+     * @param config  Pixel config.
      * @return True if match.
      */
-    public static boolean isMatch(CacheEntry entry, int resizeX, int resizeY, Bitmap.Config config) {
+    public static boolean isMatch(CacheEntry entry, int resizeX, int resizeY, PixelConfig config) {
         int width = entry.getWidth();
         int height = entry.getHeight();
 
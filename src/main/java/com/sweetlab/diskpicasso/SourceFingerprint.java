@@ -0,0 +1,97 @@
+package com.sweetlab.diskpicasso;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+/**
+ * Cheap fingerprint of a source file, stored with each cache entry so a cached variant of an
+ * edited or replaced source can be detected. The metadata fingerprint only needs a stat of the
+ * file, the sampled fingerprint additionally hashes a few blocks of the content.
+ */
+public class SourceFingerprint {
+    /**
+     * Unknown fingerprint, never considered stale.
+     */
+    public static final long NONE = 0;
+
+    /**
+     * Size of each sampled content block.
+     */
+    private static final int SAMPLE_BYTES = 4096;
+
+    /**
+     * Fingerprint from file size and modification time.
+     *
+     * @param source The source file.
+     * @return The fingerprint or NONE if the file does not exist.
+     */
+    public static long fromMetadata(File source) {
+        final long length = source.length();
+        final long modified = source.lastModified();
+        if (length == 0 && modified == 0) {
+            return NONE;
+        }
+        return nonZero(mix(length * 31 + modified));
+    }
+
+    /**
+     * Fingerprint from file size, modification time and a hash of the first, middle and last
+     * content blocks. Detects replacements that keep size and modification time.
+     *
+     * @param source The source file.
+     * @return The fingerprint or NONE if the file can not be read.
+     */
+    public static long fromSampledContent(File source) {
+        final long metadata = fromMetadata(source);
+        if (metadata == NONE) {
+            return NONE;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(source, "r");
+            final long length = file.length();
+            final byte[] block = new byte[SAMPLE_BYTES];
+            CRC32 crc = new CRC32();
+            sample(file, 0, block, crc);
+            sample(file, length / 2, block, crc);
+            sample(file, length - SAMPLE_BYTES, block, crc);
+            return nonZero(mix(metadata * 31 + crc.getValue()));
+        } catch (IOException e) {
+            return NONE;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void sample(RandomAccessFile file, long position, byte[] block, CRC32 crc) throws IOException {
+        file.seek(Math.max(0, position));
+        final int read = file.read(block);
+        if (read > 0) {
+            crc.update(block, 0, read);
+        }
+    }
+
+    /**
+     * Spread the bits so close sizes and times do not collide.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static long nonZero(long value) {
+        return value == NONE ? 1 : value;
+    }
+
+    private SourceFingerprint() {
+    }
+}
@@ -0,0 +1,19 @@
+package com.sweetlab.diskpicasso.core;
+
+import java.io.File;
+
+/**
+ * Bounds reader SPI. Reads the size of an encoded cache file from its header without decoding
+ * the pixels, used to rebuild a lost index from the cache files. Called from several threads
+ * at once.
+ */
+public interface BoundsReader {
+    /**
+     * Read the width and the height of an encoded image.
+     *
+     * @param file The cache file.
+     * @param size Filled with the width and the height.
+     * @return True if read, false if the file is not a readable image.
+     */
+    boolean readBounds(File file, int[] size);
+}
@@ -0,0 +1,363 @@
+package com.sweetlab.diskpicasso.core;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downscaler of ARGB pixels with a separable box or Lanczos filter, used to generate variants.
+ * Filter weights are computed once per scale in 14 bit fixed point. The vertical filter runs
+ * first, adding the weighted channels of whole source rows into one array per channel, a plain
+ * loop over int arrays the JIT compiles to vector instructions where the cpu has them. The
+ * horizontal filter then only runs on output rows. Channels are filtered independently, alpha
+ * is not premultiplied.
+ * <p/>
+ * Large images are split into bands of output rows taken by the calling thread and helper
+ * threads until none are left, each band filtering the source rows it needs by itself. Thread
+ * safe, scales may run at the same time and share the helpers.
+ */
+public class Downscaler {
+    /**
+     * Filter of a scale.
+     */
+    public enum Filter {
+        /**
+         * Average of the source area covered by each pixel.
+         */
+        BOX(0.5),
+        /**
+         * Lanczos windowed sinc with three lobes, sharper than box with slight ringing.
+         */
+        LANCZOS3(3);
+
+        private final double mRadius;
+
+        Filter(double radius) {
+            mRadius = radius;
+        }
+    }
+
+    /**
+     * Output rows per band and the least number of source pixels scaled on several threads.
+     */
+    public static final int BAND_ROWS = 64;
+    public static final int PARALLEL_PIXELS = 512 * 1024;
+
+    /**
+     * Lanczos scales by more than the ratio are first box filtered to the size times the
+     * preshrink size, so the lanczos window stays small.
+     */
+    private static final int PRESHRINK_RATIO = 3;
+    private static final int PRESHRINK_SIZE = 2;
+
+    private static final int WEIGHT_BITS = 14;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    /**
+     * Vertically filtered values keep four fraction bits, so the horizontal sum fits an int.
+     */
+    private static final int VERTICAL_SHIFT = WEIGHT_BITS - 4;
+    private static final int HORIZONTAL_SHIFT = 2 * WEIGHT_BITS - VERTICAL_SHIFT;
+    private static final int CHANNELS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final int mThreads;
+    private final ThreadPoolExecutor mHelpers;
+
+    /**
+     * Filter weights of one direction, a fixed number of taps per output pixel starting at a
+     * source index.
+     */
+    private static class Weights {
+        private final int[] mStart;
+        private final int[] mWeights;
+        private final int mTaps;
+
+        Weights(int[] start, int[] weights, int taps) {
+            mStart = start;
+            mWeights = weights;
+            mTaps = taps;
+        }
+    }
+
+    /**
+     * Constructor. Helper threads are started when needed and stop when idle.
+     *
+     * @param threads Number of threads per scale, the calling thread being one.
+     */
+    public Downscaler(int threads) {
+        mThreads = Math.max(1, threads);
+        if (mThreads > 1) {
+            mHelpers = new ThreadPoolExecutor(mThreads - 1, mThreads - 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "PabloScale-" + mCount.incrementAndGet());
+                }
+            });
+            mHelpers.allowCoreThreadTimeOut(true);
+        } else {
+            mHelpers = null;
+        }
+    }
+
+    /**
+     * Get the number of threads per scale.
+     *
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return mThreads;
+    }
+
+    /**
+     * Scale pixels into a new array.
+     *
+     * @param src       Source pixels, row by row.
+     * @param srcWidth  Source width.
+     * @param srcHeight Source height.
+     * @param dstWidth  Scaled width.
+     * @param dstHeight Scaled height.
+     * @param filter    The filter.
+     * @return The scaled pixels.
+     */
+    public int[] scale(int[] src, int srcWidth, int srcHeight, int dstWidth, int dstHeight, Filter filter) {
+        int[] dst = new int[dstWidth * dstHeight];
+        scale(src, srcWidth, srcHeight, dst, dstWidth, dstHeight, filter);
+        return dst;
+    }
+
+    /**
+     * Scale pixels. Works for upscaling too, though made for downscaling. Lanczos scales by
+     * more than three are box filtered to twice the size first.
+     *
+     * @param src       Source pixels, row by row.
+     * @param srcWidth  Source width.
+     * @param srcHeight Source height.
+     * @param dst       Scaled pixels, row by row, not the source.
+     * @param dstWidth  Scaled width.
+     * @param dstHeight Scaled height.
+     * @param filter    The filter.
+     */
+    public void scale(final int[] src, final int srcWidth, int srcHeight, final int[] dst, final int dstWidth, final int dstHeight,
+                      Filter filter) {
+        if (srcWidth <= 0 || srcHeight <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+            throw new IllegalArgumentException("Invalid size " + srcWidth + "x" + srcHeight + " to " + dstWidth + "x" + dstHeight);
+        }
+        if (src.length < srcWidth * srcHeight || dst.length < dstWidth * dstHeight) {
+            throw new IllegalArgumentException("Pixel arrays too small");
+        }
+        if (filter == Filter.LANCZOS3 && (srcWidth > PRESHRINK_RATIO * dstWidth || srcHeight > PRESHRINK_RATIO * dstHeight)) {
+            final int width = Math.min(srcWidth, PRESHRINK_SIZE * dstWidth);
+            final int height = Math.min(srcHeight, PRESHRINK_SIZE * dstHeight);
+            scale(scale(src, srcWidth, srcHeight, width, height, Filter.BOX), width, height, dst, dstWidth, dstHeight, filter);
+            return;
+        }
+        final Weights horizontal = calcWeights(srcWidth, dstWidth, filter);
+        final Weights vertical = calcWeights(srcHeight, dstHeight, filter);
+        final int bands = (dstHeight + BAND_ROWS - 1) / BAND_ROWS;
+        final int helpers = mHelpers == null || (long) srcWidth * srcHeight < PARALLEL_PIXELS ? 0 : Math.min(mThreads, bands) - 1;
+        if (helpers <= 0) {
+            scaleRows(src, srcWidth, dst, dstWidth, horizontal, vertical, 0, dstHeight);
+            return;
+        }
+
+        final AtomicInteger nextBand = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(bands);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int band;
+                while ((band = nextBand.getAndIncrement()) < bands) {
+                    try {
+                        scaleRows(src, srcWidth, dst, dstWidth, horizontal, vertical, band * BAND_ROWS,
+                                Math.min(dstHeight, (band + 1) * BAND_ROWS));
+                    } catch (RuntimeException | Error e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        try {
+            for (int i = 0; i < helpers; i++) {
+                mHelpers.execute(worker);
+            }
+        } catch (RejectedExecutionException e) {
+            // Shut down, the calling thread takes the bands left.
+        }
+        worker.run();
+        awaitBands(done);
+
+        Throwable thrown = failure.get();
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        } else if (thrown != null) {
+            throw (Error) thrown;
+        }
+    }
+
+    /**
+     * Stop the helper threads, scales after this run on the calling thread only.
+     */
+    public void shutdown() {
+        if (mHelpers != null) {
+            mHelpers.shutdown();
+        }
+    }
+
+    /**
+     * Wait for the bands taken by helpers, keeping the interrupt for the caller since the
+     * pixels are in use until the bands are done.
+     */
+    private static void awaitBands(CountDownLatch done) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scale a band of output rows.
+     */
+    private static void scaleRows(int[] src, int srcWidth, int[] dst, int dstWidth, Weights horizontal, Weights vertical,
+                                  int firstRow, int endRow) {
+        final int taps = vertical.mTaps;
+        final int planeInts = CHANNELS * srcWidth;
+        final int[] column = new int[planeInts];
+        final int r = srcWidth;
+        final int g = 2 * srcWidth;
+        final int b = 3 * srcWidth;
+
+        for (int y = firstRow; y < endRow; y++) {
+            Arrays.fill(column, 0);
+            final int start = vertical.mStart[y];
+            final int weightOffset = y * taps;
+            for (int k = 0; k < taps; k++) {
+                final int weight = vertical.mWeights[weightOffset + k];
+                if (weight == 0) {
+                    continue;
+                }
+                final int offset = (start + k) * srcWidth;
+                for (int x = 0; x < srcWidth; x++) {
+                    final int pixel = src[offset + x];
+                    column[x] += weight * (pixel >>> 24);
+                    column[r + x] += weight * ((pixel >> 16) & 0xff);
+                    column[g + x] += weight * ((pixel >> 8) & 0xff);
+                    column[b + x] += weight * (pixel & 0xff);
+                }
+            }
+            final int round = 1 << (VERTICAL_SHIFT - 1);
+            for (int i = 0; i < planeInts; i++) {
+                column[i] = (column[i] + round) >> VERTICAL_SHIFT;
+            }
+            filterRow(column, srcWidth, horizontal, dst, y * dstWidth, dstWidth);
+        }
+    }
+
+    /**
+     * Filter one vertically filtered row horizontally and pack the pixels.
+     */
+    private static void filterRow(int[] column, int srcWidth, Weights horizontal, int[] dst, int dstOffset, int dstWidth) {
+        final int taps = horizontal.mTaps;
+        final int round = 1 << (HORIZONTAL_SHIFT - 1);
+        for (int x = 0; x < dstWidth; x++) {
+            final int first = horizontal.mStart[x];
+            final int weights = x * taps;
+            int a = 0;
+            int r = 0;
+            int g = 0;
+            int b = 0;
+            for (int k = 0; k < taps; k++) {
+                final int weight = horizontal.mWeights[weights + k];
+                final int i = first + k;
+                a += weight * column[i];
+                r += weight * column[srcWidth + i];
+                g += weight * column[2 * srcWidth + i];
+                b += weight * column[3 * srcWidth + i];
+            }
+            dst[dstOffset + x] = clamp((a + round) >> HORIZONTAL_SHIFT) << 24 | clamp((r + round) >> HORIZONTAL_SHIFT) << 16 |
+                    clamp((g + round) >> HORIZONTAL_SHIFT) << 8 | clamp((b + round) >> HORIZONTAL_SHIFT);
+        }
+    }
+
+    /**
+     * Calculate the weights of one direction. Taps outside the source are folded into the edge
+     * pixel and the weights of each output pixel add up to one.
+     */
+    private static Weights calcWeights(int srcSize, int dstSize, Filter filter) {
+        final double scale = (double) srcSize / dstSize;
+        final double stretch = Math.max(scale, 1);
+        final double support = filter.mRadius * stretch;
+        final int span = (int) Math.ceil(2 * support) + 1;
+        final int taps = Math.min(srcSize, span);
+        final int[] starts = new int[dstSize];
+        final int[] weights = new int[dstSize * taps];
+        final double[] exact = new double[taps];
+
+        for (int i = 0; i < dstSize; i++) {
+            final double center = (i + 0.5) * scale;
+            final int left = (int) Math.floor(center - support);
+            final int start = Math.min(Math.max(left, 0), srcSize - taps);
+            Arrays.fill(exact, 0);
+            double total = 0;
+            for (int j = left; j < left + span; j++) {
+                final double weight;
+                if (filter == Filter.BOX) {
+                    weight = Math.max(0, Math.min(j + 1, center + stretch / 2) - Math.max(j, center - stretch / 2));
+                } else {
+                    weight = lanczos((j + 0.5 - center) / stretch, filter.mRadius);
+                }
+                exact[Math.min(Math.max(j, 0), srcSize - 1) - start] += weight;
+                total += weight;
+            }
+
+            int sum = 0;
+            int largest = 0;
+            for (int k = 0; k < taps; k++) {
+                final int weight = (int) Math.round(exact[k] / total * WEIGHT_ONE);
+                weights[i * taps + k] = weight;
+                sum += weight;
+                if (Math.abs(weight) > Math.abs(weights[i * taps + largest])) {
+                    largest = k;
+                }
+            }
+            weights[i * taps + largest] += WEIGHT_ONE - sum;
+            starts[i] = start;
+        }
+        return new Weights(starts, weights, taps);
+    }
+
+    private static double lanczos(double x, double radius) {
+        if (x == 0) {
+            return 1;
+        }
+        if (x <= -radius || x >= radius) {
+            return 0;
+        }
+        final double px = Math.PI * x;
+        return radius * Math.sin(px) * Math.sin(px / radius) / (px * px);
+    }
+
+    private static int clamp(int value) {
+        return (value & ~0xff) == 0 ? value : (value < 0 ? 0 : 0xff);
+    }
+}
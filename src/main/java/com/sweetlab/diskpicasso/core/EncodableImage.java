@@ -0,0 +1,27 @@
+package com.sweetlab.diskpicasso.core;
+
+/**
+ * An image that can be encoded into the cache by an {@link ImageEncoder}.
+ */
+public interface EncodableImage {
+    /**
+     * Get the image width.
+     *
+     * @return The width in pixels.
+     */
+    int getWidth();
+
+    /**
+     * Get the image height.
+     *
+     * @return The height in pixels.
+     */
+    int getHeight();
+
+    /**
+     * Get the pixel config.
+     *
+     * @return The pixel config.
+     */
+    PixelConfig getPixelConfig();
+}
@@ -0,0 +1,29 @@
+package com.sweetlab.diskpicasso.core;
+
+import java.io.IOException;
+
+/**
+ * Decoder SPI. Produces a downscaled image from a source file without holding the full size
+ * original in memory.
+ */
+public interface ImageDecoder {
+    /**
+     * Decode a source file into an image of exactly the requested size.
+     *
+     * @param sourcePath Path to the source image.
+     * @param width      Requested width.
+     * @param height     Requested height.
+     * @param config     Requested pixel config.
+     * @param centerCrop True to crop the source to the requested aspect ratio, false to scale it.
+     * @return The decoded image.
+     * @throws IOException If fails.
+     */
+    EncodableImage decode(String sourcePath, int width, int height, PixelConfig config, boolean centerCrop) throws IOException;
+
+    /**
+     * Release the memory of an image returned by decode.
+     *
+     * @param image The image to release.
+     */
+    void release(EncodableImage image);
+}
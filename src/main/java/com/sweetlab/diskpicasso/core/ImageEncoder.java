@@ -0,0 +1,18 @@
+package com.sweetlab.diskpicasso.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoder SPI. Compresses an image into the bytes stored in a cache file.
+ */
+public interface ImageEncoder {
+    /**
+     * Encode image into stream.
+     *
+     * @param image The image to encode.
+     * @param out   Stream to write the encoded image to. Must not be closed by the encoder.
+     * @throws IOException If fails.
+     */
+    void encode(EncodableImage image, OutputStream out) throws IOException;
+}
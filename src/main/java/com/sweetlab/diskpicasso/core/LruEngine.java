@@ -0,0 +1,199 @@
+package com.sweetlab.diskpicasso.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size limited least recently used map. Same contract as android.util.LruCache but usable on
+ * any JVM. All methods are thread safe and synchronize on the engine, so a caller holding its
+ * monitor can make several calls with one lock acquisition. entryRemoved is called without
+ * holding the lock.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class LruEngine<K, V> {
+    private final LinkedHashMap<K, V> mMap;
+    private long mSize;
+    private long mMaxSize;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize Max total size of all entries as given by sizeOf.
+     */
+    public LruEngine(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mMap = new LinkedHashMap<>(0, 0.75f, true);
+    }
+
+    /**
+     * Get value and mark it as most recently used.
+     *
+     * @param key The key.
+     * @return The value or null if not found.
+     */
+    public final synchronized V get(K key) {
+        return mMap.get(key);
+    }
+
+    /**
+     * Put value, the value becomes most recently used. Evicts least recently used entries if
+     * needed.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @return The previous value or null.
+     */
+    public final V put(K key, V value) {
+        V previous;
+        synchronized (this) {
+            mSize += safeSizeOf(key, value);
+            previous = mMap.put(key, value);
+            if (previous != null) {
+                mSize -= safeSizeOf(key, previous);
+            }
+        }
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+        trimToSize(maxSize());
+        return previous;
+    }
+
+    /**
+     * Remove value.
+     *
+     * @param key The key.
+     * @return The removed value or null.
+     */
+    public final V remove(K key) {
+        V previous;
+        synchronized (this) {
+            previous = mMap.remove(key);
+            if (previous != null) {
+                mSize -= safeSizeOf(key, previous);
+            }
+        }
+        if (previous != null) {
+            entryRemoved(false, key, previous, null);
+        }
+        return previous;
+    }
+
+    /**
+     * Evict least recently used entries until total size is below given size.
+     *
+     * @param maxSize Size to trim to, -1 to evict everything.
+     */
+    public void trimToSize(long maxSize) {
+        while (true) {
+            K key;
+            V value;
+            synchronized (this) {
+                if (mSize <= maxSize || mMap.isEmpty()) {
+                    break;
+                }
+                Iterator<Map.Entry<K, V>> iterator = mMap.entrySet().iterator();
+                Map.Entry<K, V> eldest = iterator.next();
+                key = eldest.getKey();
+                value = eldest.getValue();
+                iterator.remove();
+                mSize -= safeSizeOf(key, value);
+            }
+            entryRemoved(true, key, value, null);
+        }
+    }
+
+    /**
+     * Evict all entries.
+     */
+    public final void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * Get the total size of all entries.
+     *
+     * @return The size.
+     */
+    public final synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * Get the max size.
+     *
+     * @return The max size.
+     */
+    public final synchronized long maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Change the max size, evicting least recently used entries if the content no longer fits.
+     *
+     * @param maxSize New max total size of all entries.
+     */
+    public final void resize(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        synchronized (this) {
+            mMaxSize = maxSize;
+        }
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Get number of entries.
+     *
+     * @return The entry count.
+     */
+    public final synchronized int count() {
+        return mMap.size();
+    }
+
+    /**
+     * Get a copy of the content ordered from least to most recently used.
+     *
+     * @return The copy.
+     */
+    public final synchronized Map<K, V> snapshot() {
+        return new LinkedHashMap<>(mMap);
+    }
+
+    /**
+     * Size of an entry in user defined units. Default 1, override to limit by other units.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @return The size, must not change while in the cache.
+     */
+    protected long sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Called when an entry is evicted, removed or replaced.
+     *
+     * @param evicted  True if removed to make space, false if removed or replaced.
+     * @param key      The key.
+     * @param oldValue The removed value.
+     * @param newValue The replacing value or null.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {
+    }
+
+    private long safeSizeOf(K key, V value) {
+        long result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+}
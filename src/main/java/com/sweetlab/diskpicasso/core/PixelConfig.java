@@ -0,0 +1,27 @@
+package com.sweetlab.diskpicasso.core;
+
+/**
+ * Platform independent pixel configuration of a cached image. Names match the Android bitmap
+ * configs so persisted journals stay readable.
+ */
+public enum PixelConfig {
+    ALPHA_8(1),
+    RGB_565(2),
+    ARGB_4444(2),
+    ARGB_8888(4);
+
+    private final int mBytesPerPixel;
+
+    PixelConfig(int bytesPerPixel) {
+        mBytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * Get number of bytes used per pixel when decoded.
+     *
+     * @return Bytes per pixel.
+     */
+    public int getBytesPerPixel() {
+        return mBytesPerPixel;
+    }
+}
@@ -0,0 +1,123 @@
+package com.sweetlab.diskpicasso.core;
+
+/**
+ * Tiny preview of a cached image, kept inline in the journal and the index so it is shown
+ * without disk access while a variant is missing. A placeholder is a byte array holding the
+ * width and the height as one unsigned byte each, followed by the pixels row by row in RGB 565,
+ * two bytes per pixel little endian like an Android RGB_565 bitmap buffer. At most
+ * {@link #MAX_SIZE} pixels wide and high, so at most 514 bytes.
+ */
+public final class Placeholder {
+    /**
+     * Max width and height in pixels.
+     */
+    public static final int MAX_SIZE = 16;
+
+    /**
+     * Bytes before the pixels.
+     */
+    public static final int HEADER_BYTES = 2;
+
+    private Placeholder() {
+    }
+
+    /**
+     * Calculate the placeholder width of an image, keeping its aspect ratio. Small images are not
+     * scaled up.
+     *
+     * @param width  Image width.
+     * @param height Image height.
+     * @return Width in pixels, at least 1.
+     */
+    public static int calcWidth(int width, int height) {
+        final int longest = Math.max(width, height);
+        return longest <= MAX_SIZE ? width : Math.max(1, (int) ((long) width * MAX_SIZE / longest));
+    }
+
+    /**
+     * Calculate the placeholder height of an image, keeping its aspect ratio.
+     *
+     * @param width  Image width.
+     * @param height Image height.
+     * @return Height in pixels, at least 1.
+     */
+    public static int calcHeight(int width, int height) {
+        return calcWidth(height, width);
+    }
+
+    /**
+     * Allocate a placeholder with the header written.
+     *
+     * @param width  Width in pixels, at most {@link #MAX_SIZE}.
+     * @param height Height in pixels, at most {@link #MAX_SIZE}.
+     * @return The placeholder, all pixels black.
+     */
+    public static byte[] allocate(int width, int height) {
+        if (width < 1 || height < 1 || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Bad placeholder size " + width + "x" + height);
+        }
+        byte[] placeholder = new byte[HEADER_BYTES + width * height * 2];
+        placeholder[0] = (byte) width;
+        placeholder[1] = (byte) height;
+        return placeholder;
+    }
+
+    /**
+     * Set a pixel.
+     *
+     * @param placeholder The placeholder.
+     * @param x           Column.
+     * @param y           Row.
+     * @param argb        Color as ARGB 8888, alpha is ignored.
+     */
+    public static void setPixel(byte[] placeholder, int x, int y, int argb) {
+        final int rgb565 = ((argb >> 8) & 0xf800) | ((argb >> 5) & 0x07e0) | ((argb >> 3) & 0x001f);
+        final int offset = HEADER_BYTES + (y * getWidth(placeholder) + x) * 2;
+        placeholder[offset] = (byte) rgb565;
+        placeholder[offset + 1] = (byte) (rgb565 >> 8);
+    }
+
+    /**
+     * Get a pixel.
+     *
+     * @param placeholder The placeholder.
+     * @param x           Column.
+     * @param y           Row.
+     * @return Opaque color as ARGB 8888.
+     */
+    public static int getPixel(byte[] placeholder, int x, int y) {
+        final int offset = HEADER_BYTES + (y * getWidth(placeholder) + x) * 2;
+        final int rgb565 = (placeholder[offset] & 0xff) | ((placeholder[offset + 1] & 0xff) << 8);
+        final int r = (rgb565 >> 11) & 0x1f;
+        final int g = (rgb565 >> 5) & 0x3f;
+        final int b = rgb565 & 0x1f;
+        return 0xff000000 | ((r << 3 | r >> 2) << 16) | ((g << 2 | g >> 4) << 8) | (b << 3 | b >> 2);
+    }
+
+    public static int getWidth(byte[] placeholder) {
+        return placeholder[0] & 0xff;
+    }
+
+    public static int getHeight(byte[] placeholder) {
+        return placeholder[1] & 0xff;
+    }
+
+    /**
+     * Check that a placeholder read from storage is well formed.
+     *
+     * @param placeholder The placeholder or null.
+     * @return True if null or well formed.
+     */
+    public static boolean isValid(byte[] placeholder) {
+        if (placeholder == null) {
+            return true;
+        }
+        if (placeholder.length < HEADER_BYTES) {
+            return false;
+        }
+        final int width = getWidth(placeholder);
+        final int height = getHeight(placeholder);
+        return width >= 1 && height >= 1 && width <= MAX_SIZE && height <= MAX_SIZE &&
+                placeholder.length == HEADER_BYTES + width * height * 2;
+    }
+}
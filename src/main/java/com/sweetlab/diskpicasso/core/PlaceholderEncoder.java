@@ -0,0 +1,17 @@
+package com.sweetlab.diskpicasso.core;
+
+/**
+ * Placeholder encoder SPI. Scales an image down to the tiny preview stored inline with its
+ * cache entry, see {@link Placeholder}. Called on the encode thread for every image put.
+ */
+public interface PlaceholderEncoder {
+    /**
+     * Scale an image down to a placeholder of {@link Placeholder#calcWidth(int, int)} by
+     * {@link Placeholder#calcHeight(int, int)} pixels. Averaging the pixels covered by each
+     * placeholder pixel gives the best preview, a filtered scale is good enough.
+     *
+     * @param image The image.
+     * @return The placeholder or null if the image can not be scaled.
+     */
+    byte[] encodePlaceholder(EncodableImage image);
+}
@@ -0,0 +1,63 @@
+package com.sweetlab.diskpicasso.core;
+
+import java.io.IOException;
+
+/**
+ * Region decoder SPI. Decodes subsampled regions of a source file, so tiles of a very large
+ * image are produced without decoding the whole image.
+ */
+public interface RegionDecoder {
+    /**
+     * A source opened for decoding regions. Not thread safe, close when done.
+     */
+    interface Source {
+        /**
+         * Get the width of the source.
+         *
+         * @return Width in pixels.
+         */
+        int getWidth();
+
+        /**
+         * Get the height of the source.
+         *
+         * @return Height in pixels.
+         */
+        int getHeight();
+
+        /**
+         * Decode a region of the source.
+         *
+         * @param left       Left edge in source pixels.
+         * @param top        Top edge in source pixels.
+         * @param right      Right edge in source pixels, exclusive.
+         * @param bottom     Bottom edge in source pixels, exclusive.
+         * @param sampleSize Power of two number of source pixels per decoded pixel.
+         * @param config     Requested pixel config.
+         * @return The decoded region.
+         * @throws IOException If fails.
+         */
+        EncodableImage decode(int left, int top, int right, int bottom, int sampleSize, PixelConfig config) throws IOException;
+
+        /**
+         * Release the memory of an image returned by decode.
+         *
+         * @param image The image to release.
+         */
+        void release(EncodableImage image);
+
+        /**
+         * Release the source.
+         */
+        void close();
+    }
+
+    /**
+     * Open a source file for decoding regions.
+     *
+     * @param sourcePath Path to the source image.
+     * @return The opened source.
+     * @throws IOException If the source could not be opened or does not support regions.
+     */
+    Source open(String sourcePath) throws IOException;
+}
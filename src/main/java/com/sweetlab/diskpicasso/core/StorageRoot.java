@@ -0,0 +1,23 @@
+package com.sweetlab.diskpicasso.core;
+
+import java.io.File;
+
+/**
+ * Location of the cache files.
+ */
+public interface StorageRoot {
+    /**
+     * Get the directory all cache files are stored below. The cache owns the directory.
+     *
+     * @return The root directory.
+     */
+    File getDirectory();
+
+    /**
+     * Get the block size of the file system holding the directory. Every file takes a whole
+     * number of blocks on disk.
+     *
+     * @return Block size in bytes.
+     */
+    int getBlockSize();
+}
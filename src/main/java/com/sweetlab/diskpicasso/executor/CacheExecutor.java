@@ -14,10 +14,13 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
- * Use the Builder to configure the executor. See Builder for default values.
+ * Use the Builder to configure the executor. See Builder for default values. The executor can
+ * be paused, tasks already running finish and queued tasks wait until it is resumed.
  */
 public class CacheExecutor implements ExecutorService {
     private final ThreadPoolExecutor mExecutor;
+    private final Object mPauseLock = new Object();
+    private boolean mPaused;
 
     /**
      * Default one single background thread with 1 minute timeout using a min thread priority.
@@ -84,10 +87,65 @@ public class CacheExecutor implements ExecutorService {
     }
 
     private CacheExecutor(int core, int max, TimeUnit timeUnit, int timeOut, ThreadFactory factory, BlockingQueue<Runnable> queue) {
-        mExecutor = new ThreadPoolExecutor(core, max, timeOut, timeUnit, queue, factory);
+        mExecutor = new ThreadPoolExecutor(core, max, timeOut, timeUnit, queue, factory) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                super.beforeExecute(thread, task);
+                awaitResumed(thread);
+            }
+        };
         mExecutor.allowCoreThreadTimeOut(true);
     }
 
+    /**
+     * Hold back queued tasks until {@link #resume()}. Running tasks are not interrupted.
+     */
+    public void pause() {
+        synchronized (mPauseLock) {
+            mPaused = true;
+        }
+    }
+
+    /**
+     * Let queued tasks run again.
+     */
+    public void resume() {
+        synchronized (mPauseLock) {
+            mPaused = false;
+            mPauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Check if paused.
+     *
+     * @return True if paused.
+     */
+    public boolean isPaused() {
+        synchronized (mPauseLock) {
+            return mPaused;
+        }
+    }
+
+    /**
+     * Block a worker thread while paused. An interrupt, for example from shutdownNow, lets the
+     * task run with the interrupt flag set.
+     *
+     * @param thread The worker thread.
+     */
+    private void awaitResumed(Thread thread) {
+        synchronized (mPauseLock) {
+            while (mPaused) {
+                try {
+                    mPauseLock.wait();
+                } catch (InterruptedException e) {
+                    thread.interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
         mExecutor.shutdown();
@@ -0,0 +1,277 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import com.sweetlab.diskpicasso.stats.CacheStats;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content addressed cache files. Each distinct encoded image is stored once, in a file named by
+ * the SHA-1 of its bytes, and referenced by the variants written with those bytes. A variant
+ * references one blob at a time. Writing it again takes a pending reference to the new blob,
+ * committing it moves the reference like overwriting its file would and abandoning it leaves the
+ * old one in place. A blob file is deleted when the last reference, pending or committed, is
+ * released. References are kept in memory only and adopted from the journal when warming up, so
+ * the store must not be shared with other processes.
+ */
+class ContentStore {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Number of hex digits of the directory a blob is put in, so no directory grows huge.
+     */
+    private static final int FAN_OUT_DIGITS = 2;
+
+    /**
+     * Digest of each writing thread.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("No SHA-1 digest", e);
+            }
+        }
+    };
+
+    private final String mDirectoryPath;
+    private final CacheStats mStats;
+
+    /**
+     * Blobs by hash and the blob of the committed reference of each variant primary key,
+     * guarded by the store.
+     */
+    private final Map<String, Blob> mBlobs = new HashMap<>();
+    private final Map<Long, Blob> mReferences = new HashMap<>();
+
+    /**
+     * Bytes saved by sharing blobs, guarded by the store.
+     */
+    private long mSharedBytes;
+
+    /**
+     * One stored image.
+     */
+    static class Blob {
+        private final String mHash;
+        private final File mFile;
+        private final int mByteSize;
+        private int mReferences;
+        private boolean mStored;
+
+        private Blob(String hash, File file, int byteSize) {
+            mHash = hash;
+            mFile = file;
+            mByteSize = byteSize;
+        }
+
+        File getFile() {
+            return mFile;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory Directory of the blobs.
+     * @param stats     Statistics to record the shared bytes into.
+     */
+    ContentStore(File directory, CacheStats stats) {
+        mDirectoryPath = directory.getAbsolutePath() + File.separator;
+        mStats = stats;
+    }
+
+    /**
+     * Take a pending reference to the blob with the given contents. The blob is kept until the
+     * reference is committed by {@link #commit(long, File)} or dropped by
+     * {@link #abandon(File)}, and must be written when {@link #isStored(Blob)} is false.
+     *
+     * @param contents Encoded bytes, the position is not changed.
+     * @return The blob.
+     */
+    Blob reference(ByteBuffer contents) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(contents.duplicate());
+        final String hash = toHex(digest.digest());
+        final int byteSize = contents.remaining();
+        synchronized (this) {
+            Blob blob = mBlobs.get(hash);
+            if (blob == null) {
+                blob = new Blob(hash, fileOf(hash), byteSize);
+                mBlobs.put(hash, blob);
+            }
+            retain(blob);
+            return blob;
+        }
+    }
+
+    /**
+     * Commit a pending reference to a blob file for a variant, releasing the blob the variant
+     * referenced before. Call when the variant is committed, under the same lock as the journal.
+     *
+     * @param primaryKey Primary key of the variant.
+     * @param file       The blob file.
+     */
+    synchronized void commit(long primaryKey, File file) {
+        Blob blob = pendingBlob(file);
+        Blob previous = mReferences.put(primaryKey, blob);
+        if (previous != null) {
+            unlink(previous);
+        }
+    }
+
+    /**
+     * Drop a pending reference to a blob file, deleting the file when it was the last.
+     *
+     * @param file The blob file.
+     */
+    synchronized void abandon(File file) {
+        unlink(pendingBlob(file));
+    }
+
+    /**
+     * Check if a blob is written.
+     *
+     * @param blob The blob.
+     * @return True if the file holds the contents.
+     */
+    synchronized boolean isStored(Blob blob) {
+        return blob.mStored;
+    }
+
+    /**
+     * Mark a blob as written, references taken from now on skip the write.
+     *
+     * @param blob The blob.
+     */
+    synchronized void markStored(Blob blob) {
+        blob.mStored = true;
+    }
+
+    /**
+     * Mark the blob of a file as damaged so the next reference writes it again.
+     *
+     * @param file The blob file.
+     */
+    synchronized void markDamaged(File file) {
+        Blob blob = mBlobs.get(file.getName());
+        if (blob != null && blob.mFile.equals(file)) {
+            blob.mStored = false;
+        }
+    }
+
+    /**
+     * Adopt the reference of a journaled variant to a blob file, when warming up.
+     *
+     * @param primaryKey Primary key of the variant.
+     * @param file       The blob file.
+     * @param byteSize   Journaled size of the file.
+     */
+    synchronized void adopt(long primaryKey, File file, int byteSize) {
+        final String hash = file.getName();
+        Blob blob = mBlobs.get(hash);
+        if (blob == null) {
+            blob = new Blob(hash, file, byteSize);
+            blob.mStored = true;
+            mBlobs.put(hash, blob);
+        }
+        retain(blob);
+        Blob previous = mReferences.put(primaryKey, blob);
+        if (previous != null) {
+            unlink(previous);
+        }
+    }
+
+    /**
+     * Release the reference of a variant if it still references the blob file, deleting the
+     * file when it was the last reference.
+     *
+     * @param primaryKey Primary key of the variant.
+     * @param file       The blob file.
+     * @return True if the reference was released.
+     */
+    synchronized boolean release(long primaryKey, File file) {
+        Blob blob = mReferences.get(primaryKey);
+        if (blob == null || !blob.mFile.equals(file)) {
+            return false;
+        }
+        mReferences.remove(primaryKey);
+        unlink(blob);
+        return true;
+    }
+
+    /**
+     * Check if a file is a blob of this store.
+     *
+     * @param file The file.
+     * @return True if below the blob directory.
+     */
+    boolean contains(File file) {
+        return file.getPath().startsWith(mDirectoryPath);
+    }
+
+    /**
+     * Get the bytes currently saved by sharing blobs, the size of every reference beyond the
+     * first of each blob.
+     *
+     * @return Size in bytes.
+     */
+    synchronized long getSharedBytes() {
+        return mSharedBytes;
+    }
+
+    /**
+     * Add a reference to a blob, must hold the store lock.
+     */
+    private void retain(Blob blob) {
+        if (blob.mReferences++ > 0) {
+            mSharedBytes += blob.mByteSize;
+        }
+        mStats.recordSharedBytes(mSharedBytes);
+    }
+
+    /**
+     * Get the blob of a file holding a pending reference, must hold the store lock. The
+     * reference keeps the blob in the store.
+     */
+    private Blob pendingBlob(File file) {
+        Blob blob = mBlobs.get(file.getName());
+        if (blob == null || !blob.mFile.equals(file)) {
+            throw new IllegalStateException("No pending reference to " + file);
+        }
+        return blob;
+    }
+
+    /**
+     * Drop a reference to a blob, deleting it when it was the last. Must hold the store lock
+     * so a new reference to the same contents writes the file again after the delete.
+     */
+    private void unlink(Blob blob) {
+        if (--blob.mReferences > 0) {
+            mSharedBytes -= blob.mByteSize;
+        } else {
+            mBlobs.remove(blob.mHash);
+            blob.mFile.delete();
+        }
+        mStats.recordSharedBytes(mSharedBytes);
+    }
+
+    private File fileOf(String hash) {
+        return new File(mDirectoryPath + hash.substring(0, FAN_OUT_DIGITS) + File.separator + hash);
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,31 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Files and directories found below the storage root.
+ */
+public class DirectoryScan {
+    private final List<File> mFiles;
+    private final List<File> mDirectories;
+
+    /**
+     * Constructor.
+     *
+     * @param files       All regular files.
+     * @param directories All directories below the root, parents before children.
+     */
+    /*package*/ DirectoryScan(List<File> files, List<File> directories) {
+        mFiles = files;
+        mDirectories = directories;
+    }
+
+    public List<File> getFiles() {
+        return mFiles;
+    }
+
+    public List<File> getDirectories() {
+        return mDirectories;
+    }
+}
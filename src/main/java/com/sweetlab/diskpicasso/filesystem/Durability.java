@@ -0,0 +1,24 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+/**
+ * How far cache files are synced to storage before they are journaled. A file lost or torn by a
+ * power loss is only a cache miss, it fails verification and is removed, so syncing trades write
+ * throughput for fewer such misses.
+ */
+public enum Durability {
+    /**
+     * Never sync, files reach storage when the kernel writes them back.
+     */
+    NONE,
+
+    /**
+     * Sync the data of all files of a batch once before the batch is journaled, a single put is a
+     * batch of one file.
+     */
+    BATCH,
+
+    /**
+     * Sync each file, data and metadata, before it is closed.
+     */
+    FILE
+}
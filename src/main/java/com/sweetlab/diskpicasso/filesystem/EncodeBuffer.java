@@ -0,0 +1,117 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reusable growable direct buffer an image is encoded into, computing a CRC32 of the encoded
+ * bytes. The whole image is then written to a file channel at once, so the size is known without
+ * a stat and the file is written in one or a few large writes. One instance is kept per writing
+ * thread, a buffer grown beyond the retained capacity is dropped after the write.
+ */
+class EncodeBuffer extends OutputStream {
+    private final int mInitialCapacity;
+    private final int mRetainedCapacity;
+    private final CRC32 mChecksum = new CRC32();
+    private final byte[] mSingleByte = new byte[1];
+    private ByteBuffer mBuffer;
+
+    /**
+     * Constructor.
+     *
+     * @param initialCapacity  Initial capacity in bytes.
+     * @param retainedCapacity Largest capacity kept between writes.
+     */
+    EncodeBuffer(int initialCapacity, int retainedCapacity) {
+        mInitialCapacity = initialCapacity;
+        mRetainedCapacity = retainedCapacity;
+        mBuffer = ByteBuffer.allocateDirect(initialCapacity);
+    }
+
+    /**
+     * Discard the content of a previous image.
+     */
+    void reset() {
+        mBuffer.clear();
+        mChecksum.reset();
+    }
+
+    /**
+     * Get the number of bytes encoded since reset.
+     *
+     * @return Size in bytes.
+     */
+    int size() {
+        return mBuffer.position();
+    }
+
+    /**
+     * Get CRC32 of the bytes encoded since reset.
+     *
+     * @return The checksum.
+     */
+    long getChecksum() {
+        return mChecksum.getValue();
+    }
+
+    /**
+     * Get a read only view of the bytes encoded since reset, valid until the next image is
+     * encoded.
+     *
+     * @return The bytes.
+     */
+    ByteBuffer contents() {
+        ByteBuffer contents = mBuffer.asReadOnlyBuffer();
+        contents.flip();
+        return contents;
+    }
+
+    /**
+     * Write the bytes encoded since reset to a channel.
+     *
+     * @param channel The channel.
+     * @throws IOException If fails.
+     */
+    void writeTo(FileChannel channel) throws IOException {
+        mBuffer.flip();
+        try {
+            while (mBuffer.hasRemaining()) {
+                channel.write(mBuffer);
+            }
+        } finally {
+            if (mBuffer.capacity() > mRetainedCapacity) {
+                mBuffer = ByteBuffer.allocateDirect(mInitialCapacity);
+            }
+            mBuffer.clear();
+        }
+    }
+
+    @Override
+    public void write(int oneByte) {
+        mSingleByte[0] = (byte) oneByte;
+        write(mSingleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) {
+        mChecksum.update(buffer, offset, count);
+        if (mBuffer.remaining() < count) {
+            grow(mBuffer.position() + count);
+        }
+        mBuffer.put(buffer, offset, count);
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = mBuffer.capacity();
+        while (capacity < minCapacity) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        mBuffer.flip();
+        grown.put(mBuffer);
+        mBuffer = grown;
+    }
+}
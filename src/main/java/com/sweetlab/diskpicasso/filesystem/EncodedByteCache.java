@@ -0,0 +1,188 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import com.sweetlab.diskpicasso.stats.CacheStats;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory cache of encoded cache file contents keyed by primary key, so a hot file can be decoded
+ * again without file I/O. The bytes are kept off heap in one direct slab used as a ring, each
+ * file is stored at the write position and the oldest files in the way are evicted. Allocation
+ * is constant time and the slab never fragments, eviction is in insertion order.
+ */
+public class EncodedByteCache {
+    /**
+     * Files larger than this share of the slab are not cached.
+     */
+    private static final int MAX_ENTRY_DIVISOR = 8;
+
+    private final ByteBuffer mSlab;
+    private final int mMaxEntryBytes;
+    private final CacheStats mStats;
+    private final Map<Long, Slot> mSlots = new HashMap<>();
+
+    /**
+     * Slots in slab order starting at the write position, oldest first. Removed slots stay
+     * until they reach the front.
+     */
+    private final ArrayDeque<Slot> mRing = new ArrayDeque<>();
+    private int mWritePosition;
+    private int mUsedBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Slab size in bytes, allocated at once.
+     * @param stats    Statistics to record lookups and footprint into.
+     */
+    public EncodedByteCache(int capacity, CacheStats stats) {
+        mSlab = ByteBuffer.allocateDirect(capacity);
+        mMaxEntryBytes = capacity / MAX_ENTRY_DIVISOR;
+        mStats = stats;
+        mStats.recordByteCacheSize(0, capacity);
+    }
+
+    /**
+     * Copy the cached bytes of a file. If the destination is too small nothing is copied and the
+     * size is returned, grow the destination and call again.
+     *
+     * @param primaryKey Primary key of the cache entry.
+     * @param dst        Destination.
+     * @return Size of the file in bytes or -1 if not cached.
+     */
+    public synchronized int get(long primaryKey, byte[] dst) {
+        Slot slot = mSlots.get(primaryKey);
+        if (slot == null) {
+            mStats.recordByteCacheLookup(false);
+            return -1;
+        }
+        if (slot.mLength <= dst.length) {
+            mSlab.position(slot.mOffset);
+            mSlab.get(dst, 0, slot.mLength);
+            mStats.recordByteCacheLookup(true);
+        }
+        return slot.mLength;
+    }
+
+    /**
+     * Cache the bytes of a file, replacing any bytes cached for the primary key. Empty files and
+     * files too large for the cache are ignored, an empty slot could sit at the end of the slab
+     * or behind the write position and stop the eviction of the slots after it.
+     *
+     * @param primaryKey Primary key of the cache entry.
+     * @param src        The bytes from position to limit, the position is not changed.
+     */
+    public synchronized void put(long primaryKey, ByteBuffer src) {
+        remove(primaryKey);
+        final int length = src.remaining();
+        if (length == 0 || length > mMaxEntryBytes) {
+            return;
+        }
+        final int offset = allocate(length);
+        mSlab.limit(offset + length).position(offset);
+        mSlab.put(src.duplicate());
+        mSlab.clear();
+        Slot slot = new Slot(primaryKey, offset, length);
+        mSlots.put(primaryKey, slot);
+        mRing.addLast(slot);
+        mUsedBytes += length;
+        mStats.recordByteCacheSize(mUsedBytes, mSlab.capacity());
+    }
+
+    /**
+     * Cache the bytes of a file.
+     *
+     * @param primaryKey Primary key of the cache entry.
+     * @param src        Source array.
+     * @param length     Number of bytes from the start of the array.
+     */
+    public void put(long primaryKey, byte[] src, int length) {
+        put(primaryKey, ByteBuffer.wrap(src, 0, length));
+    }
+
+    /**
+     * Remove the cached bytes of a file.
+     *
+     * @param primaryKey Primary key of the cache entry.
+     */
+    public synchronized void remove(long primaryKey) {
+        Slot slot = mSlots.remove(primaryKey);
+        if (slot != null) {
+            slot.mRemoved = true;
+            mUsedBytes -= slot.mLength;
+            mStats.recordByteCacheSize(mUsedBytes, mSlab.capacity());
+        }
+    }
+
+    /**
+     * Get the bytes of all cached files.
+     *
+     * @return Size in bytes.
+     */
+    public synchronized int getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    /**
+     * Get the size of the slab.
+     *
+     * @return Size in bytes.
+     */
+    public int getCapacity() {
+        return mSlab.capacity();
+    }
+
+    /**
+     * Allocate a region at the write position, wrapping to the start of the slab when the end
+     * is reached. Files stored in the region are evicted.
+     *
+     * @param length Region size.
+     * @return Region offset.
+     */
+    private int allocate(int length) {
+        if (mWritePosition + length > mSlab.capacity()) {
+            evictBefore(mSlab.capacity());
+            mWritePosition = 0;
+        }
+        evictBefore(mWritePosition + length);
+        final int offset = mWritePosition;
+        mWritePosition += length;
+        return offset;
+    }
+
+    /**
+     * Evict the slots at the front of the ring that start after the write position and before
+     * the end offset.
+     *
+     * @param end End offset, exclusive.
+     */
+    private void evictBefore(int end) {
+        while (!mRing.isEmpty()) {
+            Slot oldest = mRing.peekFirst();
+            if (oldest.mOffset < mWritePosition || oldest.mOffset >= end) {
+                return;
+            }
+            mRing.pollFirst();
+            if (!oldest.mRemoved) {
+                mSlots.remove(oldest.mKey);
+                mUsedBytes -= oldest.mLength;
+            }
+        }
+    }
+
+    private static class Slot {
+        private final long mKey;
+        private final int mOffset;
+        private final int mLength;
+        private boolean mRemoved;
+
+        Slot(long key, int offset, int length) {
+            mKey = key;
+            mOffset = offset;
+            mLength = length;
+        }
+    }
+}
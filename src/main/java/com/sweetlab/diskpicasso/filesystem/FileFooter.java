@@ -0,0 +1,191 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed size footer appended to the encoded image of a cache file, so the file describes itself
+ * without the journal. Image decoders stop at the end of the encoded image and never see it.
+ * All values are big endian:
+ * <pre>
+ * int magic, short version, short config ordinal
+ * int width, int height, int payload length
+ * long primary key, long file key hash, long payload checksum
+ * int footer checksum
+ * </pre>
+ * The payload is the encoded image before the footer, its checksum is the CRC32 journaled as
+ * the checksum of the entry. The footer checksum is the CRC32 of the footer bytes before it.
+ */
+public class FileFooter {
+    /**
+     * Size of the footer in bytes.
+     */
+    public static final int BYTES = 48;
+
+    private static final int MAGIC = 0x44504346;
+    private static final int VERSION = 1;
+    private static final int CHECKED_BYTES = BYTES - 4;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long mPrimaryKey;
+    private final long mFileKeyHash;
+    private final int mWidth;
+    private final int mHeight;
+    private final PixelConfig mConfig;
+    private final int mPayloadLength;
+    private final long mChecksum;
+
+    private FileFooter(long primaryKey, long fileKeyHash, int width, int height, PixelConfig config, int payloadLength,
+                       long checksum) {
+        mPrimaryKey = primaryKey;
+        mFileKeyHash = fileKeyHash;
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mPayloadLength = payloadLength;
+        mChecksum = checksum;
+    }
+
+    /**
+     * Encode the footer of an image.
+     *
+     * @param fileKey       The source file key.
+     * @param width         The width of the image.
+     * @param height        The height of the image.
+     * @param config        The pixel config of the image.
+     * @param payloadLength Size of the encoded image in bytes.
+     * @param checksum      CRC32 of the encoded image.
+     * @return The footer bytes.
+     */
+    /*package*/ static byte[] encode(String fileKey, int width, int height, PixelConfig config, int payloadLength,
+                                     long checksum) {
+        ByteBuffer footer = ByteBuffer.allocate(BYTES);
+        footer.putInt(MAGIC);
+        footer.putShort((short) VERSION);
+        footer.putShort((short) config.ordinal());
+        footer.putInt(width);
+        footer.putInt(height);
+        footer.putInt(payloadLength);
+        footer.putLong(CacheEntry.calcPrimaryKey(fileKey, width, height, config));
+        footer.putLong(hashFileKey(fileKey));
+        footer.putLong(checksum);
+        footer.putInt((int) checksumOf(footer.array()));
+        return footer.array();
+    }
+
+    /**
+     * Read the footer of a cache file.
+     *
+     * @param file The cache file.
+     * @return The footer or null if the file has none, such as a tile segment, a content
+     * addressed file or a file written by an earlier version.
+     */
+    public static FileFooter read(File file) {
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                final long length = in.length();
+                if (length < BYTES) {
+                    return null;
+                }
+                byte[] bytes = new byte[BYTES];
+                in.seek(length - BYTES);
+                in.readFully(bytes);
+                FileFooter footer = decode(bytes);
+                return footer != null && footer.mPayloadLength == length - BYTES ? footer : null;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Hash of a file key stored in the footer, a 64 bit FNV-1a of its chars. Tells the file key
+     * apart from others of the same primary key when the path is parsed.
+     *
+     * @param fileKey The file key.
+     * @return The hash.
+     */
+    public static long hashFileKey(String fileKey) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < fileKey.length(); i++) {
+            hash = (hash ^ fileKey.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Check if the footer describes an entry.
+     *
+     * @param entry The entry.
+     * @return True if primary key, size, config and checksum are those of the entry.
+     */
+    public boolean matches(CacheEntry entry) {
+        return mPrimaryKey == entry.getPrimaryKey() && mFileKeyHash == hashFileKey(entry.getFileKey()) &&
+                mWidth == entry.getWidth() && mHeight == entry.getHeight() && mConfig == entry.getConfig() &&
+                mPayloadLength + BYTES == entry.getByteSize() &&
+                (entry.getChecksum() == CacheEntry.NO_CHECKSUM || mChecksum == entry.getChecksum());
+    }
+
+    public long getPrimaryKey() {
+        return mPrimaryKey;
+    }
+
+    public long getFileKeyHash() {
+        return mFileKeyHash;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public PixelConfig getConfig() {
+        return mConfig;
+    }
+
+    public int getPayloadLength() {
+        return mPayloadLength;
+    }
+
+    public long getChecksum() {
+        return mChecksum;
+    }
+
+    private static FileFooter decode(byte[] bytes) {
+        ByteBuffer footer = ByteBuffer.wrap(bytes);
+        if (footer.getInt() != MAGIC || footer.getShort() != VERSION) {
+            return null;
+        }
+        if ((int) checksumOf(bytes) != footer.getInt(CHECKED_BYTES)) {
+            return null;
+        }
+        final int ordinal = footer.getShort();
+        final int width = footer.getInt();
+        final int height = footer.getInt();
+        final int payloadLength = footer.getInt();
+        if (ordinal < 0 || ordinal >= PixelConfig.values().length || width <= 0 || height <= 0 || payloadLength < 0) {
+            return null;
+        }
+        return new FileFooter(footer.getLong(), footer.getLong(), width, height, PixelConfig.values()[ordinal],
+                payloadLength, footer.getLong());
+    }
+
+    private static long checksumOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, CHECKED_BYTES);
+        return crc.getValue();
+    }
+}
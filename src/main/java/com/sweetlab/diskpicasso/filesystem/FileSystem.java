@@ -1,105 +1,666 @@
 package com.sweetlab.diskpicasso.filesystem;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-
 import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.BoundsReader;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageEncoder;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.PlaceholderEncoder;
+import com.sweetlab.diskpicasso.core.StorageRoot;
+import com.sweetlab.diskpicasso.stats.CacheStats;
+import com.sweetlab.diskpicasso.tile.TileBatch;
+import com.sweetlab.diskpicasso.tile.TileSegment;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 /**
- * File system to write and remove files from.
+ * File system to write, verify and remove files from. Images are encoded into a reusable buffer
+ * of the writing thread and written to the file at once, a CRC32 of the encoded bytes is computed
+ * while encoding so cache files can be verified later. Each image is followed by a
+ * {@link FileFooter} describing it, so the file is verified and recovered without the journal.
+ * Files are synced as told by the durability. Written files are also put into the encoded byte
+ * cache, if any. Optionally files are content addressed, variants encoding to the same bytes
+ * then share one file.
  */
 public class FileSystem {
+    private static final int VERIFY_BUFFER_BYTES = 8192;
+    private static final int ENCODE_BUFFER_BYTES = 64 * 1024;
+    private static final int RETAINED_ENCODE_BUFFER_BYTES = 1024 * 1024;
+
+    /**
+     * Directory below the root for files shared by processes, never part of a scan.
+     */
+    private static final String SHARED_DIRECTORY_NAME = ".shared";
+
+    /**
+     * Directory below the root for content addressed files.
+     */
+    private static final String CONTENT_DIRECTORY_NAME = ".content";
+
+    /**
+     * Suffix of files written under a temporary name, see {@link #stage(WriteRequest)}.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Encode buffer of each writing thread.
+     */
+    private static final ThreadLocal<EncodeBuffer> ENCODE_BUFFER = new ThreadLocal<EncodeBuffer>() {
+        @Override
+        protected EncodeBuffer initialValue() {
+            return new EncodeBuffer(ENCODE_BUFFER_BYTES, RETAINED_ENCODE_BUFFER_BYTES);
+        }
+    };
+
+    private final File mCacheRoot;
     private final String mCacheRootPath;
-    private final int mQuality;
-    private final Bitmap.CompressFormat mCompressFormat;
+    private final ImageEncoder mEncoder;
+    private final PlaceholderEncoder mPlaceholderEncoder;
+    private final CacheStats mStats;
+    private final Durability mDurability;
+    private final EncodedByteCache mByteCache;
+    private final ContentStore mContent;
+
+    /**
+     * Makes the temporary names of staged files unique.
+     */
+    private final AtomicLong mStageSequence = new AtomicLong();
+
+    /**
+     * Constructor, files are never synced.
+     *
+     * @param root    Storage root.
+     * @param encoder Image encoder.
+     * @param stats   Statistics to record encode and write time into.
+     */
+    public FileSystem(StorageRoot root, ImageEncoder encoder, CacheStats stats) {
+        this(root, encoder, stats, Durability.NONE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param root       Storage root.
+     * @param encoder    Image encoder.
+     * @param stats      Statistics to record encode, write and sync time into.
+     * @param durability How far files are synced.
+     */
+    public FileSystem(StorageRoot root, ImageEncoder encoder, CacheStats stats, Durability durability) {
+        this(root, encoder, stats, durability, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param root       Storage root.
+     * @param encoder    Image encoder.
+     * @param stats      Statistics to record encode, write and sync time into.
+     * @param durability How far files are synced.
+     * @param byteCache  Cache of file contents kept up to date with the files, or null.
+     */
+    public FileSystem(StorageRoot root, ImageEncoder encoder, CacheStats stats, Durability durability, EncodedByteCache byteCache) {
+        this(root, encoder, stats, durability, byteCache, false);
+    }
 
     /**
      * Constructor.
      *
-     * @param context         Android application context.
-     * @param compressQuality Bitmap compress quality.
-     * @param format          Bitmap compress format.
+     * @param root             Storage root.
+     * @param encoder          Image encoder.
+     * @param stats            Statistics to record encode, write and sync time into.
+     * @param durability       How far files are synced.
+     * @param byteCache        Cache of file contents kept up to date with the files, or null.
+     * @param contentAddressed True to store identical encoded bytes once, see {@link #adopt(CacheEntry[])}.
      */
-    public FileSystem(Context context, int compressQuality, Bitmap.CompressFormat format) {
-        mQuality = compressQuality;
-        mCompressFormat = format;
-        mCacheRootPath = context.getCacheDir().getAbsolutePath();
+    public FileSystem(StorageRoot root, ImageEncoder encoder, CacheStats stats, Durability durability, EncodedByteCache byteCache,
+                      boolean contentAddressed) {
+        this(root, encoder, stats, durability, byteCache, contentAddressed, null);
     }
 
     /**
-     * Create a new file and write bitmap into it.
+     * Constructor.
+     *
+     * @param root               Storage root.
+     * @param encoder            Image encoder.
+     * @param stats              Statistics to record encode, write and sync time into.
+     * @param durability         How far files are synced.
+     * @param byteCache          Cache of file contents kept up to date with the files, or null.
+     * @param contentAddressed   True to store identical encoded bytes once, see {@link #adopt(CacheEntry[])}.
+     * @param placeholderEncoder Encoder of the placeholder of each written entry, or null for none.
+     */
+    public FileSystem(StorageRoot root, ImageEncoder encoder, CacheStats stats, Durability durability, EncodedByteCache byteCache,
+                      boolean contentAddressed, PlaceholderEncoder placeholderEncoder) {
+        mEncoder = encoder;
+        mPlaceholderEncoder = placeholderEncoder;
+        mStats = stats;
+        mDurability = durability;
+        mByteCache = byteCache;
+        mCacheRoot = root.getDirectory();
+        mCacheRootPath = mCacheRoot.getAbsolutePath();
+        mContent = contentAddressed ? new ContentStore(new File(mCacheRoot, CONTENT_DIRECTORY_NAME), stats) : null;
+    }
+
+    /**
+     * Create a new file and write image into it, followed by its footer. With
+     * {@link Durability#BATCH} the file is not synced until {@link #sync(Collection)} is called.
+     * When content addressed the file is only written if no other variant has the same bytes,
+     * it is written under a temporary name and renamed so a variant sharing it never sees a
+     * partial file. Content addressed files have no footer since variants share the bytes.
      *
      * @param req Write request.
-     * @return Journal entry of the result or null if fail.
+     * @return Cache entry of the written file.
+     * @throws IOException If fails.
      */
-    public File write(WriteRequest req) throws IOException {
-        final Bitmap bitmap = req.getBitmap();
-        final String fileKey = req.getFileKey();
+    public CacheEntry write(WriteRequest req) throws IOException {
+        CacheEntry entry = write(req, false);
+        if (mContent != null) {
+            mContent.commit(entry.getPrimaryKey(), entry.getFile());
+        }
+        return entry;
+    }
 
-        final int width = bitmap.getWidth();
-        final int height = bitmap.getHeight();
-        final Bitmap.Config config = bitmap.getConfig();
+    /**
+     * Like {@link #write(WriteRequest)}, but the file is written under a temporary name beside
+     * its path, so an entry of the same variant still in use keeps its file and a queued removal
+     * of that entry can not delete the new one. Call {@link #publish(CacheEntry)} to move the
+     * file into place, or {@link #discard(CacheEntry)} to delete it. Content addressed files are
+     * in place at once, the variant keeps its previous file until published.
+     *
+     * @param req Write request.
+     * @return Cache entry of the staged file.
+     * @throws IOException If fails.
+     */
+    public CacheEntry stage(WriteRequest req) throws IOException {
+        return write(req, true);
+    }
+
+    /**
+     * Move a staged file into place, replacing the file of any entry of the same variant in one
+     * step. Readers of the replaced file keep reading it until they close it. A content addressed
+     * variant moves its reference to the new file, releasing the previous one. Call under the
+     * same lock as journaling the entry.
+     *
+     * @param staged Entry returned by {@link #stage(WriteRequest)}.
+     * @return Cache entry of the file in place.
+     * @throws IOException If the file could not be moved, it is then left staged.
+     */
+    public CacheEntry publish(CacheEntry staged) throws IOException {
+        final File temp = staged.getFile();
+        if (mContent != null && mContent.contains(temp)) {
+            mContent.commit(staged.getPrimaryKey(), temp);
+            return staged;
+        }
+        File file = fileOf(staged.getFileKey(), staged.getPrimaryKey());
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not rename " + temp);
+        }
+        return new CacheEntry(staged.getFileKey(), file, staged.getWidth(), staged.getHeight(), staged.getConfig(),
+                staged.getByteSize(), staged.getFingerprint(), staged.getChecksum(), staged.getPlaceholder());
+    }
+
+    private CacheEntry write(WriteRequest req, boolean staged) throws IOException {
+        final EncodableImage image = req.getImage();
+        final String fileKey = req.getFileKey();
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final PixelConfig config = image.getPixelConfig();
 
         final long primaryKey = CacheEntry.calcPrimaryKey(fileKey, width, height, config);
 
-        return writeFile(createFile(fileKey + primaryKey), bitmap, mCompressFormat, mQuality);
+        EncodeBuffer buffer = ENCODE_BUFFER.get();
+        buffer.reset();
+        final long encodeStart = System.nanoTime();
+        mEncoder.encode(image, buffer);
+        final byte[] placeholder = mPlaceholderEncoder != null ? mPlaceholderEncoder.encodePlaceholder(image) : null;
+        final long checksum = buffer.getChecksum();
+        if (mContent == null) {
+            buffer.write(FileFooter.encode(fileKey, width, height, config, buffer.size(), checksum));
+        }
+        final long writeStart = System.nanoTime();
+        mStats.recordEncode(writeStart - encodeStart);
+        final int byteSize = buffer.size();
+        final ByteBuffer contents = buffer.contents();
+
+        final File file;
+        if (mContent == null) {
+            File path = fileOf(fileKey, primaryKey);
+            file = staged ? new File(path.getPath() + "." + mStageSequence.incrementAndGet() + TEMP_SUFFIX) : path;
+            writeFile(file, buffer);
+        } else {
+            ContentStore.Blob blob = mContent.reference(contents);
+            file = blob.getFile();
+            if (mContent.isStored(blob)) {
+                mStats.recordSharedWrite();
+            } else {
+                File temp = new File(file.getPath() + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+                try {
+                    writeFile(temp, buffer);
+                    if (!temp.renameTo(file)) {
+                        throw new IOException("Could not rename " + temp);
+                    }
+                } catch (IOException e) {
+                    temp.delete();
+                    mContent.abandon(file);
+                    throw e;
+                }
+                mContent.markStored(blob);
+            }
+        }
+        mStats.recordWrite(System.nanoTime() - writeStart);
+        if (mByteCache != null) {
+            mByteCache.put(primaryKey, contents);
+        }
+        return new CacheEntry(fileKey, file, width, height, config, byteSize, req.getFingerprint(), checksum, placeholder);
+    }
+
+    /**
+     * Encode the tiles of a batch into one new segment file, see {@link TileSegment}. Synced
+     * like any other file, segments are never content addressed nor put into the encoded byte
+     * cache.
+     *
+     * @param batch The tiles, at least one.
+     * @return The segment written.
+     * @throws IOException If fails.
+     */
+    public TileSegment writeTiles(TileBatch batch) throws IOException {
+        final int count = batch.size();
+        if (count == 0) {
+            throw new IllegalArgumentException("No tiles");
+        }
+        final EncodableImage first = batch.getImage(0);
+        final String segmentKey = TileSegment.newSegmentKey(batch.getFileKey(), batch.getLevel());
+        final long primaryKey = CacheEntry.calcPrimaryKey(segmentKey, first.getWidth(), first.getHeight(), first.getPixelConfig());
+
+        EncodeBuffer buffer = ENCODE_BUFFER.get();
+        buffer.reset();
+        final int[] offsets = new int[count];
+        final int[] lengths = new int[count];
+        final long encodeStart = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            offsets[i] = buffer.size();
+            mEncoder.encode(batch.getImage(i), buffer);
+            lengths[i] = buffer.size() - offsets[i];
+        }
+        buffer.write(TileSegment.encodeTable(batch, offsets, lengths));
+        final long writeStart = System.nanoTime();
+        mStats.recordEncode(writeStart - encodeStart);
+        final int byteSize = buffer.size();
+        final long checksum = buffer.getChecksum();
+
+        File file = fileOf(segmentKey, primaryKey);
+        writeFile(file, buffer);
+        mStats.recordWrite(System.nanoTime() - writeStart);
+        CacheEntry entry = new CacheEntry(segmentKey, file, first.getWidth(), first.getHeight(), first.getPixelConfig(),
+                byteSize, batch.getFingerprint(), checksum);
+        return TileSegment.create(entry, batch, offsets, lengths);
+    }
+
+    /**
+     * Sync the data of a batch of written files when the durability is
+     * {@link Durability#BATCH}, otherwise does nothing. Call before journaling the batch.
+     *
+     * @param entries Entries of the written files.
+     * @throws IOException If any sync fails.
+     */
+    public void sync(Collection<CacheEntry> entries) throws IOException {
+        if (mDurability != Durability.BATCH) {
+            return;
+        }
+        final long start = System.nanoTime();
+        for (CacheEntry entry : entries) {
+            RandomAccessFile file = new RandomAccessFile(entry.getFile(), "r");
+            try {
+                file.getChannel().force(false);
+            } finally {
+                file.close();
+            }
+        }
+        mStats.recordSync(System.nanoTime() - start);
+    }
+
+    /**
+     * Verify a cache file against its entry. The file must exist with the journaled size and
+     * its footer, if any, must describe the entry. A full verification also compares the
+     * checksum of the image.
+     *
+     * @param entry The entry to verify.
+     * @param full  True to read the whole file and compare the checksum.
+     * @return True if the file is intact.
+     */
+    public boolean verify(CacheEntry entry, boolean full) {
+        final boolean intact = verifyFile(entry, full);
+        if (!intact && mContent != null && mContent.contains(entry.getFile())) {
+            mContent.markDamaged(entry.getFile());
+        }
+        return intact;
     }
 
     /**
-     * Remove/delete a file based on journal entry information.
+     * Remove/delete a file based on journal entry information. A content addressed file is
+     * only deleted when no other variant shares it.
      *
      * @param entry Entry to remove.
      * @return True if success.
      */
     public boolean remove(CacheEntry entry) {
+        if (mByteCache != null) {
+            mByteCache.remove(entry.getPrimaryKey());
+        }
         File file = entry.getFile();
+        if (mContent != null && mContent.contains(file)) {
+            return mContent.release(entry.getPrimaryKey(), file);
+        }
         return file.delete();
     }
 
     /**
-     * Create file. Any directory tree structure will be created if needed. Exception is thrown
-     * if fail.
+     * Delete a staged file that is not published. A content addressed file is only deleted when
+     * no other variant shares it.
      *
-     * @param name Name including directories.
+     * @param staged Entry returned by {@link #stage(WriteRequest)}.
+     */
+    public void discard(CacheEntry staged) {
+        if (mByteCache != null) {
+            mByteCache.remove(staged.getPrimaryKey());
+        }
+        File file = staged.getFile();
+        if (mContent != null && mContent.contains(file)) {
+            mContent.abandon(file);
+        } else {
+            file.delete();
+        }
+    }
+
+    /**
+     * Take over the content addressed files of journaled entries, before they are put into
+     * the index. Does nothing unless content addressed.
+     *
+     * @param entries The entries read from the journal.
+     */
+    public void adopt(CacheEntry[] entries) {
+        if (mContent == null || entries == null) {
+            return;
+        }
+        for (CacheEntry entry : entries) {
+            if (mContent.contains(entry.getFile())) {
+                mContent.adopt(entry.getPrimaryKey(), entry.getFile(), entry.getByteSize());
+            }
+        }
+    }
+
+    /**
+     * Get the disk space saved by variants sharing content addressed files.
+     *
+     * @return Size in bytes, 0 unless content addressed.
+     */
+    public long getSharedBytes() {
+        return mContent == null ? 0 : mContent.getSharedBytes();
+    }
+
+    private boolean verifyFile(CacheEntry entry, boolean full) {
+        File file = entry.getFile();
+        if (!file.isFile() || file.length() != entry.getByteSize()) {
+            return false;
+        }
+        final FileFooter footer = FileFooter.read(file);
+        if (footer != null && !footer.matches(entry)) {
+            return false;
+        }
+        if (!full || entry.getChecksum() == CacheEntry.NO_CHECKSUM) {
+            return true;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[VERIFY_BUFFER_BYTES];
+            long remaining = footer != null ? footer.getPayloadLength() : entry.getByteSize();
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            return crc.getValue() == entry.getChecksum();
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Recover the entry of a cache file, to rebuild a lost index. A file with a footer is
+     * recovered from it, keeping the checksum. Otherwise the image size is read by the bounds
+     * reader, tile segments are sized from their trailer. The path below the root is the file
+     * key followed by the primary key, the split between the two and the pixel config are
+     * found by matching the primary key of each candidate. A file key without a leading
+     * separator is joined to the root by one, so each candidate is tried with and without the
+     * separator the path starts with. Content addressed files can not be
+     * recovered. The fingerprint and placeholder are lost. Thread safe.
+     *
+     * @param file   A file below the root.
+     * @param reader Reader of the size of encoded images, or null to only recover files with a
+     *               footer and tile segments.
+     * @param size   Scratch array of at least two.
+     * @return The entry or null if the file is not a cache file.
+     */
+    public CacheEntry recover(File file, BoundsReader reader, int[] size) {
+        final String path = file.getAbsolutePath();
+        if (!path.startsWith(mCacheRootPath)) {
+            return null;
+        }
+        final String name = path.substring(mCacheRootPath.length());
+        if (!name.startsWith(File.separator) || name.startsWith(File.separator + CONTENT_DIRECTORY_NAME + File.separator)) {
+            return null;
+        }
+        int start = name.length();
+        while (start > 0 && name.charAt(start - 1) >= '0' && name.charAt(start - 1) <= '9') {
+            start--;
+        }
+        if (start == name.length()) {
+            return null;
+        }
+        if (start > 0 && name.charAt(start - 1) == '-') {
+            start--;
+        }
+        final boolean segment = TileSegment.isSegmentKey(name);
+        if (!segment) {
+            final FileFooter footer = FileFooter.read(file);
+            if (footer != null) {
+                final CacheEntry entry = recover(new File(path), name, footer);
+                return entry != null ? entry : recover(new File(path), name.substring(1), footer);
+            }
+        }
+        final boolean read = segment ? TileSegment.readSize(file, size) : reader != null && reader.readBounds(file, size);
+        if (!read) {
+            return null;
+        }
+        final int width = size[0];
+        final int height = size[1];
+        for (int split = Math.max(start, 1); split < name.length(); split++) {
+            final Long primaryKey = parsePrimaryKey(name, split);
+            if (primaryKey == null) {
+                continue;
+            }
+            for (int keyStart = 0; keyStart < 2 && keyStart < split; keyStart++) {
+                final String fileKey = name.substring(keyStart, split);
+                for (PixelConfig config : PixelConfig.values()) {
+                    if (CacheEntry.calcPrimaryKey(fileKey, width, height, config) == primaryKey.longValue()) {
+                        return new CacheEntry(fileKey, new File(path), width, height, config, (int) file.length(),
+                                SourceFingerprint.NONE, CacheEntry.NO_CHECKSUM);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recover the entry of a cache file from its footer.
+     *
+     * @param file   The file.
+     * @param name   Path of the file below the root.
+     * @param footer The footer of the file.
+     * @return The entry or null if the path is not the one of the footer.
+     */
+    private static CacheEntry recover(File file, String name, FileFooter footer) {
+        final String primaryKey = Long.toString(footer.getPrimaryKey());
+        if (!name.endsWith(primaryKey) || name.length() == primaryKey.length()) {
+            return null;
+        }
+        final String fileKey = name.substring(0, name.length() - primaryKey.length());
+        if (FileFooter.hashFileKey(fileKey) != footer.getFileKeyHash() ||
+                CacheEntry.calcPrimaryKey(fileKey, footer.getWidth(), footer.getHeight(), footer.getConfig()) != footer.getPrimaryKey()) {
+            return null;
+        }
+        return new CacheEntry(fileKey, file, footer.getWidth(), footer.getHeight(), footer.getConfig(),
+                footer.getPayloadLength() + FileFooter.BYTES, SourceFingerprint.NONE, footer.getChecksum());
+    }
+
+    /**
+     * Parse the primary key at the end of a name, as written by {@link Long#toString(long)}.
+     *
+     * @param name  The name.
+     * @param start Index of the first character of the key.
+     * @return The key or null if not a key as written.
+     */
+    private static Long parsePrimaryKey(String name, int start) {
+        final int digits = name.charAt(start) == '-' ? start + 1 : start;
+        if (digits == name.length() || (name.charAt(digits) == '0' && name.length() - start > 1)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring(start));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the path of the cache file of a variant. The file key is joined to the root by a
+     * separator, so a key without a leading one is not a sibling of the root.
+     *
+     * @param fileKey    The source file key.
+     * @param primaryKey The primary key of the variant.
      * @return The file.
      */
-    private File createFile(String name) throws IOException {
-        File file = new File(mCacheRootPath + name);
-        File dir = file.getParentFile();
-        if (!dir.exists()) {
-            dir.mkdirs();
+    private File fileOf(String fileKey, long primaryKey) {
+        return new File(mCacheRootPath + File.separator + fileKey + primaryKey);
+    }
+
+    /**
+     * Get the directory for files shared by the processes using the cache, such as the change
+     * feed. It is not listed by {@link #scan()}.
+     *
+     * @return The directory, not created.
+     */
+    public File getSharedDirectory() {
+        return new File(mCacheRoot, SHARED_DIRECTORY_NAME);
+    }
+
+    /**
+     * List all files and directories below the root. Links to directories are not followed, so
+     * nothing outside the root is listed.
+     *
+     * @return The files and directories found.
+     */
+    public DirectoryScan scan() {
+        List<File> files = new ArrayList<>();
+        List<File> directories = new ArrayList<>();
+        ArrayDeque<File> pending = new ArrayDeque<>();
+        pending.add(mCacheRoot);
+        while (!pending.isEmpty()) {
+            File directory = pending.poll();
+            File[] children = directory.listFiles();
+            if (children == null) {
+                continue;
+            }
+            File canonical = canonical(directory);
+            for (File child : children) {
+                if (directory == mCacheRoot && SHARED_DIRECTORY_NAME.equals(child.getName())) {
+                    continue;
+                }
+                if (!child.isDirectory()) {
+                    files.add(child);
+                } else if (canonical != null && new File(canonical, child.getName()).equals(canonical(child))) {
+                    directories.add(child);
+                    pending.add(child);
+                }
+            }
         }
-        if (!file.exists()) {
-            file.createNewFile();
+        return new DirectoryScan(files, directories);
+    }
+
+    /**
+     * Get the canonical file, with all links resolved.
+     *
+     * @param file The file.
+     * @return The canonical file or null if it could not be resolved.
+     */
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return null;
         }
-        return file;
     }
 
     /**
-     * Write bitmap to file. Exception is thrown if fails.
+     * Write the encoded bytes to a file, synced when every file is synced.
      *
-     * @param file    The cache file.
-     * @param src     The bitmap.
-     * @param format  Bitmap compress format.
-     * @param quality Bitmap compress quality.
-     * @return File that was written.
+     * @param file   The file.
+     * @param buffer The encoded bytes.
+     * @throws IOException If fails.
      */
-    private File writeFile(File file, Bitmap src, Bitmap.CompressFormat format,
-                           int quality) throws IOException {
-        BufferedOutputStream stream = null;
+    private void writeFile(File file, EncodeBuffer buffer) throws IOException {
+        FileOutputStream out = open(file);
         try {
-            stream = new BufferedOutputStream(new FileOutputStream(file));
-            src.compress(format, quality, stream);
+            FileChannel channel = out.getChannel();
+            buffer.writeTo(channel);
+            if (mDurability == Durability.FILE) {
+                channel.force(true);
+            }
         } finally {
-            if (stream != null) {
-                stream.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Open a file for writing, replacing any existing file. The directories are only created
+     * when missing, so the common case costs no extra stat.
+     *
+     * @param file The file.
+     * @return Output stream of the file.
+     * @throws IOException If fails.
+     */
+    private static FileOutputStream open(File file) throws IOException {
+        try {
+            return new FileOutputStream(file);
+        } catch (FileNotFoundException e) {
+            File dir = file.getParentFile();
+            if (dir == null || !dir.mkdirs() && !dir.isDirectory()) {
+                throw e;
             }
+            return new FileOutputStream(file);
         }
-        return file;
     }
-}
\ No newline at end of file
+}
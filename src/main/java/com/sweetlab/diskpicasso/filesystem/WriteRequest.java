@@ -1,30 +1,48 @@
 package com.sweetlab.diskpicasso.filesystem;
 
-import android.graphics.Bitmap;
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.EncodableImage;
 
 /**
  * A write request.
  */
 public class WriteRequest {
     private final String mFileKey;
-    private final Bitmap mBitmap;
+    private final EncodableImage mImage;
+    private final long mFingerprint;
 
     /**
      * Constructor.
      *
      * @param fileKey Unique source file key.
-     * @param bitmap  Bitmap to compress and write.
+     * @param image   Image to encode and write.
      */
-    public WriteRequest(String fileKey, Bitmap bitmap) {
+    public WriteRequest(String fileKey, EncodableImage image) {
+        this(fileKey, image, SourceFingerprint.NONE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fileKey     Unique source file key.
+     * @param image       Image to encode and write.
+     * @param fingerprint Fingerprint of the source.
+     */
+    public WriteRequest(String fileKey, EncodableImage image, long fingerprint) {
         mFileKey = fileKey;
-        mBitmap = bitmap;
+        mImage = image;
+        mFingerprint = fingerprint;
     }
 
     public String getFileKey() {
         return mFileKey;
     }
 
-    public Bitmap getBitmap() {
-        return mBitmap;
+    public EncodableImage getImage() {
+        return mImage;
+    }
+
+    public long getFingerprint() {
+        return mFingerprint;
     }
 }
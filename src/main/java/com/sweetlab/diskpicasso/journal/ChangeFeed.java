@@ -0,0 +1,258 @@
+package com.sweetlab.diskpicasso.journal;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Collection;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Append only file of journal changes shared by the processes using one cache directory. Each
+ * process appends the entries it writes and removes, and tails the file to apply the changes
+ * of the other processes to its index. The journal stays the source of truth, the feed only
+ * tells what changed since it was read.
+ * <p/>
+ * The file also carries the lock of the cache across processes, see {@link #lock()}. Changes
+ * are only appended while holding it. A record is a length and a CRC32 followed by the change,
+ * so a record torn by a crash is detected and cut off by the next process taking the lock.
+ * The file starts with a generation that is bumped when the feed is compacted, a process that
+ * sees another generation reloads its index from the journal, so changes must be committed to
+ * the journal before they are appended.
+ * <p/>
+ * Not thread safe, callers serialize access within the process.
+ */
+public class ChangeFeed {
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    /**
+     * The feed is compacted when it grows past this size.
+     */
+    private static final long COMPACT_BYTES = 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final ByteBuffer mHeader = ByteBuffer.allocate(HEADER_BYTES);
+    private final ByteArrayOutputStream mRecordBytes = new ByteArrayOutputStream();
+    private final CRC32 mCrc = new CRC32();
+    private FileLock mLock;
+    private long mGeneration;
+    private long mOffset;
+
+    /**
+     * Constructor, opens or creates the feed. Changes already in the feed are skipped, they are
+     * in the journal.
+     *
+     * @param file The feed file.
+     * @throws IOException If the file could not be opened.
+     */
+    public ChangeFeed(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Could not create " + dir);
+        }
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        lock();
+        try {
+            if (mChannel.size() < HEADER_BYTES) {
+                writeGeneration(new Random().nextLong());
+            }
+            mGeneration = readGeneration();
+            mOffset = mChannel.size();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Lock the cache across processes, blocking until no other process holds the lock. Must
+     * not be called again before {@link #unlock()}.
+     *
+     * @throws IOException If locking fails.
+     */
+    public void lock() throws IOException {
+        mLock = mChannel.lock();
+    }
+
+    /**
+     * Release the lock taken by {@link #lock()}.
+     */
+    public void unlock() {
+        if (mLock != null) {
+            try {
+                mLock.release();
+            } catch (IOException ignored) {
+                // The lock goes with the channel.
+            }
+            mLock = null;
+        }
+    }
+
+    /**
+     * Read the changes appended since the last call and pass them to the listener. Without the
+     * lock a record still being appended is left for the next call, with the lock a broken
+     * record is a crash leftover and is cut off.
+     *
+     * @param listener Listener of the changes.
+     * @throws IOException If reading fails.
+     */
+    public void poll(ChangeListener listener) throws IOException {
+        final long generation = readGeneration();
+        if (generation != mGeneration) {
+            mGeneration = generation;
+            mOffset = HEADER_BYTES;
+            listener.onReset();
+        }
+        final long size = mChannel.size();
+        if (size <= mOffset) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size - mOffset));
+        while (buffer.hasRemaining() && mChannel.read(buffer, mOffset + buffer.position()) >= 0) {
+            // Read until full.
+        }
+        buffer.flip();
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            final int start = buffer.position();
+            final int length = buffer.getInt();
+            final int crc = buffer.getInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            mCrc.reset();
+            mCrc.update(buffer.array(), buffer.position(), length);
+            if ((int) mCrc.getValue() != crc) {
+                buffer.position(start);
+                break;
+            }
+            dispatch(new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.position(), length)), listener);
+            buffer.position(buffer.position() + length);
+            mOffset += RECORD_HEADER_BYTES + length;
+        }
+        if (mLock != null && mOffset < size) {
+            mChannel.truncate(mOffset);
+        }
+    }
+
+    /**
+     * Append entries written by this process. Must hold the lock, have polled all changes and
+     * have committed the entries to the journal, the feed may be compacted after appending.
+     *
+     * @param entries The entries written.
+     * @throws IOException If writing fails.
+     */
+    public void appendPut(Collection<CacheEntry> entries) throws IOException {
+        for (CacheEntry entry : entries) {
+            EntryCodec.write(beginRecord(OP_PUT), entry);
+            endRecord();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Append entries removed by this process. Must hold the lock, have polled all changes and
+     * have committed the removal to the journal, the feed may be compacted after appending.
+     *
+     * @param entries The entries removed.
+     * @throws IOException If writing fails.
+     */
+    public void appendRemove(Collection<CacheEntry> entries) throws IOException {
+        for (CacheEntry entry : entries) {
+            DataOutputStream out = beginRecord(OP_REMOVE);
+            out.writeLong(entry.getPrimaryKey());
+            endRecord();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Close the feed, releasing the lock if held.
+     */
+    public void close() {
+        unlock();
+        try {
+            mFile.close();
+        } catch (IOException ignored) {
+            // Nothing to do.
+        }
+    }
+
+    private DataOutputStream beginRecord(byte op) throws IOException {
+        mRecordBytes.reset();
+        DataOutputStream out = new DataOutputStream(mRecordBytes);
+        out.writeByte(op);
+        return out;
+    }
+
+    /**
+     * Append the record in the record bytes at the end of the feed, in one write.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void endRecord() throws IOException {
+        final byte[] payload = mRecordBytes.toByteArray();
+        mCrc.reset();
+        mCrc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) mCrc.getValue()).put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            mChannel.write(record, mOffset + record.position());
+        }
+        mOffset += record.limit();
+    }
+
+    /**
+     * Start a new generation when the feed is large. All records are in the journal already.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void compactIfNeeded() throws IOException {
+        if (mOffset > COMPACT_BYTES) {
+            mChannel.truncate(HEADER_BYTES);
+            writeGeneration(mGeneration + 1);
+            mGeneration++;
+            mOffset = HEADER_BYTES;
+        }
+    }
+
+    private void dispatch(DataInputStream in, ChangeListener listener) throws IOException {
+        final byte op = in.readByte();
+        if (op == OP_PUT) {
+            listener.onPut(EntryCodec.read(in));
+        } else if (op == OP_REMOVE) {
+            listener.onRemove(in.readLong());
+        }
+    }
+
+    private long readGeneration() throws IOException {
+        mHeader.clear();
+        while (mHeader.hasRemaining() && mChannel.read(mHeader, mHeader.position()) >= 0) {
+            // Read until full.
+        }
+        return mHeader.position() == HEADER_BYTES ? mHeader.getLong(0) : 0;
+    }
+
+    private void writeGeneration(long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putLong(generation).flip();
+        while (header.hasRemaining()) {
+            mChannel.write(header, header.position());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.sweetlab.diskpicasso.journal;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+
+/**
+ * Receives the changes read from a {@link ChangeFeed}.
+ */
+public interface ChangeListener {
+    /**
+     * Called when an entry was written by another process.
+     *
+     * @param entry The entry written.
+     */
+    void onPut(CacheEntry entry);
+
+    /**
+     * Called when an entry was removed by another process.
+     *
+     * @param primaryKey Primary key of the entry removed.
+     */
+    void onRemove(long primaryKey);
+
+    /**
+     * Called when the feed was compacted and changes may have been missed. The journal holds
+     * all changes, the index must be reloaded from it.
+     */
+    void onReset();
+}
@@ -0,0 +1,77 @@
+package com.sweetlab.diskpicasso.journal;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.Placeholder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Binary form of a cache entry, shared by the change feed and the index snapshot.
+ */
+/*package*/ final class EntryCodec {
+    private EntryCodec() {
+    }
+
+    /**
+     * Write an entry.
+     *
+     * @param out   Output to write to.
+     * @param entry The entry.
+     * @throws IOException If writing fails.
+     */
+    static void write(DataOutput out, CacheEntry entry) throws IOException {
+        out.writeUTF(entry.getFileKey());
+        out.writeUTF(entry.getFile().getPath());
+        out.writeInt(entry.getWidth());
+        out.writeInt(entry.getHeight());
+        out.writeUTF(entry.getConfig().name());
+        out.writeInt(entry.getByteSize());
+        out.writeLong(entry.getFingerprint());
+        out.writeLong(entry.getChecksum());
+        byte[] placeholder = entry.getPlaceholder();
+        if (placeholder == null) {
+            out.writeShort(0);
+        } else {
+            out.writeShort(placeholder.length);
+            out.write(placeholder);
+        }
+    }
+
+    /**
+     * Read an entry written by {@link #write(DataOutput, CacheEntry)}.
+     *
+     * @param in Input to read from.
+     * @return The entry.
+     * @throws IOException If reading fails, the pixel config is unknown or the placeholder is
+     *                     malformed.
+     */
+    static CacheEntry read(DataInput in) throws IOException {
+        String fileKey = in.readUTF();
+        File file = new File(in.readUTF());
+        int width = in.readInt();
+        int height = in.readInt();
+        PixelConfig config;
+        try {
+            config = PixelConfig.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown pixel config", e);
+        }
+        final int byteSize = in.readInt();
+        final long fingerprint = in.readLong();
+        final long checksum = in.readLong();
+        byte[] placeholder = null;
+        final int placeholderLength = in.readUnsignedShort();
+        if (placeholderLength > 0) {
+            placeholder = new byte[placeholderLength];
+            in.readFully(placeholder);
+            if (!Placeholder.isValid(placeholder)) {
+                throw new IOException("Malformed placeholder");
+            }
+        }
+        return new CacheEntry(fileKey, file, width, height, config, byteSize, fingerprint, checksum, placeholder);
+    }
+}
@@ -0,0 +1,124 @@
+package com.sweetlab.diskpicasso.journal;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Copy of the whole index in one file, written at shutdown. Warming up from it is a single
+ * sequential read instead of a journal query, and it keeps the least recently used order the
+ * journal does not know. A snapshot is consumed when read, so it never outlives the journal
+ * state it was taken from.
+ */
+public class IndexSnapshot {
+    private static final int MAGIC = 0x50494458;
+
+    /**
+     * Version 3 changed the primary key, older snapshots are discarded like the journal entries
+     * they were taken from.
+     */
+    private static final int VERSION = 3;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int PRESIZE_ENTRIES = 1024;
+
+    private final File mFile;
+
+    /**
+     * Constructor.
+     *
+     * @param file The snapshot file.
+     */
+    public IndexSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Write the entries, replacing any previous snapshot at once.
+     *
+     * @param entries The entries, least recently used first.
+     * @throws IOException If writing fails.
+     */
+    public void write(List<CacheEntry> entries) throws IOException {
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(temp);
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut, BUFFER_BYTES), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (CacheEntry entry : entries) {
+                EntryCodec.write(out, entry);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Could not rename " + temp);
+        }
+    }
+
+    /**
+     * Read and delete the snapshot.
+     *
+     * @return The entries, least recently used first, or null if there is no intact snapshot.
+     */
+    public CacheEntry[] consume() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        try {
+            FileInputStream fileIn = new FileInputStream(mFile);
+            try {
+                CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fileIn, BUFFER_BYTES), new CRC32());
+                DataInputStream in = new DataInputStream(checked);
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return null;
+                }
+                final int count = in.readInt();
+                if (count < 0) {
+                    return null;
+                }
+                List<CacheEntry> entries = new ArrayList<>(Math.min(count, PRESIZE_ENTRIES));
+                for (int i = 0; i < count; i++) {
+                    entries.add(EntryCodec.read(in));
+                }
+                final long checksum = checked.getChecksum().getValue();
+                return in.readLong() == checksum ? entries.toArray(new CacheEntry[count]) : null;
+            } finally {
+                fileIn.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            mFile.delete();
+        }
+    }
+
+    /**
+     * Delete the snapshot, for example when the journal changes without it.
+     */
+    public void delete() {
+        mFile.delete();
+    }
+}
@@ -2,17 +2,26 @@ package com.sweetlab.diskpicasso.journal;
 
 import com.sweetlab.diskpicasso.CacheEntry;
 
+import java.util.Collection;
+
 /**
  * Journal of cache entries.
  */
 public interface Journal {
     /**
-     * Insert entry into journal.
+     * Insert entry into journal. An entry already in the journal is replaced.
      *
      * @param entry Cache entry.
      */
     void insert(CacheEntry entry);
 
+    /**
+     * Insert entries into journal in one batch. Entries already in the journal are replaced.
+     *
+     * @param entries Cache entries.
+     */
+    void insertAll(Collection<CacheEntry> entries);
+
     /**
      * Remove entry from journal.
      *
@@ -20,6 +29,13 @@ public interface Journal {
      */
     void remove(CacheEntry entry);
 
+    /**
+     * Remove entries from journal in one batch.
+     *
+     * @param entries Cache entries.
+     */
+    void removeAll(Collection<CacheEntry> entries);
+
     /**
      * Retrieve all entries from journal.
      *
@@ -27,6 +43,15 @@ public interface Journal {
      */
     CacheEntry[] retrieveAll();
 
+    /**
+     * Retrieve a chunk of entries, oldest first. Used to load a large journal in steps.
+     *
+     * @param offset Index of first entry to retrieve.
+     * @param count  Max number of entries to retrieve.
+     * @return The entries, fewer than count when the end is reached.
+     */
+    CacheEntry[] retrieve(int offset, int count);
+
     /**
      * Check if entry exists in the journal.
      *
@@ -34,4 +59,18 @@ public interface Journal {
      * @return True if found.
      */
     boolean exists(long identity);
+
+    /**
+     * Reclaim storage left behind by removed entries, one step at a time so the caller can
+     * stop between steps. Journals without such storage do nothing.
+     *
+     * @param maxPages Max number of storage pages to reclaim in this step.
+     * @return Number of pages still to reclaim, 0 when compact.
+     */
+    int compact(int maxPages);
+
+    /**
+     * Close the journal, committing anything buffered and releasing its resources.
+     */
+    void close();
 }
@@ -7,8 +7,17 @@ import io.realm.annotations.PrimaryKey;
  * Entry into Realm database.
  */
 public class RealmEntry extends RealmObject {
+    /**
+     * Named identity before the primary key included the order of its parts, the schema change
+     * deletes journals keyed the old way.
+     */
     @PrimaryKey
-    private long identity;
+    private long primaryKey;
+
+    /**
+     * Insertion order, journals written before it was added are deleted by the schema change.
+     */
+    private long sequence;
 
     private int width;
     private int height;
@@ -16,6 +25,9 @@ public class RealmEntry extends RealmObject {
     private String cacheFile;
     private int byteSize;
     private String sourceFilePath;
+    private long fingerprint;
+    private long checksum;
+    private byte[] placeholder;
 
     public void setWidth(int width) {
         this.width = width;
@@ -37,14 +49,30 @@ public class RealmEntry extends RealmObject {
         this.byteSize = byteSize;
     }
 
-    public void setIdentity(long identity) {
-        this.identity = identity;
+    public void setPrimaryKey(long primaryKey) {
+        this.primaryKey = primaryKey;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
     }
 
     public void setSourceFilePath(String sourceFilePath) {
         this.sourceFilePath = sourceFilePath;
     }
 
+    public void setFingerprint(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public void setChecksum(long checksum) {
+        this.checksum = checksum;
+    }
+
+    public void setPlaceholder(byte[] placeholder) {
+        this.placeholder = placeholder;
+    }
+
     public String getSourceFilePath() {
         return sourceFilePath;
     }
@@ -69,7 +97,23 @@ public class RealmEntry extends RealmObject {
         return byteSize;
     }
 
-    public long getIdentity() {
-        return identity;
+    public long getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public byte[] getPlaceholder() {
+        return placeholder;
     }
 }
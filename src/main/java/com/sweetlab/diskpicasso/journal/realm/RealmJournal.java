@@ -1,23 +1,52 @@
 package com.sweetlab.diskpicasso.journal.realm;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 
 import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.Placeholder;
 import com.sweetlab.diskpicasso.journal.Journal;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import io.realm.Realm;
 import io.realm.RealmResults;
+import io.realm.exceptions.RealmMigrationNeededException;
 
 /**
- * Journal implementation using Realm. Need a bit of cleanup.
+ * Journal implementation using Realm. A Realm instance is confined to the thread that opened
+ * it, so all operations run on a dedicated journal thread holding one long lived instance.
+ * Callers block until their operation is done. The entry primary key is the Realm primary key
+ * which is indexed, so single entry lookups do not scan. Realm moves rows around on delete, so
+ * entries carry an insertion sequence that retrieval sorts on.
  */
 public class RealmJournal implements Journal {
-    private static final String IDENTITY_KEY = "identity";
-    private static final boolean DEBUG = true;
+    private static final String PRIMARY_KEY = "primaryKey";
+    private static final String SEQUENCE = "sequence";
+
+    /**
+     * Stored for entries without placeholder, Realm does not store null byte arrays.
+     */
+    private static final byte[] NO_PLACEHOLDER = new byte[0];
     private final Context mContext;
+    private final ExecutorService mJournalThread;
+
+    /**
+     * Realm instance, only touched from the journal thread.
+     */
+    private Realm mRealm;
+
+    /**
+     * Sequence of the next inserted entry, only touched from the journal thread.
+     */
+    private long mNextSequence;
 
     /**
      * Constructor.
@@ -26,82 +55,196 @@ public class RealmJournal implements Journal {
      */
     public RealmJournal(Context context) {
         mContext = context;
+        mJournalThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "PabloRealmJournal");
+            }
+        });
     }
 
     @Override
     public void insert(CacheEntry entry) {
-        if (!exists(entry.getPrimaryKey())) {
-            Realm realm = Realm.getInstance(mContext);
-            realm.beginTransaction();
-
-            RealmEntry realmEntry = realm.createObject(RealmEntry.class);
-            realmEntry.setSourceFilePath(entry.getFileKey());
-            realmEntry.setCacheFile(entry.getFile().getAbsolutePath());
-            realmEntry.setWidth(entry.getWidth());
-            realmEntry.setHeight(entry.getHeight());
-            realmEntry.setByteSize(entry.getByteSize());
-            realmEntry.setIdentity(entry.getPrimaryKey());
-            realmEntry.setBitmapConfig(entry.getConfig().name());
-
-            realm.commitTransaction();
-            realm.close();
-        }
+        insertAll(Collections.singletonList(entry));
+    }
+
+    @Override
+    public void insertAll(final Collection<CacheEntry> entries) {
+        run(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Realm realm = realm();
+                realm.beginTransaction();
+                try {
+                    for (CacheEntry entry : entries) {
+                        RealmEntry realmEntry = find(realm, entry.getPrimaryKey());
+                        if (realmEntry == null) {
+                            realmEntry = realm.createObject(RealmEntry.class);
+                            realmEntry.setPrimaryKey(entry.getPrimaryKey());
+                        }
+                        // Replaced entries move last, like a replaced row gets a new entry time.
+                        realmEntry.setSequence(mNextSequence++);
+                        realmEntry.setSourceFilePath(entry.getFileKey());
+                        realmEntry.setCacheFile(entry.getFile().getAbsolutePath());
+                        realmEntry.setWidth(entry.getWidth());
+                        realmEntry.setHeight(entry.getHeight());
+                        realmEntry.setByteSize(entry.getByteSize());
+                        realmEntry.setBitmapConfig(entry.getConfig().name());
+                        realmEntry.setFingerprint(entry.getFingerprint());
+                        realmEntry.setChecksum(entry.getChecksum());
+                        realmEntry.setPlaceholder(entry.getPlaceholder() != null ? entry.getPlaceholder() : NO_PLACEHOLDER);
+                    }
+                    realm.commitTransaction();
+                } catch (RuntimeException e) {
+                    realm.cancelTransaction();
+                    throw e;
+                }
+                return null;
+            }
+        });
     }
 
     @Override
     public void remove(CacheEntry entry) {
-        Realm realm = Realm.getInstance(mContext);
-        realm.beginTransaction();
+        removeAll(Collections.singletonList(entry));
+    }
 
-        RealmResults<RealmEntry> result = realm.where(RealmEntry.class).equalTo(IDENTITY_KEY, entry.getPrimaryKey()).findAll();
-        if (DEBUG) {
-            if (result.size() == 0) {
-                throw new RuntimeException("remove : noting found");
-            }
-            if (result.size() > 1) {
-                throw new RuntimeException("remove : multiple found " + result.size());
+    @Override
+    public void removeAll(final Collection<CacheEntry> entries) {
+        run(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Realm realm = realm();
+                realm.beginTransaction();
+                try {
+                    for (CacheEntry entry : entries) {
+                        RealmEntry realmEntry = find(realm, entry.getPrimaryKey());
+                        if (realmEntry != null) {
+                            realmEntry.removeFromRealm();
+                        }
+                    }
+                    realm.commitTransaction();
+                } catch (RuntimeException e) {
+                    realm.cancelTransaction();
+                    throw e;
+                }
+                return null;
             }
-        }
-        result.clear();
-
-        realm.commitTransaction();
-        realm.close();
+        });
     }
 
     @Override
     public CacheEntry[] retrieveAll() {
-        Realm realm = Realm.getInstance(mContext);
+        return retrieve(0, Integer.MAX_VALUE);
+    }
 
-        RealmResults<RealmEntry> realmEntries = realm.allObjects(RealmEntry.class);
-        int size = realmEntries.size();
-        CacheEntry[] result = new CacheEntry[size];
+    @Override
+    public CacheEntry[] retrieve(final int offset, final int count) {
+        return run(new Callable<CacheEntry[]>() {
+            @Override
+            public CacheEntry[] call() {
+                RealmResults<RealmEntry> realmEntries = realm().where(RealmEntry.class).findAllSorted(SEQUENCE, true);
+                int size = realmEntries.size();
+                int start = Math.min(offset, size);
+                int end = (int) Math.min((long) start + count, size);
+                CacheEntry[] result = new CacheEntry[end - start];
+
+                for (int i = start; i < end; i++) {
+                    RealmEntry pabloEntry = realmEntries.get(i);
+                    byte[] placeholder = pabloEntry.getPlaceholder();
+                    if (!Placeholder.isValid(placeholder)) {
+                        placeholder = null;
+                    }
+                    result[i - start] = new CacheEntry(pabloEntry.getSourceFilePath(), new File(pabloEntry.getCacheFile()), pabloEntry.getWidth(), pabloEntry.getHeight(), createConfig(pabloEntry.getBitmapConfig()), pabloEntry.getByteSize(), pabloEntry.getFingerprint(), pabloEntry.getChecksum(), placeholder);
+                }
+                return result;
+            }
+        });
+    }
 
-        for (int i = 0; i < size; i++) {
-            RealmEntry pabloEntry = realmEntries.get(i);
-            result[i] = new CacheEntry(pabloEntry.getSourceFilePath(), new File(pabloEntry.getCacheFile()), pabloEntry.getWidth(), pabloEntry.getHeight(), createConfig(pabloEntry.getBitmapConfig()), pabloEntry.getByteSize());
-        }
+    @Override
+    public boolean exists(final long identity) {
+        return run(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return find(realm(), identity) != null;
+            }
+        });
+    }
 
-        realm.close();
-        return result;
+    /**
+     * Realm only compacts a file that no instance has open, so nothing is done while in use.
+     */
+    @Override
+    public int compact(int maxPages) {
+        return 0;
     }
 
+    /**
+     * Close the Realm instance and stop the journal thread. The journal can not be used after
+     * this call.
+     */
     @Override
-    public boolean exists(long identity) {
-        Realm realm = Realm.getInstance(mContext);
-        RealmResults<RealmEntry> list = realm.where(RealmEntry.class).equalTo(IDENTITY_KEY, identity).findAll();
-        int size = list.size();
-        realm.close();
-        if (size == 1) {
-            return true;
-        } else if (size > 1 && DEBUG) {
-            throw new RuntimeException("multiple id's found " + size);
+    public void close() {
+        run(new Callable<Void>() {
+            @Override
+            public Void call() {
+                if (mRealm != null) {
+                    mRealm.close();
+                    mRealm = null;
+                }
+                return null;
+            }
+        });
+        mJournalThread.shutdown();
+    }
+
+    /**
+     * Get the Realm instance, opened on first use. Must be called on the journal thread. A
+     * journal written with an older schema is deleted, the journal is a cache index and is
+     * rebuilt as images are cached again. Inserts continue after the last sequence in the journal.
+     *
+     * @return The Realm instance.
+     */
+    private Realm realm() {
+        if (mRealm == null) {
+            try {
+                mRealm = Realm.getInstance(mContext);
+            } catch (RealmMigrationNeededException e) {
+                Realm.deleteRealmFile(mContext);
+                mRealm = Realm.getInstance(mContext);
+            }
+            RealmResults<RealmEntry> newest = mRealm.where(RealmEntry.class).findAllSorted(SEQUENCE, false);
+            mNextSequence = newest.isEmpty() ? 0 : newest.get(0).getSequence() + 1;
+        }
+        return mRealm;
+    }
+
+    /**
+     * Run an operation on the journal thread and wait for the result.
+     *
+     * @param operation The operation.
+     * @param <T>       Result type.
+     * @return The result.
+     */
+    private <T> T run(Callable<T> operation) {
+        try {
+            return mJournalThread.submit(operation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for journal", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Journal operation failed", e.getCause());
         }
-        return false;
     }
 
-    private Bitmap.Config createConfig(String textConfig) {
-        Bitmap.Config[] values = Bitmap.Config.values();
-        for (Bitmap.Config config : values) {
+    private static RealmEntry find(Realm realm, long identity) {
+        return realm.where(RealmEntry.class).equalTo(PRIMARY_KEY, identity).findFirst();
+    }
+
+    private PixelConfig createConfig(String textConfig) {
+        PixelConfig[] values = PixelConfig.values();
+        for (PixelConfig config : values) {
             if (config.name().equals(textConfig)) {
                 return config;
             }
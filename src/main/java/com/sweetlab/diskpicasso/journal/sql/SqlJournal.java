@@ -1,24 +1,28 @@
 package com.sweetlab.diskpicasso.journal.sql;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.graphics.Bitmap;
+import android.database.sqlite.SQLiteStatement;
 
 import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.Placeholder;
 import com.sweetlab.diskpicasso.journal.Journal;
 
 import java.io.File;
+import java.util.Collection;
 
 /**
- * A single journal implementation using sql.
+ * A single journal implementation using sql. The database connection is opened on first use
+ * and kept open, write ahead logging is enabled and all single row operations use compiled
+ * statements.
  */
 public class SqlJournal extends SQLiteOpenHelper implements Journal {
     private static SqlJournal sInstance;
 
-    private static final String EQ = " = ";
     private static final String NULL_SELECTION = null;
     private static final String[] NULL_ARGS = null;
     private static final String NULL_GROUP_BY = null;
@@ -35,18 +39,26 @@ public class SqlJournal extends SQLiteOpenHelper implements Journal {
             .COLUMN_NAME_CACHE_FILE_ABS_PATH, SqlJournalContract.EntryTable
             .COLUMN_NAME_BITMAP_WIDTH, SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_HEIGHT,
             SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_CONFIG,
-            SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_SIZE};
+            SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_SIZE,
+            SqlJournalContract.EntryTable.COLUMN_NAME_SOURCE_FINGERPRINT,
+            SqlJournalContract.EntryTable.COLUMN_NAME_CHECKSUM,
+            SqlJournalContract.EntryTable.COLUMN_NAME_PLACEHOLDER};
 
     /**
-     * Identity column only.
+     * Version and name. Version 2 added the entry time index, version 3 the source fingerprint,
+     * version 4 the checksum, version 5 the placeholder and version 6 changed the primary key
+     * so older entries are dropped on upgrade.
      */
-    private static String[] IDENTITY_COLUMN = new String[]{SqlJournalContract.EntryTable.COLUMN_NAME_IDENTITY,};
+    private static final int DB_VERSION = 6;
+    private static final String DB_NAME = "Pablo.db";
 
     /**
-     * Version and name.
+     * Open connection and compiled statements, created on first use.
      */
-    private static final int DB_VERSION = 1;
-    private static final String DB_NAME = "Pablo.db";
+    private SQLiteDatabase mDatabase;
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mDeleteStatement;
+    private SQLiteStatement mCountStatement;
 
     /**
      * Private constructor, singleton.
@@ -55,6 +67,7 @@ public class SqlJournal extends SQLiteOpenHelper implements Journal {
      */
     private SqlJournal(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
@@ -70,147 +83,214 @@ public class SqlJournal extends SQLiteOpenHelper implements Journal {
         return sInstance;
     }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL(SqlJournalContract.SQL_ENABLE_INCREMENTAL_VACUUM);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SqlJournalContract.SQL_CREATE_ENTRIES);
+        db.execSQL(SqlJournalContract.SQL_CREATE_ENTRY_TIME_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Entries of every older version are keyed the old way, the journal is a cache index and
+        // is rebuilt as images are cached again.
         db.execSQL(SqlJournalContract.SQL_DELETE_ENTRIES);
         onCreate(db);
     }
 
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        onUpgrade(db, oldVersion, newVersion);
+        db.execSQL(SqlJournalContract.SQL_DELETE_ENTRIES);
+        onCreate(db);
     }
 
     @Override
-    public void insert(CacheEntry entry) {
-        if (!exists(entry.getPrimaryKey())) {
-            SQLiteDatabase db = getWritableDatabase();
-            db.beginTransaction();
-
-            try {
-                ContentValues values = new ContentValues();
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_IDENTITY, entry.getPrimaryKey());
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_FILE_ABS_PATH,
-                        entry.getFileKey());
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_CACHE_FILE_ABS_PATH,
-                        entry.getFile().getAbsolutePath());
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_WIDTH, entry.getWidth());
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_HEIGHT,
-                        entry.getHeight());
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_SIZE,
-                        entry.getByteSize());
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_CONFIG,
-                        entry.getConfig().name());
-                values.put(SqlJournalContract.EntryTable.COLUMN_NAME_ENTRY_TIME,
-                        System.currentTimeMillis());
-                db.insert(SqlJournalContract.EntryTable.TABLE_NAME, null, values);
-
-                db.setTransactionSuccessful();
-            } finally {
-                db.endTransaction();
-                db.close();
-            }
-        }
+    public synchronized void insert(CacheEntry entry) {
+        open();
+        bindInsert(entry, System.currentTimeMillis());
+        mInsertStatement.executeInsert();
     }
 
     @Override
-    public void remove(CacheEntry entry) {
-        SQLiteDatabase db = getWritableDatabase();
-        String where = SqlJournalContract.EntryTable.COLUMN_NAME_IDENTITY + EQ + entry
-                .getPrimaryKey();
+    public synchronized void insertAll(Collection<CacheEntry> entries) {
+        SQLiteDatabase db = open();
+        final long now = System.currentTimeMillis();
         db.beginTransaction();
         try {
-            db.delete(SqlJournalContract.EntryTable.TABLE_NAME, where, null);
+            for (CacheEntry entry : entries) {
+                bindInsert(entry, now);
+                mInsertStatement.executeInsert();
+            }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
-            db.close();
         }
     }
 
     @Override
-    public CacheEntry[] retrieveAll() {
-        CacheEntry[] entries = null;
-        SQLiteDatabase db = getReadableDatabase();
-        Cursor cursor = null;
+    public synchronized void remove(CacheEntry entry) {
+        open();
+        mDeleteStatement.bindLong(1, entry.getPrimaryKey());
+        mDeleteStatement.executeUpdateDelete();
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<CacheEntry> entries) {
+        SQLiteDatabase db = open();
+        db.beginTransaction();
         try {
-            db.beginTransaction();
-            cursor = db
-                    .query(SqlJournalContract.EntryTable.TABLE_NAME, ENTRY_COLUMNS, NULL_SELECTION,
-                            NULL_ARGS, NULL_GROUP_BY, NULL_HAVING, SORT_OLDEST_FIRST);
-            if (cursor != null && cursor.moveToFirst()) {
-                int count = cursor.getCount();
-                entries = new CacheEntry[count];
-                for (int i = 0; i < count; i++) {
-                    String sourceFilePath = cursor.getString(cursor.getColumnIndex(
-                            SqlJournalContract.EntryTable.COLUMN_NAME_FILE_ABS_PATH));
-                    File cacheFile = new File(cursor.getString(cursor.getColumnIndex(
-                            SqlJournalContract.EntryTable.COLUMN_NAME_CACHE_FILE_ABS_PATH)));
-                    int width = cursor.getInt(cursor
-                            .getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_WIDTH));
-                    int height = cursor.getInt(cursor
-                            .getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_HEIGHT));
-                    Bitmap.Config config = createConfig(cursor.getString(cursor.getColumnIndex(
-                            SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_CONFIG)));
-                    int byteSize = cursor.getInt(cursor
-                            .getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_SIZE));
-                    entries[i] = new CacheEntry(sourceFilePath, cacheFile, width, height, config,
-                            byteSize);
-                    cursor.moveToNext();
-                }
+            for (CacheEntry entry : entries) {
+                mDeleteStatement.bindLong(1, entry.getPrimaryKey());
+                mDeleteStatement.executeUpdateDelete();
             }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
-            db.close();
-            if (cursor != null) {
-                cursor.close();
-            }
         }
-        return entries;
     }
 
     @Override
-    public boolean exists(long identity) {
-        boolean exists = false;
-        SQLiteDatabase db = getReadableDatabase();
-        Cursor cursor = null;
+    public synchronized CacheEntry[] retrieveAll() {
+        SQLiteDatabase db = open();
+        Cursor cursor = db.query(SqlJournalContract.EntryTable.TABLE_NAME, ENTRY_COLUMNS, NULL_SELECTION,
+                NULL_ARGS, NULL_GROUP_BY, NULL_HAVING, SORT_OLDEST_FIRST);
         try {
-            db.beginTransaction();
-            String IDENTITY_SELECTION = SqlJournalContract.EntryTable.COLUMN_NAME_IDENTITY + EQ + identity;
-
-            cursor = db
-                    .query(SqlJournalContract.EntryTable.TABLE_NAME, IDENTITY_COLUMN, IDENTITY_SELECTION,
-                            NULL_ARGS, NULL_GROUP_BY, NULL_HAVING, SORT_OLDEST_FIRST);
-            if (cursor != null && cursor.moveToFirst()) {
-                int count = cursor.getCount();
-                if (count > 1) {
-                    throw new RuntimeException("multiple identities found for " + identity);
-                }
-                long dbIdentity = cursor
-                        .getLong(cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_IDENTITY));
-
-                exists = dbIdentity == identity;
-            }
-            db.setTransactionSuccessful();
+            return readEntries(cursor);
         } finally {
-            db.endTransaction();
-            db.close();
-            if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public synchronized CacheEntry[] retrieve(int offset, int count) {
+        SQLiteDatabase db = open();
+        Cursor cursor = db.query(SqlJournalContract.EntryTable.TABLE_NAME, ENTRY_COLUMNS, NULL_SELECTION,
+                NULL_ARGS, NULL_GROUP_BY, NULL_HAVING, SORT_OLDEST_FIRST, offset + "," + count);
+        try {
+            return readEntries(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(long identity) {
+        open();
+        mCountStatement.bindLong(1, identity);
+        return mCountStatement.simpleQueryForLong() > 0;
+    }
+
+    /**
+     * Reclaim pages of deleted rows with an incremental vacuum. A database created before
+     * incremental vacuum was enabled is converted by one full vacuum, regardless of max pages.
+     */
+    @Override
+    public synchronized int compact(int maxPages) {
+        SQLiteDatabase db = open();
+        if (DatabaseUtils.longForQuery(db, SqlJournalContract.SQL_FREE_PAGES, null) == 0) {
+            return 0;
+        }
+        if (DatabaseUtils.longForQuery(db, SqlJournalContract.SQL_AUTO_VACUUM_MODE, null) != SqlJournalContract.AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL(SqlJournalContract.SQL_VACUUM);
+        } else {
+            Cursor cursor = db.rawQuery(SqlJournalContract.SQL_INCREMENTAL_VACUUM + maxPages + ")", null);
+            try {
+                cursor.moveToFirst();
+            } finally {
                 cursor.close();
             }
         }
-        return exists;
+        return (int) DatabaseUtils.longForQuery(db, SqlJournalContract.SQL_FREE_PAGES, null);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mDatabase != null) {
+            mInsertStatement.close();
+            mDeleteStatement.close();
+            mCountStatement.close();
+            mDatabase = null;
+        }
+        super.close();
+    }
+
+    /**
+     * Open the database connection and compile statements if not already done.
+     *
+     * @return The open database.
+     */
+    private SQLiteDatabase open() {
+        if (mDatabase == null) {
+            SQLiteDatabase db = getWritableDatabase();
+            mInsertStatement = db.compileStatement(SqlJournalContract.SQL_INSERT_ENTRY);
+            mDeleteStatement = db.compileStatement(SqlJournalContract.SQL_DELETE_ENTRY);
+            mCountStatement = db.compileStatement(SqlJournalContract.SQL_COUNT_ENTRY);
+            mDatabase = db;
+        }
+        return mDatabase;
+    }
+
+    /**
+     * Bind an entry to the insert statement.
+     *
+     * @param entry Cache entry.
+     * @param time  Entry time.
+     */
+    private void bindInsert(CacheEntry entry, long time) {
+        mInsertStatement.bindLong(1, entry.getPrimaryKey());
+        mInsertStatement.bindString(2, entry.getFileKey());
+        mInsertStatement.bindString(3, entry.getFile().getAbsolutePath());
+        mInsertStatement.bindLong(4, entry.getWidth());
+        mInsertStatement.bindLong(5, entry.getHeight());
+        mInsertStatement.bindLong(6, entry.getByteSize());
+        mInsertStatement.bindString(7, entry.getConfig().name());
+        mInsertStatement.bindLong(8, time);
+        mInsertStatement.bindLong(9, entry.getFingerprint());
+        mInsertStatement.bindLong(10, entry.getChecksum());
+        byte[] placeholder = entry.getPlaceholder();
+        if (placeholder != null) {
+            mInsertStatement.bindBlob(11, placeholder);
+        } else {
+            mInsertStatement.bindNull(11);
+        }
+    }
+
+    /**
+     * Read all rows of an entry cursor.
+     *
+     * @param cursor Cursor over ENTRY_COLUMNS.
+     * @return The entries.
+     */
+    private CacheEntry[] readEntries(Cursor cursor) {
+        final int fileKeyIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_FILE_ABS_PATH);
+        final int cacheFileIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_CACHE_FILE_ABS_PATH);
+        final int widthIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_WIDTH);
+        final int heightIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_HEIGHT);
+        final int configIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_CONFIG);
+        final int byteSizeIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_BITMAP_SIZE);
+        final int fingerprintIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_SOURCE_FINGERPRINT);
+        final int checksumIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_CHECKSUM);
+        final int placeholderIndex = cursor.getColumnIndex(SqlJournalContract.EntryTable.COLUMN_NAME_PLACEHOLDER);
+
+        CacheEntry[] entries = new CacheEntry[cursor.getCount()];
+        int i = 0;
+        while (cursor.moveToNext()) {
+            byte[] placeholder = cursor.isNull(placeholderIndex) ? null : cursor.getBlob(placeholderIndex);
+            entries[i++] = new CacheEntry(cursor.getString(fileKeyIndex), new File(cursor.getString(cacheFileIndex)),
+                    cursor.getInt(widthIndex), cursor.getInt(heightIndex), createConfig(cursor.getString(configIndex)),
+                    cursor.getInt(byteSizeIndex), cursor.getLong(fingerprintIndex), cursor.getLong(checksumIndex),
+                    Placeholder.isValid(placeholder) ? placeholder : null);
+        }
+        return entries;
     }
 
-    private Bitmap.Config createConfig(String textConfig) {
-        Bitmap.Config[] values = Bitmap.Config.values();
-        for (Bitmap.Config config : values) {
+    private PixelConfig createConfig(String textConfig) {
+        PixelConfig[] values = PixelConfig.values();
+        for (PixelConfig config : values) {
             if (config.name().equals(textConfig)) {
                 return config;
             }
@@ -6,6 +6,7 @@ package com.sweetlab.diskpicasso.journal.sql;
 public class SqlJournalContract {
     private static final String TEXT_TYPE = " TEXT";
     private static final String INTEGER_TYPE = " INTEGER";
+    private static final String BLOB_TYPE = " BLOB";
     private static final String COMMA_SEP = ",";
 
     /**
@@ -20,7 +21,73 @@ public class SqlJournalContract {
                     EntryTable.COLUMN_NAME_BITMAP_HEIGHT + INTEGER_TYPE + COMMA_SEP +
                     EntryTable.COLUMN_NAME_BITMAP_SIZE + INTEGER_TYPE + COMMA_SEP +
                     EntryTable.COLUMN_NAME_BITMAP_CONFIG + TEXT_TYPE + COMMA_SEP +
-                    EntryTable.COLUMN_NAME_ENTRY_TIME + INTEGER_TYPE + " )";
+                    EntryTable.COLUMN_NAME_ENTRY_TIME + INTEGER_TYPE + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_SOURCE_FINGERPRINT + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_CHECKSUM + INTEGER_TYPE + " DEFAULT -1" + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_PLACEHOLDER + BLOB_TYPE + " )";
+
+    /**
+     * Index used when retrieving entries oldest first.
+     */
+    public static final String SQL_CREATE_ENTRY_TIME_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + EntryTable.INDEX_NAME_ENTRY_TIME + " ON " +
+                    EntryTable.TABLE_NAME + " (" + EntryTable.COLUMN_NAME_ENTRY_TIME + ")";
+
+    /**
+     * Insert statement, entries already in the table are replaced.
+     */
+    public static final String SQL_INSERT_ENTRY =
+            "INSERT OR REPLACE INTO " + EntryTable.TABLE_NAME + " (" +
+                    EntryTable.COLUMN_NAME_IDENTITY + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_FILE_ABS_PATH + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_CACHE_FILE_ABS_PATH + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_BITMAP_WIDTH + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_BITMAP_HEIGHT + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_BITMAP_SIZE + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_BITMAP_CONFIG + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_ENTRY_TIME + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_SOURCE_FINGERPRINT + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_CHECKSUM + COMMA_SEP +
+                    EntryTable.COLUMN_NAME_PLACEHOLDER + ") VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+
+    /**
+     * Delete statement by identity.
+     */
+    public static final String SQL_DELETE_ENTRY =
+            "DELETE FROM " + EntryTable.TABLE_NAME + " WHERE " + EntryTable.COLUMN_NAME_IDENTITY + " = ?";
+
+    /**
+     * Count statement by identity.
+     */
+    public static final String SQL_COUNT_ENTRY =
+            "SELECT COUNT(*) FROM " + EntryTable.TABLE_NAME + " WHERE " + EntryTable.COLUMN_NAME_IDENTITY + " = ?";
+
+    /**
+     * Makes removed rows reclaimable in steps. Only takes effect before the table is created
+     * or with the next full vacuum.
+     */
+    public static final String SQL_ENABLE_INCREMENTAL_VACUUM = "PRAGMA auto_vacuum = INCREMENTAL";
+
+    /**
+     * Auto vacuum mode in use, 2 for incremental.
+     */
+    public static final String SQL_AUTO_VACUUM_MODE = "PRAGMA auto_vacuum";
+    public static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * Number of unused pages in the database file.
+     */
+    public static final String SQL_FREE_PAGES = "PRAGMA freelist_count";
+
+    /**
+     * Rebuild the whole database file.
+     */
+    public static final String SQL_VACUUM = "VACUUM";
+
+    /**
+     * Reclaim at most the given number of unused pages, append the count and a closing parenthesis.
+     */
+    public static final String SQL_INCREMENTAL_VACUUM = "PRAGMA incremental_vacuum(";
 
     /**
      * The delete statement.
@@ -41,5 +108,9 @@ public class SqlJournalContract {
         public static final String COLUMN_NAME_BITMAP_SIZE = "bitmap_size";
         public static final String COLUMN_NAME_BITMAP_CONFIG = "bitmap_config";
         public static final String COLUMN_NAME_ENTRY_TIME = "entry_time";
+        public static final String COLUMN_NAME_SOURCE_FINGERPRINT = "source_fingerprint";
+        public static final String COLUMN_NAME_CHECKSUM = "checksum";
+        public static final String COLUMN_NAME_PLACEHOLDER = "placeholder";
+        public static final String INDEX_NAME_ENTRY_TIME = "entry_time_index";
     }
 }
@@ -0,0 +1,92 @@
+package com.sweetlab.diskpicasso.maintenance;
+
+/**
+ * Housekeeping work run by the {@link MaintenanceScheduler} when the cache is idle. A pass of
+ * the job is split into slices, each slice stops at a deadline and the next slice continues
+ * where it stopped. Work that can not be split, such as one directory scan, is done in a
+ * single slice that may overrun the deadline.
+ */
+public abstract class MaintenanceJob {
+    private final String mName;
+    private final long mIntervalMillis;
+    private final long mSliceNanos;
+
+    /**
+     * Time the last pass finished, 0 before the first pass. Only touched by the scheduler.
+     */
+    private long mLastPassMillis;
+
+    /**
+     * Work units done in the running slice. Only touched on the slice thread.
+     */
+    private int mSliceWork;
+
+    /**
+     * Constructor.
+     *
+     * @param name           Name used in reports.
+     * @param intervalMillis Time from the end of one pass until the next is due.
+     * @param sliceMillis    Max time of one slice.
+     */
+    protected MaintenanceJob(String name, long intervalMillis, long sliceMillis) {
+        mName = name;
+        mIntervalMillis = intervalMillis;
+        mSliceNanos = sliceMillis * 1000000L;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long getSliceNanos() {
+        return mSliceNanos;
+    }
+
+    /**
+     * Check if the job has work to do. By default the first pass is due at once and the next
+     * after the interval. Override to also require something to do.
+     *
+     * @param nowMillis Current time in milliseconds.
+     * @return True if a slice should run.
+     */
+    public boolean isDue(long nowMillis) {
+        return mLastPassMillis == 0 || nowMillis - mLastPassMillis >= mIntervalMillis;
+    }
+
+    /**
+     * Run one slice of the current pass. Report work done with {@link #addWork(int)}.
+     *
+     * @param deadlineNanos {@link System#nanoTime()} to stop at.
+     * @return True if the pass finished, false to continue in the next slice.
+     */
+    protected abstract boolean runSlice(long deadlineNanos);
+
+    /**
+     * Count work done in the running slice, such as files verified or pages reclaimed.
+     *
+     * @param units Number of work units.
+     */
+    protected final void addWork(int units) {
+        mSliceWork += units;
+    }
+
+    /**
+     * Get and reset the work units of the last slice.
+     *
+     * @return Number of work units.
+     */
+    /*package*/ int takeWork() {
+        final int units = mSliceWork;
+        mSliceWork = 0;
+        return units;
+    }
+
+    /**
+     * Called by the scheduler when a pass finished.
+     *
+     * @param nowMillis Current time in milliseconds.
+     */
+    /*package*/ void onPassDone(long nowMillis) {
+        mLastPassMillis = nowMillis;
+    }
+}
@@ -0,0 +1,70 @@
+package com.sweetlab.diskpicasso.maintenance;
+
+/**
+ * What a maintenance job has done since the scheduler started.
+ */
+public class MaintenanceReport {
+    private final String mName;
+    private final int mPasses;
+    private final int mSlices;
+    private final long mWork;
+    private final long mBusyNanos;
+    private final long mMaxSliceNanos;
+    private final long mLastPassMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param name           Name of the job.
+     * @param passes         Number of passes finished.
+     * @param slices         Number of slices run.
+     * @param work           Work units done, such as files verified or pages reclaimed.
+     * @param busyNanos      Total time of all slices.
+     * @param maxSliceNanos  Time of the longest slice.
+     * @param lastPassMillis Time the last pass finished, 0 if none.
+     */
+    /*package*/ MaintenanceReport(String name, int passes, int slices, long work, long busyNanos,
+                                  long maxSliceNanos, long lastPassMillis) {
+        mName = name;
+        mPasses = passes;
+        mSlices = slices;
+        mWork = work;
+        mBusyNanos = busyNanos;
+        mMaxSliceNanos = maxSliceNanos;
+        mLastPassMillis = lastPassMillis;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPasses() {
+        return mPasses;
+    }
+
+    public int getSlices() {
+        return mSlices;
+    }
+
+    public long getWork() {
+        return mWork;
+    }
+
+    public long getBusyNanos() {
+        return mBusyNanos;
+    }
+
+    public long getMaxSliceNanos() {
+        return mMaxSliceNanos;
+    }
+
+    public long getLastPassMillis() {
+        return mLastPassMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mName + " passes " + mPasses + " slices " + mSlices + " work " + mWork + " busy " +
+                mBusyNanos / 1000000 + "ms max slice " + mMaxSliceNanos / 1000000 + "ms";
+    }
+}
@@ -0,0 +1,188 @@
+package com.sweetlab.diskpicasso.maintenance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * Runs maintenance jobs when the cache is idle. The cache counts as idle when no activity has
+ * been noted for a quiet period. Every tick each due job runs one slice on the executor, in
+ * the order added, and no more slices start once activity is noted again. A slice is capped
+ * by the job's slice time so maintenance never holds the executor for long.
+ */
+public class MaintenanceScheduler {
+    private final Executor mExecutor;
+    private final long mTickMillis;
+    private final long mQuietNanos;
+    private final List<JobState> mJobs = new ArrayList<>();
+    private final AtomicBoolean mPassQueued = new AtomicBoolean();
+    private volatile long mLastActivityNanos = System.nanoTime();
+    private volatile boolean mStopped;
+    private Scheduler.Worker mWorker;
+
+    /**
+     * Constructor.
+     *
+     * @param executor    Executor to run slices on, preferably at low priority.
+     * @param tickMillis  Time between checks for idle.
+     * @param quietMillis Time without activity before the cache counts as idle.
+     */
+    public MaintenanceScheduler(Executor executor, long tickMillis, long quietMillis) {
+        mExecutor = executor;
+        mTickMillis = tickMillis;
+        mQuietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+    }
+
+    /**
+     * Add a job, before {@link #start()}.
+     *
+     * @param job The job.
+     */
+    public synchronized void addJob(MaintenanceJob job) {
+        mJobs.add(new JobState(job));
+    }
+
+    /**
+     * Start checking for idle.
+     */
+    public synchronized void start() {
+        if (mWorker == null && !mStopped) {
+            mWorker = Schedulers.computation().createWorker();
+            mWorker.schedulePeriodically(new Action0() {
+                @Override
+                public void call() {
+                    tick();
+                }
+            }, mTickMillis, mTickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop for good. A slice already running finishes, no new slices start.
+     */
+    public synchronized void stop() {
+        mStopped = true;
+        if (mWorker != null) {
+            mWorker.unsubscribe();
+        }
+    }
+
+    /**
+     * Note interactive activity, such as a put. Cheap enough to call on every operation.
+     */
+    public void noteActivity() {
+        mLastActivityNanos = System.nanoTime();
+    }
+
+    /**
+     * Check if no activity has been noted for the quiet period.
+     *
+     * @return True if idle.
+     */
+    public boolean isIdle() {
+        return System.nanoTime() - mLastActivityNanos >= mQuietNanos;
+    }
+
+    /**
+     * Get a report per job, in the order added.
+     *
+     * @return The reports.
+     */
+    public synchronized List<MaintenanceReport> getReports() {
+        List<MaintenanceReport> reports = new ArrayList<>(mJobs.size());
+        for (JobState state : mJobs) {
+            reports.add(new MaintenanceReport(state.mJob.getName(), state.mPasses, state.mSlices, state.mWork,
+                    state.mBusyNanos, state.mMaxSliceNanos, state.mLastPassMillis));
+        }
+        return reports;
+    }
+
+    /**
+     * Queue a pass over the jobs if idle and no pass is queued already.
+     */
+    private void tick() {
+        if (mStopped || !isIdle() || !mPassQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runPass();
+                    } finally {
+                        mPassQueued.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mPassQueued.set(false);
+        }
+    }
+
+    /**
+     * Run one slice of each due job while still idle. A job throwing is treated as done and
+     * tried again after its interval.
+     */
+    private void runPass() {
+        final List<JobState> jobs;
+        synchronized (this) {
+            jobs = new ArrayList<>(mJobs);
+        }
+        for (JobState state : jobs) {
+            if (mStopped || !isIdle() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            final MaintenanceJob job = state.mJob;
+            if (!job.isDue(System.currentTimeMillis())) {
+                continue;
+            }
+            final long start = System.nanoTime();
+            boolean done;
+            try {
+                done = job.runSlice(start + job.getSliceNanos());
+            } catch (RuntimeException e) {
+                done = true;
+            }
+            final long elapsed = System.nanoTime() - start;
+            final long now = System.currentTimeMillis();
+            if (done) {
+                job.onPassDone(now);
+            }
+            synchronized (this) {
+                state.mSlices++;
+                state.mWork += job.takeWork();
+                state.mBusyNanos += elapsed;
+                state.mMaxSliceNanos = Math.max(state.mMaxSliceNanos, elapsed);
+                if (done) {
+                    state.mPasses++;
+                    state.mLastPassMillis = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * A job and its counters, guarded by the scheduler.
+     */
+    private static class JobState {
+        private final MaintenanceJob mJob;
+        private int mPasses;
+        private int mSlices;
+        private long mWork;
+        private long mBusyNanos;
+        private long mMaxSliceNanos;
+        private long mLastPassMillis;
+
+        private JobState(MaintenanceJob job) {
+            mJob = job;
+        }
+    }
+}
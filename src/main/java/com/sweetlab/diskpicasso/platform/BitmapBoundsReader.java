@@ -0,0 +1,23 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.graphics.BitmapFactory;
+
+import com.sweetlab.diskpicasso.core.BoundsReader;
+
+import java.io.File;
+
+/**
+ * Bounds reader using Android bitmap factory, decoding only the header of a cache file.
+ */
+public class BitmapBoundsReader implements BoundsReader {
+
+    @Override
+    public boolean readBounds(File file, int[] size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        size[0] = options.outWidth;
+        size[1] = options.outHeight;
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+}
@@ -0,0 +1,110 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageDecoder;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+import java.io.IOException;
+
+/**
+ * Decoder using Android bitmap factory. The source is subsampled with the largest power of two
+ * that keeps it at least as large as the requested size, and center crops only decode the
+ * cropped region, so the full size original is never held in memory.
+ */
+public class BitmapDecoder implements ImageDecoder {
+
+    @Override
+    public EncodableImage decode(String sourcePath, int width, int height, PixelConfig config, boolean centerCrop) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(sourcePath, options);
+        final int sourceWidth = options.outWidth;
+        final int sourceHeight = options.outHeight;
+        if (sourceWidth <= 0 || sourceHeight <= 0) {
+            throw new IOException("Failed to decode bounds of " + sourcePath);
+        }
+
+        Rect region = new Rect(0, 0, sourceWidth, sourceHeight);
+        if (centerCrop) {
+            final int cropWidth = (int) Math.min(sourceWidth, (long) sourceHeight * width / height);
+            final int cropHeight = (int) Math.min(sourceHeight, (long) sourceWidth * height / width);
+            final int left = (sourceWidth - cropWidth) / 2;
+            final int top = (sourceHeight - cropHeight) / 2;
+            region.set(left, top, left + cropWidth, top + cropHeight);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calcSampleSize(region.width(), region.height(), width, height);
+        options.inPreferredConfig = PixelConfigs.toBitmapConfig(config);
+
+        Bitmap sampled = centerCrop ? decodeRegion(sourcePath, region, options) : BitmapFactory.decodeFile(sourcePath, options);
+        if (sampled == null) {
+            throw new IOException("Failed to decode " + sourcePath);
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, width, height, true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return new BitmapImage(scaled);
+    }
+
+    @Override
+    public void release(EncodableImage image) {
+        ((BitmapImage) image).getBitmap().recycle();
+    }
+
+    /**
+     * Decode a region of the source. Falls back to a subsampled full decode and crop for formats
+     * the region decoder does not support.
+     *
+     * @param sourcePath Path to the source image.
+     * @param region     Region in source coordinates.
+     * @param options    Decode options.
+     * @return The decoded region or null if fails.
+     */
+    private static Bitmap decodeRegion(String sourcePath, Rect region, BitmapFactory.Options options) {
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(sourcePath, false);
+            try {
+                return decoder.decodeRegion(region, options);
+            } finally {
+                decoder.recycle();
+            }
+        } catch (IOException e) {
+            Bitmap full = BitmapFactory.decodeFile(sourcePath, options);
+            if (full == null) {
+                return null;
+            }
+            final int sample = options.inSampleSize;
+            Bitmap cropped = Bitmap.createBitmap(full, region.left / sample, region.top / sample,
+                    Math.min(full.getWidth(), region.width() / sample), Math.min(full.getHeight(), region.height() / sample));
+            if (cropped != full) {
+                full.recycle();
+            }
+            return cropped;
+        }
+    }
+
+    /**
+     * Calculate the largest power of two sample size keeping the source at least as large as the
+     * requested size.
+     *
+     * @param sourceWidth  Source width.
+     * @param sourceHeight Source height.
+     * @param width        Requested width.
+     * @param height       Requested height.
+     * @return The sample size.
+     */
+    private static int calcSampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= width && sourceHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,90 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.graphics.Bitmap;
+
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageEncoder;
+import com.sweetlab.diskpicasso.core.Placeholder;
+import com.sweetlab.diskpicasso.core.PlaceholderEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoder using Android bitmap compression. Only handles {@link BitmapImage}. Also encodes the
+ * placeholders, by a filtered scale to four times the placeholder size and averaging each
+ * block of four by four pixels, so a small bitmap is scaled instead of the whole image being
+ * read.
+ */
+public class BitmapEncoder implements ImageEncoder, PlaceholderEncoder {
+    /**
+     * Pixels per placeholder pixel in each direction of the intermediate scaled bitmap.
+     */
+    private static final int PLACEHOLDER_SUPERSAMPLE = 4;
+
+    private final Bitmap.CompressFormat mFormat;
+    private final int mQuality;
+
+    /**
+     * Constructor.
+     *
+     * @param format  Bitmap compress format.
+     * @param quality Bitmap compress quality.
+     */
+    public BitmapEncoder(Bitmap.CompressFormat format, int quality) {
+        mFormat = format;
+        mQuality = quality;
+    }
+
+    @Override
+    public void encode(EncodableImage image, OutputStream out) throws IOException {
+        if (!(image instanceof BitmapImage)) {
+            throw new IllegalArgumentException("Can only encode bitmap images " + image);
+        }
+        if (!((BitmapImage) image).getBitmap().compress(mFormat, mQuality, out)) {
+            throw new IOException("Failed to compress " + image);
+        }
+    }
+
+    @Override
+    public byte[] encodePlaceholder(EncodableImage image) {
+        if (!(image instanceof BitmapImage)) {
+            return null;
+        }
+        final Bitmap bitmap = ((BitmapImage) image).getBitmap();
+        final int width = Placeholder.calcWidth(bitmap.getWidth(), bitmap.getHeight());
+        final int height = Placeholder.calcHeight(bitmap.getWidth(), bitmap.getHeight());
+        final int scaledWidth = Math.min(bitmap.getWidth(), width * PLACEHOLDER_SUPERSAMPLE);
+        final int scaledHeight = Math.min(bitmap.getHeight(), height * PLACEHOLDER_SUPERSAMPLE);
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true);
+        int[] pixels = new int[scaledWidth * scaledHeight];
+        scaled.getPixels(pixels, 0, scaledWidth, 0, 0, scaledWidth, scaledHeight);
+        if (scaled != bitmap) {
+            scaled.recycle();
+        }
+
+        byte[] placeholder = Placeholder.allocate(width, height);
+        for (int y = 0; y < height; y++) {
+            final int top = y * scaledHeight / height;
+            final int bottom = Math.max(top + 1, (y + 1) * scaledHeight / height);
+            for (int x = 0; x < width; x++) {
+                final int left = x * scaledWidth / width;
+                final int right = Math.max(left + 1, (x + 1) * scaledWidth / width);
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int sy = top; sy < bottom; sy++) {
+                    for (int sx = left; sx < right; sx++) {
+                        final int pixel = pixels[sy * scaledWidth + sx];
+                        r += (pixel >> 16) & 0xff;
+                        g += (pixel >> 8) & 0xff;
+                        b += pixel & 0xff;
+                    }
+                }
+                final int count = (bottom - top) * (right - left);
+                Placeholder.setPixel(placeholder, x, y, (r / count) << 16 | (g / count) << 8 | (b / count));
+            }
+        }
+        return placeholder;
+    }
+}
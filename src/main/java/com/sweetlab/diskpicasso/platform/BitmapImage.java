@@ -0,0 +1,48 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.graphics.Bitmap;
+
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+/**
+ * Android bitmap as an encodable image.
+ */
+public class BitmapImage implements EncodableImage {
+    private final Bitmap mBitmap;
+    private final PixelConfig mConfig;
+
+    /**
+     * Constructor.
+     *
+     * @param bitmap The bitmap.
+     */
+    public BitmapImage(Bitmap bitmap) {
+        mBitmap = bitmap;
+        mConfig = PixelConfigs.from(bitmap.getConfig());
+    }
+
+    /**
+     * Get the wrapped bitmap.
+     *
+     * @return The bitmap.
+     */
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    @Override
+    public int getWidth() {
+        return mBitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mBitmap.getHeight();
+    }
+
+    @Override
+    public PixelConfig getPixelConfig() {
+        return mConfig;
+    }
+}
@@ -0,0 +1,199 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of bitmaps no longer displayed, reused as decode targets so cache reads do not allocate
+ * a new bitmap each. From KitKat any bitmap with a large enough allocation can be reused and
+ * bitmaps are grouped in power of two size classes, before KitKat only a bitmap with the same
+ * size and config can be reused. The oldest bitmaps are recycled when the pool is full.
+ */
+public class BitmapPool {
+    private static final boolean REUSE_ANY_SIZE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    /**
+     * Bitmaps per size class, most recently added last.
+     */
+    private final Map<Long, ArrayDeque<Bitmap>> mClasses = new HashMap<>();
+
+    /**
+     * All bitmaps, oldest first.
+     */
+    private final ArrayDeque<Bitmap> mOrder = new ArrayDeque<>();
+    private int mMaxSize;
+    private int mSize;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize Max size of pooled bitmaps in bytes.
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Get a bitmap to decode an image of the given size and config into.
+     *
+     * @param width  Image width.
+     * @param height Image height.
+     * @param config Image config.
+     * @return A reusable bitmap or null if none.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap;
+        if (REUSE_ANY_SIZE) {
+            final long sizeClass = ceilSizeClass(width * height * bytesPerPixel(config));
+            bitmap = poll(sizeClass);
+            if (bitmap == null) {
+                bitmap = poll(sizeClass + 1);
+            }
+        } else {
+            bitmap = poll(exactClass(width, height, config));
+        }
+        if (bitmap == null) {
+            mMisses++;
+        } else {
+            mHits++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Give a bitmap to the pool. The bitmap must not be displayed or held by any memory cache
+     * anymore. Bitmaps that can not be reused are recycled.
+     *
+     * @param bitmap The bitmap.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        final int size = allocationSize(bitmap);
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+        final long key = sizeClass(bitmap);
+        ArrayDeque<Bitmap> bitmaps = mClasses.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            mClasses.put(key, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        mOrder.addLast(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Set the max size, recycling the oldest bitmaps if the pool is larger.
+     *
+     * @param maxSize Max size of pooled bitmaps in bytes.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Recycle all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Get the size of pooled bitmaps.
+     *
+     * @return Size in bytes.
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Get the share of get calls that returned a bitmap.
+     *
+     * @return Hit rate from 0 to 1, 0 if never called.
+     */
+    public synchronized double getHitRate() {
+        final long total = mHits + mMisses;
+        return total == 0 ? 0 : (double) mHits / total;
+    }
+
+    private Bitmap poll(long key) {
+        ArrayDeque<Bitmap> bitmaps = mClasses.get(key);
+        if (bitmaps == null) {
+            return null;
+        }
+        Bitmap bitmap = bitmaps.pollLast();
+        if (bitmaps.isEmpty()) {
+            mClasses.remove(key);
+        }
+        mOrder.removeLastOccurrence(bitmap);
+        mSize -= allocationSize(bitmap);
+        return bitmap;
+    }
+
+    private void trimToSize(int maxSize) {
+        while (mSize > maxSize) {
+            Bitmap oldest = mOrder.pollFirst();
+            final long key = sizeClass(oldest);
+            ArrayDeque<Bitmap> bitmaps = mClasses.get(key);
+            bitmaps.removeFirstOccurrence(oldest);
+            if (bitmaps.isEmpty()) {
+                mClasses.remove(key);
+            }
+            mSize -= allocationSize(oldest);
+            oldest.recycle();
+        }
+    }
+
+    /**
+     * Size class of a pooled bitmap. From KitKat the largest power of two not above the
+     * allocation, so every bitmap in class n holds at least 2^n bytes.
+     */
+    private static long sizeClass(Bitmap bitmap) {
+        if (REUSE_ANY_SIZE) {
+            return 31 - Integer.numberOfLeadingZeros(allocationSize(bitmap));
+        }
+        return exactClass(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+    }
+
+    /**
+     * Smallest size class holding at least the given number of bytes.
+     */
+    private static long ceilSizeClass(int bytes) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, bytes) - 1);
+    }
+
+    private static long exactClass(int width, int height, Bitmap.Config config) {
+        return (long) width << 40 | (long) height << 16 | config.ordinal();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int allocationSize(Bitmap bitmap) {
+        return REUSE_ANY_SIZE ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.RegionDecoder;
+import com.sweetlab.diskpicasso.tile.Tile;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Region decoder using Android bitmap region decoder, producing the tiles of very large images.
+ * Also decodes cached tiles from their segment files.
+ */
+public class BitmapTileDecoder implements RegionDecoder {
+
+    @Override
+    public Source open(String sourcePath) throws IOException {
+        return new BitmapSource(BitmapRegionDecoder.newInstance(sourcePath, false));
+    }
+
+    /**
+     * Decode a cached tile.
+     *
+     * @param tile    The tile.
+     * @param options Decode options or null.
+     * @return The bitmap or null if the tile could not be decoded.
+     * @throws IOException If the segment file could not be read, for example when evicted.
+     */
+    public static Bitmap decodeTile(Tile tile, BitmapFactory.Options options) throws IOException {
+        byte[] bytes = new byte[tile.getByteSize()];
+        RandomAccessFile file = new RandomAccessFile(tile.getFile(), "r");
+        try {
+            file.seek(tile.getOffset());
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    /**
+     * An opened region decoder.
+     */
+    private static class BitmapSource implements Source {
+        private final BitmapRegionDecoder mDecoder;
+        private final Rect mRegion = new Rect();
+        private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+
+        BitmapSource(BitmapRegionDecoder decoder) {
+            mDecoder = decoder;
+        }
+
+        @Override
+        public int getWidth() {
+            return mDecoder.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return mDecoder.getHeight();
+        }
+
+        @Override
+        public EncodableImage decode(int left, int top, int right, int bottom, int sampleSize, PixelConfig config) throws IOException {
+            mRegion.set(left, top, right, bottom);
+            mOptions.inSampleSize = sampleSize;
+            mOptions.inPreferredConfig = PixelConfigs.toBitmapConfig(config);
+            Bitmap bitmap = mDecoder.decodeRegion(mRegion, mOptions);
+            if (bitmap == null) {
+                throw new IOException("Failed to decode region " + mRegion);
+            }
+            return new BitmapImage(bitmap);
+        }
+
+        @Override
+        public void release(EncodableImage image) {
+            ((BitmapImage) image).getBitmap().recycle();
+        }
+
+        @Override
+        public void close() {
+            mDecoder.recycle();
+        }
+    }
+}
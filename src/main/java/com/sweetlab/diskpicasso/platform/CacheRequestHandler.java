@@ -0,0 +1,173 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+import com.sweetlab.diskpicasso.filesystem.EncodedByteCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Picasso request handler decoding cache files. The cached size and primary key are part of the
+ * uri so no bounds decode is needed. The encoded bytes are taken from the encoded byte cache when
+ * set and cached, otherwise read from the file and put into the byte cache. They are read into a
+ * buffer reused by each decoding thread and decoded into a pooled bitmap when one fits.
+ */
+public class CacheRequestHandler extends RequestHandler {
+    public static final String SCHEME = "diskpicasso";
+    private static final String PARAM_WIDTH = "w";
+    private static final String PARAM_HEIGHT = "h";
+    private static final String PARAM_PRIMARY_KEY = "k";
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Encoded bytes of each decoding thread, grown as needed.
+     */
+    private static final ThreadLocal<ReadBuffer> READ_BUFFER = new ThreadLocal<ReadBuffer>() {
+        @Override
+        protected ReadBuffer initialValue() {
+            return new ReadBuffer();
+        }
+    };
+
+    private final BitmapPool mPool;
+    private volatile EncodedByteCache mByteCache;
+
+    /**
+     * Constructor.
+     *
+     * @param pool Pool to decode into.
+     */
+    public CacheRequestHandler(BitmapPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Create the uri of a cache file.
+     *
+     * @param cacheFile  The cache file.
+     * @param width      Cached image width.
+     * @param height     Cached image height.
+     * @param primaryKey Primary key of the cache entry.
+     * @return Uri handled by this handler.
+     */
+    public static Uri createUri(File cacheFile, int width, int height, long primaryKey) {
+        return new Uri.Builder().scheme(SCHEME).path(cacheFile.getAbsolutePath())
+                .appendQueryParameter(PARAM_WIDTH, Integer.toString(width))
+                .appendQueryParameter(PARAM_HEIGHT, Integer.toString(height))
+                .appendQueryParameter(PARAM_PRIMARY_KEY, Long.toString(primaryKey)).build();
+    }
+
+    /**
+     * Set the encoded byte cache to read from and fill.
+     *
+     * @param byteCache The byte cache or null for none.
+     */
+    public void setByteCache(EncodedByteCache byteCache) {
+        mByteCache = byteCache;
+    }
+
+    @Override
+    public boolean canHandleRequest(Request data) {
+        return SCHEME.equals(data.uri.getScheme());
+    }
+
+    @Override
+    public Result load(Request request, int networkPolicy) throws IOException {
+        final Uri uri = request.uri;
+        final String path = uri.getPath();
+        final long primaryKey = parseLong(uri, PARAM_PRIMARY_KEY);
+        final Bitmap.Config config = request.config != null ? request.config : Bitmap.Config.ARGB_8888;
+
+        ReadBuffer buffer = READ_BUFFER.get();
+        EncodedByteCache byteCache = mByteCache;
+        int length = -1;
+        if (byteCache != null) {
+            length = byteCache.get(primaryKey, buffer.mBytes);
+            if (length > buffer.mBytes.length) {
+                buffer.mBytes = new byte[length];
+                length = byteCache.get(primaryKey, buffer.mBytes);
+                if (length > buffer.mBytes.length) {
+                    // replaced by a larger file meanwhile
+                    length = -1;
+                }
+            }
+        }
+        if (length < 0) {
+            length = readFile(path, buffer);
+            if (byteCache != null) {
+                byteCache.put(primaryKey, buffer.mBytes, length);
+            }
+        }
+        final byte[] bytes = buffer.mBytes;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        options.inMutable = true;
+        options.inBitmap = mPool.get((int) parseLong(uri, PARAM_WIDTH), (int) parseLong(uri, PARAM_HEIGHT), config);
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap could not be reused for this image
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            mPool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+        }
+        if (bitmap == null) {
+            if (options.inBitmap != null) {
+                mPool.put(options.inBitmap);
+            }
+            throw new IOException("Failed to decode " + path);
+        }
+        return new Result(bitmap, Picasso.LoadedFrom.DISK);
+    }
+
+    /**
+     * Read a whole file into a buffer, growing it if needed.
+     *
+     * @param path   File path.
+     * @param buffer The buffer.
+     * @return Number of bytes read.
+     * @throws IOException If fails.
+     */
+    private static int readFile(String path, ReadBuffer buffer) throws IOException {
+        FileInputStream in = new FileInputStream(path);
+        try {
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer.mBytes, length, buffer.mBytes.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.mBytes.length) {
+                    buffer.mBytes = Arrays.copyOf(buffer.mBytes, length * 2);
+                }
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long parseLong(Uri uri, String param) throws IOException {
+        try {
+            return Long.parseLong(uri.getQueryParameter(param));
+        } catch (NumberFormatException e) {
+            throw new IOException("Missing " + param + " in " + uri);
+        }
+    }
+
+    private static class ReadBuffer {
+        private byte[] mBytes = new byte[READ_BUFFER_BYTES];
+    }
+}
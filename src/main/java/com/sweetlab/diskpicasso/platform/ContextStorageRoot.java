@@ -0,0 +1,48 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.StatFs;
+
+import com.sweetlab.diskpicasso.core.StorageRoot;
+
+import java.io.File;
+
+/**
+ * Storage root in a dedicated directory below the application cache directory.
+ */
+public class ContextStorageRoot implements StorageRoot {
+    private static final String DIRECTORY_NAME = "diskpicasso";
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    private final File mDirectory;
+    private final File mCacheDir;
+
+    /**
+     * Constructor.
+     *
+     * @param context Android application context.
+     */
+    public ContextStorageRoot(Context context) {
+        mCacheDir = context.getCacheDir();
+        mDirectory = new File(mCacheDir, DIRECTORY_NAME);
+    }
+
+    @Override
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public int getBlockSize() {
+        try {
+            StatFs statFs = new StatFs(mCacheDir.getAbsolutePath());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                return (int) statFs.getBlockSizeLong();
+            }
+            return statFs.getBlockSize();
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_BLOCK_SIZE;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.sweetlab.diskpicasso.platform;
+
+import android.graphics.Bitmap;
+
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+/**
+ * Conversion between Android bitmap configs and core pixel configs.
+ */
+public class PixelConfigs {
+
+    /**
+     * Convert a bitmap config.
+     *
+     * @param config The bitmap config.
+     * @return The pixel config.
+     */
+    public static PixelConfig from(Bitmap.Config config) {
+        return PixelConfig.valueOf(config.name());
+    }
+
+    /**
+     * Convert a pixel config.
+     *
+     * @param config The pixel config.
+     * @return The bitmap config.
+     */
+    public static Bitmap.Config toBitmapConfig(PixelConfig config) {
+        return Bitmap.Config.valueOf(config.name());
+    }
+
+    private PixelConfigs() {
+    }
+}
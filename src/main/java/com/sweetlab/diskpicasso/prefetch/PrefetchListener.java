@@ -0,0 +1,13 @@
+package com.sweetlab.diskpicasso.prefetch;
+
+/**
+ * Listener for prefetch completion.
+ */
+public interface PrefetchListener {
+    /**
+     * Called on the prefetch thread when a prefetch has finished or was stopped.
+     *
+     * @param report The outcome of the prefetch.
+     */
+    void onPrefetchDone(PrefetchReport report);
+}
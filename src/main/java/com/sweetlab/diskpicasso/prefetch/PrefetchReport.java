@@ -0,0 +1,75 @@
+package com.sweetlab.diskpicasso.prefetch;
+
+/**
+ * Outcome of a prefetch.
+ */
+public class PrefetchReport {
+    private final int mRequested;
+    private final int mGenerated;
+    private final int mSkipped;
+    private final int mFailed;
+    private final boolean mStopped;
+    private final long mElapsedNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param requested    Number of requested variants.
+     * @param generated    Number of variants decoded, encoded and put.
+     * @param skipped      Number of variants already in the cache.
+     * @param failed       Number of variants that failed.
+     * @param stopped      True if the prefetch was stopped before all variants were handled.
+     * @param elapsedNanos Time from start to finish.
+     */
+    /*package*/ PrefetchReport(int requested, int generated, int skipped, int failed, boolean stopped, long elapsedNanos) {
+        mRequested = requested;
+        mGenerated = generated;
+        mSkipped = skipped;
+        mFailed = failed;
+        mStopped = stopped;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    public int getRequested() {
+        return mRequested;
+    }
+
+    public int getGenerated() {
+        return mGenerated;
+    }
+
+    public int getSkipped() {
+        return mSkipped;
+    }
+
+    public int getFailed() {
+        return mFailed;
+    }
+
+    public boolean isStopped() {
+        return mStopped;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Get the throughput of generated variants.
+     *
+     * @return Generated images per second.
+     */
+    public double getImagesPerSecond() {
+        if (mElapsedNanos <= 0) {
+            return 0;
+        }
+        return mGenerated * 1e9 / mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchReport{requested=" + mRequested + ", generated=" + mGenerated + ", skipped=" + mSkipped +
+                ", failed=" + mFailed + ", stopped=" + mStopped + ", imagesPerSecond=" +
+                String.format("%.1f", getImagesPerSecond()) + "}";
+    }
+}
@@ -0,0 +1,63 @@
+package com.sweetlab.diskpicasso.prefetch;
+
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+/**
+ * Describes a cache variant to generate ahead of display.
+ */
+public class PrefetchSpec {
+    private final String mSourcePath;
+    private final String mFileKey;
+    private final int mWidth;
+    private final int mHeight;
+    private final PixelConfig mConfig;
+    private final boolean mCenterCrop;
+
+    /**
+     * Constructor.
+     *
+     * @param sourcePath Source file path to original image.
+     * @param fileKey    Source file key.
+     * @param width      Width of the variant.
+     * @param height     Height of the variant.
+     * @param config     Pixel config of the variant.
+     * @param centerCrop True if the variant is center cropped, false if scaled.
+     */
+    public PrefetchSpec(String sourcePath, String fileKey, int width, int height, PixelConfig config, boolean centerCrop) {
+        mSourcePath = sourcePath;
+        mFileKey = fileKey;
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mCenterCrop = centerCrop;
+    }
+
+    public String getSourcePath() {
+        return mSourcePath;
+    }
+
+    public String getFileKey() {
+        return mFileKey;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public PixelConfig getConfig() {
+        return mConfig;
+    }
+
+    public boolean isCenterCrop() {
+        return mCenterCrop;
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchSpec{" + mFileKey + " " + mWidth + "x" + mHeight + " " + mConfig + (mCenterCrop ? " crop" : "") + "}";
+    }
+}
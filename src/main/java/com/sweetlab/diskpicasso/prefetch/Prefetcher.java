@@ -0,0 +1,159 @@
+package com.sweetlab.diskpicasso.prefetch;
+
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageDecoder;
+import com.sweetlab.diskpicasso.executor.CacheExecutor;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates cache variants ahead of display on a single minimum priority thread. Each variant
+ * is decoded with bounded memory, encoded and put synchronously, so only one decoded image is
+ * alive at a time. Variants already in the cache from the current version of the source are
+ * skipped.
+ */
+public class Prefetcher {
+    private final DiskCache mDiskCache;
+    private final ImageDecoder mDecoder;
+    private final CacheExecutor mExecutor;
+
+    /**
+     * Incremented by stop, a prefetch quits when the generation it started in has passed.
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param diskCache The cache to put variants into.
+     * @param decoder   Decoder of source images.
+     */
+    public Prefetcher(DiskCache diskCache, ImageDecoder decoder) {
+        mDiskCache = diskCache;
+        mDecoder = decoder;
+        mExecutor = new CacheExecutor.Builder().setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PabloPrefetch");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }).build();
+    }
+
+    /**
+     * Generate the missing variants in the background. Asynchronous call, prefetches run one
+     * after another in the order they are requested.
+     *
+     * @param specs    The variants to generate.
+     * @param listener Listener of the outcome or null.
+     */
+    public void prefetch(Collection<PrefetchSpec> specs, final PrefetchListener listener) {
+        final List<PrefetchSpec> copy = new ArrayList<>(specs);
+        final int generation = mGeneration.get();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PrefetchReport report = runPrefetch(copy, generation);
+                if (listener != null) {
+                    listener.onPrefetchDone(report);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop all requested prefetches, typically when the app goes interactive. The variant
+     * currently being generated is finished, the rest are dropped.
+     */
+    public void stop() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Hold back prefetches until {@link #resume()}, the variant currently being generated is
+     * finished.
+     */
+    public void pause() {
+        mExecutor.pause();
+    }
+
+    /**
+     * Let prefetches held back by {@link #pause()} run again.
+     */
+    public void resume() {
+        mExecutor.resume();
+    }
+
+    /**
+     * Stop all prefetches and the prefetch thread. The prefetcher can not be used after this
+     * call.
+     */
+    public void shutdown() {
+        stop();
+        mExecutor.resume();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Generate variants until done or stopped.
+     *
+     * @param specs      The variants to generate.
+     * @param generation Generation the prefetch was requested in.
+     * @return The outcome.
+     */
+    private PrefetchReport runPrefetch(List<PrefetchSpec> specs, int generation) {
+        final long start = System.nanoTime();
+        int generated = 0;
+        int skipped = 0;
+        int failed = 0;
+        boolean stopped = false;
+        for (PrefetchSpec spec : specs) {
+            if (mGeneration.get() != generation) {
+                stopped = true;
+                break;
+            }
+            final long fingerprint = SourceFingerprint.fromMetadata(new File(spec.getSourcePath()));
+            if (mDiskCache.contains(spec.getFileKey(), spec.getWidth(), spec.getHeight(), spec.getConfig(), fingerprint)) {
+                skipped++;
+                continue;
+            }
+            if (generate(spec, fingerprint)) {
+                generated++;
+            } else {
+                failed++;
+            }
+        }
+        return new PrefetchReport(specs.size(), generated, skipped, failed, stopped, System.nanoTime() - start);
+    }
+
+    /**
+     * Decode, encode and put a single variant.
+     *
+     * @param spec        The variant.
+     * @param fingerprint Fingerprint of the source.
+     * @return True if success.
+     */
+    private boolean generate(PrefetchSpec spec, long fingerprint) {
+        EncodableImage image = null;
+        try {
+            image = mDecoder.decode(spec.getSourcePath(), spec.getWidth(), spec.getHeight(), spec.getConfig(), spec.isCenterCrop());
+            mDiskCache.putSync(spec.getFileKey(), image, fingerprint);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (image != null) {
+                mDecoder.release(image);
+            }
+        }
+    }
+}
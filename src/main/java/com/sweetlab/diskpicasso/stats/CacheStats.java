@@ -0,0 +1,347 @@
+package com.sweetlab.diskpicasso.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * Cache statistics. All record methods are cheap enough to be called on the hit path and
+ * can be called from any thread. When disabled every record method returns immediately.
+ * Lookup counters are relaxed and may under count slightly under heavy contention, gauges
+ * such as pending writes are exact.
+ */
+public class CacheStats {
+    private final boolean mEnabled;
+
+    /*package*/ final StripedCounter mExactHits = new StripedCounter();
+    /*package*/ final StripedCounter mExactMisses = new StripedCounter();
+    /*package*/ final StripedCounter mMatchHits = new StripedCounter();
+    /*package*/ final StripedCounter mMatchMisses = new StripedCounter();
+    /*package*/ final StripedCounter mWriteErrors = new StripedCounter();
+    /*package*/ final StripedCounter mEvictions = new StripedCounter();
+    /*package*/ final StripedCounter mEvictedBytes = new StripedCounter();
+    /*package*/ final StripedCounter mPendingWrites = new StripedCounter();
+    /*package*/ final StripedCounter mPendingEvictions = new StripedCounter();
+    /*package*/ final StripedCounter mVerifications = new StripedCounter();
+    /*package*/ final StripedCounter mCorruptFiles = new StripedCounter();
+    /*package*/ final StripedCounter mByteCacheHits = new StripedCounter();
+    /*package*/ final StripedCounter mByteCacheMisses = new StripedCounter();
+    /*package*/ final StripedCounter mOrphanFiles = new StripedCounter();
+    /*package*/ final StripedCounter mMissingFiles = new StripedCounter();
+    /*package*/ final StripedCounter mSharedWrites = new StripedCounter();
+
+    /*package*/ final LatencyHistogram mPutLatency = new LatencyHistogram();
+    /*package*/ final LatencyHistogram mEncodeLatency = new LatencyHistogram();
+    /*package*/ final LatencyHistogram mWriteLatency = new LatencyHistogram();
+    /*package*/ final LatencyHistogram mSyncLatency = new LatencyHistogram();
+    /*package*/ final LatencyHistogram mJournalLatency = new LatencyHistogram();
+    /*package*/ final LatencyHistogram mVerifyLatency = new LatencyHistogram();
+
+    /*package*/ volatile long mWarmUpNanos;
+    /*package*/ volatile long mByteCacheBytes;
+    /*package*/ volatile long mByteCacheCapacity;
+    /*package*/ volatile long mDiskBytes;
+    /*package*/ volatile long mDiskBudgetBytes;
+    /*package*/ volatile long mSharedBytes;
+
+    private Scheduler.Worker mExportWorker;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled False to turn all recording into no-ops.
+     */
+    public CacheStats(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * Check if recording is enabled.
+     *
+     * @return True if enabled.
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Record result of an exact lookup.
+     *
+     * @param hit True if found.
+     */
+    public void recordExact(boolean hit) {
+        if (mEnabled) {
+            (hit ? mExactHits : mExactMisses).incrementRelaxed();
+        }
+    }
+
+    /**
+     * Record results of a batch of exact lookups.
+     *
+     * @param hits   Number found.
+     * @param misses Number not found.
+     */
+    public void recordExact(int hits, int misses) {
+        if (mEnabled) {
+            mExactHits.add(hits);
+            mExactMisses.add(misses);
+        }
+    }
+
+    /**
+     * Record result of a match lookup.
+     *
+     * @param hit True if found.
+     */
+    public void recordMatch(boolean hit) {
+        if (mEnabled) {
+            (hit ? mMatchHits : mMatchMisses).incrementRelaxed();
+        }
+    }
+
+    /**
+     * Record a queued write.
+     */
+    public void recordWriteQueued() {
+        if (mEnabled) {
+            mPendingWrites.increment();
+        }
+    }
+
+    /**
+     * Record a completed put, from put call until the entry is in the memory cache.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    public void recordPut(long nanos) {
+        if (mEnabled) {
+            mPendingWrites.decrement();
+            mPutLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Record a failed put.
+     */
+    public void recordWriteError() {
+        if (mEnabled) {
+            mPendingWrites.decrement();
+            mWriteErrors.increment();
+        }
+    }
+
+    /**
+     * Record image encode duration, encoding into memory.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    public void recordEncode(long nanos) {
+        if (mEnabled) {
+            mEncodeLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Record cache file write duration, from encoded bytes to a closed file, including a sync
+     * of the file when every file is synced.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    public void recordWrite(long nanos) {
+        if (mEnabled) {
+            mWriteLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Record duration of syncing a batch of written files.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    public void recordSync(long nanos) {
+        if (mEnabled) {
+            mSyncLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Record a journal operation duration.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    public void recordJournal(long nanos) {
+        if (mEnabled) {
+            mJournalLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Record an eviction handed over to background removal.
+     *
+     * @param bytes Byte size of evicted entry.
+     */
+    public void recordEvictionQueued(long bytes) {
+        if (mEnabled) {
+            mPendingEvictions.increment();
+            mEvictions.increment();
+            mEvictedBytes.add(bytes);
+        }
+    }
+
+    /**
+     * Record a completed eviction.
+     */
+    public void recordEvictionDone() {
+        if (mEnabled) {
+            mPendingEvictions.decrement();
+        }
+    }
+
+    /**
+     * Record a cache file verification.
+     *
+     * @param nanos  Duration in nanoseconds.
+     * @param intact False if the file was corrupt and removed.
+     */
+    public void recordVerify(long nanos, boolean intact) {
+        if (mEnabled) {
+            mVerifications.increment();
+            if (!intact) {
+                mCorruptFiles.increment();
+            }
+            mVerifyLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Record result of a lookup in the encoded byte cache.
+     *
+     * @param hit True if the bytes were cached.
+     */
+    public void recordByteCacheLookup(boolean hit) {
+        if (mEnabled) {
+            (hit ? mByteCacheHits : mByteCacheMisses).incrementRelaxed();
+        }
+    }
+
+    /**
+     * Record the footprint of the encoded byte cache.
+     *
+     * @param usedBytes Bytes of cached files.
+     * @param capacity  Bytes allocated off heap.
+     */
+    public void recordByteCacheSize(long usedBytes, long capacity) {
+        if (mEnabled) {
+            mByteCacheBytes = usedBytes;
+            mByteCacheCapacity = capacity;
+        }
+    }
+
+    /**
+     * Record the outcome of comparing the index with the cache directory.
+     *
+     * @param diskBytes    Disk space used by the directory, in whole blocks.
+     * @param budgetBytes  Max disk space of the indexed entries.
+     * @param orphanFiles  Number of files not in the index that were deleted.
+     * @param missingFiles Number of indexed entries without a file that were removed.
+     */
+    public void recordReconcile(long diskBytes, long budgetBytes, int orphanFiles, int missingFiles) {
+        if (mEnabled) {
+            mDiskBytes = diskBytes;
+            mDiskBudgetBytes = budgetBytes;
+            mOrphanFiles.add(orphanFiles);
+            mMissingFiles.add(missingFiles);
+        }
+    }
+
+    /**
+     * Record a write skipped since a content addressed file with the same bytes existed.
+     */
+    public void recordSharedWrite() {
+        if (mEnabled) {
+            mSharedWrites.increment();
+        }
+    }
+
+    /**
+     * Record the disk space currently saved by variants sharing content addressed files.
+     *
+     * @param bytes Size in bytes.
+     */
+    public void recordSharedBytes(long bytes) {
+        if (mEnabled) {
+            mSharedBytes = bytes;
+        }
+    }
+
+    /**
+     * Record the time it took to warm up the memory cache from the journal.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    public void recordWarmUp(long nanos) {
+        if (mEnabled) {
+            mWarmUpNanos = nanos;
+        }
+    }
+
+    /**
+     * Take a snapshot of all statistics.
+     *
+     * @return The snapshot.
+     */
+    public StatsSnapshot snapshot() {
+        return new StatsSnapshot(this);
+    }
+
+    /**
+     * Reset all counters and histograms. Gauges such as pending writes are kept.
+     */
+    public void reset() {
+        mExactHits.reset();
+        mExactMisses.reset();
+        mMatchHits.reset();
+        mMatchMisses.reset();
+        mWriteErrors.reset();
+        mEvictions.reset();
+        mEvictedBytes.reset();
+        mVerifications.reset();
+        mCorruptFiles.reset();
+        mByteCacheHits.reset();
+        mByteCacheMisses.reset();
+        mOrphanFiles.reset();
+        mMissingFiles.reset();
+        mSharedWrites.reset();
+        mPutLatency.reset();
+        mEncodeLatency.reset();
+        mWriteLatency.reset();
+        mSyncLatency.reset();
+        mJournalLatency.reset();
+        mVerifyLatency.reset();
+    }
+
+    /**
+     * Set a listener that periodically receives a snapshot on a background thread. Any
+     * previous listener is removed.
+     *
+     * @param listener     The listener or null to remove.
+     * @param periodMillis Export period in milliseconds.
+     */
+    public synchronized void setListener(final StatsListener listener, long periodMillis) {
+        if (mExportWorker != null) {
+            mExportWorker.unsubscribe();
+            mExportWorker = null;
+        }
+        if (listener != null && mEnabled) {
+            mExportWorker = Schedulers.computation().createWorker();
+            mExportWorker.schedulePeriodically(new Action0() {
+                @Override
+                public void call() {
+                    listener.onStats(snapshot());
+                }
+            }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
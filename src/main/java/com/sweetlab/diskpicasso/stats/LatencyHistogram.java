@@ -0,0 +1,124 @@
+package com.sweetlab.diskpicasso.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with power of two nanosecond buckets. Bucket i holds samples in the range
+ * [2^i, 2^(i+1)) nanoseconds, the last bucket holds everything above.
+ */
+public class LatencyHistogram {
+    /**
+     * 2^36 ns is roughly 68 seconds, enough for any cache operation.
+     */
+    /*package*/ static final int BUCKET_COUNT = 37;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final StripedCounter mCount = new StripedCounter();
+    private final StripedCounter mTotalNanos = new StripedCounter();
+
+    /**
+     * Record a sample.
+     *
+     * @param nanos Sample duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 1) {
+            nanos = 1;
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros(nanos);
+        if (bucket >= BUCKET_COUNT) {
+            bucket = BUCKET_COUNT - 1;
+        }
+        mBuckets.incrementAndGet(bucket);
+        mCount.increment();
+        mTotalNanos.add(nanos);
+    }
+
+    /**
+     * Take a snapshot of the current state.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mCount.sum(), mTotalNanos.sum());
+    }
+
+    /**
+     * Reset the histogram.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.reset();
+        mTotalNanos.reset();
+    }
+
+    /**
+     * Immutable histogram snapshot.
+     */
+    public static class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mTotalNanos;
+
+        private Snapshot(long[] buckets, long count, long totalNanos) {
+            mBuckets = buckets;
+            mCount = count;
+            mTotalNanos = totalNanos;
+        }
+
+        /**
+         * Get number of samples.
+         *
+         * @return The sample count.
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Get the mean in nanoseconds.
+         *
+         * @return The mean or 0 if no samples.
+         */
+        public long getMeanNanos() {
+            return mCount == 0 ? 0 : mTotalNanos / mCount;
+        }
+
+        /**
+         * Get an approximate percentile. The upper bound of the bucket holding the percentile is
+         * returned so the value is never underestimated by more than a factor two.
+         *
+         * @param percentile Percentile between 0 and 100.
+         * @return The percentile in nanoseconds or 0 if no samples.
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long bucket : mBuckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return (1L << (i + 1)) - 1;
+                }
+            }
+            return (1L << mBuckets.length) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "n = " + mCount + " mean = " + getMeanNanos() / 1000 + "us p50 = " + getPercentileNanos(50) / 1000 + "us p99 = " + getPercentileNanos(99) / 1000 + "us";
+        }
+    }
+}
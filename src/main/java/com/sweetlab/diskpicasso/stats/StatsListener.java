@@ -0,0 +1,13 @@
+package com.sweetlab.diskpicasso.stats;
+
+/**
+ * Listener for periodic statistics export.
+ */
+public interface StatsListener {
+    /**
+     * Called periodically on a background thread.
+     *
+     * @param snapshot The current statistics.
+     */
+    void onStats(StatsSnapshot snapshot);
+}
@@ -0,0 +1,283 @@
+package com.sweetlab.diskpicasso.stats;
+
+/**
+ * Immutable point in time copy of the cache statistics.
+ */
+public class StatsSnapshot {
+    private final long mTimeMillis;
+    private final long mExactHits;
+    private final long mExactMisses;
+    private final long mMatchHits;
+    private final long mMatchMisses;
+    private final long mWriteErrors;
+    private final long mEvictions;
+    private final long mEvictedBytes;
+    private final long mPendingWrites;
+    private final long mPendingEvictions;
+    private final long mVerifications;
+    private final long mCorruptFiles;
+    private final long mByteCacheHits;
+    private final long mByteCacheMisses;
+    private final long mByteCacheBytes;
+    private final long mByteCacheCapacity;
+    private final long mOrphanFiles;
+    private final long mMissingFiles;
+    private final long mDiskBytes;
+    private final long mDiskBudgetBytes;
+    private final long mSharedWrites;
+    private final long mSharedBytes;
+    private final long mWarmUpNanos;
+    private final LatencyHistogram.Snapshot mPutLatency;
+    private final LatencyHistogram.Snapshot mEncodeLatency;
+    private final LatencyHistogram.Snapshot mWriteLatency;
+    private final LatencyHistogram.Snapshot mSyncLatency;
+    private final LatencyHistogram.Snapshot mJournalLatency;
+    private final LatencyHistogram.Snapshot mVerifyLatency;
+
+    /**
+     * Constructor.
+     *
+     * @param stats The statistics to copy.
+     */
+    /*package*/ StatsSnapshot(CacheStats stats) {
+        mTimeMillis = System.currentTimeMillis();
+        mExactHits = stats.mExactHits.sum();
+        mExactMisses = stats.mExactMisses.sum();
+        mMatchHits = stats.mMatchHits.sum();
+        mMatchMisses = stats.mMatchMisses.sum();
+        mWriteErrors = stats.mWriteErrors.sum();
+        mEvictions = stats.mEvictions.sum();
+        mEvictedBytes = stats.mEvictedBytes.sum();
+        mPendingWrites = stats.mPendingWrites.sum();
+        mPendingEvictions = stats.mPendingEvictions.sum();
+        mVerifications = stats.mVerifications.sum();
+        mCorruptFiles = stats.mCorruptFiles.sum();
+        mByteCacheHits = stats.mByteCacheHits.sum();
+        mByteCacheMisses = stats.mByteCacheMisses.sum();
+        mByteCacheBytes = stats.mByteCacheBytes;
+        mByteCacheCapacity = stats.mByteCacheCapacity;
+        mOrphanFiles = stats.mOrphanFiles.sum();
+        mMissingFiles = stats.mMissingFiles.sum();
+        mDiskBytes = stats.mDiskBytes;
+        mDiskBudgetBytes = stats.mDiskBudgetBytes;
+        mSharedWrites = stats.mSharedWrites.sum();
+        mSharedBytes = stats.mSharedBytes;
+        mWarmUpNanos = stats.mWarmUpNanos;
+        mPutLatency = stats.mPutLatency.snapshot();
+        mEncodeLatency = stats.mEncodeLatency.snapshot();
+        mWriteLatency = stats.mWriteLatency.snapshot();
+        mSyncLatency = stats.mSyncLatency.snapshot();
+        mJournalLatency = stats.mJournalLatency.snapshot();
+        mVerifyLatency = stats.mVerifyLatency.snapshot();
+    }
+
+    public long getTimeMillis() {
+        return mTimeMillis;
+    }
+
+    public long getExactHits() {
+        return mExactHits;
+    }
+
+    public long getExactMisses() {
+        return mExactMisses;
+    }
+
+    public long getMatchHits() {
+        return mMatchHits;
+    }
+
+    public long getMatchMisses() {
+        return mMatchMisses;
+    }
+
+    public long getWriteErrors() {
+        return mWriteErrors;
+    }
+
+    public long getEvictions() {
+        return mEvictions;
+    }
+
+    public long getEvictedBytes() {
+        return mEvictedBytes;
+    }
+
+    /**
+     * Get number of writes queued but not yet finished.
+     *
+     * @return The write queue depth.
+     */
+    public long getPendingWrites() {
+        return mPendingWrites;
+    }
+
+    /**
+     * Get number of evictions queued but not yet finished.
+     *
+     * @return The eviction queue depth.
+     */
+    public long getPendingEvictions() {
+        return mPendingEvictions;
+    }
+
+    public long getVerifications() {
+        return mVerifications;
+    }
+
+    /**
+     * Get number of cache files found corrupt and removed.
+     *
+     * @return The corrupt file count.
+     */
+    public long getCorruptFiles() {
+        return mCorruptFiles;
+    }
+
+    public long getWarmUpNanos() {
+        return mWarmUpNanos;
+    }
+
+    public long getByteCacheHits() {
+        return mByteCacheHits;
+    }
+
+    public long getByteCacheMisses() {
+        return mByteCacheMisses;
+    }
+
+    /**
+     * Get the bytes of files held by the encoded byte cache.
+     *
+     * @return Size in bytes.
+     */
+    public long getByteCacheBytes() {
+        return mByteCacheBytes;
+    }
+
+    /**
+     * Get the off heap memory allocated by the encoded byte cache, 0 if disabled.
+     *
+     * @return Size in bytes.
+     */
+    public long getByteCacheCapacity() {
+        return mByteCacheCapacity;
+    }
+
+    public long getOrphanFiles() {
+        return mOrphanFiles;
+    }
+
+    public long getMissingFiles() {
+        return mMissingFiles;
+    }
+
+    /**
+     * Get the disk space used by the cache directory in whole blocks, as of the last
+     * reconciliation. 0 before the first.
+     *
+     * @return Size in bytes.
+     */
+    public long getDiskBytes() {
+        return mDiskBytes;
+    }
+
+    /**
+     * Get the max disk space of the indexed entries, as of the last reconciliation.
+     *
+     * @return Size in bytes.
+     */
+    public long getDiskBudgetBytes() {
+        return mDiskBudgetBytes;
+    }
+
+    /**
+     * Get number of writes skipped since a content addressed file with the same bytes existed.
+     *
+     * @return The shared write count.
+     */
+    public long getSharedWrites() {
+        return mSharedWrites;
+    }
+
+    /**
+     * Get the disk space currently saved by variants sharing content addressed files.
+     *
+     * @return Size in bytes, 0 unless deduplication is enabled.
+     */
+    public long getSharedBytes() {
+        return mSharedBytes;
+    }
+
+    public LatencyHistogram.Snapshot getPutLatency() {
+        return mPutLatency;
+    }
+
+    public LatencyHistogram.Snapshot getEncodeLatency() {
+        return mEncodeLatency;
+    }
+
+    public LatencyHistogram.Snapshot getWriteLatency() {
+        return mWriteLatency;
+    }
+
+    public LatencyHistogram.Snapshot getSyncLatency() {
+        return mSyncLatency;
+    }
+
+    public LatencyHistogram.Snapshot getJournalLatency() {
+        return mJournalLatency;
+    }
+
+    public LatencyHistogram.Snapshot getVerifyLatency() {
+        return mVerifyLatency;
+    }
+
+    /**
+     * Get the exact lookup hit ratio.
+     *
+     * @return Hit ratio between 0 and 1.
+     */
+    public double getExactHitRatio() {
+        long total = mExactHits + mExactMisses;
+        return total == 0 ? 0 : (double) mExactHits / total;
+    }
+
+    /**
+     * Get the encoded byte cache hit ratio.
+     *
+     * @return Hit ratio between 0 and 1.
+     */
+    public double getByteCacheHitRatio() {
+        long total = mByteCacheHits + mByteCacheMisses;
+        return total == 0 ? 0 : (double) mByteCacheHits / total;
+    }
+
+    /**
+     * Get the match lookup hit ratio.
+     *
+     * @return Hit ratio between 0 and 1.
+     */
+    public double getMatchHitRatio() {
+        long total = mMatchHits + mMatchMisses;
+        return total == 0 ? 0 : (double) mMatchHits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "exact " + mExactHits + "/" + (mExactHits + mExactMisses) +
+                " match " + mMatchHits + "/" + (mMatchHits + mMatchMisses) +
+                " evictions " + mEvictions + " (" + mEvictedBytes + " bytes)" +
+                " pending writes " + mPendingWrites + " pending evictions " + mPendingEvictions +
+                " write errors " + mWriteErrors +
+                " corrupt " + mCorruptFiles + "/" + mVerifications +
+                " bytes " + mByteCacheHits + "/" + (mByteCacheHits + mByteCacheMisses) +
+                " (" + mByteCacheBytes + "/" + mByteCacheCapacity + " bytes)" +
+                " disk " + mDiskBytes + "/" + mDiskBudgetBytes + " bytes" +
+                " orphans " + mOrphanFiles + " missing " + mMissingFiles +
+                " shared " + mSharedWrites + " (" + mSharedBytes + " bytes)" +
+                " warm up " + mWarmUpNanos / 1000000 + "ms" +
+                " put [" + mPutLatency + "] encode [" + mEncodeLatency + "] write [" + mWriteLatency + "]" +
+                " journal [" + mJournalLatency + "] verify [" + mVerifyLatency + "]";
+    }
+}
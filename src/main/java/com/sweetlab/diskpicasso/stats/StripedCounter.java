@@ -0,0 +1,82 @@
+package com.sweetlab.diskpicasso.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead counter for hot paths. Updates are spread over padded cells selected by the
+ * calling thread so that concurrent writers rarely touch the same cache line. Reading the
+ * value sums all cells and is not an atomic snapshot.
+ */
+public class StripedCounter {
+    /**
+     * Number of cells, must be a power of two.
+     */
+    private static final int CELLS = 16;
+
+    /**
+     * Distance in longs between two cells, one cache line.
+     */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray mCells = new AtomicLongArray(CELLS * PADDING);
+
+    /**
+     * Increment by one.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Decrement by one.
+     */
+    public void decrement() {
+        add(-1);
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value Value to add.
+     */
+    public void add(long value) {
+        mCells.addAndGet(cellIndex(), value);
+    }
+
+    /**
+     * Increment by one without an atomic read-modify-write. Much cheaper than increment but an
+     * update may be lost when two threads sharing a cell increment at the same instant. Use it
+     * for high frequency counters where an approximate value is good enough.
+     */
+    public void incrementRelaxed() {
+        int index = cellIndex();
+        mCells.lazySet(index, mCells.get(index) + 1);
+    }
+
+    /**
+     * Get the current sum of all cells.
+     *
+     * @return The sum.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Reset all cells to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < CELLS; i++) {
+            mCells.set(i * PADDING, 0);
+        }
+    }
+
+    private static int cellIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) & (CELLS - 1)) * PADDING;
+    }
+}
@@ -1,63 +1,292 @@
 package com.sweetlab.diskpicasso.storage;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-
 import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.SizeValidator;
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.BoundsReader;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageEncoder;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.Placeholder;
+import com.sweetlab.diskpicasso.core.PlaceholderEncoder;
+import com.sweetlab.diskpicasso.core.StorageRoot;
+import com.sweetlab.diskpicasso.executor.CacheExecutor;
+import com.sweetlab.diskpicasso.filesystem.DirectoryScan;
+import com.sweetlab.diskpicasso.filesystem.Durability;
+import com.sweetlab.diskpicasso.filesystem.EncodedByteCache;
 import com.sweetlab.diskpicasso.filesystem.FileSystem;
 import com.sweetlab.diskpicasso.filesystem.WriteRequest;
+import com.sweetlab.diskpicasso.journal.ChangeFeed;
+import com.sweetlab.diskpicasso.journal.ChangeListener;
+import com.sweetlab.diskpicasso.journal.IndexSnapshot;
 import com.sweetlab.diskpicasso.journal.Journal;
-import com.sweetlab.diskpicasso.journal.realm.RealmJournal;
+import com.sweetlab.diskpicasso.maintenance.MaintenanceJob;
+import com.sweetlab.diskpicasso.maintenance.MaintenanceReport;
+import com.sweetlab.diskpicasso.maintenance.MaintenanceScheduler;
+import com.sweetlab.diskpicasso.stats.CacheStats;
+import com.sweetlab.diskpicasso.tile.Tile;
+import com.sweetlab.diskpicasso.tile.TileBatch;
+import com.sweetlab.diskpicasso.tile.TileKey;
+import com.sweetlab.diskpicasso.tile.TileSegment;
+import com.sweetlab.diskpicasso.tile.TileStore;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import rx.Observable;
-import rx.Subscriber;
+import rx.Scheduler;
 import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
 import rx.schedulers.Schedulers;
+import rx.subjects.BehaviorSubject;
 
 /**
- * Disk cache using local application data storage location and journal of any choice.
+ * Disk cache using a storage root, image encoder and journal of any choice. Platform
+ * independent, the Android binding provides the storage root, encoder and journal.
  */
 public class DiskCache {
-    private static final Bitmap.CompressFormat COMPRESS_FORMAT = Bitmap.CompressFormat.JPEG;
+    /**
+     * Number of entries read from the journal per step when warming up.
+     */
+    private static final int WARM_UP_CHUNK = 256;
+
+    /**
+     * Files up to this size are fully verified on first lookup.
+     */
+    private static final int FULL_VERIFY_BYTES = 64 * 1024;
+
+    /**
+     * One in this many larger files is fully verified on first lookup, the others only have
+     * their size checked. The scrubber fully verifies all files.
+     */
+    private static final int VERIFY_SAMPLE_RATE = 8;
+
+    /**
+     * Files verified per scrub batch and pause between batches.
+     */
+    private static final int SCRUB_BATCH = 16;
+    private static final long SCRUB_PAUSE_MILLIS = 50;
+
+    /**
+     * How often maintenance checks for idle and how long without puts or lookups through
+     * {@link #noteActivity()} counts as idle.
+     */
+    private static final long MAINTENANCE_TICK_MILLIS = 2000;
+    private static final long MAINTENANCE_QUIET_MILLIS = 3000;
+
+    /**
+     * Interval and slice time of the maintenance jobs. Compaction reclaims this many journal
+     * pages per step and trimming keeps the entries below this part of the max size, so
+     * interactive puts have room without evicting.
+     */
+    private static final long COMPACT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final long COMPACT_SLICE_MILLIS = 50;
+    private static final int COMPACT_PAGES = 64;
+    private static final long SCRUB_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final long SCRUB_SLICE_MILLIS = 20;
+    private static final long SNAPSHOT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long TRIM_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long TRIM_SLICE_MILLIS = 20;
+    private static final int TRIM_LOW_WATERMARK_PERCENT = 90;
+    private static final int TRIM_STEP_BLOCKS = 64;
+
+    /**
+     * Files not in the index are only deleted as orphans when older than this, younger files
+     * may be written by a putAll that has not journaled them yet.
+     */
+    private static final long ORPHAN_MIN_AGE_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Reconciliation never shrinks the budget of the indexed entries below this part of the
+     * cache size, so a burst of unindexed files can not empty the cache.
+     */
+    private static final int MIN_BUDGET_DIVISOR = 2;
+
+    /**
+     * Name of the change feed in the shared directory and how often it is polled in multi
+     * process mode.
+     */
+    private static final String CHANGE_FEED_NAME = "changes";
+    private static final long FEED_POLL_MILLIS = 1000;
+
+    /**
+     * Name of the index snapshot in the shared directory.
+     */
+    private static final String SNAPSHOT_NAME = "index";
+
+    /**
+     * Max number of threads recovering entries and number of entries per journal transaction
+     * when rebuilding the index.
+     */
+    private static final int REBUILD_THREADS = 4;
+    private static final int REBUILD_JOURNAL_BATCH = 1000;
+
+    /**
+     * Number of threads running asynchronous writes and removals.
+     */
+    private static final int WRITE_THREADS = 2;
+
+    /**
+     * Number of threads encoding the images of a putAll in parallel.
+     */
+    private static final int ENCODE_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
     private final Object mStorageGuard = new Object();
     private final FileSystem mFileSystem;
+    private final EncodedByteCache mByteCache;
     private final Journal mJournal;
     private final MemoryCache mMemoryCache;
+    private final CacheStats mStats;
+    private final CacheExecutor mWriteExecutor;
+    private final CacheExecutor mEncodeExecutor;
+    private final CacheExecutor mVerifyExecutor;
+    private final IndexSnapshot mSnapshot;
+
+    /**
+     * Index of the tiles in the tile segments of the memory cache.
+     */
+    private final TileStore mTiles = new TileStore();
+
+    /**
+     * True while the snapshot on disk matches the journal, guarded by the storage guard. The
+     * snapshot is deleted before the journal changes so a crash never leaves it stale.
+     */
+    private boolean mSnapshotFresh;
+
+    /**
+     * Runs compaction, scrubbing, reconciliation, snapshots and trimming when idle, or null if
+     * maintenance is disabled.
+     */
+    private final MaintenanceScheduler mMaintenance;
+
+    /**
+     * Evicted entries waiting to be removed from storage in one batch, guarded by itself.
+     */
+    private final List<CacheEntry> mEvicted = new ArrayList<>();
+
+    /**
+     * Number of writes and removals submitted and not yet done, guarded by itself.
+     */
+    private final Object mPendingLock = new Object();
+    private int mPendingTasks;
+    private volatile boolean mShutdown;
+
+    /**
+     * Disk space the cache directory may use, the cache size minus the reserved bytes.
+     */
+    private final long mMaxDiskBytes;
+    private final long mReconcileIntervalMillis;
+
+    /**
+     * Rebuilds the index from the cache files. The report of the last rebuild or null.
+     */
+    private final IndexRebuilder mRebuilder;
+    private volatile RebuildReport mRebuildReport;
+
+    /**
+     * Change feed shared with other processes, null if not in multi process mode. Only used
+     * under the storage guard.
+     */
+    private final ChangeFeed mChangeFeed;
+    private final ChangeListener mFeedListener = new FeedListener();
+    private Scheduler.Worker mFeedWorker;
+
+    /**
+     * Emits true when warm up from the journal is done.
+     */
+    private final BehaviorSubject<Boolean> mWarmedUp = BehaviorSubject.create(false);
+
+    private final AtomicInteger mVerifySampler = new AtomicInteger();
 
     /**
      * Builder to build a uninitialized cache.
      */
     public static class Builder {
-        private int mCacheSize;
+        private long mCacheSize;
+        private long mReservedBytes;
+        private long mReconcileIntervalMillis;
         private Journal mJournal;
-        private int mQuality;
+        private ImageEncoder mEncoder;
+        private PlaceholderEncoder mPlaceholderEncoder;
+        private BoundsReader mBoundsReader;
+        private boolean mStatsEnabled;
+        private Durability mDurability;
+        private int mByteCacheSize;
+        private boolean mMultiProcess;
+        private boolean mMaintenance;
+        private boolean mDeduplication;
 
         /**
-         * Default size if 200 MBytes and compress rate of 90.
+         * Default size if 200 MBytes with 1 MByte reserved, statistics enabled, files never
+         * synced, no encoded byte cache, no deduplication, no placeholders, index rebuilt
+         * from file footers only, maintenance enabled and reconciliation every 6 hours. Journal and encoder must be set.
          */
         public Builder() {
             mCacheSize = 200 * 1024 * 1024;
-            mQuality = 90;
+            mReservedBytes = 1024 * 1024;
+            mReconcileIntervalMillis = TimeUnit.HOURS.toMillis(6);
+            mStatsEnabled = true;
+            mDurability = Durability.NONE;
+            mMaintenance = true;
         }
 
         /**
-         * Set specific disk cache size.
+         * Set specific disk cache size. Cache files are accounted in whole file system blocks
+         * and the directories of the cache count as well.
          *
          * @param bytes Size in bytes.
          * @return The builder.
          */
-        public Builder setCacheSize(int bytes) {
+        public Builder setCacheSize(long bytes) {
             mCacheSize = bytes;
             return this;
         }
 
         /**
-         * Client can choose to implement own journal.
+         * Set the part of the cache size kept for files outside the cache directory, such as
+         * the journal.
+         *
+         * @param bytes Size in bytes, less than the cache size.
+         * @return The builder.
+         */
+        public Builder setReservedBytes(long bytes) {
+            mReservedBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Set how often the index is reconciled with the cache directory by maintenance, see
+         * {@link DiskCache#reconcile()}.
+         *
+         * @param millis Interval in milliseconds, 0 to only reconcile when asked.
+         * @return The builder.
+         */
+        public Builder setReconcileInterval(long millis) {
+            mReconcileIntervalMillis = millis;
+            return this;
+        }
+
+        /**
+         * Set the journal, required.
          *
          * @param journal Journal to use.
          * @return The builder.
@@ -68,157 +297,1974 @@ public class DiskCache {
         }
 
         /**
-         * Set the compress quality.
+         * Set the image encoder, required.
+         *
+         * @param encoder Encoder used to write cache files.
+         * @return The builder.
+         */
+        public Builder setEncoder(ImageEncoder encoder) {
+            mEncoder = encoder;
+            return this;
+        }
+
+        /**
+         * Set the encoder of the tiny previews kept inline with each entry, see
+         * {@link DiskCache#getPlaceholder(String)}. Each placeholder takes up to 514 bytes of
+         * journal and memory per variant.
+         *
+         * @param encoder Placeholder encoder or null for no placeholders.
+         * @return The builder.
+         */
+        public Builder setPlaceholderEncoder(PlaceholderEncoder encoder) {
+            mPlaceholderEncoder = encoder;
+            return this;
+        }
+
+        /**
+         * Set the reader of the size of cache files, so files without a footer, written by
+         * earlier versions, are also recovered when the index is rebuilt. Otherwise they are
+         * deleted as orphans. See {@link DiskCache#rebuildIndex()}.
+         *
+         * @param reader Bounds reader or null for footers only.
+         * @return The builder.
+         */
+        public Builder setBoundsReader(BoundsReader reader) {
+            mBoundsReader = reader;
+            return this;
+        }
+
+        /**
+         * Enable or disable statistics recording.
+         *
+         * @param enabled True to record statistics.
+         * @return The builder.
+         */
+        public Builder setStatsEnabled(boolean enabled) {
+            mStatsEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Set how far cache files are synced before they are journaled.
+         *
+         * @param durability The durability.
+         * @return The builder.
+         */
+        public Builder setDurability(Durability durability) {
+            mDurability = durability;
+            return this;
+        }
+
+        /**
+         * Keep the encoded bytes of recently written or read files in memory, off heap.
+         *
+         * @param bytes Size in bytes allocated at build, 0 to disable.
+         * @return The builder.
+         */
+        public Builder setByteCacheSize(int bytes) {
+            mByteCacheSize = bytes;
+            return this;
+        }
+
+        /**
+         * Share the cache directory with other processes of the application. Writes, removals
+         * and evictions take a file lock and are published in a change feed that every process
+         * polls to update its index, so a variant written by one process is found by the others
+         * instead of being encoded again. All processes must use the same directory, size and
+         * a journal that supports several processes, such as the sql journal.
+         *
+         * @param multiProcess True to share with other processes.
+         * @return The builder.
+         */
+        public Builder setMultiProcess(boolean multiProcess) {
+            mMultiProcess = multiProcess;
+            return this;
+        }
+
+        /**
+         * Enable or disable maintenance when idle: journal compaction, scrubbing, periodic
+         * reconciliation, index snapshots and trimming below the max size. See
+         * {@link DiskCache#getMaintenanceReports()}.
+         *
+         * @param enabled True to run maintenance.
+         * @return The builder.
+         */
+        public Builder setMaintenanceEnabled(boolean enabled) {
+            mMaintenance = enabled;
+            return this;
+        }
+
+        /**
+         * Store variants encoding to identical bytes once. Encoded bytes are hashed and each
+         * distinct content is written to one file referenced by all its variants, a file is
+         * deleted when its last variant is evicted or removed. Saves disk space when the same
+         * image is cached under several file keys, such as copies of a photo, at the cost of
+         * hashing every write. The size of the cache still counts every variant, see
+         * {@link com.sweetlab.diskpicasso.stats.StatsSnapshot#getSharedBytes()} for the space
+         * saved. Can not be combined with multi process mode.
          *
-         * @param quality Quality to compress with.
+         * @param deduplication True to share files of identical variants.
          * @return The builder.
          */
-        public Builder setCompressQuality(int quality) {
-            mQuality = quality;
+        public Builder setDeduplication(boolean deduplication) {
+            mDeduplication = deduplication;
             return this;
         }
 
         /**
          * Build an uninitialized cache.
          *
-         * @param context Android application context preferably.
+         * @param root Storage root of the cache files.
          * @return Uninitialized cache.
          */
-        public UnInitializedCache build(Context context) {
+        public UnInitializedCache build(StorageRoot root) {
             if (mJournal == null) {
-                mJournal = new RealmJournal(context);
+                throw new IllegalStateException("No journal set");
+            }
+            if (mEncoder == null) {
+                throw new IllegalStateException("No encoder set");
+            }
+            if (mReservedBytes < 0 || mReservedBytes >= mCacheSize) {
+                throw new IllegalStateException("Reserved bytes must be less than the cache size");
+            }
+            if (mDeduplication && mMultiProcess) {
+                throw new IllegalStateException("Deduplication can not be combined with multi process mode");
+            }
+            CacheStats stats = new CacheStats(mStatsEnabled);
+            EncodedByteCache byteCache = mByteCacheSize > 0 ? new EncodedByteCache(mByteCacheSize, stats) : null;
+            FileSystem fileSystem = new FileSystem(root, mEncoder, stats, mDurability, byteCache, mDeduplication,
+                    mPlaceholderEncoder);
+            ChangeFeed changeFeed = null;
+            if (mMultiProcess) {
+                try {
+                    changeFeed = new ChangeFeed(new File(fileSystem.getSharedDirectory(), CHANGE_FEED_NAME));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not open change feed", e);
+                }
             }
-            return new UnInitializedCache(new DiskCache(context, mCacheSize, mJournal, mQuality));
+            IndexRebuilder rebuilder = new IndexRebuilder(fileSystem, mBoundsReader,
+                    Math.min(REBUILD_THREADS, Runtime.getRuntime().availableProcessors()));
+            return new UnInitializedCache(new DiskCache(fileSystem, byteCache, mCacheSize - mReservedBytes,
+                    root.getBlockSize(), mReconcileIntervalMillis, changeFeed, mJournal, stats, mMaintenance, rebuilder));
         }
     }
 
     /**
      * Private constructor to enforce initialization method.
      *
-     * @param context        Android application context preferably.
-     * @param diskCacheBytes Disk cache size in bytes.
-     * @param journal        Journal used for persistence.
+     * @param fileSystem             File system to store cache files in.
+     * @param byteCache              Encoded byte cache of the file system or null.
+     * @param diskCacheBytes         Disk space of the cache directory in bytes.
+     * @param blockSize              File system block size in bytes.
+     * @param reconcileIntervalMillis Interval of background reconciliation, 0 for none.
+     * @param changeFeed             Change feed shared with other processes or null.
+     * @param journal                Journal used for persistence.
+     * @param stats                  Statistics to record into.
+     * @param maintenance            True to run maintenance when idle.
+     * @param rebuilder              Rebuilder of the index from the cache files.
      */
-    private DiskCache(Context context, int diskCacheBytes, Journal journal, int compressQuality) {
-        mFileSystem = new FileSystem(context, compressQuality, COMPRESS_FORMAT);
+    private DiskCache(FileSystem fileSystem, EncodedByteCache byteCache, long diskCacheBytes, int blockSize,
+                      long reconcileIntervalMillis, ChangeFeed changeFeed, Journal journal, CacheStats stats,
+                      boolean maintenance, IndexRebuilder rebuilder) {
+        mStats = stats;
+        mFileSystem = fileSystem;
+        mByteCache = byteCache;
         mJournal = journal;
-        mMemoryCache = new MemoryCache(diskCacheBytes, new MemoryCacheListener());
+        mMaxDiskBytes = diskCacheBytes;
+        mReconcileIntervalMillis = reconcileIntervalMillis;
+        mChangeFeed = changeFeed;
+        mRebuilder = rebuilder;
+        mMemoryCache = new MemoryCache(diskCacheBytes, blockSize, new MemoryCacheListener());
+        mWriteExecutor = new CacheExecutor.Builder().setCore(WRITE_THREADS).setMax(WRITE_THREADS).setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "PabloCacheWrite");
+            }
+        }).build();
+        mEncodeExecutor = new CacheExecutor.Builder().setCore(ENCODE_THREADS).setMax(ENCODE_THREADS).build();
+        mVerifyExecutor = new CacheExecutor.Builder().build();
+        mSnapshot = new IndexSnapshot(new File(fileSystem.getSharedDirectory(), SNAPSHOT_NAME));
+        mMaintenance = maintenance ? createMaintenance() : null;
     }
 
     /**
-     * Put a bitmap into the disk cache. Asynchronous call.
+     * Put an image into the disk cache. Asynchronous call.
      *
      * @param fileKey The source file key.
-     * @param bitmap  Bitmap to writeStorage/compress to disk cache.
+     * @param image   Image to encode and write to disk cache.
      */
-    public void put(final String fileKey, Bitmap bitmap) {
-        if (null == getExact(fileKey, bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig())) {
-            Observable<CacheEntry> observable = writeStorage(new WriteRequest(fileKey, bitmap)).subscribeOn(Schedulers.io());
+    public void put(String fileKey, EncodableImage image) {
+        put(fileKey, image, SourceFingerprint.NONE);
+    }
 
-            observable.subscribe(new Action1<CacheEntry>() {
+    /**
+     * Put an image into the disk cache. Asynchronous call. A cached variant from another
+     * version of the source is replaced.
+     *
+     * @param fileKey     The source file key.
+     * @param image       Image to encode and write to disk cache.
+     * @param fingerprint Fingerprint of the source or {@link SourceFingerprint#NONE}.
+     */
+    public void put(String fileKey, EncodableImage image, long fingerprint) {
+        noteActivity();
+        if (!mShutdown && needsWrite(fileKey, image, fingerprint)) {
+            final long start = System.nanoTime();
+            final WriteRequest req = new WriteRequest(fileKey, image, fingerprint);
+            mStats.recordWriteQueued();
+            boolean submitted = submitWork(new Runnable() {
                 @Override
-                public void call(CacheEntry entry) {
-//                    Log.d("Peter100", "DiskCache.call put " + entry);
-                    mMemoryCache.put(entry);
+                public void run() {
+                    try {
+                        write(req);
+                        mStats.recordPut(System.nanoTime() - start);
+                    } catch (IOException | RuntimeException e) {
+                        mStats.recordWriteError();
+                    }
                 }
             });
+            if (!submitted) {
+                mStats.recordWriteError();
+            }
         }
     }
 
     /**
-     * Get cached image from cache. Synchronous call.
+     * Put several variants of one source into the disk cache. Asynchronous call.
+     *
+     * @param fileKey The source file key.
+     * @param images  Images to encode and write to disk cache.
+     */
+    public void putAll(String fileKey, List<? extends EncodableImage> images) {
+        putAll(fileKey, images, SourceFingerprint.NONE);
+    }
+
+    /**
+     * Put several variants of one source into the disk cache, for example the levels of an
+     * image pyramid. Asynchronous call. The images are encoded in parallel and journaled in a
+     * single batch. Images already cached are skipped. The images must differ in size or config.
+     *
+     * @param fileKey     The source file key.
+     * @param images      Images to encode and write to disk cache.
+     * @param fingerprint Fingerprint of the source or {@link SourceFingerprint#NONE}.
+     */
+    public void putAll(final String fileKey, List<? extends EncodableImage> images, final long fingerprint) {
+        noteActivity();
+        if (mShutdown) {
+            return;
+        }
+        final List<EncodableImage> missing = new ArrayList<>(images.size());
+        for (EncodableImage image : images) {
+            if (needsWrite(fileKey, image, fingerprint)) {
+                missing.add(image);
+                mStats.recordWriteQueued();
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        boolean submitted = submitWork(new Runnable() {
+            @Override
+            public void run() {
+                boolean written;
+                try {
+                    writeAll(fileKey, missing, fingerprint);
+                    written = true;
+                } catch (IOException | RuntimeException e) {
+                    written = false;
+                }
+                for (int i = 0; i < missing.size(); i++) {
+                    if (written) {
+                        mStats.recordPut(System.nanoTime() - start);
+                    } else {
+                        mStats.recordWriteError();
+                    }
+                }
+            }
+        });
+        if (!submitted) {
+            for (int i = 0; i < missing.size(); i++) {
+                mStats.recordWriteError();
+            }
+        }
+    }
+
+    /**
+     * Put an image into the disk cache. Synchronous call, the image is encoded and written on
+     * the calling thread.
+     *
+     * @param fileKey     The source file key.
+     * @param image       Image to encode and write to disk cache.
+     * @param fingerprint Fingerprint of the source or {@link SourceFingerprint#NONE}.
+     * @return The cache entry, existing or written.
+     * @throws IOException If write fails.
+     */
+    public CacheEntry putSync(String fileKey, EncodableImage image, long fingerprint) throws IOException {
+        noteActivity();
+        if (mShutdown) {
+            throw new IOException("Cache is shut down");
+        }
+        CacheEntry existing = mMemoryCache.getExactEntry(fileKey, image.getWidth(), image.getHeight(), image.getPixelConfig());
+        if (existing != null && !existing.isStale(fingerprint)) {
+            return existing;
+        }
+        final long start = System.nanoTime();
+        mStats.recordWriteQueued();
+        CacheEntry entry;
+        try {
+            entry = write(new WriteRequest(fileKey, image, fingerprint));
+        } catch (IOException e) {
+            mStats.recordWriteError();
+            throw e;
+        }
+        mStats.recordPut(System.nanoTime() - start);
+        return entry;
+    }
+
+    /**
+     * Put a batch of tiles into the disk cache as one segment. Synchronous call, the tiles are
+     * encoded and written on the calling thread. The segment counts against the cache size
+     * and is evicted as a whole, see {@link com.sweetlab.diskpicasso.tile.TileGenerator} to
+     * generate tiles lazily.
+     *
+     * @param batch The tiles, at least one.
+     * @return The segment written.
+     * @throws IOException If write fails.
+     */
+    public TileSegment putTilesSync(TileBatch batch) throws IOException {
+        noteActivity();
+        if (mShutdown) {
+            throw new IOException("Cache is shut down");
+        }
+        final long start = System.nanoTime();
+        mStats.recordWriteQueued();
+        TileSegment segment;
+        try {
+            segment = writeTiles(batch);
+        } catch (IOException e) {
+            mStats.recordWriteError();
+            throw e;
+        }
+        mStats.recordPut(System.nanoTime() - start);
+        return segment;
+    }
+
+    /**
+     * Look up a tile. Never blocks, safe to call on the rendering thread.
+     *
+     * @param fileKey The source file key.
+     * @param level   Zoom level, 0 is full resolution.
+     * @param x       Tile column.
+     * @param y       Tile row.
+     * @return The tile or null if not cached.
+     */
+    public Tile getTile(String fileKey, int level, int x, int y) {
+        return mTiles.get(new TileKey(fileKey, level, x, y));
+    }
+
+    /**
+     * Look up a tile. Never blocks, safe to call on the rendering thread.
+     *
+     * @param key The tile key.
+     * @return The tile or null if not cached.
+     */
+    public Tile getTile(TileKey key) {
+        return mTiles.get(key);
+    }
+
+    /**
+     * Get the tiny preview of a source, kept in memory with its variants, to show while a
+     * variant is missing or being written. No disk access and no lookup recorded, safe to call
+     * on the main thread.
+     *
+     * @param fileKey The source file key.
+     * @return The placeholder of any cached variant, see {@link Placeholder}, or null if none.
+     */
+    public byte[] getPlaceholder(String fileKey) {
+        return mMemoryCache.getPlaceholder(fileKey);
+    }
+
+    /**
+     * Check if an image is in the cache without recording a lookup.
      *
      * @param fileKey The source file key.
      * @param width   The width of the cached image.
      * @param height  The height of the cached image.
-     * @param config  The bitmap config of the cached image.
-     * @return A file referencing the cached image or null if no match.
+     * @param config  The pixel config of the cached image.
+     * @return True if cached.
      */
-    public File getExact(String fileKey, int width, int height, Bitmap.Config config) {
-        return mMemoryCache.getExact(fileKey, width, height, config);
+    public boolean contains(String fileKey, int width, int height, PixelConfig config) {
+        return mMemoryCache.getExact(fileKey, width, height, config) != null;
     }
 
     /**
-     * Get a list of cache entries for the given source file key.
+     * Check if an image is in the cache from the given version of the source, without
+     * recording a lookup.
+     *
+     * @param fileKey     The source file key.
+     * @param width       The width of the cached image.
+     * @param height      The height of the cached image.
+     * @param config      The pixel config of the cached image.
+     * @param fingerprint Fingerprint of the source or {@link SourceFingerprint#NONE}.
+     * @return True if cached and not stale.
+     */
+    public boolean contains(String fileKey, int width, int height, PixelConfig config, long fingerprint) {
+        CacheEntry entry = mMemoryCache.getExactEntry(fileKey, width, height, config);
+        return entry != null && !entry.isStale(fingerprint);
+    }
+
+    /**
+     * Get cached image from cache. Synchronous call.
      *
      * @param fileKey The source file key.
-     * @return A unmodifiable list of entries.
+     * @param width   The width of the cached image.
+     * @param height  The height of the cached image.
+     * @param config  The pixel config of the cached image.
+     * @return A file referencing the cached image or null if no match.
      */
-    public List<CacheEntry> get(String fileKey) {
-        return mMemoryCache.get(fileKey);
+    public File getExact(String fileKey, int width, int height, PixelConfig config) {
+        CacheEntry entry = mMemoryCache.getExactEntry(fileKey, width, height, config);
+        mStats.recordExact(entry != null);
+        if (entry != null) {
+            verifyOnFirstLookup(entry);
+            return entry.getFile();
+        }
+        return null;
     }
 
     /**
-     * Initialize the disk cache memory from persisted storage.
+     * Get cached image from cache, validating it against the current source fingerprint.
+     * Synchronous call. A variant cached from another version of the source is a miss and is
+     * removed from the cache.
+     *
+     * @param fileKey     The source file key.
+     * @param width       The width of the cached image.
+     * @param height      The height of the cached image.
+     * @param config      The pixel config of the cached image.
+     * @param fingerprint Current fingerprint of the source or {@link SourceFingerprint#NONE}.
+     * @return A file referencing the cached image or null if no match.
      */
-    /*package*/ void init() {
-        CacheEntry[] entries;
-        synchronized (mStorageGuard) {
-            entries = mJournal.retrieveAll();
+    public File getExact(String fileKey, int width, int height, PixelConfig config, long fingerprint) {
+        CacheEntry entry = mMemoryCache.getExactEntry(fileKey, width, height, config);
+        if (entry != null && entry.isStale(fingerprint)) {
+            discard(Collections.singletonList(entry));
+            entry = null;
         }
-        if (entries != null) {
-            mMemoryCache.init(entries);
+        mStats.recordExact(entry != null);
+        if (entry != null) {
+            verifyOnFirstLookup(entry);
+            return entry.getFile();
         }
+        return null;
     }
 
     /**
-     * Write to storage. If success onNext is called. If fails, onError is called.
+     * Get cache entries of several images from cache in one call, for example all visible cells
+     * of a list. Synchronous call, cheaper than one getExact per image.
      *
-     * @param req Write request.
-     * @return Observable of the writeStorage.
+     * @param fileKeys The source file keys.
+     * @param widths   The widths of the cached images, one per file key.
+     * @param heights  The heights of the cached images, one per file key.
+     * @param config   The pixel config of all cached images.
+     * @param out      Filled with the cache entries, null where not found. At least as long as
+     *                 fileKeys.
+     * @return Number of entries found.
+     */
+    public int getAll(String[] fileKeys, int[] widths, int[] heights, PixelConfig config, CacheEntry[] out) {
+        final int hits = mMemoryCache.getAll(fileKeys, widths, heights, config, out);
+        mStats.recordExact(hits, fileKeys.length - hits);
+        for (int i = 0; i < fileKeys.length; i++) {
+            if (out[i] != null) {
+                verifyOnFirstLookup(out[i]);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Get cached image from cache. Asynchronous call that does not miss during warm up. Answers
+     * at once if the image is found or warm up is done, otherwise when warm up is done. The
+     * answer is emitted on the calling thread or on the warm up thread.
+     *
+     * @param fileKey The source file key.
+     * @param width   The width of the cached image.
+     * @param height  The height of the cached image.
+     * @param config  The pixel config of the cached image.
+     * @return Observable emitting the file referencing the cached image, empty if no match.
      */
-    private Observable<CacheEntry> writeStorage(final WriteRequest req) {
-        return Observable.create(new Observable.OnSubscribe<CacheEntry>() {
+    public Observable<File> getExactAsync(final String fileKey, final int width, final int height, final PixelConfig config) {
+        return Observable.defer(new Func0<Observable<File>>() {
             @Override
-            public void call(Subscriber<? super CacheEntry> subscriber) {
-                try {
-                    CacheEntry entry;
-                    synchronized (mStorageGuard) {
-                        File file = mFileSystem.write(req);
-                        entry = createEntry(req, file);
-                        mJournal.insert(entry);
-                    }
-                    subscriber.onNext(entry);
-                } catch (IOException e) {
-                    subscriber.onError(e);
+            public Observable<File> call() {
+                if (isWarmedUp() || mMemoryCache.getExactEntry(fileKey, width, height, config) != null) {
+                    return exactOrEmpty(fileKey, width, height, config);
                 }
+                return whenWarmedUp().flatMap(new Func1<Boolean, Observable<File>>() {
+                    @Override
+                    public Observable<File> call(Boolean ready) {
+                        return exactOrEmpty(fileKey, width, height, config);
+                    }
+                });
             }
         });
     }
 
     /**
-     * Create a cache entry.
+     * Get the cache entries of several source file keys in one call. Asynchronous call that
+     * does not miss during warm up. Answers at once if warm up is done, otherwise when warm up
+     * is done. The answer is emitted on the calling thread or on the warm up thread.
      *
-     * @param req       Write request.
-     * @param cacheFile The cache file to create.
-     * @return The cache entry created.
+     * @param fileKeys The source file keys.
+     * @return Observable emitting a map from each file key to its cache entries.
      */
-    private CacheEntry createEntry(WriteRequest req, File cacheFile) {
-        final Bitmap bitmap = req.getBitmap();
-        final String fileKey = req.getFileKey();
-        final int width = bitmap.getWidth();
-        final int height = bitmap.getHeight();
-        final Bitmap.Config config = bitmap.getConfig();
-        final int byteSize = (int) cacheFile.length();
-        return new CacheEntry(fileKey, cacheFile, width, height, config, byteSize);
+    public Observable<Map<String, List<CacheEntry>>> getAsync(final Collection<String> fileKeys) {
+        return whenWarmedUp().map(new Func1<Boolean, Map<String, List<CacheEntry>>>() {
+            @Override
+            public Map<String, List<CacheEntry>> call(Boolean ready) {
+                return mMemoryCache.getEntries(fileKeys);
+            }
+        });
     }
 
     /**
-     * Memory cache eviction listener.
+     * Check if warm up from the journal is done.
+     *
+     * @return True if done.
      */
-    private class MemoryCacheListener implements EvictionListener {
-        @Override
-        public void onEvicted(final CacheEntry entry) {
-            Schedulers.io().createWorker().schedule(new Action0() {
-                @Override
-                public void call() {
-                    synchronized (mStorageGuard) {
-                        mMemoryCache.remove(entry);
-                        mFileSystem.remove(entry);
-                        mJournal.remove(entry);
-                    }
-                }
-            });
+    public boolean isWarmedUp() {
+        return mWarmedUp.getValue();
+    }
+
+    /**
+     * Tries to find a match in the list of cache entries and records the outcome.
+     *
+     * @param list    List of cache entries
+     * @param resizeX Resize x value or 0 if unknown.
+     * @param resizeY Resize y value or 0 if unknown.
+     * @param config  Pixel config.
+     * @return The cache entry or null of not found.
+     */
+    public CacheEntry findMatch(List<CacheEntry> list, int resizeX, int resizeY, PixelConfig config) {
+        CacheEntry match = SizeValidator.findMatch(list, resizeX, resizeY, config);
+        mStats.recordMatch(match != null);
+        if (match != null) {
+            verifyOnFirstLookup(match);
+        }
+        return match;
+    }
+
+    /**
+     * Get a list of cache entries for the given source file key.
+     *
+     * @param fileKey The source file key.
+     * @return A unmodifiable list of entries.
+     */
+    public List<CacheEntry> get(String fileKey) {
+        return mMemoryCache.get(fileKey);
+    }
+
+    /**
+     * Remove all variants and tiles of a source, for example after it was edited. The journal
+     * is updated in a single batch in the background.
+     *
+     * @param fileKey The source file key.
+     * @return Number of variants and tile segments removed.
+     */
+    public int invalidate(String fileKey) {
+        List<CacheEntry> entries = mMemoryCache.getEntries(fileKey);
+        entries.addAll(mTiles.getSegments(fileKey));
+        return discard(entries);
+    }
+
+    /**
+     * Remove all variants of all sources with file keys starting with a prefix, for example a
+     * directory. The journal is updated in a single batch in the background.
+     *
+     * @param prefix The file key prefix.
+     * @return Number of variants removed.
+     */
+    public int invalidatePrefix(String prefix) {
+        return discard(mMemoryCache.getEntriesWithPrefix(prefix));
+    }
+
+    /**
+     * Verify all cache files in the background at minimum priority. Files are read in small
+     * batches, each queued on the verify thread after a pause so lookups are verified in
+     * between. Corrupt files are removed like evicted entries. Starts when warm up is done.
+     * Cancel the returned future to stop.
+     *
+     * @return Future of the number of corrupt files found.
+     */
+    public Future<Integer> scrub() {
+        return new SteppedTask<Integer>(SCRUB_PAUSE_MILLIS) {
+            private List<CacheEntry> mEntries;
+            private int mNext;
+            private int mCorrupt;
+
+            @Override
+            protected Integer step() {
+                if (mEntries == null) {
+                    mEntries = mMemoryCache.getAllEntries();
+                }
+                final int end = Math.min(mEntries.size(), mNext + SCRUB_BATCH);
+                while (mNext < end) {
+                    if (!scrub(mEntries.get(mNext++))) {
+                        mCorrupt++;
+                    }
+                }
+                return mNext < mEntries.size() ? null : mCorrupt;
+            }
+        }.start();
+    }
+
+    /**
+     * Compare the index with the cache directory in the background at minimum priority and
+     * correct the difference. Files not in the index are deleted, indexed entries without a
+     * file are removed and empty directories are deleted. The disk space used beyond the
+     * indexed entries, such as directories and files not yet journaled, is taken from the
+     * budget of the indexed entries, evicting entries if needed. Files are matched to entries
+     * by absolute path and nothing outside the storage root is touched. Starts when warm up is
+     * done, an index not fully loaded would make journaled files look like orphans.
+     *
+     * @return Future of the report.
+     */
+    public Future<ReconcileReport> reconcile() {
+        return new SteppedTask<ReconcileReport>(0) {
+            @Override
+            protected ReconcileReport step() {
+                return reconcileNow();
+            }
+        }.start();
+    }
+
+    /**
+     * Rebuild the index from the cache directory in the background at minimum priority. Cache
+     * files not in the index are recovered from their footer, or from their path and the size
+     * read by the bounds reader, on several threads, and journaled in large transactions. Files
+     * that can not be recovered are left to reconciliation. Writes wait while the index is
+     * rebuilt. Runs by itself at warm up when the journal is empty. Starts when warm up is
+     * done.
+     *
+     * @return Future of the report.
+     */
+    public Future<RebuildReport> rebuildIndex() {
+        return new SteppedTask<RebuildReport>(0) {
+            @Override
+            protected RebuildReport step() throws IOException {
+                synchronized (mStorageGuard) {
+                    return rebuildNow();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Get the report of the last index rebuild.
+     *
+     * @return The report or null if the index was never rebuilt.
+     */
+    public RebuildReport getRebuildReport() {
+        return mRebuildReport;
+    }
+
+    /**
+     * Note interactive use of the cache, such as loading a cached image. Maintenance only runs
+     * after a quiet period without activity. Puts note activity themselves.
+     */
+    public void noteActivity() {
+        if (mMaintenance != null) {
+            mMaintenance.noteActivity();
+        }
+    }
+
+    /**
+     * Get what each maintenance job has done.
+     *
+     * @return A report per job, empty if maintenance is disabled.
+     */
+    public List<MaintenanceReport> getMaintenanceReports() {
+        if (mMaintenance == null) {
+            return Collections.emptyList();
+        }
+        return mMaintenance.getReports();
+    }
+
+    /**
+     * Wait until all writes, removals and evictions submitted so far are done. Journal updates
+     * are not buffered, work that is done is committed.
+     *
+     * @param timeoutMillis Max time to wait in milliseconds.
+     * @return True if all work is done, false if the timeout passed first.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (mPendingLock) {
+            while (mPendingTasks > 0) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(mPendingLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hold back background work, for example during heavy UI work or on low battery. Queued
+     * writes, encodes, verifications and reconciliations wait, work already running finishes.
+     * Lookups and synchronous puts are not affected.
+     */
+    public void pause() {
+        mWriteExecutor.pause();
+        mEncodeExecutor.pause();
+        mVerifyExecutor.pause();
+    }
+
+    /**
+     * Let background work held back by {@link #pause()} run again.
+     */
+    public void resume() {
+        mWriteExecutor.resume();
+        mEncodeExecutor.resume();
+        mVerifyExecutor.resume();
+    }
+
+    /**
+     * Check if background work is paused.
+     *
+     * @return True if paused.
+     */
+    public boolean isPaused() {
+        return mWriteExecutor.isPaused();
+    }
+
+    /**
+     * Stop the cache. New puts are ignored, maintenance and scrubbing are cancelled and
+     * pending writes, removals and evictions are drained. When everything drained in time an
+     * index snapshot is written so the next warm up is a single read. Then the executors,
+     * journal and change feed are closed. The cache can only be looked up after this call.
+     *
+     * @param timeoutMillis Max time to wait for pending work in milliseconds.
+     * @return True if all pending work was done, false if the timeout passed first. Work still
+     * running may then fail on the closed journal.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        mShutdown = true;
+        if (mMaintenance != null) {
+            mMaintenance.stop();
+        }
+        synchronized (this) {
+            if (mFeedWorker != null) {
+                mFeedWorker.unsubscribe();
+            }
+        }
+        mStats.setListener(null, 0);
+        mVerifyExecutor.shutdownNow();
+        resume();
+        boolean drained = flush(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        mWriteExecutor.shutdown();
+        mEncodeExecutor.shutdown();
+        drained &= mWriteExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        drained &= mVerifyExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        synchronized (mStorageGuard) {
+            if (drained && mChangeFeed == null && isWarmedUp()) {
+                try {
+                    mSnapshot.write(mMemoryCache.getAllEntries());
+                    mSnapshotFresh = true;
+                } catch (IOException e) {
+                    mSnapshot.delete();
+                }
+            }
+            mJournal.close();
+            if (mChangeFeed != null) {
+                mChangeFeed.close();
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Get the encoded byte cache, for decoding cache files without file I/O.
+     *
+     * @return The byte cache or null if not enabled.
+     */
+    public EncodedByteCache getByteCache() {
+        return mByteCache;
+    }
+
+    /**
+     * Get the cache statistics.
+     *
+     * @return The statistics.
+     */
+    public CacheStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Initialize the disk cache memory from persisted storage. A snapshot written at the last
+     * shutdown is read in one go, otherwise entries are loaded from the journal in chunks so
+     * lookups start to hit before the whole journal is read. The storage guard is held during
+     * the whole warm up so evictions can not shift the chunks. In multi process mode other
+     * processes change the journal, a snapshot is never used and the chunks are read under the
+     * shared lock. An empty journal is rebuilt from the cache files.
+     */
+    /*package*/ void init() {
+        final long start = System.nanoTime();
+        synchronized (mStorageGuard) {
+            CacheEntry[] snapshot = null;
+            if (mChangeFeed == null) {
+                snapshot = mSnapshot.consume();
+            } else {
+                mSnapshot.delete();
+            }
+            if (snapshot != null) {
+                mFileSystem.adopt(snapshot);
+                List<CacheEntry> unreadable = loadTiles(snapshot);
+                mMemoryCache.init(snapshot);
+                discard(unreadable);
+            }
+            final int warmed = snapshot == null ? warmUpFromJournal() : snapshot.length;
+            if (warmed == 0) {
+                try {
+                    rebuildNow();
+                } catch (IOException e) {
+                    // Left to reconciliation.
+                }
+            }
+        }
+        mStats.recordWarmUp(System.nanoTime() - start);
+        mWarmedUp.onNext(true);
+        if (mMaintenance != null && !mShutdown) {
+            mMaintenance.start();
+        }
+        scheduleFeedPoll();
+    }
+
+    /**
+     * Load the journal into the memory cache in chunks, see {@link #init()}. Must hold the
+     * storage guard. In multi process mode under the shared lock, so other processes can not
+     * remove or move entries between the chunks and make later chunks skip entries. If the lock
+     * can not be taken the journal is read in one pass instead.
+     *
+     * @return Number of entries read.
+     */
+    private int warmUpFromJournal() {
+        boolean chunked = true;
+        try {
+            beginShared();
+        } catch (IOException e) {
+            chunked = false;
+        }
+        try {
+            int offset = 0;
+            while (true) {
+                final long journalStart = System.nanoTime();
+                CacheEntry[] entries = chunked ? mJournal.retrieve(offset, WARM_UP_CHUNK) : mJournal.retrieveAll();
+                mStats.recordJournal(System.nanoTime() - journalStart);
+                if (entries == null || entries.length == 0) {
+                    return offset;
+                }
+                mFileSystem.adopt(entries);
+                List<CacheEntry> unreadable = loadTiles(entries);
+                mMemoryCache.init(entries);
+                discard(unreadable);
+                offset += entries.length;
+                if (!chunked || entries.length < WARM_UP_CHUNK) {
+                    return offset;
+                }
+            }
+        } finally {
+            if (chunked) {
+                endShared();
+            }
+        }
+    }
+
+    /**
+     * Initialize on a write thread, see {@link #init()}. Flush and shutdown wait for it.
+     *
+     * @param then Run on the same thread when initialized, or null.
+     */
+    /*package*/ void initAsync(final Runnable then) {
+        submitWork(new Runnable() {
+            @Override
+            public void run() {
+                init();
+                if (then != null) {
+                    then.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Run work on the write executor, counted until done so flush can wait for it.
+     *
+     * @param work The work.
+     * @return False if rejected because the cache is shut down.
+     */
+    private boolean submitWork(final Runnable work) {
+        synchronized (mPendingLock) {
+            mPendingTasks++;
+        }
+        try {
+            mWriteExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        work.run();
+                    } finally {
+                        finishWork();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            finishWork();
+            return false;
+        }
+    }
+
+    private void finishWork() {
+        synchronized (mPendingLock) {
+            if (--mPendingTasks == 0) {
+                mPendingLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Start polling the change feed, in multi process mode.
+     */
+    private synchronized void scheduleFeedPoll() {
+        if (mChangeFeed != null && mFeedWorker == null && !mShutdown) {
+            mFeedWorker = Schedulers.computation().createWorker();
+            mFeedWorker.schedulePeriodically(new Action0() {
+                @Override
+                public void call() {
+                    pollShared();
+                }
+            }, FEED_POLL_MILLIS, FEED_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Apply the changes other processes published since the last poll, in multi process mode.
+     * Failures are retried by the next poll.
+     */
+    private void pollShared() {
+        if (mChangeFeed == null) {
+            return;
+        }
+        synchronized (mStorageGuard) {
+            try {
+                mChangeFeed.poll(mFeedListener);
+            } catch (IOException ignored) {
+                // Retried by the next poll.
+            }
+        }
+    }
+
+    /**
+     * Take the lock shared with other processes and apply their changes, in multi process
+     * mode. Must hold the storage guard and call {@link #endShared()} after.
+     *
+     * @throws IOException If locking or reading the feed fails.
+     */
+    private void beginShared() throws IOException {
+        if (mChangeFeed != null) {
+            mChangeFeed.lock();
+            try {
+                mChangeFeed.poll(mFeedListener);
+            } catch (IOException e) {
+                mChangeFeed.unlock();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Release the lock taken by {@link #beginShared()}.
+     */
+    private void endShared() {
+        if (mChangeFeed != null) {
+            mChangeFeed.unlock();
+        }
+    }
+
+    /**
+     * Publish entries written by this process to the other processes, in multi process mode.
+     * Must hold the shared lock and have committed the entries to the journal, appending may
+     * compact the feed and make the other processes reload the journal.
+     *
+     * @param entries The entries written.
+     */
+    private void publishPut(List<CacheEntry> entries) {
+        if (mChangeFeed != null) {
+            try {
+                mChangeFeed.appendPut(entries);
+            } catch (IOException ignored) {
+                // Not published, other processes find the entries when they reload the journal.
+            }
+        }
+    }
+
+    /**
+     * Create the maintenance scheduler and its jobs, the snapshot last since the other jobs
+     * change the index. Slices run on the verify executor at minimum priority, paused and
+     * stopped with the rest of the background work. Reconciliation only runs when periodic
+     * reconciliation is enabled and snapshots only in single process mode.
+     *
+     * @return The scheduler.
+     */
+    private MaintenanceScheduler createMaintenance() {
+        MaintenanceScheduler scheduler = new MaintenanceScheduler(mVerifyExecutor, MAINTENANCE_TICK_MILLIS,
+                MAINTENANCE_QUIET_MILLIS);
+        scheduler.addJob(new TrimJob());
+        scheduler.addJob(new CompactJob());
+        scheduler.addJob(new ScrubJob());
+        if (mReconcileIntervalMillis > 0) {
+            scheduler.addJob(new ReconcileJob());
+        }
+        if (mChangeFeed == null) {
+            scheduler.addJob(new SnapshotJob());
+        }
+        return scheduler;
+    }
+
+    /**
+     * Reconcile the index with the cache directory on the calling thread. Entries sharing a
+     * content addressed file count its disk space once.
+     *
+     * @return The report.
+     */
+    private ReconcileReport reconcileNow() {
+        final long start = System.nanoTime();
+        pollShared();
+        List<CacheEntry> entries = mMemoryCache.getAllEntries();
+        Map<String, CacheEntry> indexed = new HashMap<>(entries.size() * 2);
+        for (CacheEntry entry : entries) {
+            indexed.put(entry.getFile().getAbsolutePath(), entry);
+        }
+        DirectoryScan scan = mFileSystem.scan();
+        final long orphanCutoff = System.currentTimeMillis() - ORPHAN_MIN_AGE_MILLIS;
+
+        long diskBytes = mMemoryCache.toBlocks(1);
+        long matchedBytes = 0;
+        long orphanBytes = 0;
+        int orphanFiles = 0;
+        for (File file : scan.getFiles()) {
+            final long allocated = mMemoryCache.toBlocks(file.length());
+            CacheEntry entry = indexed.remove(file.getAbsolutePath());
+            if (entry != null) {
+                diskBytes += allocated;
+                matchedBytes += mMemoryCache.toBlocks(entry.getByteSize());
+            } else if (deleteOrphan(file, orphanCutoff)) {
+                orphanFiles++;
+                orphanBytes += allocated;
+            } else {
+                diskBytes += allocated;
+            }
+        }
+        List<File> directories = scan.getDirectories();
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            if (!deleteOrphan(directories.get(i), orphanCutoff)) {
+                diskBytes += mMemoryCache.toBlocks(1);
+            }
+        }
+
+        List<CacheEntry> missing = new ArrayList<>();
+        for (CacheEntry entry : entries) {
+            if (indexed.containsKey(entry.getFile().getAbsolutePath()) &&
+                    mMemoryCache.peekEntry(entry) == entry && !entry.getFile().exists()) {
+                missing.add(entry);
+            }
+        }
+        discard(missing);
+
+        final long overheadBytes = Math.max(0, diskBytes - matchedBytes);
+        final long budgetBytes = Math.max(mMaxDiskBytes / MIN_BUDGET_DIVISOR, mMaxDiskBytes - overheadBytes);
+        mMemoryCache.setMaxSize(budgetBytes);
+        mStats.recordReconcile(diskBytes, budgetBytes, orphanFiles, missing.size());
+        return new ReconcileReport(diskBytes, mMemoryCache.getSize(), overheadBytes, budgetBytes, orphanFiles,
+                orphanBytes, missing.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Rebuild the index from the cache files not in it, see {@link #rebuildIndex()}. Must hold
+     * the storage guard. Other processes see the recovered entries through the change feed.
+     *
+     * @return The report.
+     * @throws IOException If taking the lock shared with other processes fails.
+     */
+    private RebuildReport rebuildNow() throws IOException {
+        final long start = System.nanoTime();
+        beginShared();
+        try {
+            Set<String> indexed = new HashSet<>();
+            for (CacheEntry entry : mMemoryCache.getAllEntries()) {
+                indexed.add(entry.getFile().getAbsolutePath());
+            }
+            List<File> files = new ArrayList<>();
+            for (File file : mFileSystem.scan().getFiles()) {
+                if (!indexed.contains(file.getAbsolutePath())) {
+                    files.add(file);
+                }
+            }
+            final long recoverStart = System.nanoTime();
+            List<CacheEntry> recovered = mRebuilder.recover(files);
+            final long journalStart = System.nanoTime();
+
+            int batches = 0;
+            int journaled = 0;
+            if (!recovered.isEmpty()) {
+                staleSnapshot();
+            }
+            while (journaled < recovered.size()) {
+                List<CacheEntry> batch = recovered.subList(journaled, Math.min(recovered.size(), journaled + REBUILD_JOURNAL_BATCH));
+                mJournal.insertAll(batch);
+                publishPut(batch);
+                journaled += batch.size();
+                batches++;
+            }
+            final long journalEnd = System.nanoTime();
+            mStats.recordJournal(journalEnd - journalStart);
+
+            CacheEntry[] entries = recovered.toArray(new CacheEntry[recovered.size()]);
+            List<CacheEntry> unreadable = loadTiles(entries);
+            mMemoryCache.init(entries);
+            discard(unreadable);
+            RebuildReport report = new RebuildReport(files.size(), entries.length, batches, mRebuilder.getThreads(),
+                    recoverStart - start, journalStart - recoverStart, journalEnd - journalStart, System.nanoTime() - start);
+            mRebuildReport = report;
+            return report;
+        } finally {
+            endShared();
+        }
+    }
+
+    /**
+     * Delete a file or empty directory that is not in the index, if not modified since the
+     * cutoff. Checked under the storage guard, a write holding the guard updates the modified
+     * time before it journals.
+     *
+     * @param file   The file or directory.
+     * @param cutoff Modified time in milliseconds.
+     * @return True if deleted.
+     */
+    private boolean deleteOrphan(File file, long cutoff) {
+        synchronized (mStorageGuard) {
+            return file.lastModified() < cutoff && file.delete();
+        }
+    }
+
+    /**
+     * Write file and journal entry, then put the entry into the memory cache. All under the
+     * storage guard so a queued removal of a replaced entry can not remove the new file. The
+     * file is staged and moved into place once synced, a replaced entry keeps its file if the
+     * write fails. In multi process mode also under the shared lock, and a variant another
+     * process wrote meanwhile is returned instead of encoded again.
+     *
+     * @param req Write request.
+     * @return The cache entry written.
+     * @throws IOException If write fails.
+     */
+    private CacheEntry write(WriteRequest req) throws IOException {
+        synchronized (mStorageGuard) {
+            beginShared();
+            try {
+                if (mChangeFeed != null) {
+                    final EncodableImage image = req.getImage();
+                    CacheEntry existing = mMemoryCache.getExactEntry(req.getFileKey(), image.getWidth(), image.getHeight(), image.getPixelConfig());
+                    if (existing != null && !existing.isStale(req.getFingerprint())) {
+                        return existing;
+                    }
+                }
+                touchTiles();
+                CacheEntry staged = mFileSystem.stage(req);
+                CacheEntry entry;
+                try {
+                    mFileSystem.sync(Collections.singletonList(staged));
+                    entry = mFileSystem.publish(staged);
+                } catch (IOException e) {
+                    mFileSystem.discard(staged);
+                    throw e;
+                }
+                staleSnapshot();
+                final long journalStart = System.nanoTime();
+                mJournal.insert(entry);
+                mStats.recordJournal(System.nanoTime() - journalStart);
+                publishPut(Collections.singletonList(entry));
+                entry.markVerified();
+                mMemoryCache.put(entry);
+                return entry;
+            } finally {
+                endShared();
+            }
+        }
+    }
+
+    /**
+     * Write a tile segment and its journal entry, then put the entry into the memory cache and
+     * its tiles into the tile index, like {@link #write(WriteRequest)}. Segments used since the
+     * last write are refreshed in the lru first, tile lookups do not touch it themselves.
+     *
+     * @param batch The tiles.
+     * @return The segment written.
+     * @throws IOException If write fails.
+     */
+    private TileSegment writeTiles(TileBatch batch) throws IOException {
+        synchronized (mStorageGuard) {
+            beginShared();
+            try {
+                touchTiles();
+                TileSegment segment = mFileSystem.writeTiles(batch);
+                CacheEntry entry = segment.getEntry();
+                List<CacheEntry> written = Collections.singletonList(entry);
+                try {
+                    mFileSystem.sync(written);
+                } catch (IOException e) {
+                    mFileSystem.remove(entry);
+                    throw e;
+                }
+                staleSnapshot();
+                final long journalStart = System.nanoTime();
+                mJournal.insert(entry);
+                mStats.recordJournal(System.nanoTime() - journalStart);
+                publishPut(written);
+                entry.markVerified();
+                mTiles.add(segment);
+                mMemoryCache.put(entry);
+                return segment;
+            } finally {
+                endShared();
+            }
+        }
+    }
+
+    /**
+     * Mark the tile segments looked up since the last call as recently used in the lru, before
+     * a write or trim may evict.
+     */
+    private void touchTiles() {
+        for (CacheEntry entry : mTiles.takeTouched()) {
+            mMemoryCache.getEntry(entry.getPrimaryKey());
+        }
+    }
+
+    /**
+     * Read the tile table of the segments among journaled entries into the tile index, before
+     * the entries are put into the memory cache so evictions remove their tiles again.
+     *
+     * @param entries The entries.
+     * @return The segments that could not be read, to discard.
+     */
+    private List<CacheEntry> loadTiles(CacheEntry[] entries) {
+        List<CacheEntry> unreadable = new ArrayList<>();
+        for (CacheEntry entry : entries) {
+            if (TileSegment.isSegment(entry)) {
+                try {
+                    mTiles.add(TileSegment.read(entry));
+                } catch (IOException e) {
+                    unreadable.add(entry);
+                }
+            }
+        }
+        return unreadable;
+    }
+
+    /**
+     * Encode and write files in parallel, the first on the calling thread and the rest on the
+     * encode executor, then sync and journal all entries in one batch. The files are staged
+     * outside the storage guard and moved into place under it, just before they are journaled
+     * and put into the memory cache, so entries of the same variants still in use and their
+     * queued removals never see the new files. If any image fails all files staged are removed
+     * and the entries they would replace are kept. In multi process mode images another process
+     * cached meanwhile are skipped.
+     *
+     * @param fileKey     The source file key.
+     * @param images      Images to write.
+     * @param fingerprint Fingerprint of the source.
+     * @return The cache entries written.
+     * @throws IOException If any write fails.
+     */
+    private List<CacheEntry> writeAll(String fileKey, List<EncodableImage> images, long fingerprint) throws IOException {
+        if (mChangeFeed != null) {
+            pollShared();
+            List<EncodableImage> missing = new ArrayList<>(images.size());
+            for (EncodableImage image : images) {
+                if (needsWrite(fileKey, image, fingerprint)) {
+                    missing.add(image);
+                }
+            }
+            if (missing.isEmpty()) {
+                return Collections.emptyList();
+            }
+            images = missing;
+        }
+        List<Callable<CacheEntry>> tasks = new ArrayList<>(images.size());
+        for (EncodableImage image : images) {
+            final WriteRequest req = new WriteRequest(fileKey, image, fingerprint);
+            tasks.add(new Callable<CacheEntry>() {
+                @Override
+                public CacheEntry call() throws IOException {
+                    return mFileSystem.stage(req);
+                }
+            });
+        }
+
+        List<Future<CacheEntry>> futures = new ArrayList<>(tasks.size());
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(mEncodeExecutor.submit(tasks.get(i)));
+        }
+
+        List<CacheEntry> staged = new ArrayList<>(images.size());
+        IOException failure = null;
+        try {
+            staged.add(tasks.get(0).call());
+        } catch (Exception e) {
+            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        for (Future<CacheEntry> future : futures) {
+            try {
+                staged.add(future.get());
+            } catch (ExecutionException e) {
+                failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IOException("Interrupted writing " + fileKey);
+                break;
+            }
+        }
+        if (failure == null) {
+            try {
+                mFileSystem.sync(staged);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            for (CacheEntry entry : staged) {
+                mFileSystem.discard(entry);
+            }
+            throw failure;
+        }
+
+        List<CacheEntry> entries = new ArrayList<>(staged.size());
+        synchronized (mStorageGuard) {
+            try {
+                beginShared();
+            } catch (IOException e) {
+                for (CacheEntry entry : staged) {
+                    mFileSystem.discard(entry);
+                }
+                throw e;
+            }
+            try {
+                for (CacheEntry entry : staged) {
+                    if (failure == null) {
+                        try {
+                            entries.add(mFileSystem.publish(entry));
+                            continue;
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                    mFileSystem.discard(entry);
+                }
+                if (!entries.isEmpty()) {
+                    touchTiles();
+                    staleSnapshot();
+                    final long journalStart = System.nanoTime();
+                    mJournal.insertAll(entries);
+                    mStats.recordJournal(System.nanoTime() - journalStart);
+                    publishPut(entries);
+                    for (CacheEntry entry : entries) {
+                        entry.markVerified();
+                        mMemoryCache.put(entry);
+                    }
+                }
+            } finally {
+                endShared();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return entries;
+    }
+
+    /**
+     * Queue verification of an entry the first time it is looked up in this process. Small
+     * files are fully verified, larger files are sampled. After shutdown lookups still work but
+     * entries are left unverified.
+     *
+     * @param entry The entry found.
+     */
+    private void verifyOnFirstLookup(final CacheEntry entry) {
+        if (mShutdown || !entry.markVerified()) {
+            return;
+        }
+        final boolean full = entry.getByteSize() <= FULL_VERIFY_BYTES ||
+                mVerifySampler.getAndIncrement() % VERIFY_SAMPLE_RATE == 0;
+        try {
+            mVerifyExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    verify(entry, full);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down meanwhile, left unverified.
+        }
+    }
+
+    /**
+     * Fully verify an entry if still in the cache, removing it if corrupt.
+     *
+     * @param entry The entry to verify.
+     * @return False if corrupt.
+     */
+    private boolean scrub(CacheEntry entry) {
+        if (mMemoryCache.peekEntry(entry) != entry) {
+            return true;
+        }
+        entry.markVerified();
+        return verify(entry, true);
+    }
+
+    /**
+     * Delete the snapshot before the journal changes, must hold the storage guard.
+     */
+    private void staleSnapshot() {
+        if (mSnapshotFresh) {
+            mSnapshot.delete();
+            mSnapshotFresh = false;
+        }
+    }
+
+    /**
+     * Verify an entry and remove it if corrupt.
+     *
+     * @param entry The entry to verify.
+     * @param full  True to compare the checksum, false to only check the size.
+     * @return True if intact.
+     */
+    private boolean verify(CacheEntry entry, boolean full) {
+        final long start = System.nanoTime();
+        final boolean intact = mFileSystem.verify(entry, full);
+        mStats.recordVerify(System.nanoTime() - start, intact);
+        if (!intact) {
+            discard(Collections.singletonList(entry));
+        }
+        return intact;
+    }
+
+    /**
+     * Observable emitting once when warm up is done.
+     *
+     * @return The observable.
+     */
+    private Observable<Boolean> whenWarmedUp() {
+        return mWarmedUp.filter(new Func1<Boolean, Boolean>() {
+            @Override
+            public Boolean call(Boolean ready) {
+                return ready;
+            }
+        }).take(1);
+    }
+
+    /**
+     * Exact lookup as an observable.
+     *
+     * @param fileKey The source file key.
+     * @param width   The width of the cached image.
+     * @param height  The height of the cached image.
+     * @param config  The pixel config of the cached image.
+     * @return Observable emitting the file or empty if no match.
+     */
+    private Observable<File> exactOrEmpty(String fileKey, int width, int height, PixelConfig config) {
+        File file = getExact(fileKey, width, height, config);
+        return file != null ? Observable.just(file) : Observable.<File>empty();
+    }
+
+    /**
+     * Check if an image must be written.
+     *
+     * @param fileKey     The source file key.
+     * @param image       The image.
+     * @param fingerprint Fingerprint of the source.
+     * @return True if not cached or cached from another version of the source.
+     */
+    private boolean needsWrite(String fileKey, EncodableImage image, long fingerprint) {
+        CacheEntry entry = mMemoryCache.getExactEntry(fileKey, image.getWidth(), image.getHeight(), image.getPixelConfig());
+        return entry == null || entry.isStale(fingerprint);
+    }
+
+    /**
+     * Remove entries from the memory cache now and from storage in the background.
+     *
+     * @param entries Entries to remove.
+     * @return Number of entries removed.
+     */
+    private int discard(final List<CacheEntry> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        for (CacheEntry entry : entries) {
+            mMemoryCache.remove(entry);
+            mTiles.remove(entry);
+        }
+        submitWork(new Runnable() {
+            @Override
+            public void run() {
+                removeStorage(entries);
+            }
+        });
+        return entries.size();
+    }
+
+    /**
+     * Remove entries from memory, file system and journal. Entries replaced by a newer write of
+     * the same variant only leave the memory cache, the file and journal row belong to the new
+     * entry. The journal is updated in one batch. In multi process mode the removal is
+     * published, if the shared lock can not be taken the files are left for reconciliation.
+     *
+     * @param entries Entries to remove.
+     */
+    private void removeStorage(List<CacheEntry> entries) {
+        synchronized (mStorageGuard) {
+            try {
+                beginShared();
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                staleSnapshot();
+                List<CacheEntry> removed = new ArrayList<>(entries.size());
+                for (CacheEntry entry : entries) {
+                    mMemoryCache.remove(entry);
+                    if (mMemoryCache.peekEntry(entry) == null) {
+                        mFileSystem.remove(entry);
+                        removed.add(entry);
+                    }
+                }
+                if (!removed.isEmpty()) {
+                    final long journalStart = System.nanoTime();
+                    mJournal.removeAll(removed);
+                    mStats.recordJournal(System.nanoTime() - journalStart);
+                    if (mChangeFeed != null) {
+                        mChangeFeed.appendRemove(removed);
+                    }
+                }
+            } catch (IOException ignored) {
+                // Not published, other processes drop the entries when their files fail to verify.
+            } finally {
+                endShared();
+            }
+        }
+    }
+
+    /**
+     * Take the evicted entries waiting for removal.
+     *
+     * @return The entries, empty if none.
+     */
+    private List<CacheEntry> takeEvicted() {
+        synchronized (mEvicted) {
+            List<CacheEntry> evicted = new ArrayList<>(mEvicted);
+            mEvicted.clear();
+            return evicted;
+        }
+    }
+
+    /**
+     * Memory cache eviction listener. Evicted entries are queued and removed from storage in
+     * one batch by a single task, so a burst of evictions is one journal transaction.
+     */
+    private class MemoryCacheListener implements EvictionListener {
+        @Override
+        public void onEvicted(CacheEntry entry) {
+            mTiles.remove(entry);
+            mStats.recordEvictionQueued(entry.getByteSize());
+            synchronized (mEvicted) {
+                mEvicted.add(entry);
+                if (mEvicted.size() > 1) {
+                    return;
+                }
+            }
+            boolean submitted = submitWork(new Runnable() {
+                @Override
+                public void run() {
+                    List<CacheEntry> evicted = takeEvicted();
+                    if (!evicted.isEmpty()) {
+                        removeStorage(evicted);
+                    }
+                    for (int i = 0; i < evicted.size(); i++) {
+                        mStats.recordEvictionDone();
+                    }
+                }
+            });
+            if (!submitted) {
+                for (int i = takeEvicted().size(); i > 0; i--) {
+                    mStats.recordEvictionDone();
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts down to the low watermark in steps, so the evictions of interactive puts happen
+     * here instead.
+     */
+    private class TrimJob extends MaintenanceJob {
+        private TrimJob() {
+            super("trim", TRIM_INTERVAL_MILLIS, TRIM_SLICE_MILLIS);
+        }
+
+        @Override
+        public boolean isDue(long nowMillis) {
+            return super.isDue(nowMillis) && mMemoryCache.getSize() > lowWatermark();
+        }
+
+        @Override
+        protected boolean runSlice(long deadlineNanos) {
+            touchTiles();
+            final long step = mMemoryCache.toBlocks(1) * TRIM_STEP_BLOCKS;
+            while (System.nanoTime() < deadlineNanos) {
+                final long size = mMemoryCache.getSize();
+                final long low = lowWatermark();
+                if (size <= low) {
+                    return true;
+                }
+                final int count = mMemoryCache.getCount();
+                mMemoryCache.trimToSize(Math.max(low, size - step));
+                addWork(count - mMemoryCache.getCount());
+            }
+            return false;
+        }
+
+        private long lowWatermark() {
+            return mMemoryCache.getMaxSize() / 100 * TRIM_LOW_WATERMARK_PERCENT;
+        }
+    }
+
+    /**
+     * Writes the index snapshot when the journal changed, so a start after a crash also warms
+     * up with a single read. Single process mode only.
+     */
+    private class SnapshotJob extends MaintenanceJob {
+        private SnapshotJob() {
+            super("snapshot", SNAPSHOT_INTERVAL_MILLIS, 0);
+        }
+
+        @Override
+        public boolean isDue(long nowMillis) {
+            synchronized (mStorageGuard) {
+                if (mSnapshotFresh) {
+                    return false;
+                }
+            }
+            return super.isDue(nowMillis);
+        }
+
+        @Override
+        protected boolean runSlice(long deadlineNanos) {
+            synchronized (mStorageGuard) {
+                if (!mSnapshotFresh && !mShutdown) {
+                    List<CacheEntry> entries = mMemoryCache.getAllEntries();
+                    try {
+                        mSnapshot.write(entries);
+                        mSnapshotFresh = true;
+                        addWork(entries.size());
+                    } catch (IOException e) {
+                        mSnapshot.delete();
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reclaims journal storage left by removed entries, a few pages per step.
+     */
+    private class CompactJob extends MaintenanceJob {
+        private CompactJob() {
+            super("compact", COMPACT_INTERVAL_MILLIS, COMPACT_SLICE_MILLIS);
+        }
+
+        @Override
+        protected boolean runSlice(long deadlineNanos) {
+            do {
+                final int remaining = mJournal.compact(COMPACT_PAGES);
+                addWork(1);
+                if (remaining == 0) {
+                    return true;
+                }
+            } while (System.nanoTime() < deadlineNanos);
+            return false;
+        }
+    }
+
+    /**
+     * Background work done in steps on the verify executor, each step queued as a task of its
+     * own so lookups are verified in between. The next step is queued after a pause instead of
+     * sleeping on the verify thread, and the first when warm up is done instead of blocking it
+     * until then. The last step completes the future. Cancelling stops before the next step, a
+     * step failing fails the task.
+     *
+     * @param <V> Result type.
+     */
+    private abstract class SteppedTask<V> implements Future<V> {
+        private final long mPauseMillis;
+        private final Scheduler.Worker mTimer = Schedulers.computation().createWorker();
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        /**
+         * Outcome, guarded by the task and set once.
+         */
+        private boolean mFinished;
+        private boolean mCancelled;
+        private V mResult;
+        private Throwable mFailure;
+
+        private final Runnable mStep = new Runnable() {
+            @Override
+            public void run() {
+                if (isDone()) {
+                    return;
+                }
+                try {
+                    V result = step();
+                    if (result != null) {
+                        finish(result, null, false);
+                    } else {
+                        mTimer.schedule(new Action0() {
+                            @Override
+                            public void call() {
+                                queueStep();
+                            }
+                        }, mPauseMillis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (Exception e) {
+                    finish(null, e, false);
+                }
+            }
+        };
+
+        /**
+         * Constructor.
+         *
+         * @param pauseMillis Pause between steps.
+         */
+        SteppedTask(long pauseMillis) {
+            mPauseMillis = pauseMillis;
+        }
+
+        /**
+         * Run one step on the verify thread.
+         *
+         * @return The result, or null to run another step.
+         * @throws Exception If the task failed.
+         */
+        protected abstract V step() throws Exception;
+
+        /**
+         * Queue the first step when warm up is done.
+         *
+         * @return This task.
+         */
+        Future<V> start() {
+            whenWarmedUp().subscribe(new Action1<Boolean>() {
+                @Override
+                public void call(Boolean ready) {
+                    queueStep();
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return finish(null, null, true);
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return mFinished;
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            mDone.await();
+            return outcome();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!mDone.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return outcome();
+        }
+
+        /**
+         * Complete the task unless already done.
+         *
+         * @return True if this call completed it.
+         */
+        private boolean finish(V result, Throwable failure, boolean cancelled) {
+            synchronized (this) {
+                if (mFinished) {
+                    return false;
+                }
+                mFinished = true;
+                mResult = result;
+                mFailure = failure;
+                mCancelled = cancelled;
+            }
+            mTimer.unsubscribe();
+            mDone.countDown();
+            return true;
+        }
+
+        private synchronized V outcome() throws ExecutionException {
+            if (mCancelled) {
+                throw new CancellationException();
+            }
+            if (mFailure != null) {
+                throw new ExecutionException(mFailure);
+            }
+            return mResult;
+        }
+
+        private void queueStep() {
+            try {
+                mVerifyExecutor.execute(mStep);
+            } catch (RejectedExecutionException e) {
+                finish(null, e, false);
+            }
+        }
+    }
+
+    /**
+     * Fully verifies every entry, continuing where the previous slice stopped. Skipped until
+     * warm up is done.
+     */
+    private class ScrubJob extends MaintenanceJob {
+        private List<CacheEntry> mEntries;
+        private int mNext;
+
+        private ScrubJob() {
+            super("scrub", SCRUB_INTERVAL_MILLIS, SCRUB_SLICE_MILLIS);
+        }
+
+        @Override
+        public boolean isDue(long nowMillis) {
+            return isWarmedUp() && super.isDue(nowMillis);
+        }
+
+        @Override
+        protected boolean runSlice(long deadlineNanos) {
+            if (mEntries == null) {
+                mEntries = mMemoryCache.getAllEntries();
+                mNext = 0;
+            }
+            while (mNext < mEntries.size()) {
+                if (System.nanoTime() >= deadlineNanos) {
+                    return false;
+                }
+                scrub(mEntries.get(mNext++));
+                addWork(1);
+            }
+            mEntries = null;
+            return true;
+        }
+    }
+
+    /**
+     * Reconciles the index with the cache directory. The directory scan is one slice. Skipped
+     * until warm up is done.
+     */
+    private class ReconcileJob extends MaintenanceJob {
+        private ReconcileJob() {
+            super("reconcile", mReconcileIntervalMillis, 0);
+        }
+
+        @Override
+        public boolean isDue(long nowMillis) {
+            return isWarmedUp() && super.isDue(nowMillis);
+        }
+
+        @Override
+        protected boolean runSlice(long deadlineNanos) {
+            ReconcileReport report = reconcileNow();
+            addWork(report.getOrphanFiles() + report.getMissingFiles());
+            return true;
+        }
+    }
+
+    /**
+     * Applies the changes of other processes to the memory cache. Runs under the storage guard.
+     */
+    private class FeedListener implements ChangeListener {
+        @Override
+        public void onPut(CacheEntry entry) {
+            CacheEntry current = mMemoryCache.getEntry(entry.getPrimaryKey());
+            if (current != null && current.getChecksum() == entry.getChecksum() && current.getFile().equals(entry.getFile())) {
+                return;
+            }
+            if (mByteCache != null) {
+                mByteCache.remove(entry.getPrimaryKey());
+            }
+            if (TileSegment.isSegment(entry)) {
+                try {
+                    mTiles.add(TileSegment.read(entry));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+            mMemoryCache.put(entry);
+        }
+
+        @Override
+        public void onRemove(long primaryKey) {
+            CacheEntry current = mMemoryCache.getEntry(primaryKey);
+            if (current != null) {
+                if (mByteCache != null) {
+                    mByteCache.remove(primaryKey);
+                }
+                mTiles.remove(current);
+                mMemoryCache.remove(current);
+            }
+        }
+
+        @Override
+        public void onReset() {
+            CacheEntry[] entries = mJournal.retrieveAll();
+            Set<Long> keys = new HashSet<>(entries.length * 2);
+            for (CacheEntry entry : entries) {
+                keys.add(entry.getPrimaryKey());
+            }
+            for (CacheEntry current : mMemoryCache.getAllEntries()) {
+                if (!keys.contains(current.getPrimaryKey())) {
+                    onRemove(current.getPrimaryKey());
+                }
+            }
+            for (CacheEntry entry : entries) {
+                onPut(entry);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,167 @@
+package com.sweetlab.diskpicasso.storage;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.BoundsReader;
+import com.sweetlab.diskpicasso.filesystem.FileSystem;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recovers the entries of cache files in parallel, see {@link FileSystem#recover}. The files
+ * are split into shards of {@link #SHARD_FILES} and each thread takes the next shard until none
+ * are left, so threads finishing early take over the rest. Recovering is bound by opening the
+ * files and reading their footers or headers, which the file system serves in parallel.
+ */
+public class IndexRebuilder {
+    /**
+     * Number of files per shard.
+     */
+    public static final int SHARD_FILES = 256;
+
+    private final FileSystem mFileSystem;
+    private final BoundsReader mReader;
+    private final int mThreads;
+
+    /**
+     * A recovered entry and the time its file was last modified.
+     */
+    private static class Recovered {
+        private final CacheEntry mEntry;
+        private final long mModified;
+
+        Recovered(CacheEntry entry, long modified) {
+            mEntry = entry;
+            mModified = modified;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fileSystem File system of the cache files.
+     * @param reader     Reader of the size of encoded images without a footer, or null.
+     * @param threads    Number of threads, the calling thread being one.
+     */
+    public IndexRebuilder(FileSystem fileSystem, BoundsReader reader, int threads) {
+        mFileSystem = fileSystem;
+        mReader = reader;
+        mThreads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return mThreads;
+    }
+
+    /**
+     * Recover the entries of files. Files that are not cache files are skipped.
+     *
+     * @param files The files.
+     * @return The entries, least recently modified first like the lru order.
+     */
+    public List<CacheEntry> recover(final List<File> files) {
+        final int shards = (files.size() + SHARD_FILES - 1) / SHARD_FILES;
+        final List<List<Recovered>> results = new ArrayList<>(Collections.<List<Recovered>>nCopies(shards, null));
+        final AtomicInteger nextShard = new AtomicInteger();
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                final int[] size = new int[2];
+                int shard;
+                while ((shard = nextShard.getAndIncrement()) < shards) {
+                    final int end = Math.min(files.size(), (shard + 1) * SHARD_FILES);
+                    List<Recovered> recovered = new ArrayList<>(end - shard * SHARD_FILES);
+                    for (int i = shard * SHARD_FILES; i < end; i++) {
+                        final File file = files.get(i);
+                        CacheEntry entry = mFileSystem.recover(file, mReader, size);
+                        if (entry != null) {
+                            recovered.add(new Recovered(entry, file.lastModified()));
+                        }
+                    }
+                    results.set(shard, recovered);
+                }
+            }
+        };
+
+        final int helpers = Math.min(mThreads, shards) - 1;
+        if (helpers > 0) {
+            ExecutorService executor = Executors.newFixedThreadPool(helpers, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "PabloRebuild-" + mCount.incrementAndGet());
+                }
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<>(helpers);
+                for (int i = 0; i < helpers; i++) {
+                    futures.add(executor.submit(worker));
+                }
+                worker.run();
+                for (Future<?> future : futures) {
+                    await(future);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } else {
+            worker.run();
+        }
+
+        List<Recovered> all = new ArrayList<>(files.size());
+        for (List<Recovered> recovered : results) {
+            all.addAll(recovered);
+        }
+        Collections.sort(all, new Comparator<Recovered>() {
+            @Override
+            public int compare(Recovered lhs, Recovered rhs) {
+                return lhs.mModified < rhs.mModified ? -1 : (lhs.mModified == rhs.mModified ? 0 : 1);
+            }
+        });
+        List<CacheEntry> entries = new ArrayList<>(all.size());
+        for (Recovered recovered : all) {
+            entries.add(recovered.mEntry);
+        }
+        return entries;
+    }
+
+    /**
+     * Wait for a helper, rethrowing what it threw.
+     */
+    private static void await(Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package com.sweetlab.diskpicasso.storage;
 
-import android.graphics.Bitmap;
-import android.util.LruCache;
-
 import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.LruEngine;
+import com.sweetlab.diskpicasso.core.PixelConfig;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -15,7 +15,8 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This is a memory cache for cache entries. The size of the case is based on the
- * cache entry sizes and not the cache entry count.
+ * cache entry sizes and not the cache entry count. Entry sizes are rounded up to whole file
+ * system blocks, the space a file really takes on disk.
  */
 public class MemoryCache {
     /**
@@ -38,13 +39,33 @@ public class MemoryCache {
      */
     private final EvictionListener mEvictionListener;
 
+    /**
+     * File system block size entry sizes are rounded up to.
+     */
+    private final int mBlockSize;
+
+    /**
+     * Constructor, entry sizes are not rounded.
+     *
+     * @param cacheSizeBytes   Cache size in bytes.
+     * @param evictionListener Eviction listener.
+     */
+    public MemoryCache(long cacheSizeBytes, EvictionListener evictionListener) {
+        this(cacheSizeBytes, 1, evictionListener);
+    }
+
     /**
      * Constructor.
      *
      * @param cacheSizeBytes   Cache size in bytes.
+     * @param blockSize        File system block size in bytes.
      * @param evictionListener Eviction listener.
      */
-    public MemoryCache(int cacheSizeBytes, EvictionListener evictionListener) {
+    public MemoryCache(long cacheSizeBytes, int blockSize, EvictionListener evictionListener) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize <= 0");
+        }
+        mBlockSize = blockSize;
         mMemoryLock = new ReentrantReadWriteLock(true);
         mCacheLimiter = new CacheLimiter(cacheSizeBytes);
         mFileKeyListMap = new HashMap<>();
@@ -57,15 +78,193 @@ public class MemoryCache {
      * @param fileKey The source file key.
      * @param width   The wanted width of the cached image.
      * @param height  The wanted height of the cached image.
-     * @param config  The wanted bitmap config of the cached image.
+     * @param config  The wanted pixel config of the cached image.
      * @return File representing the cache file or null of not found.
      */
-    public File getExact(String fileKey, int width, int height, Bitmap.Config config) {
+    public File getExact(String fileKey, int width, int height, PixelConfig config) {
+        CacheEntry entry = getExactEntry(fileKey, width, height, config);
+        return entry != null ? entry.getFile() : null;
+    }
+
+    /**
+     * Get cache entry from memory cache.
+     *
+     * @param fileKey The source file key.
+     * @param width   The wanted width of the cached image.
+     * @param height  The wanted height of the cached image.
+     * @param config  The wanted pixel config of the cached image.
+     * @return The cache entry or null of not found.
+     */
+    public CacheEntry getExactEntry(String fileKey, int width, int height, PixelConfig config) {
         long primaryKey = CacheEntry.calcPrimaryKey(fileKey, width, height, config);
         mMemoryLock.readLock().lock();
         try {
-            CacheEntry entry = mCacheLimiter.get(primaryKey);
-            return entry != null ? entry.getFile() : null;
+            return mCacheLimiter.get(primaryKey);
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get cache entries of several images under one read lock, for example all visible cells of
+     * a list. The lru is locked once for the whole batch.
+     *
+     * @param fileKeys The source file keys.
+     * @param widths   The wanted widths, one per file key.
+     * @param heights  The wanted heights, one per file key.
+     * @param config   The wanted pixel config of all images.
+     * @param out      Filled with the cache entries, null where not found. At least as long as
+     *                 fileKeys.
+     * @return Number of entries found.
+     */
+    public int getAll(String[] fileKeys, int[] widths, int[] heights, PixelConfig config, CacheEntry[] out) {
+        final int count = fileKeys.length;
+        int hits = 0;
+        mMemoryLock.readLock().lock();
+        try {
+            synchronized (mCacheLimiter) {
+                for (int i = 0; i < count; i++) {
+                    CacheEntry entry = mCacheLimiter.get(CacheEntry.calcPrimaryKey(fileKeys[i], widths[i], heights[i], config));
+                    out[i] = entry;
+                    if (entry != null) {
+                        hits++;
+                    }
+                }
+            }
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+        return hits;
+    }
+
+    /**
+     * Get cache entry by primary key.
+     *
+     * @param primaryKey The primary key.
+     * @return The cache entry or null of not found.
+     */
+    /*package*/ CacheEntry getEntry(long primaryKey) {
+        mMemoryLock.readLock().lock();
+        try {
+            return mCacheLimiter.get(primaryKey);
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the cache entry of the same variant as an entry, without marking it as recently used.
+     *
+     * @param entry An entry, in the cache or not.
+     * @return The cache entry with the same primary key or null of not found.
+     */
+    /*package*/ CacheEntry peekEntry(CacheEntry entry) {
+        mMemoryLock.readLock().lock();
+        try {
+            List<CacheEntry> entryList = mFileKeyListMap.get(entry.getFileKey());
+            if (entryList != null) {
+                for (CacheEntry current : entryList) {
+                    if (current.getPrimaryKey() == entry.getPrimaryKey()) {
+                        return current;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a copy of all cache entries for a source file key.
+     *
+     * @param fileKey The source file key.
+     * @return List of cache entries.
+     */
+    public List<CacheEntry> getEntries(String fileKey) {
+        mMemoryLock.readLock().lock();
+        try {
+            List<CacheEntry> cacheEntries = mFileKeyListMap.get(fileKey);
+            return cacheEntries != null ? new ArrayList<>(cacheEntries) : new ArrayList<CacheEntry>();
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the placeholder of any cache entry of a source file key, without touching the lru.
+     *
+     * @param fileKey The source file key.
+     * @return The placeholder or null if no entry has one.
+     */
+    public byte[] getPlaceholder(String fileKey) {
+        mMemoryLock.readLock().lock();
+        try {
+            List<CacheEntry> cacheEntries = mFileKeyListMap.get(fileKey);
+            if (cacheEntries != null) {
+                for (int i = 0; i < cacheEntries.size(); i++) {
+                    byte[] placeholder = cacheEntries.get(i).getPlaceholder();
+                    if (placeholder != null) {
+                        return placeholder;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get copies of the cache entries of several source file keys under one read lock.
+     *
+     * @param fileKeys The source file keys.
+     * @return Map from each file key to its cache entries, empty lists for unknown keys.
+     */
+    public Map<String, List<CacheEntry>> getEntries(Collection<String> fileKeys) {
+        Map<String, List<CacheEntry>> result = new HashMap<>(fileKeys.size() * 2);
+        mMemoryLock.readLock().lock();
+        try {
+            for (String fileKey : fileKeys) {
+                List<CacheEntry> cacheEntries = mFileKeyListMap.get(fileKey);
+                result.put(fileKey, cacheEntries != null ? new ArrayList<>(cacheEntries) : new ArrayList<CacheEntry>());
+            }
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Get a copy of all cache entries for source file keys starting with a prefix.
+     *
+     * @param prefix The source file key prefix.
+     * @return List of cache entries.
+     */
+    public List<CacheEntry> getEntriesWithPrefix(String prefix) {
+        List<CacheEntry> result = new ArrayList<>();
+        mMemoryLock.readLock().lock();
+        try {
+            for (Map.Entry<String, List<CacheEntry>> entry : mFileKeyListMap.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    result.addAll(entry.getValue());
+                }
+            }
+        } finally {
+            mMemoryLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Get a copy of all cache entries.
+     *
+     * @return List of cache entries, least recently used first.
+     */
+    public List<CacheEntry> getAllEntries() {
+        mMemoryLock.readLock().lock();
+        try {
+            return new ArrayList<>(mCacheLimiter.snapshot().values());
         } finally {
             mMemoryLock.readLock().unlock();
         }
@@ -86,7 +285,7 @@ public class MemoryCache {
     }
 
     /**
-     * Put a cache entry into the memory cache.
+     * Put a cache entry into the memory cache. An entry with the same primary key is replaced.
      *
      * @param entry The cache entry.
      */
@@ -101,9 +300,12 @@ public class MemoryCache {
                 entryList = new ArrayList<>();
                 mFileKeyListMap.put(fileKey, entryList);
             }
-            if (!entryList.contains(entry)) {
-                entryList.add(entry);
+            for (int i = entryList.size() - 1; i >= 0; i--) {
+                if (entryList.get(i).getPrimaryKey() == primaryKey) {
+                    entryList.remove(i);
+                }
             }
+            entryList.add(entry);
             mCacheLimiter.put(primaryKey, entry);
         } finally {
             mMemoryLock.writeLock().unlock();
@@ -111,7 +313,8 @@ public class MemoryCache {
     }
 
     /**
-     * Remove a cache entry from the memory cache.
+     * Remove a cache entry from the memory cache. Nothing is removed if the entry has been
+     * replaced by another entry with the same primary key.
      *
      * @param entry The entry to remove.
      */
@@ -124,13 +327,75 @@ public class MemoryCache {
             List<CacheEntry> entryList = mFileKeyListMap.get(fileKey);
             if (entryList != null) {
                 entryList.remove(entry);
+                if (entryList.isEmpty()) {
+                    mFileKeyListMap.remove(fileKey);
+                }
+            }
+            if (mCacheLimiter.get(primaryKey) == entry) {
+                mCacheLimiter.remove(primaryKey);
             }
-            mCacheLimiter.remove(primaryKey);
         } finally {
             mMemoryLock.writeLock().unlock();
         }
     }
 
+    /**
+     * Get the disk space of all entries, in whole blocks.
+     *
+     * @return Size in bytes.
+     */
+    public long getSize() {
+        return mCacheLimiter.size();
+    }
+
+    /**
+     * Get the max disk space of all entries.
+     *
+     * @return Size in bytes.
+     */
+    public long getMaxSize() {
+        return mCacheLimiter.maxSize();
+    }
+
+    /**
+     * Change the max disk space of all entries. Least recently used entries are evicted if the
+     * entries no longer fit.
+     *
+     * @param maxSizeBytes Size in bytes.
+     */
+    public void setMaxSize(long maxSizeBytes) {
+        mCacheLimiter.resize(maxSizeBytes);
+    }
+
+    /**
+     * Evict least recently used entries until the entries use at most the given disk space.
+     * The max size is not changed.
+     *
+     * @param sizeBytes Size in bytes.
+     */
+    public void trimToSize(long sizeBytes) {
+        mCacheLimiter.trimToSize(sizeBytes);
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return Number of entries.
+     */
+    public int getCount() {
+        return mCacheLimiter.count();
+    }
+
+    /**
+     * Get the disk space a file of given length takes, rounded up to whole blocks.
+     *
+     * @param length File length in bytes.
+     * @return Size in bytes.
+     */
+    public long toBlocks(long length) {
+        return (length + mBlockSize - 1) / mBlockSize * mBlockSize;
+    }
+
     /**
      * Initialize the memory cache.
      *
@@ -153,20 +418,21 @@ public class MemoryCache {
     /**
      * Lru-cache for limiting the cache size.
      */
-    private class CacheLimiter extends LruCache<Long, CacheEntry> {
-        public CacheLimiter(int maxSize) {
+    private class CacheLimiter extends LruEngine<Long, CacheEntry> {
+        public CacheLimiter(long maxSize) {
             super(maxSize);
         }
 
         @Override
-        protected int sizeOf(Long key, CacheEntry entry) {
-            return entry.getByteSize();
+        protected long sizeOf(Long key, CacheEntry entry) {
+            return toBlocks(entry.getByteSize());
         }
 
         @Override
         protected void entryRemoved(boolean evicted, Long key, final CacheEntry old, CacheEntry prev) {
-            mEvictionListener.onEvicted(old);
-//            Log.d("Peter100", "CacheLimiter.entryRemoved " + old);
+            if (evicted) {
+                mEvictionListener.onEvicted(old);
+            }
         }
     }
 }
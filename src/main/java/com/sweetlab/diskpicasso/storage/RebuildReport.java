@@ -0,0 +1,88 @@
+package com.sweetlab.diskpicasso.storage;
+
+/**
+ * Outcome of rebuilding the index from the cache directory.
+ */
+public class RebuildReport {
+    private final int mFiles;
+    private final int mRecovered;
+    private final int mJournalBatches;
+    private final int mThreads;
+    private final long mScanNanos;
+    private final long mRecoverNanos;
+    private final long mJournalNanos;
+    private final long mElapsedNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param files          Number of files found that were not indexed.
+     * @param recovered      Number of entries recovered and indexed.
+     * @param journalBatches Number of journal transactions inserting the entries.
+     * @param threads        Number of threads recovering entries.
+     * @param scanNanos      Time listing the cache directory.
+     * @param recoverNanos   Time recovering the entries of the files.
+     * @param journalNanos   Time inserting the entries into the journal.
+     * @param elapsedNanos   Time from start to finish.
+     */
+    /*package*/ RebuildReport(int files, int recovered, int journalBatches, int threads, long scanNanos, long recoverNanos,
+                              long journalNanos, long elapsedNanos) {
+        mFiles = files;
+        mRecovered = recovered;
+        mJournalBatches = journalBatches;
+        mThreads = threads;
+        mScanNanos = scanNanos;
+        mRecoverNanos = recoverNanos;
+        mJournalNanos = journalNanos;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    public int getFiles() {
+        return mFiles;
+    }
+
+    public int getRecovered() {
+        return mRecovered;
+    }
+
+    public int getJournalBatches() {
+        return mJournalBatches;
+    }
+
+    public int getThreads() {
+        return mThreads;
+    }
+
+    public long getScanNanos() {
+        return mScanNanos;
+    }
+
+    public long getRecoverNanos() {
+        return mRecoverNanos;
+    }
+
+    public long getJournalNanos() {
+        return mJournalNanos;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Get the number of files handled per second, from start to finish.
+     *
+     * @return Files per second.
+     */
+    public double getFilesPerSecond() {
+        return mElapsedNanos == 0 ? 0 : mFiles * 1e9 / mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RebuildReport{files=" + mFiles + ", recovered=" + mRecovered + ", journalBatches=" + mJournalBatches +
+                ", threads=" + mThreads + ", scanMillis=" + mScanNanos / 1000000 + ", recoverMillis=" +
+                mRecoverNanos / 1000000 + ", journalMillis=" + mJournalNanos / 1000000 + ", elapsedMillis=" +
+                mElapsedNanos / 1000000 + "}";
+    }
+}
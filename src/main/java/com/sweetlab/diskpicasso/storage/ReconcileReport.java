@@ -0,0 +1,79 @@
+package com.sweetlab.diskpicasso.storage;
+
+/**
+ * Outcome of comparing the index with the cache directory.
+ */
+public class ReconcileReport {
+    private final long mDiskBytes;
+    private final long mIndexedBytes;
+    private final long mOverheadBytes;
+    private final long mBudgetBytes;
+    private final int mOrphanFiles;
+    private final long mOrphanBytes;
+    private final int mMissingFiles;
+    private final long mElapsedNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param diskBytes     Disk space used by the directory after cleanup, in whole blocks.
+     * @param indexedBytes  Disk space of the indexed entries, in whole blocks.
+     * @param overheadBytes Disk space used beyond the indexed entries, for example directories.
+     * @param budgetBytes   Max disk space of the indexed entries from now on.
+     * @param orphanFiles   Number of files not in the index that were deleted.
+     * @param orphanBytes   Disk space freed by deleting orphan files.
+     * @param missingFiles  Number of indexed entries without a file that were removed.
+     * @param elapsedNanos  Time from start to finish.
+     */
+    /*package*/ ReconcileReport(long diskBytes, long indexedBytes, long overheadBytes, long budgetBytes,
+                                int orphanFiles, long orphanBytes, int missingFiles, long elapsedNanos) {
+        mDiskBytes = diskBytes;
+        mIndexedBytes = indexedBytes;
+        mOverheadBytes = overheadBytes;
+        mBudgetBytes = budgetBytes;
+        mOrphanFiles = orphanFiles;
+        mOrphanBytes = orphanBytes;
+        mMissingFiles = missingFiles;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    public long getDiskBytes() {
+        return mDiskBytes;
+    }
+
+    public long getIndexedBytes() {
+        return mIndexedBytes;
+    }
+
+    public long getOverheadBytes() {
+        return mOverheadBytes;
+    }
+
+    public long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    public int getOrphanFiles() {
+        return mOrphanFiles;
+    }
+
+    public long getOrphanBytes() {
+        return mOrphanBytes;
+    }
+
+    public int getMissingFiles() {
+        return mMissingFiles;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ReconcileReport{diskBytes=" + mDiskBytes + ", indexedBytes=" + mIndexedBytes + ", overheadBytes=" +
+                mOverheadBytes + ", budgetBytes=" + mBudgetBytes + ", orphanFiles=" + mOrphanFiles +
+                ", orphanBytes=" + mOrphanBytes + ", missingFiles=" + mMissingFiles + ", elapsedMillis=" +
+                mElapsedNanos / 1000000 + "}";
+    }
+}
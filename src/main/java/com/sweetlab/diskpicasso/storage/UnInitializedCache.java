@@ -30,4 +30,13 @@ public class UnInitializedCache {
     public void init() {
         mCache.init();
     }
+
+    /**
+     * Initialize the cache on a background thread of the cache.
+     *
+     * @param then Run on the same thread when initialized, or null.
+     */
+    public void initAsync(Runnable then) {
+        mCache.initAsync(then);
+    }
 }
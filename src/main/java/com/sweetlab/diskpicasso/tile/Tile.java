@@ -0,0 +1,77 @@
+package com.sweetlab.diskpicasso.tile;
+
+import java.io.File;
+
+/**
+ * A cached tile, a range of a segment file holding the encoded tile.
+ */
+public class Tile {
+    private final TileKey mKey;
+    private final TileSegment mSegment;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mOffset;
+    private final int mByteSize;
+
+    /**
+     * Constructor.
+     *
+     * @param key      The tile key.
+     * @param segment  The segment holding the tile.
+     * @param width    Width of the tile in pixels.
+     * @param height   Height of the tile in pixels.
+     * @param offset   Offset of the encoded tile in the segment file.
+     * @param byteSize Size of the encoded tile.
+     */
+    /*package*/ Tile(TileKey key, TileSegment segment, int width, int height, int offset, int byteSize) {
+        mKey = key;
+        mSegment = segment;
+        mWidth = width;
+        mHeight = height;
+        mOffset = offset;
+        mByteSize = byteSize;
+    }
+
+    public TileKey getKey() {
+        return mKey;
+    }
+
+    /**
+     * Get the segment file holding the tile.
+     *
+     * @return The file.
+     */
+    public File getFile() {
+        return mSegment.getEntry().getFile();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get the offset of the encoded tile in the segment file.
+     *
+     * @return Offset in bytes.
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Get the size of the encoded tile.
+     *
+     * @return Size in bytes.
+     */
+    public int getByteSize() {
+        return mByteSize;
+    }
+
+    /*package*/ TileSegment getSegment() {
+        return mSegment;
+    }
+}
@@ -0,0 +1,86 @@
+package com.sweetlab.diskpicasso.tile;
+
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tiles of one source and level to write as one segment, for example the tiles of a viewport
+ * decoded in one go. The tiles should share a pixel config.
+ */
+public class TileBatch {
+    private final String mFileKey;
+    private final int mLevel;
+    private final long mFingerprint;
+    private final List<TileKey> mKeys = new ArrayList<>();
+    private final List<EncodableImage> mImages = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param fileKey The source file key.
+     * @param level   Zoom level of the tiles.
+     */
+    public TileBatch(String fileKey, int level) {
+        this(fileKey, level, SourceFingerprint.NONE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fileKey     The source file key.
+     * @param level       Zoom level of the tiles.
+     * @param fingerprint Fingerprint of the source.
+     */
+    public TileBatch(String fileKey, int level, long fingerprint) {
+        mFileKey = fileKey;
+        mLevel = level;
+        mFingerprint = fingerprint;
+    }
+
+    /**
+     * Add a tile.
+     *
+     * @param x     Tile column.
+     * @param y     Tile row.
+     * @param image The tile image.
+     */
+    public void add(int x, int y, EncodableImage image) {
+        mKeys.add(new TileKey(mFileKey, mLevel, x, y));
+        mImages.add(image);
+    }
+
+    /**
+     * Remove all tiles, so the batch can be filled again.
+     */
+    public void clear() {
+        mKeys.clear();
+        mImages.clear();
+    }
+
+    public String getFileKey() {
+        return mFileKey;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public long getFingerprint() {
+        return mFingerprint;
+    }
+
+    public int size() {
+        return mKeys.size();
+    }
+
+    public TileKey getKey(int index) {
+        return mKeys.get(index);
+    }
+
+    public EncodableImage getImage(int index) {
+        return mImages.get(index);
+    }
+}
@@ -0,0 +1,245 @@
+package com.sweetlab.diskpicasso.tile;
+
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.core.RegionDecoder;
+import com.sweetlab.diskpicasso.executor.CacheExecutor;
+import com.sweetlab.diskpicasso.storage.DiskCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates tiles of large images lazily on a single minimum priority thread. A request names
+ * a range of tiles of one level, typically the visible ones. Tiles cached or already requested
+ * are skipped, the others are decoded region by region from the source and written in segments
+ * of up to {@link #SEGMENT_TILES} tiles, so a pan writes a few files instead of one per tile.
+ * At most one segment of decoded tiles is held in memory.
+ */
+public class TileGenerator {
+    /**
+     * Max number of tiles written as one segment.
+     */
+    public static final int SEGMENT_TILES = 16;
+
+    private final DiskCache mDiskCache;
+    private final RegionDecoder mDecoder;
+    private final int mTileSize;
+    private final PixelConfig mConfig;
+    private final CacheExecutor mExecutor;
+
+    /**
+     * Tiles requested and not yet generated, so a range requested every frame is queued once.
+     */
+    private final Set<TileKey> mPending = Collections.newSetFromMap(new ConcurrentHashMap<TileKey, Boolean>());
+
+    /**
+     * Grids by source path.
+     */
+    private final ConcurrentHashMap<String, TileGrid> mGrids = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented by stop, a request quits when the generation it was made in has passed.
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param diskCache The cache to put tiles into.
+     * @param decoder   Region decoder of source images.
+     * @param tileSize  Width and height of a tile in pixels.
+     * @param config    Pixel config of the tiles.
+     */
+    public TileGenerator(DiskCache diskCache, RegionDecoder decoder, int tileSize, PixelConfig config) {
+        mDiskCache = diskCache;
+        mDecoder = decoder;
+        mTileSize = tileSize;
+        mConfig = config;
+        mExecutor = new CacheExecutor.Builder().setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PabloTiles");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }).build();
+    }
+
+    /**
+     * Get the tile grid of a source. The bounds are read once per source, do not call on the
+     * rendering thread the first time.
+     *
+     * @param sourcePath Path to the source image.
+     * @return The grid.
+     * @throws IOException If the source could not be opened.
+     */
+    public TileGrid getGrid(String sourcePath) throws IOException {
+        TileGrid grid = mGrids.get(sourcePath);
+        if (grid == null) {
+            RegionDecoder.Source source = mDecoder.open(sourcePath);
+            try {
+                grid = getGrid(sourcePath, source);
+            } finally {
+                source.close();
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Generate the missing tiles of a range in the background. Asynchronous call, requests run
+     * one after another in the order they are made.
+     *
+     * @param sourcePath Path to the source image.
+     * @param fileKey    The source file key.
+     * @param level      Zoom level of the tiles.
+     * @param left       First tile column.
+     * @param top        First tile row.
+     * @param right      Tile column after the last.
+     * @param bottom     Tile row after the last.
+     * @return Number of tiles queued.
+     */
+    public int request(final String sourcePath, final String fileKey, final int level, int left, int top, int right, int bottom) {
+        final List<TileKey> missing = new ArrayList<>();
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                TileKey key = new TileKey(fileKey, level, x, y);
+                if (mDiskCache.getTile(key) == null && mPending.add(key)) {
+                    missing.add(key);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        final int generation = mGeneration.get();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    generate(sourcePath, fileKey, level, missing, generation);
+                } finally {
+                    mPending.removeAll(missing);
+                }
+            }
+        });
+        return missing.size();
+    }
+
+    /**
+     * Drop all requests not yet generated, for example when the image is closed. The segment
+     * currently being generated is finished.
+     */
+    public void stop() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Hold back generation until {@link #resume()}.
+     */
+    public void pause() {
+        mExecutor.pause();
+    }
+
+    /**
+     * Let generation held back by {@link #pause()} run again.
+     */
+    public void resume() {
+        mExecutor.resume();
+    }
+
+    /**
+     * Stop all requests and the tile thread. The generator can not be used after this call.
+     */
+    public void shutdown() {
+        stop();
+        mExecutor.resume();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Decode and write tiles in segments until done or stopped. Failures drop the rest of the
+     * request, the tiles are requested again by the next frame.
+     *
+     * @param sourcePath Path to the source image.
+     * @param fileKey    The source file key.
+     * @param level      Zoom level of the tiles.
+     * @param keys       The tiles to generate.
+     * @param generation Generation the request was made in.
+     */
+    private void generate(String sourcePath, String fileKey, int level, List<TileKey> keys, int generation) {
+        if (mGeneration.get() != generation) {
+            return;
+        }
+        RegionDecoder.Source source;
+        try {
+            source = mDecoder.open(sourcePath);
+        } catch (IOException e) {
+            return;
+        }
+        final long fingerprint = SourceFingerprint.fromMetadata(new File(sourcePath));
+        final TileBatch batch = new TileBatch(fileKey, level, fingerprint);
+        try {
+            final TileGrid grid = getGrid(sourcePath, source);
+            final int[] region = new int[4];
+            for (TileKey key : keys) {
+                if (mGeneration.get() != generation) {
+                    break;
+                }
+                if (key.getX() >= grid.getColumns(level) || key.getY() >= grid.getRows(level) || mDiskCache.getTile(key) != null) {
+                    continue;
+                }
+                grid.getRegion(level, key.getX(), key.getY(), region);
+                batch.add(key.getX(), key.getY(), source.decode(region[0], region[1], region[2], region[3],
+                        grid.getSampleSize(level), mConfig));
+                if (batch.size() == SEGMENT_TILES) {
+                    write(batch, source);
+                }
+            }
+            write(batch, source);
+        } catch (IOException ignored) {
+            // Requested again by the next frame.
+        } finally {
+            for (int i = 0; i < batch.size(); i++) {
+                source.release(batch.getImage(i));
+            }
+            source.close();
+        }
+    }
+
+    /**
+     * Write a batch as one segment, then release its images and clear it.
+     *
+     * @param batch  The batch.
+     * @param source Source that decoded the images.
+     * @throws IOException If the write fails.
+     */
+    private void write(TileBatch batch, RegionDecoder.Source source) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        try {
+            mDiskCache.putTilesSync(batch);
+        } finally {
+            for (int i = 0; i < batch.size(); i++) {
+                source.release(batch.getImage(i));
+            }
+            batch.clear();
+        }
+    }
+
+    private TileGrid getGrid(String sourcePath, RegionDecoder.Source source) {
+        TileGrid grid = new TileGrid(source.getWidth(), source.getHeight(), mTileSize);
+        TileGrid existing = mGrids.putIfAbsent(sourcePath, grid);
+        return existing != null ? existing : grid;
+    }
+}
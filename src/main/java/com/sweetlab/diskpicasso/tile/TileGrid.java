@@ -0,0 +1,114 @@
+package com.sweetlab.diskpicasso.tile;
+
+/**
+ * Tiling of a source image into fixed size tiles at several zoom levels. Level 0 is full
+ * resolution and every following level halves the width and height, down to the level where
+ * the whole image fits in one tile. Tiles at the right and bottom edges may be smaller.
+ */
+public class TileGrid {
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTileSize;
+    private final int mLevelCount;
+
+    /**
+     * Constructor.
+     *
+     * @param width    Width of the source in pixels.
+     * @param height   Height of the source in pixels.
+     * @param tileSize Width and height of a tile in pixels.
+     */
+    public TileGrid(int width, int height, int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Sizes must be positive");
+        }
+        mWidth = width;
+        mHeight = height;
+        mTileSize = tileSize;
+        int levels = 1;
+        while (scaled(Math.max(width, height), levels - 1) > tileSize) {
+            levels++;
+        }
+        mLevelCount = levels;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /**
+     * Get the number of levels, the last holds the whole image in one tile.
+     *
+     * @return Number of levels.
+     */
+    public int getLevelCount() {
+        return mLevelCount;
+    }
+
+    /**
+     * Get the level to draw at a display scale, the smallest level not sharper than needed.
+     *
+     * @param scale Displayed pixels per source pixel, 1 for full resolution.
+     * @return The level.
+     */
+    public int getLevel(float scale) {
+        int level = 0;
+        while (level < mLevelCount - 1 && scale * (2 << level) <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Get the sample size of a level, the number of source pixels per tile pixel.
+     *
+     * @param level The level.
+     * @return Power of two sample size.
+     */
+    public int getSampleSize(int level) {
+        return 1 << level;
+    }
+
+    /**
+     * Get the number of tile columns of a level.
+     *
+     * @param level The level.
+     * @return Number of columns.
+     */
+    public int getColumns(int level) {
+        return (scaled(mWidth, level) + mTileSize - 1) / mTileSize;
+    }
+
+    /**
+     * Get the number of tile rows of a level.
+     *
+     * @param level The level.
+     * @return Number of rows.
+     */
+    public int getRows(int level) {
+        return (scaled(mHeight, level) + mTileSize - 1) / mTileSize;
+    }
+
+    /**
+     * Get the region of the source a tile covers, clipped to the source.
+     *
+     * @param level The level.
+     * @param x     Tile column.
+     * @param y     Tile row.
+     * @param out   Filled with left, top, right and bottom in source pixels.
+     */
+    public void getRegion(int level, int x, int y, int[] out) {
+        final long span = (long) mTileSize << level;
+        out[0] = (int) Math.min(mWidth, x * span);
+        out[1] = (int) Math.min(mHeight, y * span);
+        out[2] = (int) Math.min(mWidth, (x + 1) * span);
+        out[3] = (int) Math.min(mHeight, (y + 1) * span);
+    }
+
+    /**
+     * Size of a source dimension at a level, rounded up.
+     */
+    private static int scaled(int size, int level) {
+        return (int) (((long) size + (1L << level) - 1) >> level);
+    }
+}
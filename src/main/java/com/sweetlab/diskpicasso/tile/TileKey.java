@@ -0,0 +1,66 @@
+package com.sweetlab.diskpicasso.tile;
+
+/**
+ * Identity of a tile, the source file key, zoom level and tile column and row.
+ */
+public final class TileKey {
+    private final String mFileKey;
+    private final int mLevel;
+    private final int mX;
+    private final int mY;
+    private final int mHash;
+
+    /**
+     * Constructor.
+     *
+     * @param fileKey The source file key.
+     * @param level   Zoom level, 0 is full resolution and every level halves it.
+     * @param x       Tile column.
+     * @param y       Tile row.
+     */
+    public TileKey(String fileKey, int level, int x, int y) {
+        mFileKey = fileKey;
+        mLevel = level;
+        mX = x;
+        mY = y;
+        mHash = ((fileKey.hashCode() * 31 + level) * 31 + x) * 31 + y;
+    }
+
+    public String getFileKey() {
+        return mFileKey;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public int getX() {
+        return mX;
+    }
+
+    public int getY() {
+        return mY;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TileKey)) {
+            return false;
+        }
+        TileKey other = (TileKey) o;
+        return mHash == other.mHash && mLevel == other.mLevel && mX == other.mX && mY == other.mY && mFileKey.equals(other.mFileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @Override
+    public String toString() {
+        return mFileKey + " level " + mLevel + " tile " + mX + "," + mY;
+    }
+}
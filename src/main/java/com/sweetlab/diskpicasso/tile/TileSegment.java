@@ -0,0 +1,241 @@
+package com.sweetlab.diskpicasso.tile;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A batch of tiles of one source and level stored in one cache file. The segment is a plain
+ * cache entry, journaled, verified and evicted by the byte budget like any other, its file key
+ * is the source file key followed by the level and a segment id. The file holds the encoded
+ * tiles followed by a table and a fixed size trailer, so the tiles are found again from the
+ * file alone:
+ * <pre>
+ * tile data...
+ * table, per tile: int x, int y, int width, int height, int offset, int length
+ * trailer: int count, int level, int magic
+ * </pre>
+ */
+public class TileSegment {
+    private static final String MARKER = "#tiles:";
+    private static final int MAGIC = 0x44505453;
+    private static final int TABLE_ENTRY_BYTES = 6 * 4;
+    private static final int TRAILER_BYTES = 3 * 4;
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private static final AtomicIntegerFieldUpdater<TileSegment> TOUCHED =
+            AtomicIntegerFieldUpdater.newUpdater(TileSegment.class, "mTouched");
+
+    private final CacheEntry mEntry;
+    private final Tile[] mTiles;
+    private volatile int mTouched;
+
+    /**
+     * Constructor.
+     *
+     * @param entry   Cache entry of the segment file.
+     * @param fileKey The source file key.
+     * @param level   Zoom level of the tiles.
+     * @param table   The table, six ints per tile as stored in the file.
+     */
+    private TileSegment(CacheEntry entry, String fileKey, int level, int[] table) {
+        mEntry = entry;
+        mTiles = new Tile[table.length / 6];
+        for (int i = 0; i < mTiles.length; i++) {
+            final int t = i * 6;
+            mTiles[i] = new Tile(new TileKey(fileKey, level, table[t], table[t + 1]), this,
+                    table[t + 2], table[t + 3], table[t + 4], table[t + 5]);
+        }
+    }
+
+    /**
+     * Create the file key of a new segment, unique among the segments of the source and level.
+     *
+     * @param fileKey The source file key.
+     * @param level   Zoom level of the tiles.
+     * @return The segment file key.
+     */
+    public static String newSegmentKey(String fileKey, int level) {
+        return fileKey + MARKER + level + "." + Long.toString(System.currentTimeMillis(), 36) + "." + IDS.incrementAndGet();
+    }
+
+    /**
+     * Check if a cache entry is a segment.
+     *
+     * @param entry The entry.
+     * @return True if a segment.
+     */
+    public static boolean isSegment(CacheEntry entry) {
+        return isSegmentKey(entry.getFileKey());
+    }
+
+    /**
+     * Check if a file key is the key of a segment.
+     *
+     * @param fileKey The file key.
+     * @return True if a segment key.
+     */
+    public static boolean isSegmentKey(String fileKey) {
+        return fileKey.lastIndexOf(MARKER) >= 0;
+    }
+
+    /**
+     * Read the size of the first tile of a segment file, the size its cache entry is keyed by.
+     *
+     * @param file The segment file.
+     * @param size Filled with the width and the height.
+     * @return True if read, false if the file is not a segment.
+     */
+    public static boolean readSize(File file, int[] size) {
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                final long length = in.length();
+                if (length < TRAILER_BYTES) {
+                    return false;
+                }
+                in.seek(length - TRAILER_BYTES);
+                final int count = in.readInt();
+                in.readInt();
+                if (in.readInt() != MAGIC || count <= 0 || (long) count * TABLE_ENTRY_BYTES > length - TRAILER_BYTES) {
+                    return false;
+                }
+                in.seek(length - TRAILER_BYTES - (long) count * TABLE_ENTRY_BYTES + 2 * 4);
+                size[0] = in.readInt();
+                size[1] = in.readInt();
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the source file key of a segment file key.
+     *
+     * @param segmentKey The segment file key.
+     * @return The source file key.
+     */
+    public static String sourceOf(String segmentKey) {
+        return segmentKey.substring(0, segmentKey.lastIndexOf(MARKER));
+    }
+
+    /**
+     * Create the segment of a batch just written.
+     *
+     * @param entry   Cache entry of the segment file.
+     * @param batch   The batch written.
+     * @param offsets Offset of each tile in the file.
+     * @param lengths Size of each encoded tile.
+     * @return The segment.
+     */
+    public static TileSegment create(CacheEntry entry, TileBatch batch, int[] offsets, int[] lengths) {
+        return new TileSegment(entry, batch.getFileKey(), batch.getLevel(), table(batch, offsets, lengths));
+    }
+
+    /**
+     * Encode the table and trailer to append after the tiles of a batch.
+     *
+     * @param batch   The batch.
+     * @param offsets Offset of each tile in the file.
+     * @param lengths Size of each encoded tile.
+     * @return The bytes to append.
+     */
+    public static byte[] encodeTable(TileBatch batch, int[] offsets, int[] lengths) {
+        int[] table = table(batch, offsets, lengths);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(table.length * 4 + TRAILER_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (int value : table) {
+                out.writeInt(value);
+            }
+            out.writeInt(batch.size());
+            out.writeInt(batch.getLevel());
+            out.writeInt(MAGIC);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the tiles of a segment file.
+     *
+     * @param entry Cache entry of the segment file.
+     * @return The segment.
+     * @throws IOException If the file could not be read or is not a segment.
+     */
+    public static TileSegment read(CacheEntry entry) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(entry.getFile(), "r");
+        try {
+            final long length = file.length();
+            if (length != entry.getByteSize() || length < TRAILER_BYTES) {
+                throw new IOException("Bad segment length " + entry.getFile());
+            }
+            file.seek(length - TRAILER_BYTES);
+            final int count = file.readInt();
+            final int level = file.readInt();
+            if (file.readInt() != MAGIC || count < 0 || (long) count * TABLE_ENTRY_BYTES > length - TRAILER_BYTES) {
+                throw new IOException("Bad segment trailer " + entry.getFile());
+            }
+            file.seek(length - TRAILER_BYTES - (long) count * TABLE_ENTRY_BYTES);
+            int[] table = new int[count * 6];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = file.readInt();
+            }
+            return new TileSegment(entry, sourceOf(entry.getFileKey()), level, table);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Get the cache entry of the segment file.
+     *
+     * @return The entry.
+     */
+    public CacheEntry getEntry() {
+        return mEntry;
+    }
+
+    /*package*/ Tile[] getTiles() {
+        return mTiles;
+    }
+
+    /**
+     * Mark the segment as used since the last {@link #clearTouched()}.
+     *
+     * @return True for the first caller only.
+     */
+    /*package*/ boolean markTouched() {
+        return mTouched == 0 && TOUCHED.compareAndSet(this, 0, 1);
+    }
+
+    /*package*/ void clearTouched() {
+        mTouched = 0;
+    }
+
+    private static int[] table(TileBatch batch, int[] offsets, int[] lengths) {
+        int[] table = new int[batch.size() * 6];
+        for (int i = 0; i < batch.size(); i++) {
+            final TileKey key = batch.getKey(i);
+            final EncodableImage image = batch.getImage(i);
+            final int t = i * 6;
+            table[t] = key.getX();
+            table[t + 1] = key.getY();
+            table[t + 2] = image.getWidth();
+            table[t + 3] = image.getHeight();
+            table[t + 4] = offsets[i];
+            table[t + 5] = lengths[i];
+        }
+        return table;
+    }
+}
@@ -0,0 +1,140 @@
+package com.sweetlab.diskpicasso.tile;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Index of the cached tiles. Lookups are a single concurrent hash map read and never block,
+ * so they can be made on the rendering thread. Segments are added and removed by the cache
+ * under its own lock. A lookup only marks its segment as used, the cache takes the used
+ * segments and refreshes them in its lru later.
+ */
+public class TileStore {
+    private final ConcurrentHashMap<TileKey, Tile> mTiles = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<TileSegment> mTouched = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Segments by primary key and by source file key, guarded by the store.
+     */
+    private final Map<Long, TileSegment> mSegments = new HashMap<>();
+    private final Map<String, List<TileSegment>> mSources = new HashMap<>();
+
+    /**
+     * Look up a tile.
+     *
+     * @param key The tile key.
+     * @return The tile or null if not cached.
+     */
+    public Tile get(TileKey key) {
+        Tile tile = mTiles.get(key);
+        if (tile != null && tile.getSegment().markTouched()) {
+            mTouched.offer(tile.getSegment());
+        }
+        return tile;
+    }
+
+    /**
+     * Add the tiles of a segment, replacing tiles with the same key.
+     *
+     * @param segment The segment.
+     */
+    public synchronized void add(TileSegment segment) {
+        remove(segment.getEntry().getPrimaryKey());
+        final CacheEntry entry = segment.getEntry();
+        mSegments.put(entry.getPrimaryKey(), segment);
+        final String fileKey = TileSegment.sourceOf(entry.getFileKey());
+        List<TileSegment> segments = mSources.get(fileKey);
+        if (segments == null) {
+            segments = new ArrayList<>();
+            mSources.put(fileKey, segments);
+        }
+        segments.add(segment);
+        for (Tile tile : segment.getTiles()) {
+            mTiles.put(tile.getKey(), tile);
+        }
+    }
+
+    /**
+     * Remove the tiles of a segment entry, if it is still the segment with its primary key.
+     * Tiles replaced by a later segment are kept.
+     *
+     * @param entry The segment entry.
+     * @return True if removed.
+     */
+    public synchronized boolean remove(CacheEntry entry) {
+        TileSegment segment = mSegments.get(entry.getPrimaryKey());
+        if (segment == null || segment.getEntry() != entry) {
+            return false;
+        }
+        remove(entry.getPrimaryKey());
+        return true;
+    }
+
+    /**
+     * Get the segment entries of a source.
+     *
+     * @param fileKey The source file key.
+     * @return The entries, empty if none.
+     */
+    public synchronized List<CacheEntry> getSegments(String fileKey) {
+        List<TileSegment> segments = mSources.get(fileKey);
+        List<CacheEntry> entries = new ArrayList<>(segments == null ? 0 : segments.size());
+        if (segments != null) {
+            for (TileSegment segment : segments) {
+                entries.add(segment.getEntry());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Take the entries of the segments used since the last call.
+     *
+     * @return The entries, empty if none.
+     */
+    public List<CacheEntry> takeTouched() {
+        List<CacheEntry> entries = new ArrayList<>();
+        TileSegment segment;
+        while ((segment = mTouched.poll()) != null) {
+            segment.clearTouched();
+            entries.add(segment.getEntry());
+        }
+        return entries;
+    }
+
+    /**
+     * Get the number of cached tiles.
+     *
+     * @return Number of tiles.
+     */
+    public int getCount() {
+        return mTiles.size();
+    }
+
+    /**
+     * Remove a segment by primary key, must hold the store lock.
+     */
+    private void remove(long primaryKey) {
+        TileSegment segment = mSegments.remove(primaryKey);
+        if (segment == null) {
+            return;
+        }
+        final String fileKey = TileSegment.sourceOf(segment.getEntry().getFileKey());
+        List<TileSegment> segments = mSources.get(fileKey);
+        if (segments != null) {
+            segments.remove(segment);
+            if (segments.isEmpty()) {
+                mSources.remove(fileKey);
+            }
+        }
+        for (Tile tile : segment.getTiles()) {
+            mTiles.remove(tile.getKey(), tile);
+        }
+    }
+}
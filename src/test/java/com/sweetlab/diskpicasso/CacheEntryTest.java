@@ -0,0 +1,23 @@
+package com.sweetlab.diskpicasso;
+
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotEquals;
+
+public class CacheEntryTest {
+    private static final String FILE_KEY = "/sdcard/DCIM/photo.jpg";
+
+    @Test
+    public void swappedSizesHaveDistinctKeys() {
+        assertNotEquals(CacheEntry.calcPrimaryKey(FILE_KEY, 640, 480, PixelConfig.RGB_565),
+                CacheEntry.calcPrimaryKey(FILE_KEY, 480, 640, PixelConfig.RGB_565));
+    }
+
+    @Test
+    public void sizesDoNotCancelOut() {
+        assertNotEquals(CacheEntry.calcPrimaryKey(FILE_KEY, 641, 480, PixelConfig.RGB_565),
+                CacheEntry.calcPrimaryKey(FILE_KEY, 640, 481, PixelConfig.RGB_565));
+    }
+}
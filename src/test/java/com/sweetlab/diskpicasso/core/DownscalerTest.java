@@ -0,0 +1,112 @@
+package com.sweetlab.diskpicasso.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DownscalerTest {
+    private static final int COLOR = 0xff336699;
+
+    private Downscaler mDownscaler;
+
+    @Before
+    public void setUp() {
+        mDownscaler = new Downscaler(4);
+    }
+
+    @After
+    public void tearDown() {
+        mDownscaler.shutdown();
+    }
+
+    @Test
+    public void sameSizeIsIdentity() {
+        final int[] src = randomPixels(37, 23, 1);
+        for (Downscaler.Filter filter : Downscaler.Filter.values()) {
+            assertArrayEquals(filter.name(), src, mDownscaler.scale(src, 37, 23, 37, 23, filter));
+        }
+    }
+
+    @Test
+    public void edgeWeightsAddUpToOne() {
+        // Taps outside the source fold into the edge pixels, a plain color stays the same.
+        final int[][] sizes = {{1, 1, 1, 1}, {3, 1, 1, 1}, {7, 5, 2, 3}, {100, 80, 7, 5}, {5, 5, 20, 20},
+                {1200, 900, 1, 1}, {1, 1000, 1, 9}, {640, 480, 213, 160}};
+        for (Downscaler.Filter filter : Downscaler.Filter.values()) {
+            for (int[] size : sizes) {
+                final int[] src = new int[size[0] * size[1]];
+                Arrays.fill(src, COLOR);
+                final int[] dst = mDownscaler.scale(src, size[0], size[1], size[2], size[3], filter);
+                for (int pixel : dst) {
+                    assertEquals(filter + " " + Arrays.toString(size), COLOR, pixel);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void edgePixelsOnlySeeTheirSide() {
+        // Left half black, right half white, the outer output pixels only cover their half.
+        final int width = 64;
+        final int[] src = new int[width * 4];
+        for (int y = 0; y < 4; y++) {
+            Arrays.fill(src, y * width, y * width + width / 2, 0xff000000);
+            Arrays.fill(src, y * width + width / 2, (y + 1) * width, 0xffffffff);
+        }
+        for (Downscaler.Filter filter : Downscaler.Filter.values()) {
+            final int[] dst = mDownscaler.scale(src, width, 4, width / 4, 2, filter);
+            for (int y = 0; y < 2; y++) {
+                assertEquals(filter.name(), 0xff000000, dst[y * width / 4]);
+                assertEquals(filter.name(), 0xffffffff, dst[(y + 1) * width / 4 - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void boxAveragesCoveredPixels() {
+        final int[] src = {0xff0a0a0a, 0xff141414, 0xff646464, 0xffc8c8c8,
+                0xff1e1e1e, 0xff282828, 0xff646464, 0xffc8c8c8};
+        final int[] dst = mDownscaler.scale(src, 4, 2, 2, 1, Downscaler.Filter.BOX);
+        assertArrayEquals(new int[]{0xff191919, 0xff969696}, dst);
+    }
+
+    @Test
+    public void parallelEqualsSerial() {
+        final int width = 1024;
+        final int height = 768;
+        final int[] src = randomPixels(width, height, 2);
+        final Downscaler serial = new Downscaler(1);
+        for (Downscaler.Filter filter : Downscaler.Filter.values()) {
+            final int[] expected = serial.scale(src, width, height, 300, 225, filter);
+            assertArrayEquals(filter.name(), expected, mDownscaler.scale(src, width, height, 300, 225, filter));
+        }
+        mDownscaler.shutdown();
+        assertArrayEquals(serial.scale(src, width, height, 300, 225, Downscaler.Filter.LANCZOS3),
+                mDownscaler.scale(src, width, height, 300, 225, Downscaler.Filter.LANCZOS3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptySizeIsRejected() {
+        mDownscaler.scale(new int[4], 2, 2, 0, 1, Downscaler.Filter.BOX);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortArrayIsRejected() {
+        mDownscaler.scale(new int[3], 2, 2, 1, 1, Downscaler.Filter.BOX);
+    }
+
+    private static int[] randomPixels(int width, int height, long seed) {
+        Random random = new Random(seed);
+        final int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}
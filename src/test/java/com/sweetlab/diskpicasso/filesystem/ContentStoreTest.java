@@ -0,0 +1,149 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import com.sweetlab.diskpicasso.stats.CacheStats;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContentStoreTest {
+    private static final byte[] FIRST = {1, 2, 3, 4, 5, 6, 7, 8};
+    private static final byte[] SECOND = {8, 7, 6, 5, 4, 3, 2, 1};
+
+    private TempStorageRoot mRoot;
+    private File mDirectory;
+    private ContentStore mStore;
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = new TempStorageRoot();
+        mDirectory = new File(mRoot.getDirectory(), "content");
+        mStore = new ContentStore(mDirectory, new CacheStats(false));
+    }
+
+    @After
+    public void tearDown() {
+        mRoot.delete();
+    }
+
+    @Test
+    public void sharedUntilLastRelease() throws Exception {
+        File file = write(1, FIRST);
+        assertEquals(file, write(2, FIRST));
+        assertEquals(FIRST.length, mStore.getSharedBytes());
+
+        assertTrue(mStore.release(1, file));
+        assertFalse(mStore.release(1, file));
+        assertTrue(file.isFile());
+        assertEquals(0, mStore.getSharedBytes());
+
+        assertTrue(mStore.release(2, file));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void previousKeptUntilCommitted() throws Exception {
+        File previous = write(1, FIRST);
+        ContentStore.Blob blob = mStore.reference(ByteBuffer.wrap(SECOND));
+        store(blob, SECOND);
+        assertNotEquals(previous, blob.getFile());
+        assertTrue(previous.isFile());
+
+        mStore.commit(1, blob.getFile());
+        assertFalse(previous.exists());
+        assertFalse(mStore.release(1, previous));
+        assertTrue(mStore.release(1, blob.getFile()));
+        assertFalse(blob.getFile().exists());
+    }
+
+    @Test
+    public void abandonKeepsPrevious() throws Exception {
+        File previous = write(1, FIRST);
+        ContentStore.Blob blob = mStore.reference(ByteBuffer.wrap(SECOND));
+        store(blob, SECOND);
+        mStore.abandon(blob.getFile());
+        assertFalse(blob.getFile().exists());
+        assertTrue(previous.isFile());
+        assertTrue(mStore.release(1, previous));
+        assertFalse(previous.exists());
+    }
+
+    @Test
+    public void rewriteWithSameContents() throws Exception {
+        File file = write(1, FIRST);
+        assertEquals(file, write(1, FIRST));
+        assertEquals(0, mStore.getSharedBytes());
+        assertTrue(mStore.release(1, file));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void pendingBlobOutlivesOtherReferences() throws Exception {
+        // A write of the variant starts, a later write of it commits first.
+        ContentStore.Blob slow = mStore.reference(ByteBuffer.wrap(FIRST));
+        File fast = write(1, SECOND);
+        assertTrue(mStore.release(1, fast));
+
+        // The slow write is still tracked when its file is in place.
+        store(slow, FIRST);
+        mStore.commit(1, slow.getFile());
+        assertTrue(slow.getFile().isFile());
+        assertTrue(mStore.release(1, slow.getFile()));
+        assertNoFiles(mDirectory);
+    }
+
+    @Test
+    public void damagedBlobIsWrittenAgain() throws Exception {
+        File file = write(1, FIRST);
+        mStore.markDamaged(file);
+        ContentStore.Blob blob = mStore.reference(ByteBuffer.wrap(FIRST));
+        assertEquals(file, blob.getFile());
+        assertFalse(mStore.isStored(blob));
+        mStore.abandon(file);
+    }
+
+    /**
+     * Write a variant like the file system does, the blob is stored by the first reference.
+     */
+    private File write(long primaryKey, byte[] contents) throws IOException {
+        ContentStore.Blob blob = mStore.reference(ByteBuffer.wrap(contents));
+        if (!mStore.isStored(blob)) {
+            store(blob, contents);
+        }
+        mStore.commit(primaryKey, blob.getFile());
+        return blob.getFile();
+    }
+
+    private void store(ContentStore.Blob blob, byte[] contents) throws IOException {
+        File file = blob.getFile();
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        mStore.markStored(blob);
+    }
+
+    private static void assertNoFiles(File directory) {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                assertFalse(child.getPath(), child.isFile());
+                assertNoFiles(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import com.sweetlab.diskpicasso.stats.CacheStats;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EncodedByteCacheTest {
+    private static final int CAPACITY = 80;
+    private static final int MAX_ENTRY_BYTES = CAPACITY / 8;
+
+    private EncodedByteCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new EncodedByteCache(CAPACITY, new CacheStats(false));
+    }
+
+    @Test
+    public void putAndGet() {
+        mCache.put(1, contents(1, 6), 6);
+        byte[] small = new byte[5];
+        assertEquals(6, mCache.get(1, small));
+        assertArrayEquals(new byte[5], small);
+        byte[] dst = new byte[MAX_ENTRY_BYTES];
+        assertEquals(6, mCache.get(1, dst));
+        assertContents(1, 6, dst);
+        assertEquals(-1, mCache.get(2, dst));
+        assertEquals(6, mCache.getUsedBytes());
+    }
+
+    @Test
+    public void putDoesNotMoveSourcePosition() {
+        ByteBuffer src = ByteBuffer.wrap(contents(1, 8));
+        src.position(2);
+        mCache.put(1, src);
+        assertEquals(2, src.position());
+        byte[] dst = new byte[MAX_ENTRY_BYTES];
+        assertEquals(6, mCache.get(1, dst));
+        assertEquals(contents(1, 8)[2], dst[0]);
+    }
+
+    @Test
+    public void replaceAndRemove() {
+        mCache.put(1, contents(1, 6), 6);
+        mCache.put(1, contents(2, 4), 4);
+        assertEquals(4, mCache.getUsedBytes());
+        byte[] dst = new byte[MAX_ENTRY_BYTES];
+        assertEquals(4, mCache.get(1, dst));
+        assertContents(2, 4, dst);
+        mCache.remove(1);
+        mCache.remove(1);
+        assertEquals(-1, mCache.get(1, dst));
+        assertEquals(0, mCache.getUsedBytes());
+    }
+
+    @Test
+    public void emptyAndTooLargeAreIgnored() {
+        mCache.put(1, contents(1, MAX_ENTRY_BYTES + 1), MAX_ENTRY_BYTES + 1);
+        assertEquals(-1, mCache.get(1, new byte[CAPACITY]));
+        mCache.put(2, new byte[0], 0);
+        assertEquals(-1, mCache.get(2, new byte[CAPACITY]));
+        assertEquals(0, mCache.getUsedBytes());
+    }
+
+    @Test
+    public void wrapEvictsOldest() {
+        final int length = 7;
+        final int fit = CAPACITY / length;
+        for (int key = 0; key < fit; key++) {
+            mCache.put(key, contents(key, length), length);
+        }
+        assertEquals(fit * length, mCache.getUsedBytes());
+
+        // The tail of the slab is too short, the next file goes to the start over the oldest.
+        mCache.put(fit, contents(fit, length), length);
+        byte[] dst = new byte[MAX_ENTRY_BYTES];
+        assertEquals(-1, mCache.get(0, dst));
+        for (int key = 1; key <= fit; key++) {
+            assertEquals(length, mCache.get(key, dst));
+            assertContents(key, length, dst);
+        }
+        assertEquals(fit * length, mCache.getUsedBytes());
+    }
+
+    @Test
+    public void removedSlotsAreEvictedOnce() {
+        final int length = 5;
+        final int fit = CAPACITY / length;
+        for (int key = 0; key < fit; key++) {
+            mCache.put(key, contents(key, length), length);
+        }
+        mCache.remove(0);
+        mCache.remove(1);
+
+        // Wraps over the two removed files, then evicts the oldest cached one.
+        mCache.put(100, contents(100, length + 3), length + 3);
+        mCache.put(101, contents(101, length), length);
+        byte[] dst = new byte[MAX_ENTRY_BYTES];
+        assertEquals(-1, mCache.get(2, dst));
+        assertEquals(length, mCache.get(3, dst));
+        assertEquals((fit - 3) * length + length + 3 + length, mCache.getUsedBytes());
+    }
+
+    @Test
+    public void matchesModel() {
+        Random random = new Random(42);
+        Map<Long, Integer> lengths = new HashMap<>();
+        Map<Long, Long> seeds = new HashMap<>();
+        byte[] dst = new byte[MAX_ENTRY_BYTES];
+        for (int i = 0; i < 10000; i++) {
+            final long key = random.nextInt(32);
+            if (random.nextInt(4) == 0) {
+                mCache.remove(key);
+                lengths.remove(key);
+            } else {
+                final int length = random.nextInt(MAX_ENTRY_BYTES + 1);
+                mCache.put(key, contents(key + i, length), length);
+                lengths.put(key, length);
+                seeds.put(key, key + i);
+            }
+
+            // Every file still cached must have its own bytes.
+            int used = 0;
+            for (long cached = 0; cached < 32; cached++) {
+                final int length = mCache.get(cached, dst);
+                if (length >= 0) {
+                    assertEquals(lengths.get(cached).intValue(), length);
+                    assertContents(seeds.get(cached), length, dst);
+                    used += length;
+                }
+            }
+            assertEquals(used, mCache.getUsedBytes());
+        }
+    }
+
+    private static byte[] contents(long seed, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed * 31 + i);
+        }
+        return bytes;
+    }
+
+    private static void assertContents(long seed, int length, byte[] actual) {
+        byte[] expected = contents(seed, length);
+        for (int i = 0; i < length; i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+}
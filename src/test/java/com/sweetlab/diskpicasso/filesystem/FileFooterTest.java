@@ -0,0 +1,146 @@
+package com.sweetlab.diskpicasso.filesystem;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.SourceFingerprint;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.stats.CacheStats;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileFooterTest {
+    private static final String FILE_KEY = "/sdcard/DCIM/photo.jpg";
+    private static final byte[] PAYLOAD = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    private static final long CHECKSUM = 0x12345678L;
+
+    private TempStorageRoot mRoot;
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = new TempStorageRoot();
+        mFile = new File(mRoot.getDirectory(), "footer");
+    }
+
+    @After
+    public void tearDown() {
+        mRoot.delete();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        write(PAYLOAD, FileFooter.encode(FILE_KEY, 64, 48, PixelConfig.RGB_565, PAYLOAD.length, CHECKSUM));
+        FileFooter footer = FileFooter.read(mFile);
+        assertNotNull(footer);
+        assertEquals(CacheEntry.calcPrimaryKey(FILE_KEY, 64, 48, PixelConfig.RGB_565), footer.getPrimaryKey());
+        assertEquals(FileFooter.hashFileKey(FILE_KEY), footer.getFileKeyHash());
+        assertEquals(64, footer.getWidth());
+        assertEquals(48, footer.getHeight());
+        assertEquals(PixelConfig.RGB_565, footer.getConfig());
+        assertEquals(PAYLOAD.length, footer.getPayloadLength());
+        assertEquals(CHECKSUM, footer.getChecksum());
+
+        final int byteSize = PAYLOAD.length + FileFooter.BYTES;
+        assertTrue(footer.matches(entry(FILE_KEY, 64, 48, byteSize, CHECKSUM)));
+        assertTrue(footer.matches(entry(FILE_KEY, 64, 48, byteSize, CacheEntry.NO_CHECKSUM)));
+        assertFalse(footer.matches(entry(FILE_KEY, 64, 48, byteSize, CHECKSUM + 1)));
+        assertFalse(footer.matches(entry(FILE_KEY, 48, 64, byteSize, CHECKSUM)));
+        assertFalse(footer.matches(entry(FILE_KEY + "2", 64, 48, byteSize, CHECKSUM)));
+        assertFalse(footer.matches(entry(FILE_KEY, 64, 48, byteSize + 1, CHECKSUM)));
+    }
+
+    @Test
+    public void fileWithoutFooter() throws Exception {
+        write(PAYLOAD);
+        assertNull(FileFooter.read(mFile));
+        write(new byte[FileFooter.BYTES * 2]);
+        assertNull(FileFooter.read(mFile));
+        assertNull(FileFooter.read(new File(mRoot.getDirectory(), "missing")));
+    }
+
+    @Test
+    public void damagedFooter() throws Exception {
+        final byte[] footer = FileFooter.encode(FILE_KEY, 64, 48, PixelConfig.RGB_565, PAYLOAD.length, CHECKSUM);
+        for (int i = 0; i < footer.length; i++) {
+            footer[i] ^= 1;
+            write(PAYLOAD, footer);
+            assertNull("Byte " + i, FileFooter.read(mFile));
+            footer[i] ^= 1;
+        }
+    }
+
+    @Test
+    public void payloadOfOtherLength() throws Exception {
+        final byte[] footer = FileFooter.encode(FILE_KEY, 64, 48, PixelConfig.RGB_565, PAYLOAD.length, CHECKSUM);
+        write(new byte[PAYLOAD.length + 1], footer);
+        assertNull(FileFooter.read(mFile));
+        write(new byte[PAYLOAD.length - 1], footer);
+        assertNull(FileFooter.read(mFile));
+    }
+
+    @Test
+    public void recoverFromFooter() throws Exception {
+        FileSystem fileSystem = new FileSystem(mRoot, new RawEncoder(), new CacheStats(false));
+        for (String fileKey : new String[]{FILE_KEY, "relative/photo.jpg"}) {
+            CacheEntry written = fileSystem.write(new WriteRequest(fileKey, new RawImage(40, 30, PixelConfig.ARGB_8888)));
+            CacheEntry recovered = fileSystem.recover(written.getFile(), null, new int[2]);
+            assertNotNull(fileKey, recovered);
+            assertEquals(fileKey, recovered.getFileKey());
+            assertEquals(written.getPrimaryKey(), recovered.getPrimaryKey());
+            assertEquals(written.getFile(), recovered.getFile());
+            assertEquals(written.getByteSize(), recovered.getByteSize());
+            assertEquals(written.getChecksum(), recovered.getChecksum());
+            assertTrue(fileSystem.verify(recovered, true));
+        }
+    }
+
+    @Test
+    public void recoverRejectsOtherPath() throws Exception {
+        FileSystem fileSystem = new FileSystem(mRoot, new RawEncoder(), new CacheStats(false));
+        CacheEntry written = fileSystem.write(new WriteRequest(FILE_KEY, new RawImage(40, 30, PixelConfig.ARGB_8888)));
+        File moved = new File(written.getFile().getParentFile(), "other.jpg" + written.getPrimaryKey());
+        assertTrue(written.getFile().renameTo(moved));
+        assertNull(fileSystem.recover(moved, null, new int[2]));
+
+        // Without the footer there is nothing to recover from without a bounds reader.
+        assertTrue(moved.renameTo(written.getFile()));
+        RandomAccessFile file = new RandomAccessFile(written.getFile(), "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+        assertNull(fileSystem.recover(written.getFile(), null, new int[2]));
+    }
+
+    private static CacheEntry entry(String fileKey, int width, int height, int byteSize, long checksum) {
+        return new CacheEntry(fileKey, new File("/cache/entry"), width, height, PixelConfig.RGB_565, byteSize,
+                SourceFingerprint.NONE, checksum);
+    }
+
+    private void write(byte[]... parts) throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            for (byte[] part : parts) {
+                out.write(part);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
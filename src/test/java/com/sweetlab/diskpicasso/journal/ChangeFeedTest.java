@@ -0,0 +1,214 @@
+package com.sweetlab.diskpicasso.journal;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedTest {
+    private TempStorageRoot mRoot;
+    private File mFile;
+    private ChangeFeed mWriter;
+    private ChangeFeed mReader;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = new TempStorageRoot();
+        mFile = new File(mRoot.getDirectory(), "changes");
+        mWriter = new ChangeFeed(mFile);
+        mReader = new ChangeFeed(mFile);
+        mListener = new RecordingListener();
+    }
+
+    @After
+    public void tearDown() {
+        mWriter.close();
+        mReader.close();
+        mRoot.delete();
+    }
+
+    @Test
+    public void putAndRemove() throws Exception {
+        CacheEntry first = entry(0);
+        CacheEntry second = new CacheEntry("/b.jpg", new File("/cache/b"), 20, 10, PixelConfig.ARGB_8888, 800, 7, 9);
+        append(Arrays.asList(first, second), Collections.singletonList(first));
+
+        mReader.poll(mListener);
+        assertEquals(2, mListener.mPuts.size());
+        assertSameEntry(first, mListener.mPuts.get(0));
+        assertSameEntry(second, mListener.mPuts.get(1));
+        assertEquals(Collections.singletonList(first.getPrimaryKey()), mListener.mRemoves);
+        assertEquals(0, mListener.mResets);
+
+        mListener.clear();
+        mReader.poll(mListener);
+        assertTrue(mListener.mPuts.isEmpty());
+        assertTrue(mListener.mRemoves.isEmpty());
+    }
+
+    @Test
+    public void changesBeforeOpenAreSkipped() throws Exception {
+        append(Collections.singletonList(entry(0)), Collections.<CacheEntry>emptyList());
+        ChangeFeed late = new ChangeFeed(mFile);
+        try {
+            late.poll(mListener);
+        } finally {
+            late.close();
+        }
+        assertTrue(mListener.mPuts.isEmpty());
+    }
+
+    @Test
+    public void tornRecordIsLeftWithoutLockAndCutWithLock() throws Exception {
+        append(Collections.singletonList(entry(0)), Collections.<CacheEntry>emptyList());
+        final long intact = mFile.length();
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(intact);
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write(new byte[10]);
+        } finally {
+            file.close();
+        }
+
+        mReader.poll(mListener);
+        assertEquals(1, mListener.mPuts.size());
+        assertEquals(intact + 18, mFile.length());
+
+        mReader.lock();
+        try {
+            mReader.poll(mListener);
+        } finally {
+            mReader.unlock();
+        }
+        assertEquals(1, mListener.mPuts.size());
+        assertEquals(intact, mFile.length());
+
+        append(Collections.singletonList(entry(1)), Collections.<CacheEntry>emptyList());
+        mReader.poll(mListener);
+        assertEquals(1, mListener.mPuts.size());
+        assertSameEntry(entry(1), mListener.mPuts.get(0));
+    }
+
+    @Test
+    public void recordWithBadChecksumStopsPoll() throws Exception {
+        append(Collections.singletonList(entry(0)), Collections.<CacheEntry>emptyList());
+        final long second = mFile.length();
+        append(Arrays.asList(entry(1), entry(2)), Collections.<CacheEntry>emptyList());
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            // Flip a byte of the payload of the second record.
+            file.seek(second + 12);
+            final int value = file.read();
+            file.seek(second + 12);
+            file.write(value ^ 0xff);
+        } finally {
+            file.close();
+        }
+
+        mReader.poll(mListener);
+        assertEquals(1, mListener.mPuts.size());
+        assertSameEntry(entry(0), mListener.mPuts.get(0));
+    }
+
+    @Test
+    public void compactionResetsOtherProcesses() throws Exception {
+        List<CacheEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(entry(i));
+        }
+        int appended = 0;
+        long size;
+        do {
+            size = mFile.length();
+            append(entries, Collections.<CacheEntry>emptyList());
+            appended++;
+        } while (mFile.length() > size);
+
+        // The batch that crossed the limit was appended and the feed started over.
+        assertTrue(appended > 1);
+        assertTrue(mFile.length() < size);
+        mReader.poll(mListener);
+        assertEquals(1, mListener.mResets);
+        assertTrue(mListener.mPuts.isEmpty());
+
+        append(Collections.singletonList(entry(0)), Collections.<CacheEntry>emptyList());
+        mListener.clear();
+        mReader.poll(mListener);
+        assertEquals(0, mListener.mResets);
+        assertEquals(1, mListener.mPuts.size());
+    }
+
+    private void append(List<CacheEntry> puts, List<CacheEntry> removes) throws Exception {
+        mWriter.lock();
+        try {
+            mWriter.poll(mListener);
+            mWriter.appendPut(puts);
+            mWriter.appendRemove(removes);
+        } finally {
+            mWriter.unlock();
+        }
+        mListener.clear();
+    }
+
+    private static CacheEntry entry(int index) {
+        return new CacheEntry("/sdcard/DCIM/IMG_" + index + ".jpg", new File("/cache/entry" + index), 128, 96,
+                PixelConfig.RGB_565, 4096 + index, index, 1000 + index);
+    }
+
+    private static void assertSameEntry(CacheEntry expected, CacheEntry actual) {
+        assertEquals(expected.getFileKey(), actual.getFileKey());
+        assertEquals(expected.getPrimaryKey(), actual.getPrimaryKey());
+        assertEquals(expected.getFile(), actual.getFile());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getConfig(), actual.getConfig());
+        assertEquals(expected.getByteSize(), actual.getByteSize());
+        assertEquals(expected.getFingerprint(), actual.getFingerprint());
+        assertEquals(expected.getChecksum(), actual.getChecksum());
+        assertArrayEquals(expected.getPlaceholder(), actual.getPlaceholder());
+    }
+
+    private static class RecordingListener implements ChangeListener {
+        private final List<CacheEntry> mPuts = new ArrayList<>();
+        private final List<Long> mRemoves = new ArrayList<>();
+        private int mResets;
+
+        @Override
+        public void onPut(CacheEntry entry) {
+            mPuts.add(entry);
+        }
+
+        @Override
+        public void onRemove(long primaryKey) {
+            mRemoves.add(primaryKey);
+        }
+
+        @Override
+        public void onReset() {
+            mResets++;
+        }
+
+        void clear() {
+            mPuts.clear();
+            mRemoves.clear();
+            mResets = 0;
+        }
+    }
+}
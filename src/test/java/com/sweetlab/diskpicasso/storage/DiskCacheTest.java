@@ -0,0 +1,275 @@
+package com.sweetlab.diskpicasso.storage;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageEncoder;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+import com.sweetlab.diskpicasso.testing.MemoryJournal;
+import com.sweetlab.diskpicasso.testing.RawEncoder;
+import com.sweetlab.diskpicasso.testing.RawImage;
+import com.sweetlab.diskpicasso.testing.TempStorageRoot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskCacheTest {
+    private static final long CACHE_SIZE = 8 * 1024 * 1024;
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final String FILE_KEY = "/sdcard/DCIM/photo.jpg";
+    private static final int FAILING_WIDTH = 16;
+
+    private TempStorageRoot mRoot;
+    private MemoryJournal mJournal;
+    private ImageEncoder mEncoder;
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = new TempStorageRoot();
+        mJournal = new MemoryJournal();
+        mEncoder = new RawEncoder();
+    }
+
+    @After
+    public void tearDown() {
+        mRoot.delete();
+    }
+
+    @Test
+    public void lookupAfterShutdown() throws Exception {
+        DiskCache cache = createCache();
+        cache.putSync(FILE_KEY, new RawImage(64, 48, PixelConfig.RGB_565), 0);
+        cache.putSync(FILE_KEY, new RawImage(32, 24, PixelConfig.RGB_565), 0);
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+
+        // Entries read at warm up are not verified yet, the first lookup would verify them.
+        cache = createCache();
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+        File file = cache.getExact(FILE_KEY, 64, 48, PixelConfig.RGB_565);
+        assertNotNull(file);
+        assertTrue(file.exists());
+        assertNotNull(cache.findMatch(cache.get(FILE_KEY), 32, 24, PixelConfig.RGB_565));
+        CacheEntry[] out = new CacheEntry[1];
+        assertEquals(1, cache.getAll(new String[]{FILE_KEY}, new int[]{64}, new int[]{48}, PixelConfig.RGB_565, out));
+    }
+
+    @Test
+    public void rewriteOfStaleVariants() throws Exception {
+        DiskCache cache = createCache();
+        List<RawImage> pyramid = Arrays.asList(new RawImage(64, 48, PixelConfig.RGB_565, 1),
+                new RawImage(32, 24, PixelConfig.RGB_565, 1));
+        for (int i = 0; i < 20; i++) {
+            cache.putAll(FILE_KEY + i, pyramid, 1);
+        }
+        assertTrue(cache.flush(TIMEOUT_MILLIS));
+        for (int i = 0; i < 20; i++) {
+            // The stale variant is discarded while the new version is written.
+            assertNull(cache.getExact(FILE_KEY + i, 64, 48, PixelConfig.RGB_565, 2));
+            cache.putAll(FILE_KEY + i, pyramid, 2);
+        }
+        assertTrue(cache.flush(TIMEOUT_MILLIS));
+        for (int i = 0; i < 20; i++) {
+            for (CacheEntry entry : cache.get(FILE_KEY + i)) {
+                assertEquals(2, entry.getFingerprint());
+                assertTrue(entry.getFile().isFile());
+            }
+        }
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+        CacheEntry[] journaled = mJournal.retrieveAll();
+        assertEquals(40, journaled.length);
+        for (CacheEntry entry : journaled) {
+            assertEquals(2, entry.getFingerprint());
+        }
+        assertNoTemporaryFiles(mRoot.getDirectory());
+    }
+
+    @Test
+    public void failedRewriteKeepsFiles() throws Exception {
+        DiskCache cache = createCache();
+        cache.putSync(FILE_KEY, new RawImage(64, 48, PixelConfig.RGB_565, 1), 1);
+        CacheEntry previous = cache.get(FILE_KEY).get(0);
+
+        mEncoder = new FailingEncoder();
+        cache.putAll(FILE_KEY, Arrays.asList(new RawImage(64, 48, PixelConfig.RGB_565, 2),
+                new RawImage(FAILING_WIDTH, 12, PixelConfig.RGB_565, 2)), 2);
+        assertTrue(cache.flush(TIMEOUT_MILLIS));
+        assertEquals(Arrays.asList(previous), cache.get(FILE_KEY));
+        assertTrue(previous.getFile().isFile());
+        assertEquals(previous.getByteSize(), previous.getFile().length());
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+        assertNoTemporaryFiles(mRoot.getDirectory());
+    }
+
+    @Test
+    public void journaledBeforePublished() throws Exception {
+        final File feed = new File(new File(mRoot.getDirectory(), ".shared"), "changes");
+        final List<Long> feedLengths = new ArrayList<>();
+        mJournal = new MemoryJournal() {
+            @Override
+            public synchronized void insert(CacheEntry entry) {
+                feedLengths.add(feed.length());
+                super.insert(entry);
+            }
+        };
+        DiskCache cache = createCache(true);
+        final long empty = feed.length();
+        cache.putSync(FILE_KEY, new RawImage(64, 48, PixelConfig.RGB_565), 0);
+        cache.putAll(FILE_KEY, Arrays.asList(new RawImage(32, 24, PixelConfig.RGB_565),
+                new RawImage(16, 12, PixelConfig.RGB_565)), 0);
+        assertTrue(cache.flush(TIMEOUT_MILLIS));
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+
+        // Other processes may reload the journal as soon as a change is appended.
+        assertEquals(3, feedLengths.size());
+        assertEquals(empty, feedLengths.get(0).longValue());
+        assertEquals(feedLengths.get(1), feedLengths.get(2));
+        assertTrue(feedLengths.get(1) > empty);
+        assertTrue(feed.length() > feedLengths.get(2));
+    }
+
+    @Test
+    public void multiProcessWarmUpHoldsSharedLock() throws Exception {
+        DiskCache cache = createCache(true);
+        cache.putSync(FILE_KEY, new RawImage(64, 48, PixelConfig.RGB_565), 0);
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+
+        final File feed = new File(new File(mRoot.getDirectory(), ".shared"), "changes");
+        final List<Boolean> locked = new ArrayList<>();
+        final MemoryJournal journal = mJournal;
+        mJournal = new MemoryJournal() {
+            @Override
+            public synchronized CacheEntry[] retrieve(int offset, int limit) {
+                locked.add(isLocked(feed));
+                return journal.retrieve(offset, limit);
+            }
+        };
+        cache = createCache(true);
+        assertEquals(1, cache.get(FILE_KEY).size());
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+
+        // Other processes can not move entries between the chunks.
+        assertFalse(locked.isEmpty());
+        assertFalse(locked.contains(false));
+    }
+
+    @Test
+    public void scrubStartsAfterWarmUp() throws Exception {
+        DiskCache cache = createCache();
+        for (int i = 0; i < 40; i++) {
+            cache.putSync(FILE_KEY + i, new RawImage(64, 48, PixelConfig.RGB_565), 0);
+        }
+        final File first = cache.get(FILE_KEY + 3).get(0).getFile();
+        final File second = cache.get(FILE_KEY + 37).get(0).getFile();
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+        truncate(first);
+        truncate(second);
+
+        UnInitializedCache uninitialized = createUninitializedCache(false);
+        cache = uninitialized.get();
+        Future<Integer> scrub = cache.scrub();
+        assertFalse(scrub.isDone());
+        uninitialized.init();
+        assertEquals(2, scrub.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).intValue());
+        assertTrue(cache.get(FILE_KEY + 3).isEmpty());
+        assertTrue(cache.get(FILE_KEY + 37).isEmpty());
+        assertEquals(1, cache.get(FILE_KEY + 4).size());
+        assertTrue(cache.shutdown(TIMEOUT_MILLIS));
+    }
+
+    private static void truncate(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * A lock held by this process makes another lock of the same file fail.
+     */
+    private static boolean isLocked(File file) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                FileLock lock = raf.getChannel().tryLock();
+                if (lock != null) {
+                    lock.release();
+                }
+                return false;
+            } finally {
+                raf.close();
+            }
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void assertNoTemporaryFiles(File directory) {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                assertFalse(child.getPath(), child.getName().endsWith(".tmp"));
+                assertNoTemporaryFiles(child);
+            }
+        }
+    }
+
+    private DiskCache createCache() {
+        return createCache(false);
+    }
+
+    private DiskCache createCache(boolean multiProcess) {
+        UnInitializedCache cache = createUninitializedCache(multiProcess);
+        cache.init();
+        return cache.get();
+    }
+
+    private UnInitializedCache createUninitializedCache(boolean multiProcess) {
+        return new DiskCache.Builder()
+                .setJournal(mJournal)
+                .setEncoder(new ImageEncoder() {
+                    @Override
+                    public void encode(EncodableImage image, OutputStream out) throws IOException {
+                        mEncoder.encode(image, out);
+                    }
+                })
+                .setMaintenanceEnabled(false)
+                .setMultiProcess(multiProcess)
+                .setCacheSize(CACHE_SIZE)
+                .build(mRoot);
+    }
+
+    /**
+     * Fails to encode images of one width.
+     */
+    private static class FailingEncoder extends RawEncoder {
+        @Override
+        public void encode(EncodableImage image, OutputStream out) throws IOException {
+            if (image.getWidth() == FAILING_WIDTH) {
+                throw new IOException("Failed to encode");
+            }
+            super.encode(image, out);
+        }
+    }
+}
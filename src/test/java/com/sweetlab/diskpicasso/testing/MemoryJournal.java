@@ -0,0 +1,69 @@
+package com.sweetlab.diskpicasso.testing;
+
+import com.sweetlab.diskpicasso.CacheEntry;
+import com.sweetlab.diskpicasso.journal.Journal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In memory journal used as a stand-in for the persistent journals.
+ */
+public class MemoryJournal implements Journal {
+    private final Map<Long, CacheEntry> mEntries = new LinkedHashMap<>();
+
+    @Override
+    public synchronized void insert(CacheEntry entry) {
+        // Replaced entries move last, like a replaced row gets a new entry time.
+        mEntries.remove(entry.getPrimaryKey());
+        mEntries.put(entry.getPrimaryKey(), entry);
+    }
+
+    @Override
+    public synchronized void remove(CacheEntry entry) {
+        mEntries.remove(entry.getPrimaryKey());
+    }
+
+    @Override
+    public synchronized void insertAll(Collection<CacheEntry> entries) {
+        for (CacheEntry entry : entries) {
+            insert(entry);
+        }
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<CacheEntry> entries) {
+        for (CacheEntry entry : entries) {
+            remove(entry);
+        }
+    }
+
+    @Override
+    public synchronized CacheEntry[] retrieveAll() {
+        return mEntries.values().toArray(new CacheEntry[mEntries.size()]);
+    }
+
+    @Override
+    public synchronized CacheEntry[] retrieve(int offset, int count) {
+        CacheEntry[] all = retrieveAll();
+        int start = Math.min(offset, all.length);
+        int end = (int) Math.min((long) start + count, all.length);
+        return Arrays.copyOfRange(all, start, end);
+    }
+
+    @Override
+    public synchronized boolean exists(long identity) {
+        return mEntries.containsKey(identity);
+    }
+
+    @Override
+    public int compact(int maxPages) {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,32 @@
+package com.sweetlab.diskpicasso.testing;
+
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.ImageEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoder writing every n:th pixel as three bytes, roughly the output size of a jpeg at
+ * high quality without its cpu cost.
+ */
+public class RawEncoder implements ImageEncoder {
+    /**
+     * Every n:th pixel is written.
+     */
+    public static final int STRIDE = 8;
+
+    @Override
+    public void encode(EncodableImage image, OutputStream out) throws IOException {
+        int[] pixels = ((RawImage) image).getPixels();
+        byte[] row = new byte[3 * (pixels.length / STRIDE + 1)];
+        int pos = 0;
+        for (int i = 0; i < pixels.length; i += STRIDE) {
+            int pixel = pixels[i];
+            row[pos++] = (byte) (pixel >> 16);
+            row[pos++] = (byte) (pixel >> 8);
+            row[pos++] = (byte) pixel;
+        }
+        out.write(row, 0, pos);
+    }
+}
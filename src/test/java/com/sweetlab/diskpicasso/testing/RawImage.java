@@ -0,0 +1,66 @@
+package com.sweetlab.diskpicasso.testing;
+
+import com.sweetlab.diskpicasso.core.EncodableImage;
+import com.sweetlab.diskpicasso.core.PixelConfig;
+
+/**
+ * Image backed by a plain pixel array, stand-in for Android bitmaps.
+ */
+public class RawImage implements EncodableImage {
+    private final int mWidth;
+    private final int mHeight;
+    private final PixelConfig mConfig;
+    private final int[] mPixels;
+
+    /**
+     * Create image filled with a gradient.
+     *
+     * @param width  The width.
+     * @param height The height.
+     * @param config The pixel config.
+     */
+    public RawImage(int width, int height, PixelConfig config) {
+        this(width, height, config, 0);
+    }
+
+    /**
+     * Create image filled with a gradient shifted by a seed, images of different seeds below
+     * 2^24 differ.
+     *
+     * @param width  The width.
+     * @param height The height.
+     * @param config The pixel config.
+     * @param seed   The seed.
+     */
+    public RawImage(int width, int height, PixelConfig config, int seed) {
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mPixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gradient = (x & 0xff) << 16 | (y & 0xff) << 8 | ((x + y) & 0xff);
+                mPixels[y * width + x] = 0xff000000 | ((gradient + seed) & 0xffffff);
+            }
+        }
+    }
+
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public PixelConfig getPixelConfig() {
+        return mConfig;
+    }
+}
@@ -0,0 +1,53 @@
+package com.sweetlab.diskpicasso.testing;
+
+import com.sweetlab.diskpicasso.core.StorageRoot;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Storage root in a new temporary directory.
+ */
+public class TempStorageRoot implements StorageRoot {
+    private static final int BLOCK_SIZE = 4096;
+    private final File mDirectory;
+
+    /**
+     * Constructor.
+     *
+     * @throws IOException If the directory could not be created.
+     */
+    public TempStorageRoot() throws IOException {
+        mDirectory = File.createTempFile("diskpicasso", "");
+        if (!mDirectory.delete() || !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+    }
+
+    @Override
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    /**
+     * Delete the directory and everything below it.
+     */
+    public void delete() {
+        delete(mDirectory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}